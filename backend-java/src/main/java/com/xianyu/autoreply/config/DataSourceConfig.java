@@ -1,5 +1,6 @@
 package com.xianyu.autoreply.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -13,12 +14,19 @@ public class DataSourceConfig {
 
     /**
      * 自定义 DataSource Bean，以确保在连接池初始化之前创建数据库目录。
+     * 开启 app.sqlite.wal-enabled 时使用 {@link SqliteReadWriteDataSource}（WAL + 单写连接 + 只读连接池）。
      * @param properties 由 Spring Boot 自动配置并注入的、包含 application.yml 中所有 spring.datasource.* 配置的属性对象。
      * @return 配置好的 DataSource 实例。
      */
     @Bean
     @Primary
-    public DataSource dataSource(DataSourceProperties properties) {
+    public DataSource dataSource(DataSourceProperties properties,
+                                 @Value("${app.sqlite.wal-enabled:true}") boolean walEnabled,
+                                 @Value("${app.sqlite.read-pool-size:4}") int readPoolSize,
+                                 @Value("${app.sqlite.synchronous:NORMAL}") String synchronous,
+                                 @Value("${app.sqlite.cache-size-kb:16384}") int cacheSizeKb,
+                                 @Value("${app.sqlite.mmap-size-mb:256}") long mmapSizeMb,
+                                 @Value("${app.sqlite.busy-timeout-millis:5000}") int busyTimeoutMillis) {
         // 从URL中提取文件路径 (e.g., "jdbc:sqlite:./db/xianyu_data.db" -> "./db/xianyu_data.db")
         String url = properties.getUrl();
         String path = url.replace("jdbc:sqlite:", "");
@@ -36,6 +44,12 @@ public class DataSourceConfig {
             }
         }
 
+        if (walEnabled && url.startsWith("jdbc:sqlite:")) {
+            return SqliteReadWriteDataSource.create(url,
+                    new SqliteReadWriteDataSource.Pragmas(synchronous, cacheSizeKb, mmapSizeMb, busyTimeoutMillis),
+                    readPoolSize);
+        }
+
         // 使用 Spring Boot 的标准构建器来创建 DataSource，这样可以重用所有 application.yml 中的配置
         return properties.initializeDataSourceBuilder().build();
     }
@@ -0,0 +1,53 @@
+package com.xianyu.autoreply.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 记录 Hibernate 实际发出的SQL（供执行计划检查使用）
+ * 只在 {@link #capture(Runnable)} 期间记录当前线程的语句，其余时候原样放行。
+ */
+@Component
+public class SqlCaptureInspector implements StatementInspector, HibernatePropertiesCustomizer {
+
+    private final ThreadLocal<List<String>> captured = new ThreadLocal<>();
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        List<String> statements = captured.get();
+        if (statements != null) {
+            statements.add(sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 执行操作并返回期间当前线程发出的SQL（按发出顺序）
+     */
+    public List<String> capture(Runnable action) {
+        List<String> previous = captured.get();
+        List<String> statements = new ArrayList<>();
+        captured.set(statements);
+        try {
+            action.run();
+        } finally {
+            if (previous == null) {
+                captured.remove();
+            } else {
+                captured.set(previous);
+            }
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,142 @@
+package com.xianyu.autoreply.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * SQLite读写分离数据源
+ * - 写连接池只有一个连接（SQLite同一时刻只允许一个写事务），所有写事务在连接池上排队，不再出现 SQLITE_BUSY
+ * - 读连接池为只读连接，{@code @Transactional(readOnly = true)} 的事务（包括Spring Data仓库的查询方法）路由到这里
+ * - WAL模式下读不阻塞写、写也不阻塞读
+ * 每个连接打开时都会应用同一组PRAGMA。
+ * 事务开始时还不知道是否只读（同步状态在开启事务之后才设置），所以外层用延迟获取连接的代理，
+ * 执行第一条语句时才根据事务的只读标记选择连接池。
+ * 选定后整个连接都属于该连接池，因此连接不能跨事务持有：spring.jpa.open-in-view 必须关闭，
+ * 否则一个请求先查询后保存时，写操作会落在只读连接上（SQLITE_READONLY）。
+ */
+public class SqliteReadWriteDataSource extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+    private static final String WRITE = "write";
+    private static final String READ = "read";
+
+    /**
+     * 每个连接打开时应用的PRAGMA
+     *
+     * @param synchronous       同步模式（WAL下 NORMAL 即可保证不损坏，只可能丢失最后几个事务）
+     * @param cacheSizeKb       每个连接的页缓存大小（KB）
+     * @param mmapSizeMb        内存映射读取的大小（MB），0表示关闭
+     * @param busyTimeoutMillis 遇到数据库锁时的等待时长
+     */
+    public record Pragmas(String synchronous, int cacheSizeKb, long mmapSizeMb, int busyTimeoutMillis) {
+
+        SQLiteConfig toConfig(boolean readOnly) {
+            SQLiteConfig config = new SQLiteConfig();
+            if (!readOnly) {
+                // journal_mode 持久保存在数据库文件中，由写连接设置即可；只读连接无权修改
+                config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+            }
+            config.setSynchronous(SQLiteConfig.SynchronousMode.valueOf(synchronous.toUpperCase()));
+            config.setCacheSize(-cacheSizeKb); // 负数表示按KB计算
+            config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, Long.toString(mmapSizeMb * 1024 * 1024));
+            config.setTempStore(SQLiteConfig.TempStore.MEMORY);
+            config.setBusyTimeout(busyTimeoutMillis);
+            config.setReadOnly(readOnly);
+            return config;
+        }
+    }
+
+    private final HikariDataSource writer;
+    private final HikariDataSource reader;
+
+    private SqliteReadWriteDataSource(HikariDataSource writer, HikariDataSource reader) {
+        this.writer = writer;
+        this.reader = reader;
+        AbstractRoutingDataSource routing = new AbstractRoutingDataSource() {
+            @Override
+            protected Object determineCurrentLookupKey() {
+                return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? READ : WRITE;
+            }
+        };
+        routing.setTargetDataSources(Map.of(WRITE, writer, READ, reader));
+        routing.setDefaultTargetDataSource(writer);
+        routing.afterPropertiesSet();
+        setTargetDataSource(routing);
+        afterPropertiesSet();
+    }
+
+    /**
+     * 创建数据源；写连接池先初始化，保证读连接打开前数据库已切换到WAL模式
+     *
+     * @param url          jdbc:sqlite: 开头的连接地址
+     * @param pragmas      连接参数
+     * @param readPoolSize 只读连接数
+     */
+    public static SqliteReadWriteDataSource create(String url, Pragmas pragmas, int readPoolSize) {
+        HikariDataSource writer = pool("sqlite-writer", url, pragmas, false, 1);
+        HikariDataSource reader;
+        try {
+            reader = pool("sqlite-reader", url, pragmas, true, Math.max(1, readPoolSize));
+        } catch (RuntimeException e) {
+            writer.close();
+            throw e;
+        }
+        return new SqliteReadWriteDataSource(writer, reader);
+    }
+
+    private static HikariDataSource pool(String name, String url, Pragmas pragmas, boolean readOnly, int size) {
+        SQLiteDataSource sqlite = new SQLiteDataSource(pragmas.toConfig(readOnly));
+        sqlite.setUrl(url);
+        HikariConfig hikari = new HikariConfig();
+        hikari.setPoolName(name);
+        hikari.setDataSource(sqlite);
+        hikari.setMaximumPoolSize(size);
+        hikari.setMinimumIdle(size);
+        hikari.setReadOnly(readOnly);
+        return new HikariDataSource(hikari);
+    }
+
+    public HikariDataSource writer() {
+        return writer;
+    }
+
+    public HikariDataSource reader() {
+        return reader;
+    }
+
+    /**
+     * 两个连接池的使用情况
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("writer", poolStats(writer));
+        stats.put("reader", poolStats(reader));
+        return stats;
+    }
+
+    private static Map<String, Object> poolStats(HikariDataSource pool) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", pool.getMaximumPoolSize());
+        HikariPoolMXBean mx = pool.getHikariPoolMXBean();
+        if (mx != null) {
+            stats.put("active", mx.getActiveConnections());
+            stats.put("idle", mx.getIdleConnections());
+            stats.put("waiting", mx.getThreadsAwaitingConnection());
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        reader.close();
+        writer.close();
+    }
+}
@@ -3,6 +3,8 @@ package com.xianyu.autoreply.controller;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.xianyu.autoreply.entity.Cookie;
 import com.xianyu.autoreply.repository.CookieRepository;
+import com.xianyu.autoreply.service.AccountConfigService;
+import com.xianyu.autoreply.service.KeywordMatchService;
 import com.xianyu.autoreply.service.BrowserService;
 import com.xianyu.autoreply.service.TokenService;
 import com.xianyu.autoreply.service.XianyuClientService;
@@ -32,16 +34,22 @@ public class CookieController extends BaseController {
     private final CookieRepository cookieRepository;
     private final XianyuClientService xianyuClientService;
     private final BrowserService browserService;
+    private final AccountConfigService accountConfigService;
+    private final KeywordMatchService keywordMatchService;
 
     @Autowired
     public CookieController(CookieRepository cookieRepository,
                             XianyuClientService xianyuClientService,
                             BrowserService browserService,
+                            AccountConfigService accountConfigService,
+                            KeywordMatchService keywordMatchService,
                             TokenService tokenService) {
         super(tokenService);
         this.cookieRepository = cookieRepository;
         this.xianyuClientService = xianyuClientService;
         this.browserService = browserService;
+        this.accountConfigService = accountConfigService;
+        this.keywordMatchService = keywordMatchService;
     }
 
 
@@ -115,6 +123,7 @@ public class CookieController extends BaseController {
         cookie.setUpdatedAt(LocalDateTime.now());
 
         cookieRepository.save(cookie);
+        accountConfigService.refresh(cookie.getId());
         // Start client if needed (Python: creates client on connection, doesn't auto start unless valid)
         // xianyuClientService.startClient(cookie.getId()); // Optional, depending on logic
 
@@ -140,6 +149,8 @@ public class CookieController extends BaseController {
         checkOwnership(cookie, userId);
 
         cookieRepository.deleteById(id);
+        accountConfigService.evict(id);
+        keywordMatchService.evict(id);
     }
 
     @GetMapping("/{id}/details")
@@ -174,7 +185,9 @@ public class CookieController extends BaseController {
         checkOwnership(cookie, userId);
 
         cookie.setPauseDuration(update.getPauseDuration());
-        return cookieRepository.save(cookie);
+        Cookie saved = cookieRepository.save(cookie);
+        accountConfigService.refresh(id);
+        return saved;
     }
 
     @GetMapping("/{id}/pause-duration")
@@ -193,7 +206,9 @@ public class CookieController extends BaseController {
         checkOwnership(cookie, userId);
 
         cookie.setAutoConfirm(update.isAutoConfirm() ? 1 : 0);
-        return cookieRepository.save(cookie);
+        Cookie saved = cookieRepository.save(cookie);
+        accountConfigService.refresh(id);
+        return saved;
     }
 
     @GetMapping("/{id}/auto-confirm")
@@ -232,6 +247,7 @@ public class CookieController extends BaseController {
 
         cookie.setEnabled(update.isEnabled());
         cookieRepository.save(cookie);
+        accountConfigService.refresh(id);
         // Start/Stop client logic placeholder
         return cookie;
     }
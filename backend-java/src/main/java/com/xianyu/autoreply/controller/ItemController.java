@@ -4,6 +4,7 @@ import com.xianyu.autoreply.entity.ItemInfo;
 import com.xianyu.autoreply.repository.CookieRepository;
 import com.xianyu.autoreply.repository.ItemInfoRepository;
 import com.xianyu.autoreply.service.TokenService;
+import com.xianyu.autoreply.service.WriteBehindService;
 import com.xianyu.autoreply.service.XianyuClient;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
@@ -26,14 +27,17 @@ public class ItemController extends BaseController {
 
     private final ItemInfoRepository itemInfoRepository;
     private final CookieRepository cookieRepository;
+    private final WriteBehindService writeBehindService;
 
     @Autowired
     public ItemController(ItemInfoRepository itemInfoRepository,
                           CookieRepository cookieRepository,
+                          WriteBehindService writeBehindService,
                           TokenService tokenService) {
         super(tokenService);
         this.itemInfoRepository = itemInfoRepository;
         this.cookieRepository = cookieRepository;
+        this.writeBehindService = writeBehindService;
     }
 
     // ------------------------- Basic CRUD -------------------------
@@ -92,7 +96,7 @@ public class ItemController extends BaseController {
         if (itemUpdate.getMultiQuantityDelivery() != null)
             item.setMultiQuantityDelivery(itemUpdate.getMultiQuantityDelivery());
 
-        itemInfoRepository.save(item);
+        writeBehindService.submit("item_info", () -> itemInfoRepository.save(item)).join();
         return Map.of("success", true, "msg", "Item updated", "data", item);
     }
 
@@ -122,8 +126,7 @@ public class ItemController extends BaseController {
         if (request.getKeyword() == null || request.getKeyword().isEmpty()) {
             return itemInfoRepository.findByCookieId(request.getCookie_id());
         }
-        return itemInfoRepository.findByCookieIdAndItemTitleContainingIgnoreCase(
-                request.getCookie_id(), request.getKeyword());
+        return itemInfoRepository.searchItems(List.of(request.getCookie_id()), request.getKeyword());
     }
 
     @PostMapping("/items/search_multiple")
@@ -133,8 +136,7 @@ public class ItemController extends BaseController {
         }
 
         String keyword = request.getKeyword() != null ? request.getKeyword() : "";
-        List<ItemInfo> items = itemInfoRepository.findByCookieIdInAndItemTitleContainingIgnoreCase(
-                request.getCookie_ids(), keyword);
+        List<ItemInfo> items = itemInfoRepository.searchItems(request.getCookie_ids(), keyword);
 
         return Map.of("success", true, "data", items);
     }
@@ -147,13 +149,14 @@ public class ItemController extends BaseController {
             int page = request.getPage_number() > 0 ? request.getPage_number() - 1 : 0;
             int size = request.getPage_size() > 0 ? request.getPage_size() : 20;
 
-            Pageable pageable = PageRequest.of(page, size, Sort.by("updatedAt").descending());
             Page<ItemInfo> pageResult;
 
             if (request.getKeyword() != null && !request.getKeyword().isEmpty()) {
-                pageResult = itemInfoRepository.findByCookieIdAndItemTitleContainingIgnoreCase(
-                        request.getCookie_id(), request.getKeyword(), pageable);
+                // 按相关度排序
+                pageResult = itemInfoRepository.searchItems(List.of(request.getCookie_id()), request.getKeyword(),
+                        PageRequest.of(page, size));
             } else {
+                Pageable pageable = PageRequest.of(page, size, Sort.by("updatedAt").descending());
                 pageResult = itemInfoRepository.findByCookieId(request.getCookie_id(), pageable);
             }
 
@@ -182,7 +185,7 @@ public class ItemController extends BaseController {
         Boolean enabled = body.getOrDefault("is_multi_spec", false);
         if (enabled != null) {
             item.setIsMultiSpec(enabled);
-            itemInfoRepository.save(item);
+            writeBehindService.submit("item_info", () -> itemInfoRepository.save(item)).join();
         }
         return Map.of("success", true, "msg", "商品多规格状态已" + (Objects.equals(Boolean.TRUE, enabled) ? "开启" : "关闭"));
     }
@@ -197,7 +200,7 @@ public class ItemController extends BaseController {
         Boolean enabled = body.getOrDefault("multi_quantity_delivery", false);
         if (enabled != null) {
             item.setMultiQuantityDelivery(enabled);
-            itemInfoRepository.save(item);
+            writeBehindService.submit("item_info", () -> itemInfoRepository.save(item)).join();
         }
         return Map.of("success", true, "msg", "商品多数量发货状态已" + (Objects.equals(Boolean.TRUE, enabled) ? "开启" : "关闭"));
     }
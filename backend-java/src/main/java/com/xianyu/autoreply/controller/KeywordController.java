@@ -10,7 +10,9 @@ import com.xianyu.autoreply.repository.CookieRepository;
 import com.xianyu.autoreply.repository.DefaultReplyRecordRepository;
 import com.xianyu.autoreply.repository.DefaultReplyRepository;
 import com.xianyu.autoreply.repository.KeywordRepository;
+import com.xianyu.autoreply.service.AccountConfigService;
 import com.xianyu.autoreply.service.AiReplyService;
+import com.xianyu.autoreply.service.KeywordMatchService;
 import com.xianyu.autoreply.service.TokenService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
@@ -43,6 +45,8 @@ public class KeywordController extends BaseController {
     private final AiReplySettingRepository aiReplySettingRepository;
     private final CookieRepository cookieRepository;
     private final AiReplyService aiReplyService;
+    private final AccountConfigService accountConfigService;
+    private final KeywordMatchService keywordMatchService;
 
     @Autowired
     public KeywordController(KeywordRepository keywordRepository,
@@ -51,6 +55,8 @@ public class KeywordController extends BaseController {
                              AiReplySettingRepository aiReplySettingRepository,
                              CookieRepository cookieRepository,
                              AiReplyService aiReplyService,
+                             AccountConfigService accountConfigService,
+                             KeywordMatchService keywordMatchService,
                              TokenService tokenService) {
         super(tokenService);
         this.keywordRepository = keywordRepository;
@@ -59,6 +65,8 @@ public class KeywordController extends BaseController {
         this.aiReplySettingRepository = aiReplySettingRepository;
         this.cookieRepository = cookieRepository;
         this.aiReplyService = aiReplyService;
+        this.accountConfigService = accountConfigService;
+        this.keywordMatchService = keywordMatchService;
     }
 
     // ------------------------- Keywords -------------------------
@@ -120,6 +128,11 @@ public class KeywordController extends BaseController {
 
         Set<String> keywordSet = new HashSet<>();
         List<Keyword> keywordsToSave = new ArrayList<>();
+        // 整表替换会删除正则行；不带 type 的旧版请求中，与现有正则规则同名的条目仍保存为正则
+        Set<String> existingRegex = keywordRepository.findByCookieId(cid).stream()
+                .filter(k -> KeywordMatchService.TYPE_REGEX.equals(k.getType()))
+                .map(k -> keywordKey(k.getKeyword(), k.getItemId()))
+                .collect(Collectors.toSet());
 
         for (Map<String, Object> kwData : request.getKeywords()) {
             String keywordStr = (String) kwData.get("keyword");
@@ -131,9 +144,13 @@ public class KeywordController extends BaseController {
             String reply = (String) kwData.getOrDefault("reply", "");
             String itemId = (String) kwData.getOrDefault("item_id", "");
             if (itemId != null && itemId.trim().isEmpty()) itemId = null; // Normalize empty to null
-
             // Check duplicate in request
-            String key = keywordStr + "|" + (itemId == null ? "" : itemId);
+            String key = keywordKey(keywordStr, itemId);
+            String type = keywordType(kwData, key, existingRegex);
+            if (KeywordMatchService.TYPE_REGEX.equals(type)) {
+                validateRegexKeyword(keywordStr);
+            }
+
             if (keywordSet.contains(key)) {
                 String itemText = itemId != null ? "（商品ID: " + itemId + "）" : "（通用关键词）";
                 throw new RuntimeException("关键词 '" + keywordStr + "' " + itemText + " 在当前提交中重复");
@@ -156,12 +173,13 @@ public class KeywordController extends BaseController {
             k.setKeyword(keywordStr);
             k.setReply(reply);
             k.setItemId(itemId);
-            k.setType("text");
+            k.setType(type);
             keywordsToSave.add(k);
         }
 
         // Transactional update
         updateKeywordsTransactional(cid, keywordsToSave);
+        keywordMatchService.refresh(cid);
 
         return Map.of("msg", "updated", "count", keywordsToSave.size());
     }
@@ -182,7 +200,35 @@ public class KeywordController extends BaseController {
     @PostMapping("/keywords/{cid}")
     public Keyword addKeyword(@PathVariable String cid, @RequestBody Keyword keyword) {
         keyword.setCookieId(cid);
-        return keywordRepository.save(keyword);
+        if (KeywordMatchService.TYPE_REGEX.equals(keyword.getType())) {
+            validateRegexKeyword(keyword.getKeyword());
+        }
+        Keyword saved = keywordRepository.save(keyword);
+        keywordMatchService.refresh(cid);
+        return saved;
+    }
+
+    static String keywordKey(String keyword, String itemId) {
+        return keyword + "|" + (itemId == null ? "" : itemId);
+    }
+
+    /**
+     * 批量保存时条目的类型：显式的 type 优先；未携带 type 时沿用同名（关键词+商品ID）现有规则的正则类型
+     */
+    static String keywordType(Map<String, Object> kwData, String key, Set<String> existingRegex) {
+        Object type = kwData.get("type");
+        if (type == null) {
+            return existingRegex.contains(key) ? KeywordMatchService.TYPE_REGEX : "text";
+        }
+        return KeywordMatchService.TYPE_REGEX.equals(type) ? KeywordMatchService.TYPE_REGEX : "text";
+    }
+
+    private void validateRegexKeyword(String pattern) {
+        try {
+            keywordMatchService.validateRegex(pattern);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("正则关键词 '" + pattern + "' 无效: " + e.getMessage());
+        }
     }
 
     // 对应 Python: @app.delete('/keywords/{cid}/{index}') 
@@ -190,6 +236,7 @@ public class KeywordController extends BaseController {
     @DeleteMapping("/keywords/{cid}/{id}")
     public void deleteKeyword(@PathVariable String cid, @PathVariable Long id) {
         keywordRepository.deleteById(id);
+        keywordMatchService.refresh(cid);
     }
 
     // ------------------------- Default Reply -------------------------
@@ -202,7 +249,9 @@ public class KeywordController extends BaseController {
     @PostMapping("/default-replies/{cid}")
     public DefaultReply updateDefaultReply(@PathVariable String cid, @RequestBody DefaultReply defaultReply) {
         defaultReply.setCookieId(cid);
-        return defaultReplyRepository.save(defaultReply);
+        DefaultReply saved = defaultReplyRepository.save(defaultReply);
+        accountConfigService.refresh(cid);
+        return saved;
     }
 
     // ------------------------- AI Settings -------------------------
@@ -227,7 +276,9 @@ public class KeywordController extends BaseController {
     @PutMapping("/ai-reply-settings/{cookieId}")
     public AiReplySetting updateAiSetting(@PathVariable String cookieId, @RequestBody AiReplySetting setting) {
         setting.setCookieId(cookieId);
-        return aiReplySettingRepository.save(setting);
+        AiReplySetting saved = aiReplySettingRepository.save(setting);
+        accountConfigService.refresh(cookieId);
+        return saved;
     }
 
     @PostMapping("/ai-reply-test/{cookieId}")
@@ -313,6 +364,7 @@ public class KeywordController extends BaseController {
         // 设置 cookieId 并保存
         defaultReply.setCookieId(cid);
         DefaultReply saved = defaultReplyRepository.save(defaultReply);
+        accountConfigService.refresh(cid);
 
         // 返回结果（与 Python 实现一致）
         Map<String, Object> result = new java.util.HashMap<>();
@@ -348,6 +400,7 @@ public class KeywordController extends BaseController {
         // 删除默认回复设置
         try {
             defaultReplyRepository.deleteById(cid);
+            accountConfigService.refresh(cid);
             return Map.of("msg", "default reply deleted");
         } catch (Exception e) {
             throw new RuntimeException("删除失败");
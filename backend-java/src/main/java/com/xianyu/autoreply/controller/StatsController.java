@@ -3,6 +3,7 @@ package com.xianyu.autoreply.controller;
 import com.xianyu.autoreply.entity.UserStats;
 import com.xianyu.autoreply.repository.UserStatsRepository;
 import com.xianyu.autoreply.service.TokenService;
+import com.xianyu.autoreply.service.WriteBehindService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -19,12 +20,15 @@ import java.util.stream.Collectors;
 public class StatsController extends BaseController {
 
     private final UserStatsRepository userStatsRepository;
+    private final WriteBehindService writeBehindService;
 
     @Autowired
     public StatsController(UserStatsRepository userStatsRepository,
+                           WriteBehindService writeBehindService,
                            TokenService tokenService) {
         super(tokenService);
         this.userStatsRepository = userStatsRepository;
+        this.writeBehindService = writeBehindService;
     }
 
     @PostMapping("/statistics")
@@ -42,22 +46,27 @@ public class StatsController extends BaseController {
                 version = (String) data.info.getOrDefault("version", "2.2.0");
             }
 
-            UserStats stats = userStatsRepository.findByAnonymousId(data.anonymous_id)
-                    .orElse(new UserStats());
-
-            if (stats.getId() == null) {
-                stats.setAnonymousId(data.anonymous_id);
-                stats.setFirstSeen(LocalDateTime.now());
-                stats.setTotalReports(1);
-            } else {
-                stats.setTotalReports(stats.getTotalReports() + 1);
-            }
-            stats.setLastSeen(LocalDateTime.now());
-            stats.setOs(os);
-            stats.setVersion(version);
-            stats.setInfo(data.info);
-
-            userStatsRepository.save(stats);
+            String finalOs = os;
+            String finalVersion = version;
+            // 读-改-写在写线程的同一事务中完成，并发上报同一ID时计数不会丢失
+            writeBehindService.submit("user_stats", () -> {
+                UserStats stats = userStatsRepository.findByAnonymousId(data.anonymous_id)
+                        .orElse(new UserStats());
+
+                if (stats.getId() == null) {
+                    stats.setAnonymousId(data.anonymous_id);
+                    stats.setFirstSeen(LocalDateTime.now());
+                    stats.setTotalReports(1);
+                } else {
+                    stats.setTotalReports(stats.getTotalReports() + 1);
+                }
+                stats.setLastSeen(LocalDateTime.now());
+                stats.setOs(finalOs);
+                stats.setVersion(finalVersion);
+                stats.setInfo(data.info);
+
+                userStatsRepository.save(stats);
+            }).join();
 
             log.info("Received user stats: {}", data.anonymous_id);
             return Map.of("status", "success", "message", "User stats received");
@@ -1,16 +1,24 @@
 package com.xianyu.autoreply.controller;
 
+import com.xianyu.autoreply.config.SqliteReadWriteDataSource;
 import com.xianyu.autoreply.entity.SystemSetting;
 import com.xianyu.autoreply.repository.SystemSettingRepository;
+import com.xianyu.autoreply.service.QueryPlanService;
+import com.xianyu.autoreply.service.SchemaMigrationService;
 import com.xianyu.autoreply.service.TokenService;
+import com.xianyu.autoreply.service.XianyuClientService;
+import com.xianyu.autoreply.service.intent.IntentService;
+import com.xianyu.autoreply.service.llm.LlmClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.sql.DataSource;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -20,12 +28,30 @@ import java.util.Map;
 public class SystemController extends BaseController {
 
     private final SystemSettingRepository systemSettingRepository;
+    private final XianyuClientService xianyuClientService;
+    private final IntentService intentService;
+    private final LlmClient llmClient;
+    private final DataSource dataSource;
+    private final SchemaMigrationService schemaMigrationService;
+    private final QueryPlanService queryPlanService;
 
     @Autowired
     public SystemController(SystemSettingRepository systemSettingRepository,
+                            XianyuClientService xianyuClientService,
+                            IntentService intentService,
+                            LlmClient llmClient,
+                            DataSource dataSource,
+                            SchemaMigrationService schemaMigrationService,
+                            QueryPlanService queryPlanService,
                             TokenService tokenService) {
         super(tokenService);
         this.systemSettingRepository = systemSettingRepository;
+        this.xianyuClientService = xianyuClientService;
+        this.intentService = intentService;
+        this.llmClient = llmClient;
+        this.dataSource = dataSource;
+        this.schemaMigrationService = schemaMigrationService;
+        this.queryPlanService = queryPlanService;
     }
 
     @GetMapping("/settings")
@@ -77,6 +103,83 @@ public class SystemController extends BaseController {
         return Collections.singletonMap("html", "<p>Migrated to Java!</p>");
     }
 
+    // 客户端共享运行时统计（线程数、任务数、每账号开销），仅管理员
+    @GetMapping("/runtime")
+    public Map<String, Object> getRuntimeStats(@RequestHeader(value = "Authorization", required = false) String token) {
+        if (!isAdmin(token)) {
+            throw new RuntimeException("仅管理员可查看运行时统计");
+        }
+        return xianyuClientService.getRuntimeStats();
+    }
+
+    // LLM接口熔断状态（按 接口主机/模型），仅管理员
+    @GetMapping("/llm-breakers")
+    public Map<String, Object> getLlmBreakers(@RequestHeader(value = "Authorization", required = false) String token) {
+        if (!isAdmin(token)) {
+            throw new RuntimeException("仅管理员可查看熔断状态");
+        }
+        return llmClient.getBreakerStats();
+    }
+
+    // 手动打开（action=open）或重置（action=reset）熔断器，仅管理员
+    @PostMapping("/llm-breakers/{action}")
+    public Map<String, Object> updateLlmBreaker(@PathVariable String action, @RequestParam String endpoint,
+                                                @RequestHeader(value = "Authorization", required = false) String token) {
+        if (!isAdmin(token)) {
+            throw new RuntimeException("仅管理员可操作熔断器");
+        }
+        if (!"open".equals(action) && !"reset".equals(action)) {
+            throw new RuntimeException("不支持的操作: " + action);
+        }
+        if (!llmClient.setBreaker(endpoint, "open".equals(action))) {
+            throw new RuntimeException("熔断器不存在: " + endpoint);
+        }
+        return llmClient.getBreakerStats();
+    }
+
+    // 数据库连接池使用情况（WAL读写分离模式下分别统计写连接池和只读连接池），仅管理员
+    @GetMapping("/database")
+    public Map<String, Object> getDatabaseStats(@RequestHeader(value = "Authorization", required = false) String token) {
+        if (!isAdmin(token)) {
+            throw new RuntimeException("仅管理员可查看数据库连接池状态");
+        }
+        if (dataSource instanceof SqliteReadWriteDataSource split) {
+            return split.getStats();
+        }
+        return Collections.singletonMap("mode", "default");
+    }
+
+    // 热点查询执行计划检查（passed=false 表示有查询退化为全表扫描），附带本次启动执行的迁移脚本
+    @GetMapping("/query-plans")
+    public Map<String, Object> getQueryPlans(@RequestHeader(value = "Authorization", required = false) String token)
+            throws SQLException {
+        if (!isAdmin(token)) {
+            throw new RuntimeException("仅管理员可查看执行计划");
+        }
+        Map<String, Object> report = queryPlanService.verify();
+        report.put("migrations", schemaMigrationService.getApplied());
+        return report;
+    }
+
+    // 意图分类器统计（仅管理员）
+    @GetMapping("/intent-model")
+    public Map<String, Object> getIntentModel(@RequestHeader(value = "Authorization", required = false) String token) {
+        if (!isAdmin(token)) {
+            throw new RuntimeException("仅管理员可查看意图分类统计");
+        }
+        return intentService.getStats();
+    }
+
+    // 用人工标注的样本训练朴素贝叶斯意图模型，返回与词典分类器的准确率、耗时对比（仅管理员）
+    @PostMapping("/intent-model/train")
+    public Map<String, Object> trainIntentModel(@RequestHeader(value = "Authorization", required = false) String token)
+            throws IOException {
+        if (!isAdmin(token)) {
+            throw new RuntimeException("仅管理员可训练意图模型");
+        }
+        return intentService.train();
+    }
+
     @GetMapping("/logs")
     public ResponseEntity<Map<String, Object>> getLogs(@RequestParam(defaultValue = "100") int lines) {
         try {
@@ -40,6 +40,19 @@ public class AiReplySetting {
     @Column(name = "custom_prompts", columnDefinition = "TEXT")
     private String customPrompts;
 
+    @Column(name = "stream_enabled")
+    private Boolean streamEnabled = false;
+
+    // 备用模型：主模型调用失败或熔断时使用；地址、密钥为空时沿用主模型的配置
+    @Column(name = "fallback_model_name")
+    private String fallbackModelName;
+
+    @Column(name = "fallback_base_url")
+    private String fallbackBaseUrl;
+
+    @Column(name = "fallback_api_key")
+    private String fallbackApiKey;
+
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
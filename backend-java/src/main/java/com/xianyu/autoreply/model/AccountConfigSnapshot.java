@@ -0,0 +1,114 @@
+package com.xianyu.autoreply.model;
+
+import com.xianyu.autoreply.entity.AiReplySetting;
+import com.xianyu.autoreply.entity.Cookie;
+import com.xianyu.autoreply.entity.DefaultReply;
+
+/**
+ * 账号配置快照（不可变）
+ * 汇总消息处理热路径需要的账号级配置，由 {@link com.xianyu.autoreply.service.AccountConfigService} 构建并在配置写入后整体替换，
+ * 消息处理过程中不再为读取配置访问数据库。
+ *
+ * @param cookieId             账号ID
+ * @param exists               账号是否存在
+ * @param enabled              账号是否启用
+ * @param autoConfirm          是否自动确认发货
+ * @param pauseDurationMinutes 手动发消息后暂停自动回复的时长（分钟）
+ * @param ai                   AI回复设置
+ * @param defaultReply         默认回复设置
+ * @param version              快照版本号（每次重建递增）
+ */
+public record AccountConfigSnapshot(String cookieId, boolean exists, boolean enabled, boolean autoConfirm,
+                                    int pauseDurationMinutes, AiSettings ai, DefaultReplySettings defaultReply,
+                                    long version) {
+
+    private static final int DEFAULT_PAUSE_MINUTES = 10;
+
+    /**
+     * AI回复设置
+     */
+    public record AiSettings(boolean enabled, String modelName, String apiKey, String baseUrl,
+                             int maxDiscountPercent, int maxDiscountAmount, int maxBargainRounds,
+                             String customPrompts, boolean streamEnabled,
+                             String fallbackModelName, String fallbackBaseUrl, String fallbackApiKey) {
+
+        static final AiSettings DISABLED = new AiSettings(false, null, null, null, 10, 100, 3, null, false,
+                null, null, null);
+
+        static AiSettings of(AiReplySetting setting) {
+            if (setting == null) {
+                return DISABLED;
+            }
+            return new AiSettings(Boolean.TRUE.equals(setting.getAiEnabled()),
+                    setting.getModelName(),
+                    setting.getApiKey(),
+                    setting.getBaseUrl(),
+                    setting.getMaxDiscountPercent() != null ? setting.getMaxDiscountPercent() : 10,
+                    setting.getMaxDiscountAmount() != null ? setting.getMaxDiscountAmount() : 100,
+                    setting.getMaxBargainRounds() != null ? setting.getMaxBargainRounds() : 3,
+                    setting.getCustomPrompts(),
+                    Boolean.TRUE.equals(setting.getStreamEnabled()),
+                    setting.getFallbackModelName(),
+                    setting.getFallbackBaseUrl(),
+                    setting.getFallbackApiKey());
+        }
+
+        /**
+         * 备用模型的设置（地址、密钥为空时沿用主模型）；未配置备用模型时返回null
+         */
+        public AiSettings fallback() {
+            if (fallbackModelName == null || fallbackModelName.isBlank()) {
+                return null;
+            }
+            return new AiSettings(enabled, fallbackModelName,
+                    fallbackApiKey == null || fallbackApiKey.isBlank() ? apiKey : fallbackApiKey,
+                    fallbackBaseUrl == null || fallbackBaseUrl.isBlank() ? baseUrl : fallbackBaseUrl,
+                    maxDiscountPercent, maxDiscountAmount, maxBargainRounds, customPrompts, false,
+                    null, null, null);
+        }
+    }
+
+    /**
+     * 默认回复设置
+     */
+    public record DefaultReplySettings(boolean enabled, String content, String imageUrl, boolean replyOnce) {
+
+        static final DefaultReplySettings DISABLED = new DefaultReplySettings(false, null, null, false);
+
+        static DefaultReplySettings of(DefaultReply defaultReply) {
+            if (defaultReply == null) {
+                return DISABLED;
+            }
+            return new DefaultReplySettings(Boolean.TRUE.equals(defaultReply.getEnabled()),
+                    defaultReply.getReplyContent(),
+                    defaultReply.getReplyImageUrl(),
+                    Boolean.TRUE.equals(defaultReply.getReplyOnce()));
+        }
+    }
+
+    /**
+     * 根据数据库实体构建快照
+     */
+    public static AccountConfigSnapshot of(String cookieId, Cookie cookie, AiReplySetting aiSetting,
+                                           DefaultReply defaultReply, long version) {
+        if (cookie == null) {
+            return missing(cookieId, version);
+        }
+        int pauseMinutes = cookie.getPauseDuration() != null ? cookie.getPauseDuration() : DEFAULT_PAUSE_MINUTES;
+        return new AccountConfigSnapshot(cookieId, true,
+                Boolean.TRUE.equals(cookie.getEnabled()),
+                cookie.getAutoConfirm() == null || cookie.getAutoConfirm() != 0,
+                pauseMinutes,
+                AiSettings.of(aiSetting),
+                DefaultReplySettings.of(defaultReply),
+                version);
+    }
+
+    /**
+     * 账号不存在时的快照（视为禁用）
+     */
+    public static AccountConfigSnapshot missing(String cookieId, long version) {
+        return new AccountConfigSnapshot(cookieId, false, false, false, DEFAULT_PAUSE_MINUTES,
+                AiSettings.DISABLED, DefaultReplySettings.DISABLED, version);
+    }
+}
@@ -1,7 +1,7 @@
 package com.xianyu.autoreply.model;
 
+import com.xianyu.autoreply.service.runtime.HashedWheelTimer;
 import lombok.Data;
-import java.util.concurrent.CompletableFuture;
 
 /**
  * 锁持有信息
@@ -26,9 +26,9 @@ public class LockHoldInfo {
     private Long releaseTime;
     
     /**
-     * 延迟释放任务
+     * 延迟释放任务（时间轮定时任务句柄）
      */
-    private CompletableFuture<Void> task;
+    private HashedWheelTimer.Timeout task;
     
     /**
      * 创建一个新的锁持有信息
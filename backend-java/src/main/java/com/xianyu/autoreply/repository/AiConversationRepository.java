@@ -3,10 +3,14 @@ package com.xianyu.autoreply.repository;
 import com.xianyu.autoreply.entity.AiConversation;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 
 @Repository
+@Transactional(readOnly = true)
 public interface AiConversationRepository extends JpaRepository<AiConversation, Long> {
     List<AiConversation> findByCookieIdAndChatIdOrderByCreatedAtAsc(String cookieId, String chatId);
+    // 最近20条（LIMIT查询，用于加载对话缓存）
+    List<AiConversation> findTop20ByCookieIdAndChatIdOrderByIdDesc(String cookieId, String chatId);
     long countByChatIdAndCookieIdAndIntentAndRole(String chatId, String cookieId, String intent, String role);
 }
@@ -3,7 +3,9 @@ package com.xianyu.autoreply.repository;
 import com.xianyu.autoreply.entity.AiReplySetting;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface AiReplySettingRepository extends JpaRepository<AiReplySetting, String> {
 }
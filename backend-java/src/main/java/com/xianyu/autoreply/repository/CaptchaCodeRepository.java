@@ -3,11 +3,14 @@ package com.xianyu.autoreply.repository;
 import com.xianyu.autoreply.entity.CaptchaCode;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface CaptchaCodeRepository extends JpaRepository<CaptchaCode, Long> {
     Optional<CaptchaCode> findBySessionId(String sessionId);
+    @Transactional
     void deleteBySessionId(String sessionId);
 }
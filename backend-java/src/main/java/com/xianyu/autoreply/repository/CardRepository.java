@@ -3,9 +3,11 @@ package com.xianyu.autoreply.repository;
 import com.xianyu.autoreply.entity.Card;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 
 @Repository
+@Transactional(readOnly = true)
 public interface CardRepository extends JpaRepository<Card, Long> {
     List<Card> findByUserId(Long userId);
 }
@@ -3,10 +3,12 @@ package com.xianyu.autoreply.repository;
 import com.xianyu.autoreply.entity.Cookie;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
 @Repository
+@Transactional(readOnly = true)
 public interface CookieRepository extends JpaRepository<Cookie, String> {
     List<Cookie> findByUserId(Long userId);
     long countByEnabled(Boolean enabled);
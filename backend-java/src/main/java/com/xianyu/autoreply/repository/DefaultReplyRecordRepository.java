@@ -3,10 +3,13 @@ package com.xianyu.autoreply.repository;
 import com.xianyu.autoreply.entity.DefaultReplyRecord;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.Optional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface DefaultReplyRecordRepository extends JpaRepository<DefaultReplyRecord, Long> {
     Optional<DefaultReplyRecord> findByCookieIdAndChatId(String cookieId, String chatId);
+    @Transactional
     void deleteByCookieId(String cookieId);
 }
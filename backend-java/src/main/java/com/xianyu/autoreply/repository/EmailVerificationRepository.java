@@ -3,11 +3,13 @@ package com.xianyu.autoreply.repository;
 import com.xianyu.autoreply.entity.EmailVerification;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface EmailVerificationRepository extends JpaRepository<EmailVerification, Long> {
 
     // 查找最近一个未使用且未过期的验证码
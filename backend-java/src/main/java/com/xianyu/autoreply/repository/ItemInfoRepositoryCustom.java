@@ -0,0 +1,53 @@
+package com.xianyu.autoreply.repository;
+
+import com.xianyu.autoreply.entity.ItemInfo;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 商品表的批量写入和全文搜索（JDBC实现，见 {@link ItemInfoRepositoryImpl}）
+ */
+public interface ItemInfoRepositoryCustom {
+
+    /**
+     * 同步得到的一条商品
+     *
+     * @param category 分类，为null时保留数据库中的原值
+     */
+    record ItemRow(String itemId, String title, String price, String category) {
+    }
+
+    /**
+     * 一次同步的写入结果
+     */
+    record UpsertResult(int inserted, int updated, int unchanged) {
+
+        public int total() {
+            return inserted + updated + unchanged;
+        }
+    }
+
+    /**
+     * 按 (cookie_id, item_id) 批量插入或更新商品标题、价格、分类；内容没有变化的行不写入
+     */
+    @Transactional
+    UpsertResult upsertItems(String cookieId, List<ItemRow> rows);
+
+    /**
+     * 在指定账号的商品中搜索标题、描述和分类，按相关度排序
+     * 关键词按空白拆分，每个词都要命中；使用 item_info_fts 全文索引（trigram），
+     * 有不足3个字符的词时索引无法使用，改为逐行 LIKE 匹配（按更新时间排序）
+     */
+    @Transactional(readOnly = true)
+    List<ItemInfo> searchItems(Collection<String> cookieIds, String keyword);
+
+    /**
+     * 分页搜索，规则同 {@link #searchItems(Collection, String)}（忽略 pageable 中的排序）
+     */
+    @Transactional(readOnly = true)
+    Page<ItemInfo> searchItems(Collection<String> cookieIds, String keyword, Pageable pageable);
+}
@@ -0,0 +1,226 @@
+package com.xianyu.autoreply.repository;
+
+import com.xianyu.autoreply.entity.ItemInfo;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 商品批量写入和全文搜索
+ * 逐个实体保存时每个商品都要先按 (cookie_id, item_id) 查一次再单独写入（IDENTITY主键，Hibernate无法批量插入）。
+ * 这里先用一条 IN 查询取出本批商品的当前内容，跳过内容未变化的商品，
+ * 其余用 INSERT ... ON CONFLICT(cookie_id, item_id) DO UPDATE 批量提交（依赖迁移脚本V1建的唯一索引）。
+ * 搜索先用 item_info_fts（迁移脚本V2）查出按相关度排序的商品ID，再按ID加载实体。
+ */
+public class ItemInfoRepositoryImpl implements ItemInfoRepositoryCustom {
+
+    static final int IN_CHUNK_SIZE = 500; // 每条 IN 查询的参数个数（SQLite参数上限999）
+
+    private static final int TRIGRAM = 3; // trigram 索引能匹配的最短词长
+    // 相关度权重：标题 > 分类 > 描述
+    private static final String FTS_RANK = "bm25(item_info_fts, 10.0, 1.0, 3.0)";
+
+    private static final String UPSERT_SQL = "INSERT INTO item_info (cookie_id, item_id, item_title, item_price, "
+            + "item_category, is_multi_spec, multi_quantity_delivery, created_at, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, false, false, ?, ?) "
+            + "ON CONFLICT(cookie_id, item_id) DO UPDATE SET item_title = excluded.item_title, "
+            + "item_price = excluded.item_price, "
+            + "item_category = COALESCE(excluded.item_category, item_info.item_category), "
+            + "updated_at = excluded.updated_at";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private record Content(String title, String price, String category) {
+    }
+
+    /**
+     * 搜索语句的 FROM/WHERE 部分、参数和排序
+     */
+    public record SearchQuery(String from, List<Object> args, String orderBy) {
+
+        /**
+         * 查出一页商品ID的语句（参数为 args 之后再加 LIMIT、OFFSET）
+         */
+        public String idSql() {
+            return "SELECT i.id " + from + " " + orderBy + " LIMIT ? OFFSET ?";
+        }
+    }
+
+    @Autowired
+    public ItemInfoRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional
+    public UpsertResult upsertItems(String cookieId, List<ItemRow> rows) {
+        // 同一批内重复的商品ID以最后一条为准
+        Map<String, ItemRow> incoming = new LinkedHashMap<>();
+        for (ItemRow row : rows) {
+            incoming.put(row.itemId(), row);
+        }
+        if (incoming.isEmpty()) {
+            return new UpsertResult(0, 0, 0);
+        }
+        Map<String, Content> existing = loadContent(cookieId, new ArrayList<>(incoming.keySet()));
+
+        int inserted = 0;
+        int updated = 0;
+        int unchanged = 0;
+        List<ItemRow> changed = new ArrayList<>(incoming.size());
+        for (ItemRow row : incoming.values()) {
+            Content current = existing.get(row.itemId());
+            if (current == null) {
+                inserted++;
+                changed.add(row);
+            } else if (Objects.equals(current, new Content(row.title(), row.price(),
+                    row.category() != null ? row.category() : current.category()))) {
+                unchanged++;
+            } else {
+                updated++;
+                changed.add(row);
+            }
+        }
+        if (!changed.isEmpty()) {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            jdbcTemplate.batchUpdate(UPSERT_SQL, changed, changed.size(), (ps, row) -> {
+                ps.setString(1, cookieId);
+                ps.setString(2, row.itemId());
+                ps.setString(3, row.title());
+                ps.setString(4, row.price());
+                ps.setString(5, row.category());
+                ps.setTimestamp(6, now);
+                ps.setTimestamp(7, now);
+            });
+        }
+        return new UpsertResult(inserted, updated, unchanged);
+    }
+
+    private Map<String, Content> loadContent(String cookieId, List<String> itemIds) {
+        Map<String, Content> content = new HashMap<>(itemIds.size() * 2);
+        for (int from = 0; from < itemIds.size(); from += IN_CHUNK_SIZE) {
+            List<String> chunk = itemIds.subList(from, Math.min(itemIds.size(), from + IN_CHUNK_SIZE));
+            List<Object> args = new ArrayList<>(chunk.size() + 1);
+            args.add(cookieId);
+            args.addAll(chunk);
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query("SELECT item_id, item_title, item_price, item_category FROM item_info "
+                    + "WHERE cookie_id = ? AND item_id IN (" + placeholders + ")", rs -> {
+                content.put(rs.getString(1), new Content(rs.getString(2), rs.getString(3), rs.getString(4)));
+            }, args.toArray());
+        }
+        return content;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ItemInfo> searchItems(Collection<String> cookieIds, String keyword) {
+        if (cookieIds == null || cookieIds.isEmpty()) {
+            return List.of();
+        }
+        SearchQuery query = buildSearch(cookieIds, keyword);
+        return loadInOrder(findIds(query, -1, 0));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<ItemInfo> searchItems(Collection<String> cookieIds, String keyword, Pageable pageable) {
+        if (cookieIds == null || cookieIds.isEmpty()) {
+            return Page.empty(pageable);
+        }
+        SearchQuery query = buildSearch(cookieIds, keyword);
+        List<ItemInfo> content = loadInOrder(findIds(query, pageable.getPageSize(), pageable.getOffset()));
+        return PageableExecutionUtils.getPage(content, pageable, () -> {
+            Long total = jdbcTemplate.queryForObject("SELECT count(*) " + query.from(), Long.class,
+                    query.args().toArray());
+            return total != null ? total : 0L;
+        });
+    }
+
+    public static SearchQuery buildSearch(Collection<String> cookieIds, String keyword) {
+        List<String> terms = new ArrayList<>();
+        for (String term : (keyword == null ? "" : keyword).trim().split("\\s+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        String cookieFilter = "i.cookie_id IN (" + String.join(",", Collections.nCopies(cookieIds.size(), "?")) + ")";
+        List<Object> args = new ArrayList<>();
+        boolean indexable = !terms.isEmpty()
+                && terms.stream().allMatch(term -> term.codePointCount(0, term.length()) >= TRIGRAM);
+        if (indexable) {
+            // 每个词作为一个短语（双引号转义），多个短语之间为 AND
+            StringBuilder match = new StringBuilder();
+            for (String term : terms) {
+                match.append(match.isEmpty() ? "" : " ").append('"').append(term.replace("\"", "\"\"")).append('"');
+            }
+            args.add(match.toString());
+            args.addAll(cookieIds);
+            return new SearchQuery("FROM item_info_fts JOIN item_info i ON i.id = item_info_fts.rowid "
+                    + "WHERE item_info_fts MATCH ? AND " + cookieFilter, args, "ORDER BY " + FTS_RANK + ", i.id");
+        }
+        StringBuilder where = new StringBuilder(cookieFilter);
+        args.addAll(cookieIds);
+        for (String term : terms) {
+            String pattern = "%" + term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+            where.append(" AND (i.item_title LIKE ? ESCAPE '\\' OR i.item_description LIKE ? ESCAPE '\\' "
+                    + "OR i.item_category LIKE ? ESCAPE '\\')");
+            args.add(pattern);
+            args.add(pattern);
+            args.add(pattern);
+        }
+        return new SearchQuery("FROM item_info i WHERE " + where, args, "ORDER BY i.updated_at DESC, i.id");
+    }
+
+    private List<Long> findIds(SearchQuery query, int limit, long offset) {
+        List<Object> args = new ArrayList<>(query.args());
+        args.add(limit);
+        args.add(offset);
+        return jdbcTemplate.queryForList(query.idSql(), Long.class, args.toArray());
+    }
+
+    /**
+     * 按ID加载实体并保持ID列表的顺序
+     */
+    private List<ItemInfo> loadInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, ItemInfo> byId = new HashMap<>(ids.size() * 2);
+        for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + IN_CHUNK_SIZE));
+            for (ItemInfo item : entityManager.createQuery("SELECT i FROM ItemInfo i WHERE i.id IN :ids", ItemInfo.class)
+                    .setParameter("ids", chunk)
+                    .getResultList()) {
+                byId.put(item.getId(), item);
+            }
+        }
+        List<ItemInfo> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            ItemInfo item = byId.get(id);
+            if (item != null) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+}
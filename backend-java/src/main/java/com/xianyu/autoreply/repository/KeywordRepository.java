@@ -11,6 +11,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 
 @Repository
+@Transactional(readOnly = true)
 public interface KeywordRepository extends JpaRepository<Keyword, Long> {
     List<Keyword> findByCookieId(String cookieId);
     
@@ -20,7 +21,7 @@ public interface KeywordRepository extends JpaRepository<Keyword, Long> {
 
     @Transactional
     @Modifying
-    @Query("DELETE FROM Keyword k WHERE k.cookieId = :cookieId AND (k.type IS NULL OR k.type = 'text')")
+    @Query("DELETE FROM Keyword k WHERE k.cookieId = :cookieId AND (k.type IS NULL OR k.type = 'text' OR k.type = 'regex')")
     void deleteTextKeywordsByCookieId(@Param("cookieId") String cookieId);
 
     // Conflict Check: Find image keywords that clash
@@ -3,13 +3,16 @@ package com.xianyu.autoreply.repository;
 import com.xianyu.autoreply.entity.MessageNotification;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface MessageNotificationRepository extends JpaRepository<MessageNotification, Long> {
     List<MessageNotification> findByCookieId(String cookieId);
     Optional<MessageNotification> findByCookieIdAndChannelId(String cookieId, Long channelId);
+    @Transactional
     void deleteByCookieId(String cookieId);
 }
@@ -3,7 +3,9 @@ package com.xianyu.autoreply.repository;
 import com.xianyu.autoreply.entity.NotificationChannel;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface NotificationChannelRepository extends JpaRepository<NotificationChannel, Long> {
 }
@@ -3,10 +3,12 @@ package com.xianyu.autoreply.repository;
 import com.xianyu.autoreply.entity.Order;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
 @Repository
+@Transactional(readOnly = true)
 public interface OrderRepository extends JpaRepository<Order, String> {
     List<Order> findByCookieId(String cookieId);
     
@@ -3,10 +3,12 @@ package com.xianyu.autoreply.repository;
 import com.xianyu.autoreply.entity.SystemSetting;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface SystemSettingRepository extends JpaRepository<SystemSetting, String> {
     Optional<SystemSetting> findByKey(String key);
 }
@@ -4,12 +4,14 @@ import com.xianyu.autoreply.entity.UserStats;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface UserStatsRepository extends JpaRepository<UserStats, Long> {
     Optional<UserStats> findByAnonymousId(String anonymousId);
     
@@ -0,0 +1,131 @@
+package com.xianyu.autoreply.service;
+
+import com.xianyu.autoreply.entity.AiReplySetting;
+import com.xianyu.autoreply.entity.Cookie;
+import com.xianyu.autoreply.entity.DefaultReply;
+import com.xianyu.autoreply.model.AccountConfigSnapshot;
+import com.xianyu.autoreply.repository.AiReplySettingRepository;
+import com.xianyu.autoreply.repository.CookieRepository;
+import com.xianyu.autoreply.repository.DefaultReplyRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 账号配置快照服务
+ * 启动时一次性加载所有账号的配置快照，消息处理热路径只读取内存中的不可变快照；
+ * 账号、默认回复、AI设置等配置写入后调用 {@link #refresh(String)} 重建快照并整体替换。
+ */
+@Slf4j
+@Service
+public class AccountConfigService {
+
+    private final CookieRepository cookieRepository;
+    private final AiReplySettingRepository aiReplySettingRepository;
+    private final DefaultReplyRepository defaultReplyRepository;
+
+    private final Map<String, AccountConfigSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong(0);
+    private final AtomicLong loads = new AtomicLong(0);
+    private final AtomicLong refreshes = new AtomicLong(0);
+
+    @Autowired
+    public AccountConfigService(CookieRepository cookieRepository,
+                                AiReplySettingRepository aiReplySettingRepository,
+                                DefaultReplyRepository defaultReplyRepository) {
+        this.cookieRepository = cookieRepository;
+        this.aiReplySettingRepository = aiReplySettingRepository;
+        this.defaultReplyRepository = defaultReplyRepository;
+    }
+
+    @PostConstruct
+    public void init() {
+        List<Cookie> cookies = cookieRepository.findAll();
+        Map<String, AiReplySetting> aiSettings = aiReplySettingRepository.findAll().stream()
+                .collect(Collectors.toMap(AiReplySetting::getCookieId, Function.identity(), (a, b) -> a));
+        Map<String, DefaultReply> defaultReplies = defaultReplyRepository.findAll().stream()
+                .collect(Collectors.toMap(DefaultReply::getCookieId, Function.identity(), (a, b) -> a));
+        for (Cookie cookie : cookies) {
+            String cookieId = cookie.getId();
+            snapshots.put(cookieId, AccountConfigSnapshot.of(cookieId, cookie, aiSettings.get(cookieId),
+                    defaultReplies.get(cookieId), versions.incrementAndGet()));
+        }
+        loads.addAndGet(cookies.size());
+        log.info("已加载 {} 个账号的配置快照", snapshots.size());
+    }
+
+    /**
+     * 获取账号配置快照（内存读取）
+     * 快照缺失时从数据库加载一次；账号不存在时返回禁用快照且不缓存，账号创建后即可被加载。
+     */
+    public AccountConfigSnapshot get(String cookieId) {
+        if (cookieId == null) {
+            return AccountConfigSnapshot.missing(null, 0);
+        }
+        AccountConfigSnapshot snapshot = snapshots.get(cookieId);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        snapshot = load(cookieId);
+        if (!snapshot.exists()) {
+            return snapshot;
+        }
+        AccountConfigSnapshot existing = snapshots.putIfAbsent(cookieId, snapshot);
+        return existing != null ? existing : snapshot;
+    }
+
+    /**
+     * 配置写入后重建账号快照并原子替换
+     */
+    public AccountConfigSnapshot refresh(String cookieId) {
+        refreshes.incrementAndGet();
+        AccountConfigSnapshot snapshot = snapshots.compute(cookieId, (id, old) -> {
+            AccountConfigSnapshot fresh = load(id);
+            return fresh.exists() ? fresh : null;
+        });
+        if (snapshot == null) {
+            log.info("【{}】账号不存在，已移除配置快照", cookieId);
+            return AccountConfigSnapshot.missing(cookieId, versions.incrementAndGet());
+        }
+        log.debug("【{}】配置快照已更新到版本 {}", cookieId, snapshot.version());
+        return snapshot;
+    }
+
+    /**
+     * 账号删除后移除快照
+     */
+    public void evict(String cookieId) {
+        snapshots.remove(cookieId);
+    }
+
+    /**
+     * 获取快照统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("snapshots", (long) snapshots.size());
+        stats.put("loads", loads.get());
+        stats.put("refreshes", refreshes.get());
+        return stats;
+    }
+
+    private AccountConfigSnapshot load(String cookieId) {
+        loads.incrementAndGet();
+        Cookie cookie = cookieRepository.findById(cookieId).orElse(null);
+        if (cookie == null) {
+            return AccountConfigSnapshot.missing(cookieId, versions.incrementAndGet());
+        }
+        AiReplySetting aiSetting = aiReplySettingRepository.findById(cookieId).orElse(null);
+        DefaultReply defaultReply = defaultReplyRepository.findById(cookieId).orElse(null);
+        return AccountConfigSnapshot.of(cookieId, cookie, aiSetting, defaultReply, versions.incrementAndGet());
+    }
+}
@@ -0,0 +1,304 @@
+package com.xianyu.autoreply.service;
+
+import com.xianyu.autoreply.utils.MinHash;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * AI回复缓存
+ * 同一账号、同一商品、同一意图下，买家反复问的相同或近似问题（"包邮吗"、"还在吗"）直接复用之前的AI回复，省去LLM调用。
+ * - 键：(cookieId, itemId, intent) 分桶，桶内按归一化后的问题精确匹配，未命中时按 MinHash 相似度近似匹配
+ * - 失效：条目超过TTL失效；商品信息或提示词变化（上下文版本号不同）时整个桶失效
+ * - 容量：每桶最多 {@value #MAX_ENTRIES_PER_BUCKET} 条，总条数超限时淘汰最早写入的条目
+ * 议价（price）意图的回复依赖议价轮数，不经过本缓存，由调用方保证。
+ * LLM不可用时调用方可通过 {@link #lookupFallback} 以更低的相似度阈值取一条相近问题的回复作为降级答案。
+ */
+@Slf4j
+@Service
+public class AiReplyCacheService {
+
+    private static final int MAX_ENTRIES_PER_BUCKET = 32;
+    private static final double FALLBACK_SIMILARITY_THRESHOLD = 0.6;
+
+    /**
+     * 缓存命中结果
+     *
+     * @param reply         缓存的回复
+     * @param exact         是否为归一化后完全相同的问题
+     * @param savedMillis   原LLM调用耗时
+     * @param savedTokens   原LLM调用的token数（估算）
+     */
+    public record Hit(String reply, boolean exact, long savedMillis, long savedTokens) {
+    }
+
+    private final boolean enabled;
+    private final double similarityThreshold;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final LongSupplier clock;
+
+    private final Map<String, Bucket> buckets = new HashMap<>(); // 由 this 保护
+    private int size; // 由 this 保护
+
+    private final AtomicLong lookups = new AtomicLong(0);
+    private final AtomicLong exactHits = new AtomicLong(0);
+    private final AtomicLong similarHits = new AtomicLong(0);
+    private final AtomicLong fallbackLookups = new AtomicLong(0);
+    private final AtomicLong fallbackHits = new AtomicLong(0);
+    private final AtomicLong stores = new AtomicLong(0);
+    private final AtomicLong expired = new AtomicLong(0);
+    private final AtomicLong invalidations = new AtomicLong(0);
+    private final AtomicLong evicted = new AtomicLong(0);
+    private final AtomicLong savedMillis = new AtomicLong(0);
+    private final AtomicLong savedTokens = new AtomicLong(0);
+
+    @Autowired
+    public AiReplyCacheService(@Value("${app.ai-reply-cache.enabled:true}") boolean enabled,
+                               @Value("${app.ai-reply-cache.similarity-threshold:0.8}") double similarityThreshold,
+                               @Value("${app.ai-reply-cache.ttl-minutes:360}") long ttlMinutes,
+                               @Value("${app.ai-reply-cache.max-entries:5000}") int maxEntries) {
+        this(enabled, similarityThreshold, ttlMinutes, maxEntries, System::currentTimeMillis);
+    }
+
+    AiReplyCacheService(boolean enabled, double similarityThreshold, long ttlMinutes, int maxEntries,
+                        LongSupplier clock) {
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        log.info("AI回复缓存: enabled={}, similarityThreshold={}, ttlMinutes={}, maxEntries={}",
+                enabled, similarityThreshold, ttlMinutes, maxEntries);
+    }
+
+    /**
+     * 查找缓存的回复
+     *
+     * @param contextVersion 生成回复时的上下文版本（商品信息、提示词等），与缓存条目不同时该桶失效
+     * @return 命中结果；未命中返回null
+     */
+    public Hit lookup(String cookieId, String itemId, String intent, String message, long contextVersion) {
+        if (!enabled) {
+            return null;
+        }
+        lookups.incrementAndGet();
+        Hit hit = find(cookieId, itemId, intent, message, contextVersion, similarityThreshold);
+        if (hit != null) {
+            (hit.exact() ? exactHits : similarHits).incrementAndGet();
+            savedMillis.addAndGet(hit.savedMillis());
+            savedTokens.addAndGet(hit.savedTokens());
+        }
+        return hit;
+    }
+
+    /**
+     * LLM调用失败时的降级查找：相似度阈值放宽到 {@value #FALLBACK_SIMILARITY_THRESHOLD}
+     *
+     * @return 命中结果；未命中返回null
+     */
+    public Hit lookupFallback(String cookieId, String itemId, String intent, String message, long contextVersion) {
+        if (!enabled) {
+            return null;
+        }
+        fallbackLookups.incrementAndGet();
+        Hit hit = find(cookieId, itemId, intent, message, contextVersion,
+                Math.min(similarityThreshold, FALLBACK_SIMILARITY_THRESHOLD));
+        if (hit != null) {
+            fallbackHits.incrementAndGet();
+        }
+        return hit;
+    }
+
+    private Hit find(String cookieId, String itemId, String intent, String message, long contextVersion,
+                     double threshold) {
+        String normalized = MinHash.normalize(message);
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        long now = clock.getAsLong();
+        Entry hit;
+        boolean exact;
+        synchronized (this) {
+            Bucket bucket = validBucket(bucketKey(cookieId, itemId, intent), contextVersion);
+            if (bucket == null) {
+                return null;
+            }
+            hit = bucket.entries.get(normalized);
+            if (hit != null && now - hit.createdAt > ttlMillis) {
+                removeEntry(bucket, normalized);
+                expired.incrementAndGet();
+                hit = null;
+            }
+            exact = hit != null;
+            if (hit == null) {
+                hit = findSimilar(bucket, MinHash.signature(normalized), now, threshold);
+            }
+            if (hit == null) {
+                return null;
+            }
+        }
+        return new Hit(hit.reply, exact, hit.latencyMillis, hit.tokens);
+    }
+
+    /**
+     * 写入LLM生成的回复
+     *
+     * @param latencyMillis LLM调用耗时
+     * @param tokens        LLM调用的token数（估算）
+     */
+    public void store(String cookieId, String itemId, String intent, String message, long contextVersion,
+                      String reply, long latencyMillis, long tokens) {
+        if (!enabled || reply == null || reply.isEmpty()) {
+            return;
+        }
+        String normalized = MinHash.normalize(message);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        Entry entry = new Entry(MinHash.signature(normalized), reply, clock.getAsLong(), latencyMillis, tokens);
+        synchronized (this) {
+            String key = bucketKey(cookieId, itemId, intent);
+            Bucket bucket = validBucket(key, contextVersion);
+            if (bucket == null) {
+                bucket = new Bucket(contextVersion);
+                buckets.put(key, bucket);
+            }
+            // 重新写入的问题移到桶尾（桶内按写入顺序淘汰）
+            if (bucket.entries.remove(normalized) == null) {
+                size++;
+            }
+            bucket.entries.put(normalized, entry);
+            if (bucket.entries.size() > MAX_ENTRIES_PER_BUCKET) {
+                removeEntry(bucket, bucket.entries.keySet().iterator().next());
+                evicted.incrementAndGet();
+            }
+            if (size > maxEntries) {
+                evictOldest(size - maxEntries + maxEntries / 10);
+            }
+        }
+        stores.incrementAndGet();
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (this) {
+            stats.put("entries", (long) size);
+            stats.put("buckets", (long) buckets.size());
+        }
+        long lookupCount = lookups.get();
+        long hitCount = exactHits.get() + similarHits.get();
+        stats.put("lookups", lookupCount);
+        stats.put("exactHits", exactHits.get());
+        stats.put("similarHits", similarHits.get());
+        stats.put("hitRatePercent", lookupCount == 0 ? 0L : hitCount * 100 / lookupCount);
+        stats.put("fallbackLookups", fallbackLookups.get());
+        stats.put("fallbackHits", fallbackHits.get());
+        stats.put("stores", stores.get());
+        stats.put("expired", expired.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("evicted", evicted.get());
+        stats.put("savedMillis", savedMillis.get());
+        stats.put("savedTokens", savedTokens.get());
+        return stats;
+    }
+
+    // ============== 内部实现（调用方持有 this 锁） ==============
+
+    private static String bucketKey(String cookieId, String itemId, String intent) {
+        return cookieId + '\u0001' + itemId + '\u0001' + intent;
+    }
+
+    /**
+     * 获取桶；上下文版本变化时整个桶失效
+     */
+    private Bucket validBucket(String key, long contextVersion) {
+        Bucket bucket = buckets.get(key);
+        if (bucket != null && bucket.contextVersion != contextVersion) {
+            buckets.remove(key);
+            size -= bucket.entries.size();
+            invalidations.incrementAndGet();
+            log.debug("AI回复缓存失效（商品信息或提示词已变化）: {}，丢弃 {} 条", key, bucket.entries.size());
+            return null;
+        }
+        return bucket;
+    }
+
+    /**
+     * 近似匹配：相似度不低于阈值的最相似条目（顺带清理过期条目）
+     */
+    private Entry findSimilar(Bucket bucket, int[] signature, long now, double threshold) {
+        Entry best = null;
+        double bestSimilarity = threshold;
+        Iterator<Entry> it = bucket.entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (now - entry.createdAt > ttlMillis) {
+                it.remove();
+                size--;
+                expired.incrementAndGet();
+                continue;
+            }
+            double similarity = MinHash.similarity(signature, entry.signature);
+            if (similarity >= bestSimilarity) {
+                best = entry;
+                bestSimilarity = similarity;
+            }
+        }
+        return best;
+    }
+
+    private void removeEntry(Bucket bucket, String normalized) {
+        if (bucket.entries.remove(normalized) != null) {
+            size--;
+        }
+    }
+
+    /**
+     * 按写入时间淘汰最早的若干条目
+     */
+    private void evictOldest(int count) {
+        List<EntryRef> refs = new ArrayList<>(size);
+        buckets.forEach((key, bucket) -> bucket.entries.forEach((normalized, entry) ->
+                refs.add(new EntryRef(key, normalized, entry.createdAt))));
+        refs.sort((a, b) -> Long.compare(a.createdAt, b.createdAt));
+        for (int i = 0; i < count && i < refs.size(); i++) {
+            EntryRef ref = refs.get(i);
+            Bucket bucket = buckets.get(ref.bucketKey);
+            removeEntry(bucket, ref.normalized);
+            if (bucket.entries.isEmpty()) {
+                buckets.remove(ref.bucketKey);
+            }
+            evicted.incrementAndGet();
+        }
+    }
+
+    private static final class Bucket {
+        final long contextVersion;
+        final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(); // 按写入顺序
+
+        Bucket(long contextVersion) {
+            this.contextVersion = contextVersion;
+        }
+    }
+
+    private record Entry(int[] signature, String reply, long createdAt, long latencyMillis, long tokens) {
+    }
+
+    private record EntryRef(String bucketKey, String normalized, long createdAt) {
+    }
+}
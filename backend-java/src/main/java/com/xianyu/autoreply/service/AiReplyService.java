@@ -1,39 +1,69 @@
 package com.xianyu.autoreply.service;
 
-import cn.hutool.http.HttpRequest;
-import cn.hutool.http.HttpResponse;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
-import com.xianyu.autoreply.entity.AiConversation;
-import com.xianyu.autoreply.entity.AiReplySetting;
-import com.xianyu.autoreply.repository.AiConversationRepository;
+import com.xianyu.autoreply.model.AccountConfigSnapshot;
 import com.xianyu.autoreply.repository.AiItemCacheRepository;
-import com.xianyu.autoreply.repository.AiReplySettingRepository;
+import com.xianyu.autoreply.service.intent.IntentService;
+import com.xianyu.autoreply.service.llm.FirstSentenceSender;
+import com.xianyu.autoreply.service.llm.LlmClient;
+import com.xianyu.autoreply.utils.TokenEstimator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @Slf4j
 public class AiReplyService {
 
-    private final AiReplySettingRepository aiReplySettingRepository;
-    private final AiConversationRepository aiConversationRepository;
+    private final AccountConfigService accountConfigService;
+    private final ConversationMemoryService conversationMemoryService;
     private final AiItemCacheRepository aiItemCacheRepository;
+    private final LlmClient llmClient;
+    private final AiReplyCacheService aiReplyCacheService;
+    private final IntentService intentService;
 
     @Autowired
-    public AiReplyService(AiReplySettingRepository aiReplySettingRepository,
-                          AiConversationRepository aiConversationRepository,
-                          AiItemCacheRepository aiItemCacheRepository) {
-        this.aiReplySettingRepository = aiReplySettingRepository;
-        this.aiConversationRepository = aiConversationRepository;
+    public AiReplyService(AccountConfigService accountConfigService,
+                          ConversationMemoryService conversationMemoryService,
+                          AiItemCacheRepository aiItemCacheRepository,
+                          LlmClient llmClient,
+                          AiReplyCacheService aiReplyCacheService,
+                          IntentService intentService) {
+        this.accountConfigService = accountConfigService;
+        this.conversationMemoryService = conversationMemoryService;
         this.aiItemCacheRepository = aiItemCacheRepository;
+        this.llmClient = llmClient;
+        this.aiReplyCacheService = aiReplyCacheService;
+        this.intentService = intentService;
     }
 
+    // 提示词预算：摘要之后最多带 MAX_RAW_TURNS 条原文，达到该数量时异步刷新摘要，只保留最近 KEEP_RAW_TURNS 条
+    private static final int MAX_RAW_TURNS = 8;
+    private static final int KEEP_RAW_TURNS = 4;
+    private static final int ITEM_TITLE_TOKEN_BUDGET = 60;
+    private static final int ITEM_DESC_TOKEN_BUDGET = 300;
+    private static final int TURN_TOKEN_BUDGET = 120; // 单条历史消息
+    private static final int SUMMARY_TOKEN_BUDGET = 150;
+
+    private static final String SUMMARY_PROMPT = "你是对话摘要助手。把买家和卖家的对话压缩成不超过100字的中文摘要，" +
+            "保留：买家的诉求和问题、卖家已给出的价格和承诺、尚未解决的事项。只输出摘要本身。";
+
+    private final AtomicLong prompts = new AtomicLong(0);
+    private final AtomicLong promptTokens = new AtomicLong(0);
+    private final AtomicLong maxPromptTokens = new AtomicLong(0);
+    private final AtomicLong llmFailures = new AtomicLong(0);
+    private final AtomicLong fallbackModelReplies = new AtomicLong(0);
+    private final AtomicLong fallbackCacheReplies = new AtomicLong(0);
+
     private static final java.util.Map<String, String> DEFAULT_PROMPTS = java.util.Map.of(
         "price", "你是一位经验丰富的销售专家，擅长议价。\n" +
                  "语言要求：简短直接，每句≤10字，总字数≤40字。\n" +
@@ -53,21 +83,49 @@ public class AiReplyService {
                    "注意：结合商品信息，给出实用建议。"
     );
 
+    /**
+     * 同步生成AI回复（等待LLM返回，供接口测试等非消息热路径使用）
+     */
     public String generateReply(String cookieId, String chatId, String userId, String itemId, String userMessage) {
-        AiReplySetting setting = aiReplySettingRepository.findById(cookieId).orElse(null);
-        if (setting == null || !Boolean.TRUE.equals(setting.getAiEnabled())) {
+        try {
+            return generateReplyAsync(cookieId, chatId, userId, itemId, userMessage).join();
+        } catch (Exception e) {
+            log.error("【{}】AI回复生成失败: {}", cookieId, e.getMessage());
             return null;
         }
+    }
+
+    /**
+     * 异步生成AI回复：LLM调用不阻塞调用线程
+     *
+     * @return AI回复内容；未启用AI或调用失败时为null
+     */
+    public CompletableFuture<String> generateReplyAsync(String cookieId, String chatId, String userId, String itemId, String userMessage) {
+        return generateReplyAsync(cookieId, chatId, userId, itemId, userMessage, null);
+    }
+
+    /**
+     * 异步生成AI回复；账号开启流式回复且提供了首句回调时，首句生成后先通过回调发送
+     *
+     * @param sentenceSender 首句发送回调，可为null（不提前发送）
+     * @return AI回复全文（包含已提前发送的首句）；未启用AI或调用失败时为null
+     */
+    public CompletableFuture<String> generateReplyAsync(String cookieId, String chatId, String userId, String itemId,
+                                                        String userMessage, FirstSentenceSender sentenceSender) {
+        // AI设置来自内存中的账号配置快照
+        AccountConfigSnapshot.AiSettings setting = accountConfigService.get(cookieId).ai();
+        if (!setting.enabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
 
         String intent = detectIntent(userMessage);
 
-        // Save User Message
-        saveConversation(cookieId, chatId, userId, itemId, "user", userMessage, intent);
+        // Save User Message（内存对话缓存，返回包含本条消息的议价次数）
+        long bargainCount = saveConversation(cookieId, chatId, userId, itemId, "user", userMessage, intent);
 
         // Bargain Limit Check
         if ("price".equals(intent)) {
-            long bargainCount = aiConversationRepository.countByChatIdAndCookieIdAndIntentAndRole(chatId, cookieId, "price", "user");
-            int maxBargainRounds = setting.getMaxBargainRounds() != null ? setting.getMaxBargainRounds() : 3;
+            int maxBargainRounds = setting.maxBargainRounds();
             // Note: count includes the current message we just saved? actually yes since we saved it above.
             // Python: `bargain_count = self.get_bargain_count(...)` -> `if bargain_count >= max...`
             // If we just saved it, count is at least 1. 
@@ -83,8 +141,8 @@ public class AiReplyService {
                 // Python seems to refuse IF count >= max.
                 // So if max=3, 3rd time Refuse.
                 String refuseReply = "抱歉，这个价格已经是最优惠的了，不能再便宜了哦！";
-                saveConversation(cookieId, chatId, userId, itemId, "assistant", refuseReply, intent);
-                return refuseReply;
+                saveAssistantReply(setting, cookieId, chatId, userId, itemId, refuseReply, intent);
+                return CompletableFuture.completedFuture(refuseReply);
             }
         }
 
@@ -95,51 +153,20 @@ public class AiReplyService {
         String desc = "无";
         if (item != null) {
             price = item.getPrice() != null ? String.valueOf(item.getPrice()) : "未知";
-            desc = item.getDescription() != null ? item.getDescription() : "无";
+            desc = item.getDescription() != null ? TokenEstimator.truncate(item.getDescription(), ITEM_DESC_TOKEN_BUDGET) : "无";
             if (item.getData() != null) {
                 try {
                      JSONObject dataJson = JSON.parseObject(item.getData());
                      title = dataJson.getString("title");
-                     if (title == null) title = "未知";
+                     title = title == null ? "未知" : TokenEstimator.truncate(title, ITEM_TITLE_TOKEN_BUDGET);
                 } catch (Exception e) {}
             }
         }
         
         String itemDesc = String.format("商品标题: %s\n商品价格: %s元\n商品描述: %s", title, price, desc);
 
-        // Build Context
-        List<AiConversation> history = aiConversationRepository.findByCookieIdAndChatIdOrderByCreatedAtAsc(cookieId, chatId);
-        StringBuilder contextStr = new StringBuilder();
-        int historyLimit = 10;
-        int start = Math.max(0, history.size() - historyLimit);
-        for(int i = start; i < history.size(); i++) {
-             // Skip the very last one as it is the current message? 
-             // Python: context[-10:] includes current? 
-             // `get_conversation_context` fetches from DB with limit.
-             // We just saved `userMessage`, so it is in history.
-             // Python Logic: 
-             // 1. save user msg.
-             // 2. get context (limit 20).
-             // 3. construct prompt with context. (so current msg is in context).
-             // 4. construct user prompt with `User Message: {message}` again?
-             // Python line 364: context_str from history.
-             // Python line 383: `用户消息：{message}` inside prompt.
-             // It seems redundant but follows prompt template.
-             // Note: context_str should probably EXCLUDE current message to avoid duplication if we explicitly add it in prompt?
-             // Python `context` query: `ORDER BY created_at DESC LIMIT ?` then reversed.
-             // It likely includes the message just saved.
-             // However, context in prompt is usually "History".
-             // Let's include everything except the very last one (current) to avoid "User: xxx" appearing twice (once in history, once in 'User Message').
-             // Or Python includes it in history AND explicitly. Model can handle it.
-             // Let's follow Python: context_str contains recent messages.
-             AiConversation conv = history.get(i);
-             // If we want to avoid duplication, we can check if it is the current message (id).
-             // But simpler to just append.
-             contextStr.append(conv.getRole()).append(": ").append(conv.getContent()).append("\n");
-        }
-
         // Custom Prompts
-        String customPromptsJson = setting.getCustomPrompts();
+        String customPromptsJson = setting.customPrompts();
         String systemPrompt = null;
         if (customPromptsJson != null) {
             try {
@@ -151,11 +178,32 @@ public class AiReplyService {
             systemPrompt = DEFAULT_PROMPTS.getOrDefault(intent, DEFAULT_PROMPTS.get("default"));
         }
 
+        // Reply Cache：议价回复依赖议价轮数，不使用缓存
+        boolean cacheable = !"price".equals(intent);
+        long contextVersion = ((long) itemDesc.hashCode() << 32) ^ (systemPrompt + '\u0001' + setting.modelName()).hashCode();
+        if (cacheable) {
+            AiReplyCacheService.Hit hit = aiReplyCacheService.lookup(cookieId, itemId, intent, userMessage, contextVersion);
+            if (hit != null) {
+                log.info("【{}】AI回复命中缓存（{}），节省约 {}ms", cookieId, hit.exact() ? "精确" : "近似", hit.savedMillis());
+                saveAssistantReply(setting, cookieId, chatId, userId, itemId, hit.reply(), intent);
+                return CompletableFuture.completedFuture(hit.reply());
+            }
+        }
+
+        // Build Context：滚动摘要 + 最近几条原文
+        // 刚保存的当前消息会在提示词的“用户消息”中单独给出，这里跳过，避免重复
+        ConversationMemoryService.ChatContext context = conversationMemoryService.context(cookieId, chatId, MAX_RAW_TURNS, 1);
+        StringBuilder contextStr = new StringBuilder();
+        if (context.summary() != null) {
+            contextStr.append("此前对话摘要: ").append(context.summary()).append("\n");
+        }
+        appendTurns(contextStr, context.turns());
+
         // User Prompt Construction
-        int maxBargain = setting.getMaxBargainRounds() != null ? setting.getMaxBargainRounds() : 3;
-        int maxDiscountPct = setting.getMaxDiscountPercent() != null ? setting.getMaxDiscountPercent() : 10;
-        double maxDiscountAmt = setting.getMaxDiscountAmount() != null ? setting.getMaxDiscountAmount() : 100.0;
-        int currentBargainCount = (int) (intent.equals("price") ? aiConversationRepository.countByChatIdAndCookieIdAndIntentAndRole(chatId, cookieId, "price", "user") : 0);
+        int maxBargain = setting.maxBargainRounds();
+        int maxDiscountPct = setting.maxDiscountPercent();
+        double maxDiscountAmt = setting.maxDiscountAmount();
+        int currentBargainCount = (int) (intent.equals("price") ? bargainCount : 0);
         
         String userPrompt = String.format(
             "商品信息：\n%s\n\n对话历史：\n%s\n\n议价设置：\n- 当前议价次数：%d\n- 最大议价轮数：%d\n- 最大优惠百分比：%d%%\n- 最大优惠金额：%.2f元\n\n用户消息：{%s}\n\n请根据以上信息生成回复：",
@@ -173,159 +221,141 @@ public class AiReplyService {
         usrMsg.put("content", userPrompt);
         messages.add(usrMsg);
 
-        // Call API
-        String replyContent = callLlmApi(setting, messages);
-        
-        if (replyContent != null) {
-            saveConversation(cookieId, chatId, userId, itemId, "assistant", replyContent, intent);
-        }
+        int promptTokenCount = TokenEstimator.count(systemPrompt) + TokenEstimator.count(userPrompt);
+        prompts.incrementAndGet();
+        promptTokens.addAndGet(promptTokenCount);
+        maxPromptTokens.accumulateAndGet(promptTokenCount, Math::max);
+        log.debug("【{}】AI提示词约 {} tokens（摘要: {}，历史原文: {} 条）",
+                cookieId, promptTokenCount, context.summary() != null, context.turns().size());
 
-        return replyContent;
+        // Call API（异步，不阻塞当前线程）
+        // 失败（含熔断）时依次降级：备用模型 -> 相近问题的缓存回复 -> 返回null，由调用方发送默认回复
+        long callStart = System.nanoTime();
+        // 首句的发送结果：只有真的发出后才不再降级，发送失败或被丢弃时照常换模型/用缓存
+        AtomicReference<CompletableFuture<Boolean>> sentenceSent =
+                new AtomicReference<>(CompletableFuture.completedFuture(false));
+        CompletableFuture<String> call;
+        if (setting.streamEnabled() && sentenceSender != null) {
+            call = llmClient.chatStream(setting, messages, sentence -> {
+                CompletableFuture<Boolean> sent = sentenceSender.send(sentence);
+                if (sent != null) {
+                    sentenceSent.set(sent.exceptionally(e -> false));
+                }
+                return sent;
+            });
+        } else {
+            call = llmClient.chat(setting, messages);
+        }
+        return call
+                .exceptionallyCompose(e -> sentenceSent.get().thenCompose(sent ->
+                        callFallbackModel(cookieId, setting, messages, e, sent)))
+                .thenApply(replyContent -> {
+                    if (replyContent != null) {
+                        saveAssistantReply(setting, cookieId, chatId, userId, itemId, replyContent, intent);
+                        if (cacheable) {
+                            long latencyMillis = (System.nanoTime() - callStart) / 1_000_000;
+                            aiReplyCacheService.store(cookieId, itemId, intent, userMessage, contextVersion, replyContent,
+                                    latencyMillis, promptTokenCount + TokenEstimator.count(replyContent));
+                        }
+                    }
+                    return replyContent;
+                })
+                .exceptionallyCompose(e -> sentenceSent.get().thenApply(sent -> {
+                    llmFailures.incrementAndGet();
+                    log.error("【{}】LLM调用失败: {}", cookieId, e.getMessage());
+                    if (!cacheable || sent) {
+                        return null;
+                    }
+                    AiReplyCacheService.Hit hit = aiReplyCacheService.lookupFallback(cookieId, itemId, intent, userMessage, contextVersion);
+                    if (hit == null) {
+                        return null;
+                    }
+                    fallbackCacheReplies.incrementAndGet();
+                    log.info("【{}】LLM不可用，使用相近问题的缓存回复", cookieId);
+                    saveAssistantReply(setting, cookieId, chatId, userId, itemId, hit.reply(), intent);
+                    return hit.reply();
+                }));
     }
 
-    private String detectIntent(String message) {
-        if (message == null) return "default";
-        String lowerMsg = message.toLowerCase();
-        
-        // Price keywords (from ai_reply_engine.py)
-        String[] priceKeywords = {
-            "便宜", "优惠", "刀", "降价", "包邮", "价格", "多少钱", "能少", "还能", "最低", "底价",
-            "实诚价", "到100", "能到", "包个邮", "给个价", "什么价"
-        };
-        for (String kw : priceKeywords) {
-            if (lowerMsg.contains(kw)) {
-                return "price";
-            }
+    /**
+     * 主模型失败后改用备用模型；首句已提前发出时不再换模型，避免回复内容重复
+     */
+    private CompletableFuture<String> callFallbackModel(String cookieId, AccountConfigSnapshot.AiSettings setting,
+                                                        JSONArray messages, Throwable error, boolean sentenceSent) {
+        AccountConfigSnapshot.AiSettings fallback = setting.fallback();
+        if (fallback == null || sentenceSent) {
+            return CompletableFuture.failedFuture(error);
         }
+        log.warn("【{}】主模型 {} 调用失败（{}），改用备用模型 {}", cookieId, setting.modelName(), error.getMessage(),
+                fallback.modelName());
+        return llmClient.chat(fallback, messages).thenApply(reply -> {
+            fallbackModelReplies.incrementAndGet();
+            return reply;
+        });
+    }
 
-        // Tech keywords
-        String[] techKeywords = {"怎么用", "参数", "坏了", "故障", "设置", "说明书", "功能", "用法", "教程", "驱动"};
-        for (String kw : techKeywords) {
-            if (lowerMsg.contains(kw)) {
-                return "tech";
-            }
-        }
+    /**
+     * 获取提示词统计（次数、估算token数）和降级统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long count = prompts.get();
+        stats.put("prompts", count);
+        stats.put("promptTokens", promptTokens.get());
+        stats.put("avgPromptTokens", count == 0 ? 0L : promptTokens.get() / count);
+        stats.put("maxPromptTokens", maxPromptTokens.get());
+        stats.put("llmFailures", llmFailures.get());
+        stats.put("fallbackModelReplies", fallbackModelReplies.get());
+        stats.put("fallbackCacheReplies", fallbackCacheReplies.get());
+        return stats;
+    }
 
-        return "default";
+    private static void appendTurns(StringBuilder sb, List<ConversationMemoryService.Turn> turns) {
+        for (ConversationMemoryService.Turn turn : turns) {
+            sb.append(turn.role()).append(": ")
+                    .append(TokenEstimator.truncate(turn.content(), TURN_TOKEN_BUDGET)).append("\n");
+        }
     }
 
-    private String callLlmApi(AiReplySetting setting, JSONArray messages) {
-        try {
-            JSONObject body = new JSONObject();
-            // Gemini needs different payload structure if using standard `generateContent`
-            // But if using OpenAI-compatible endpoint (some proxies do), standard is fine.
-            // Python code `_call_gemini_api` used `generateContent` URL.
-            // Python code `_call_openai_api` used `/chat/completions`.
-            // Here implementation tries to be generic. 
-            // Let's respect Python's logic: if "gemini" in model name, use Gemini structure?
-            // Or just stick to OpenAI format as `AiReplyService` is often using a unified proxy.
-            
-            // Re-reading Python `_call_gemini_api`:
-            // It sends `{"contents": [{"role": "user", "parts": [...]}]}`
-            
-            String model = setting.getModelName();
-            String url = setting.getBaseUrl();
-            String apiKey = setting.getApiKey();
-            
-            if (model.toLowerCase().contains("gemini")) {
-                // Gemini Logic
-                 String geminiUrl = "https://generativelanguage.googleapis.com/v1beta/models/" + model + ":generateContent?key=" + apiKey;
-                 
-                 // Convert messages to Gemini format
-                 // Gemini only supports "user" and "model" roles in history, and system instruction separate.
-                 // Simplified for now: just take the last user message or simple history.
-                 // Python `_call_gemini_api` logic: finds system, finds all user parts.
-                 
-                 // System Instruction
-                 String systemText = "";
-                 for(int i=0; i<messages.size(); i++) {
-                     if ("system".equals(messages.getJSONObject(i).getString("role"))) {
-                         systemText = messages.getJSONObject(i).getString("content");
-                         break;
-                     }
-                 }
-                 
-                 // User content (Last one)
-                 String userText = messages.getJSONObject(messages.size()-1).getString("content");
-                 
-                 JSONObject geminiBody = new JSONObject();
-                 JSONObject contentPart = new JSONObject();
-                 contentPart.put("role", "user");
-                 contentPart.put("parts", new JSONArray().fluentAdd(new JSONObject().fluentPut("text", userText)));
-                 geminiBody.put("contents", new JSONArray().fluentAdd(contentPart));
-                 
-                 if (!systemText.isEmpty()) {
-                     geminiBody.put("systemInstruction", new JSONObject().fluentPut("parts", new JSONArray().fluentAdd(new JSONObject().fluentPut("text", systemText))));
-                 }
-                 
-                 HttpResponse response = HttpRequest.post(geminiUrl)
-                    .header("Content-Type", "application/json")
-                    .body(geminiBody.toString())
-                    .execute();
-                    
-                 if (response.isOk()) {
-                     JSONObject res = JSON.parseObject(response.body());
-                     try {
-                         return res.getJSONArray("candidates").getJSONObject(0).getJSONObject("content").getJSONArray("parts").getJSONObject(0).getString("text");
-                     } catch(Exception e) {
-                         log.error("Gemini parse error: {}", response.body());
-                     }
-                 }
-                 return null;
-            }
+    /**
+     * 记录AI回复，并在未摘要的消息足够多时异步刷新会话摘要
+     */
+    private void saveAssistantReply(AccountConfigSnapshot.AiSettings setting, String cookieId, String chatId,
+                                    String userId, String itemId, String reply, String intent) {
+        saveConversation(cookieId, chatId, userId, itemId, "assistant", reply, intent);
+        ConversationMemoryService.SummaryJob job =
+                conversationMemoryService.claimSummaryJob(cookieId, chatId, MAX_RAW_TURNS, KEEP_RAW_TURNS);
+        if (job == null) {
+            return;
+        }
+        StringBuilder dialog = new StringBuilder();
+        appendTurns(dialog, job.turns());
+        String userPrompt = String.format("已有摘要：\n%s\n\n新增对话：\n%s",
+                job.previousSummary() != null ? job.previousSummary() : "无", dialog);
 
-            // Standard OpenAI / DashScope Logic
-            body.put("model", model);
-            body.put("messages", messages);
-            
-            if (url != null && !url.endsWith("/chat/completions") && !url.contains("dashscope")) {
-                url += "/chat/completions";
-            }
-            if (url != null && url.contains("dashscope") && !url.contains("/api/v1")) {
-                 // DashScope specific fix if needed, but usually users provide full URL or base
-                 // Python `_call_dashscope_api` constructs: `https://dashscope.aliyuncs.com/api/v1/apps/{app_id}/completion`
-                 // If base_url has /apps/, handle it.
-                 if (url.contains("/apps/")) {
-                     // Assume Python logic:
-                     // app_id is extracted.
-                     // But simpler to just use what user provided if it works.
-                 }
+        JSONArray messages = new JSONArray();
+        messages.add(new JSONObject().fluentPut("role", "system").fluentPut("content", SUMMARY_PROMPT));
+        messages.add(new JSONObject().fluentPut("role", "user").fluentPut("content", userPrompt));
+        llmClient.chat(setting, messages).whenComplete((summary, error) -> {
+            if (error != null || summary == null || summary.isBlank()) {
+                job.fail();
+                log.warn("【{}】会话摘要刷新失败: {}", cookieId, error != null ? error.getMessage() : "空响应");
+                return;
             }
+            job.complete(TokenEstimator.truncate(summary.trim(), SUMMARY_TOKEN_BUDGET));
+        });
+    }
 
-            HttpResponse response = HttpRequest.post(url)
-                .header("Authorization", "Bearer " + setting.getApiKey())
-                .header("Content-Type", "application/json")
-                .body(body.toString())
-                .execute();
-
-            if (response.isOk()) {
-                JSONObject res = JSON.parseObject(response.body());
-                if (res.containsKey("choices")) {
-                    JSONArray choices = res.getJSONArray("choices");
-                    if (choices != null && !choices.isEmpty()) {
-                        return choices.getJSONObject(0).getJSONObject("message").getString("content");
-                    }
-                } else if (res.containsKey("output")) {
-                    // DashScope
-                    return res.getJSONObject("output").getString("text");
-                }
-            } else {
-                log.error("LLM API Error: {} - {}", response.getStatus(), response.body());
-            }
-        } catch (Exception e) {
-            log.error("Failed to call LLM API", e);
-        }
-        return null;
+    private String detectIntent(String message) {
+        return intentService.classify(message);
     }
-    private void saveConversation(String cookieId, String chatId, String userId, String itemId, String role, String content, String intent) {
-        AiConversation conversation = new AiConversation();
-        conversation.setCookieId(cookieId);
-        conversation.setChatId(chatId);
-        conversation.setUserId(userId);
-        conversation.setItemId(itemId);
-        conversation.setRole(role);
-        conversation.setContent(content);
-        conversation.setIntent(intent);
-        aiConversationRepository.save(conversation);
+
+    /**
+     * 记录一条对话（写入内存缓存，后台批量持久化）
+     *
+     * @return 该会话当前的议价次数
+     */
+    private long saveConversation(String cookieId, String chatId, String userId, String itemId, String role, String content, String intent) {
+        return conversationMemoryService.append(cookieId, chatId, userId, itemId, role, content, intent);
     }
 }
@@ -27,6 +27,7 @@ public class BrowserService {
 
     private final CookieRepository cookieRepository;
     private final ResourceUrlProvider resourceUrlProvider;
+    private final AccountConfigService accountConfigService;
     private Playwright playwright;
     private Browser browser;
 
@@ -37,9 +38,11 @@ public class BrowserService {
     private final Map<String, Object> contextLocks = new ConcurrentHashMap<>();
 
     @Autowired
-    public BrowserService(CookieRepository cookieRepository, ResourceUrlProvider resourceUrlProvider) {
+    public BrowserService(CookieRepository cookieRepository, ResourceUrlProvider resourceUrlProvider,
+                          AccountConfigService accountConfigService) {
         this.cookieRepository = cookieRepository;
         this.resourceUrlProvider = resourceUrlProvider;
+        this.accountConfigService = accountConfigService;
     }
 
     @PostConstruct
@@ -446,6 +449,7 @@ public class BrowserService {
         cookie.setUserId(userId);
         cookie.setEnabled(true);
         cookieRepository.save(cookie);
+        accountConfigService.refresh(accountId);
 
         session.put("status", "success");
         session.put("message", "登录成功");
@@ -0,0 +1,456 @@
+package com.xianyu.autoreply.service;
+
+import com.xianyu.autoreply.entity.AiConversation;
+import com.xianyu.autoreply.repository.AiConversationRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * AI对话上下文的内存缓存
+ * 每个 (cookieId, chatId) 保留最近 {@value #RING_CAPACITY} 条消息的环形缓冲和议价次数计数，
+ * 首次访问时用 LIMIT 查询从数据库加载，之后读写都在内存中完成；空闲超时的会话定期淘汰。
+ * 新消息先进入内存，再由后台线程攒批后交给 {@link WriteBehindService} 写入 ai_conversations（写后持久化）。
+ * 另外每个会话可保存一段滚动摘要（仅在内存中），覆盖较早的消息，提示词中只需带摘要和最近几条原文。
+ */
+@Slf4j
+@Service
+public class ConversationMemoryService {
+
+    private static final int RING_CAPACITY = 20; // 每个会话在内存中保留的消息条数
+    private static final long IDLE_EVICT_MILLIS = 30 * 60 * 1000L; // 会话空闲30分钟后淘汰
+    private static final int MAX_CHATS = 20000; // 内存中会话数上限，超出时按最久未访问淘汰
+    private static final long SWEEP_INTERVAL_SECONDS = 60;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+    private static final int FLUSH_BATCH_SIZE = 200;
+    private static final int MAX_PENDING_WRITES = 10000; // 待写入队列上限，满时退化为同步写入
+
+    private static final String INTENT_PRICE = "price";
+    private static final String ROLE_USER = "user";
+
+    /**
+     * 一条对话消息
+     */
+    public record Turn(String role, String content, String intent) {
+    }
+
+    /**
+     * 构建提示词用的对话上下文
+     *
+     * @param summary 较早消息的摘要，没有时为null
+     * @param turns   摘要之后的最近消息（按时间正序）
+     */
+    public record ChatContext(String summary, List<Turn> turns) {
+    }
+
+    /**
+     * 一次摘要刷新任务：把旧摘要和若干条消息合并为新摘要
+     * 调用方生成摘要后必须调用 {@link #complete(String)} 或 {@link #fail()} 之一
+     */
+    public final class SummaryJob {
+        private final ChatMemory memory;
+        private final String previousSummary;
+        private final List<Turn> turns;
+        private final long throughSeq;
+
+        private SummaryJob(ChatMemory memory, String previousSummary, List<Turn> turns, long throughSeq) {
+            this.memory = memory;
+            this.previousSummary = previousSummary;
+            this.turns = turns;
+            this.throughSeq = throughSeq;
+        }
+
+        public String previousSummary() {
+            return previousSummary;
+        }
+
+        public List<Turn> turns() {
+            return turns;
+        }
+
+        public void complete(String summary) {
+            synchronized (memory) {
+                memory.summarizing = false;
+                if (summary != null && !summary.isBlank() && throughSeq > memory.summaryThrough) {
+                    memory.summary = summary.trim();
+                    memory.summaryThrough = throughSeq;
+                }
+            }
+            summaries.incrementAndGet();
+        }
+
+        public void fail() {
+            synchronized (memory) {
+                memory.summarizing = false;
+            }
+            summaryFailures.incrementAndGet();
+        }
+    }
+
+    private final AiConversationRepository aiConversationRepository;
+    private final WriteBehindService writeBehindService;
+    private final LongSupplier clock;
+    private final Map<String, ChatMemory> chats = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<PendingWrite> pendingWrites = new LinkedBlockingQueue<>(MAX_PENDING_WRITES);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "conversation-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong hydrations = new AtomicLong(0);
+    private final AtomicLong evictedChats = new AtomicLong(0);
+    private final AtomicLong appendedTurns = new AtomicLong(0);
+    private final AtomicLong flushedRows = new AtomicLong(0);
+    private final AtomicLong flushBatches = new AtomicLong(0);
+    private final AtomicLong flushFailures = new AtomicLong(0);
+    private final AtomicLong syncWrites = new AtomicLong(0);
+    private final AtomicLong maxFlushMillis = new AtomicLong(0);
+    private final AtomicLong summaries = new AtomicLong(0);
+    private final AtomicLong summaryFailures = new AtomicLong(0);
+
+    @Autowired
+    public ConversationMemoryService(AiConversationRepository aiConversationRepository,
+                                     WriteBehindService writeBehindService) {
+        this(aiConversationRepository, writeBehindService, System::currentTimeMillis);
+    }
+
+    ConversationMemoryService(AiConversationRepository aiConversationRepository,
+                              WriteBehindService writeBehindService, LongSupplier clock) {
+        this.aiConversationRepository = aiConversationRepository;
+        this.writeBehindService = writeBehindService;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void init() {
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::sweepQuietly, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        // 关闭前把剩余的消息写入数据库
+        while (!pendingWrites.isEmpty()) {
+            if (flush() == 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 追加一条消息（内存立即可见，数据库异步写入）
+     *
+     * @return 追加后该会话的议价次数（intent为price的用户消息数）
+     */
+    public long append(String cookieId, String chatId, String userId, String itemId,
+                       String role, String content, String intent) {
+        ChatMemory memory = acquire(cookieId, chatId);
+        long bargainCount;
+        synchronized (memory) {
+            memory.add(new Turn(role, content, intent));
+            if (INTENT_PRICE.equals(intent) && ROLE_USER.equals(role)) {
+                memory.bargainCount++;
+            }
+            bargainCount = memory.bargainCount;
+            memory.lastSeq++;
+            memory.unflushed++;
+        }
+        appendedTurns.incrementAndGet();
+
+        AiConversation row = new AiConversation();
+        row.setCookieId(cookieId);
+        row.setChatId(chatId);
+        row.setUserId(userId);
+        row.setItemId(itemId);
+        row.setRole(role);
+        row.setContent(content);
+        row.setIntent(intent);
+        PendingWrite write = new PendingWrite(memory, row);
+        if (!pendingWrites.offer(write)) {
+            // 写入积压过多：直接同步写入，避免无界堆积
+            syncWrites.incrementAndGet();
+            persist(List.of(write));
+        }
+        return bargainCount;
+    }
+
+    /**
+     * 摘要加上摘要之后的最近消息（最多 maxTurns 条）
+     *
+     * @param skipLatest 跳过最新的若干条（如刚追加的当前用户消息）
+     */
+    public ChatContext context(String cookieId, String chatId, int maxTurns, int skipLatest) {
+        ChatMemory memory = acquire(cookieId, chatId);
+        synchronized (memory) {
+            int unsummarized = (int) Math.min(memory.turns.size(), memory.lastSeq - memory.summaryThrough);
+            int end = Math.max(0, memory.turns.size() - skipLatest);
+            int begin = Math.max(memory.turns.size() - unsummarized, end - maxTurns);
+            List<Turn> result = new ArrayList<>(Math.max(0, end - begin));
+            Iterator<Turn> it = memory.turns.iterator();
+            for (int i = 0; i < end && it.hasNext(); i++) {
+                Turn turn = it.next();
+                if (i >= begin) {
+                    result.add(turn);
+                }
+            }
+            return new ChatContext(memory.summary, result);
+        }
+    }
+
+    /**
+     * 未摘要的消息达到 threshold 条且当前没有进行中的摘要时，领取一次摘要任务：
+     * 保留最近 keepTurns 条原文，其余未摘要的消息并入摘要
+     *
+     * @return 摘要任务；无需刷新时返回null
+     */
+    public SummaryJob claimSummaryJob(String cookieId, String chatId, int threshold, int keepTurns) {
+        ChatMemory memory = acquire(cookieId, chatId);
+        synchronized (memory) {
+            int unsummarized = (int) Math.min(memory.turns.size(), memory.lastSeq - memory.summaryThrough);
+            if (memory.summarizing || unsummarized < threshold) {
+                return null;
+            }
+            int count = unsummarized - keepTurns;
+            List<Turn> turns = new ArrayList<>(count);
+            Iterator<Turn> it = memory.turns.iterator();
+            int begin = memory.turns.size() - unsummarized;
+            for (int i = 0; i < begin + count && it.hasNext(); i++) {
+                Turn turn = it.next();
+                if (i >= begin) {
+                    turns.add(turn);
+                }
+            }
+            memory.summarizing = true;
+            return new SummaryJob(memory, memory.summary, turns, memory.lastSeq - keepTurns);
+        }
+    }
+
+    /**
+     * 该会话的议价次数
+     */
+    public long bargainCount(String cookieId, String chatId) {
+        ChatMemory memory = acquire(cookieId, chatId);
+        synchronized (memory) {
+            return memory.bargainCount;
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("chats", (long) chats.size());
+        stats.put("hits", hits.get());
+        stats.put("hydrations", hydrations.get());
+        stats.put("evictedChats", evictedChats.get());
+        stats.put("appendedTurns", appendedTurns.get());
+        stats.put("pendingWrites", (long) pendingWrites.size());
+        stats.put("flushedRows", flushedRows.get());
+        stats.put("flushBatches", flushBatches.get());
+        stats.put("flushFailures", flushFailures.get());
+        stats.put("syncWrites", syncWrites.get());
+        stats.put("maxFlushMillis", maxFlushMillis.get());
+        stats.put("summaries", summaries.get());
+        stats.put("summaryFailures", summaryFailures.get());
+        return stats;
+    }
+
+    // ============== 加载与淘汰 ==============
+
+    private ChatMemory acquire(String cookieId, String chatId) {
+        // 与淘汰使用同一个原子操作更新访问时间，刚被访问的会话不会被并发淘汰
+        ChatMemory memory = chats.compute(cookieId + '\u0001' + chatId, (k, existing) -> {
+            ChatMemory m = existing != null ? existing : new ChatMemory();
+            m.lastAccess = clock.getAsLong();
+            return m;
+        });
+        synchronized (memory) {
+            if (memory.hydrated) {
+                hits.incrementAndGet();
+            } else {
+                hydrate(memory, cookieId, chatId);
+            }
+        }
+        return memory;
+    }
+
+    /**
+     * 从数据库加载最近的消息和议价次数（调用方持有 memory 锁）
+     */
+    private void hydrate(ChatMemory memory, String cookieId, String chatId) {
+        List<AiConversation> rows = aiConversationRepository.findTop20ByCookieIdAndChatIdOrderByIdDesc(cookieId, chatId);
+        List<Turn> loaded = new ArrayList<>(rows.size());
+        for (AiConversation row : rows) {
+            loaded.add(new Turn(row.getRole(), row.getContent(), row.getIntent()));
+        }
+        Collections.reverse(loaded);
+        for (Turn turn : loaded) {
+            memory.add(turn);
+        }
+        memory.lastSeq = loaded.size();
+        memory.bargainCount = aiConversationRepository.countByChatIdAndCookieIdAndIntentAndRole(chatId, cookieId,
+                INTENT_PRICE, ROLE_USER);
+        memory.hydrated = true;
+        hydrations.incrementAndGet();
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (Exception e) {
+            log.error("清理空闲对话缓存失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 淘汰空闲会话；仍有消息未写入数据库的会话保留，避免重新加载时丢失这些消息
+     */
+    void sweep() {
+        long now = clock.getAsLong();
+        int evicted = 0;
+        for (String key : chats.keySet()) {
+            if (evictIf(key, now - IDLE_EVICT_MILLIS)) {
+                evicted++;
+            }
+        }
+        int excess = chats.size() - MAX_CHATS;
+        if (excess > 0) {
+            List<Map.Entry<String, Long>> entries = new ArrayList<>(chats.size());
+            chats.forEach((key, memory) -> entries.add(Map.entry(key, memory.lastAccess)));
+            entries.sort(Map.Entry.comparingByValue());
+            for (Map.Entry<String, Long> entry : entries) {
+                if (excess <= 0) {
+                    break;
+                }
+                // 排序后被访问过的会话不再淘汰
+                if (evictIf(entry.getKey(), entry.getValue())) {
+                    evicted++;
+                    excess--;
+                }
+            }
+        }
+        if (evicted > 0) {
+            evictedChats.addAndGet(evicted);
+            log.debug("淘汰了 {} 个空闲对话缓存，剩余 {}", evicted, chats.size());
+        }
+    }
+
+    /**
+     * 会话在 accessedBefore 之后未被访问且没有未写入的消息时淘汰
+     */
+    private boolean evictIf(String key, long accessedBefore) {
+        boolean[] removed = {false};
+        chats.computeIfPresent(key, (k, memory) -> {
+            if (memory.lastAccess > accessedBefore) {
+                return memory;
+            }
+            synchronized (memory) {
+                if (memory.unflushed > 0) {
+                    return memory;
+                }
+            }
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    // ============== 写后持久化 ==============
+
+    private void flushQuietly() {
+        try {
+            while (flush() == FLUSH_BATCH_SIZE) {
+                // 积压较多时连续写入
+            }
+        } catch (Exception e) {
+            log.error("写入AI对话记录失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 取出一批待写入的消息并批量保存
+     *
+     * @return 本批消息数
+     */
+    int flush() {
+        List<PendingWrite> batch = new ArrayList<>(FLUSH_BATCH_SIZE);
+        pendingWrites.drainTo(batch, FLUSH_BATCH_SIZE);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        persist(batch);
+        return batch.size();
+    }
+
+    private void persist(List<PendingWrite> batch) {
+        long start = System.nanoTime();
+        List<AiConversation> rows = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            rows.add(write.row);
+        }
+        try {
+            writeBehindService.submit("ai_conversations", () -> aiConversationRepository.saveAll(rows)).join();
+            flushedRows.addAndGet(rows.size());
+            flushBatches.incrementAndGet();
+        } catch (Exception e) {
+            // 写入失败的消息不重试（内存中仍保留，只影响重启后的历史）
+            flushFailures.incrementAndGet();
+            log.error("批量写入 {} 条AI对话记录失败: {}", rows.size(), e.getMessage());
+        } finally {
+            for (PendingWrite write : batch) {
+                synchronized (write.memory) {
+                    write.memory.unflushed--;
+                }
+            }
+            maxFlushMillis.accumulateAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), Math::max);
+        }
+    }
+
+    /**
+     * 单个会话的内存状态（字段由自身锁保护，lastAccess 除外）
+     */
+    private static final class ChatMemory {
+        ArrayDeque<Turn> turns = new ArrayDeque<>(RING_CAPACITY);
+        long bargainCount;
+        long lastSeq; // 最新一条消息的序号（从加载时的第一条记为1）
+        String summary; // 序号不超过 summaryThrough 的消息的摘要
+        long summaryThrough;
+        boolean summarizing;
+        int unflushed; // 已追加但尚未写入数据库的消息数
+        boolean hydrated;
+        volatile long lastAccess; // 创建时即由 acquire 设置
+
+        void add(Turn turn) {
+            if (turns.size() == RING_CAPACITY) {
+                turns.pollFirst();
+            }
+            turns.addLast(turn);
+        }
+    }
+
+    private record PendingWrite(ChatMemory memory, AiConversation row) {
+    }
+}
@@ -17,6 +17,12 @@ public class CookieService {
     @Autowired
     private XianyuClientService xianyuClientService;
 
+    @Autowired
+    private AccountConfigService accountConfigService;
+
+    @Autowired
+    private KeywordMatchService keywordMatchService;
+
     @Transactional
     public void addCookie(String cookieId, String cookieValue, Long userId) {
         Cookie cookie = new Cookie();
@@ -28,6 +34,7 @@ public class CookieService {
         cookie.setShowBrowser(0);
         
         cookieRepository.save(cookie);
+        accountConfigService.refresh(cookieId);
         log.info("Cookie saved for {}", cookieId);
         
         xianyuClientService.startClient(cookieId);
@@ -37,6 +44,8 @@ public class CookieService {
     public void removeCookie(String cookieId) {
         xianyuClientService.stopClient(cookieId);
         cookieRepository.deleteById(cookieId);
+        accountConfigService.evict(cookieId);
+        keywordMatchService.evict(cookieId);
         log.info("Cookie removed: {}", cookieId);
     }
 
@@ -49,6 +58,7 @@ public class CookieService {
         cookieRepository.findById(cookieId).ifPresent(cookie -> {
             cookie.setValue(newValue);
             cookieRepository.save(cookie);
+            accountConfigService.refresh(cookieId);
             log.info("Cookie value updated for {}", cookieId);
         });
         
@@ -0,0 +1,344 @@
+package com.xianyu.autoreply.service;
+
+import com.xianyu.autoreply.entity.Keyword;
+import com.xianyu.autoreply.repository.KeywordRepository;
+import com.xianyu.autoreply.utils.AhoCorasick;
+import com.xianyu.autoreply.utils.SafeRegex;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 关键词匹配服务
+ * 每个账号的关键词规则编译为一个 Aho-Corasick 自动机并缓存在内存中，消息处理时一次扫描完成匹配，
+ * 不再为每条消息查询数据库并逐条 contains。关键词写入后调用 {@link #refresh(String)} 只重建该账号的规则集。
+ * <p>
+ * 匹配规则与Python版 get_keyword_reply 保持一致：
+ * - 忽略大小写的子串匹配
+ * - 先匹配商品专属关键词（item_id 等于当前商品），再匹配通用关键词（item_id 为空）
+ * - 同一范围内多个关键词命中时，取最早添加的规则
+ * <p>
+ * type 为 regex 的规则使用 {@link SafeRegex} 编译为 DFA（线性时间，不回溯），与普通关键词按同样的优先级参与匹配；
+ * 编译结果随规则集缓存，重建时相同模式直接复用，无法编译的规则跳过并计数。
+ */
+@Slf4j
+@Service
+public class KeywordMatchService {
+
+    public static final String TYPE_REGEX = "regex";
+
+    private final KeywordRepository keywordRepository;
+
+    private final Map<String, KeywordRuleSet> ruleSets = new ConcurrentHashMap<>();
+    private final AtomicLong builds = new AtomicLong(0);
+    private final AtomicLong lookups = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong matchNanos = new AtomicLong(0);
+    private final AtomicLong maxMatchNanos = new AtomicLong(0);
+
+    @Autowired
+    public KeywordMatchService(KeywordRepository keywordRepository) {
+        this.keywordRepository = keywordRepository;
+    }
+
+    @PostConstruct
+    public void init() {
+        Map<String, List<Keyword>> byAccount = keywordRepository.findAll().stream()
+                .filter(k -> k.getCookieId() != null)
+                .collect(Collectors.groupingBy(Keyword::getCookieId));
+        byAccount.forEach((cookieId, keywords) -> ruleSets.put(cookieId, compile(cookieId, keywords, null)));
+        log.info("已编译 {} 个账号的关键词规则", ruleSets.size());
+    }
+
+    /**
+     * 关键词规则（不可变）
+     */
+    public record KeywordRule(Long id, String keyword, String reply, String itemId, String type, String imageUrl) {
+
+        /**
+         * 是否为图片关键词
+         */
+        public boolean isImage() {
+            return "image".equals(type);
+        }
+
+        /**
+         * 是否为正则规则
+         */
+        public boolean isRegex() {
+            return TYPE_REGEX.equals(type);
+        }
+
+        static KeywordRule of(Keyword keyword) {
+            String itemId = keyword.getItemId();
+            if (itemId != null && itemId.trim().isEmpty()) {
+                itemId = null;
+            }
+            return new KeywordRule(keyword.getId(), keyword.getKeyword(), keyword.getReply(), itemId,
+                    keyword.getType() != null ? keyword.getType() : "text", keyword.getImageUrl());
+        }
+    }
+
+    /**
+     * 校验正则规则能否编译
+     *
+     * @throws IllegalArgumentException 语法错误、包含不支持的语法或超出复杂度上限
+     */
+    public void validateRegex(String pattern) {
+        SafeRegex.compile(pattern);
+    }
+
+    /**
+     * 匹配消息对应的关键词规则
+     *
+     * @param cookieId 账号ID
+     * @param itemId   当前商品ID（可为空，为空时只匹配通用关键词）
+     * @param message  买家消息
+     * @return 命中的规则，未命中返回null
+     */
+    public KeywordRule match(String cookieId, String itemId, String message) {
+        if (cookieId == null || message == null || message.isEmpty()) {
+            return null;
+        }
+        KeywordRuleSet ruleSet = ruleSets.computeIfAbsent(cookieId,
+                id -> compile(id, keywordRepository.findByCookieId(id), null));
+        if (ruleSet.isEmpty()) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        KeywordRule rule = ruleSet.match(itemId, message);
+        long elapsed = System.nanoTime() - start;
+        lookups.incrementAndGet();
+        matchNanos.addAndGet(elapsed);
+        maxMatchNanos.accumulateAndGet(elapsed, Math::max);
+        if (rule != null) {
+            hits.incrementAndGet();
+        }
+        return rule;
+    }
+
+    /**
+     * 关键词写入后重建账号规则集并原子替换
+     */
+    public void refresh(String cookieId) {
+        if (cookieId == null) {
+            return;
+        }
+        ruleSets.compute(cookieId, (id, old) -> compile(id, keywordRepository.findByCookieId(id), old));
+        log.debug("【{}】关键词规则已重建", cookieId);
+    }
+
+    /**
+     * 账号删除后移除规则集
+     */
+    public void evict(String cookieId) {
+        ruleSets.remove(cookieId);
+    }
+
+    /**
+     * 获取关键词匹配统计信息（含每条正则规则的匹配耗时）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long rules = 0;
+        long nodes = 0;
+        long regexRules = 0;
+        long rejectedRegexRules = 0;
+        List<Map<String, Object>> regexStats = new ArrayList<>();
+        for (Map.Entry<String, KeywordRuleSet> entry : ruleSets.entrySet()) {
+            KeywordRuleSet ruleSet = entry.getValue();
+            rules += ruleSet.rules.size();
+            nodes += ruleSet.automaton.nodeCount();
+            regexRules += ruleSet.regexRules.size();
+            rejectedRegexRules += ruleSet.rejectedRegexRules;
+            for (RegexRule regexRule : ruleSet.regexRules) {
+                Map<String, Object> ruleStats = regexRule.stats.toMap();
+                ruleStats.put("cookieId", entry.getKey());
+                ruleStats.put("ruleId", ruleSet.rules.get(regexRule.index).id());
+                ruleStats.put("pattern", regexRule.regex.pattern());
+                ruleStats.put("dfaStates", (long) regexRule.regex.stateCount());
+                regexStats.add(ruleStats);
+            }
+        }
+        long count = lookups.get();
+        stats.put("ruleSets", (long) ruleSets.size());
+        stats.put("rules", rules);
+        stats.put("automatonNodes", nodes);
+        stats.put("regexRules", regexRules);
+        stats.put("rejectedRegexRules", rejectedRegexRules);
+        stats.put("builds", builds.get());
+        stats.put("lookups", count);
+        stats.put("hits", hits.get());
+        stats.put("avgMatchMicros", count == 0 ? 0.0 : matchNanos.get() / 1000.0 / count);
+        stats.put("maxMatchMicros", maxMatchNanos.get() / 1000);
+        stats.put("regexRuleStats", regexStats);
+        return stats;
+    }
+
+    /**
+     * 编译账号规则集
+     *
+     * @param previous 旧规则集（可为空），用于复用已编译的正则和延续每条规则的统计
+     */
+    private KeywordRuleSet compile(String cookieId, List<Keyword> keywords, KeywordRuleSet previous) {
+        builds.incrementAndGet();
+        // 按添加顺序排列，保证同一范围内先添加的规则优先
+        List<KeywordRule> rules = keywords.stream()
+                .filter(k -> k.getKeyword() != null && !k.getKeyword().isEmpty())
+                .sorted(Comparator.comparing(Keyword::getId, Comparator.nullsLast(Comparator.naturalOrder())))
+                .map(KeywordRule::of)
+                .collect(Collectors.toList());
+
+        Map<String, SafeRegex> compiledPatterns = new HashMap<>();
+        Map<Long, RegexRuleStats> previousStats = new HashMap<>();
+        if (previous != null) {
+            for (RegexRule regexRule : previous.regexRules) {
+                compiledPatterns.put(regexRule.regex.pattern(), regexRule.regex);
+                previousStats.put(previous.rules.get(regexRule.index).id(), regexRule.stats);
+            }
+        }
+
+        // 折叠大小写后相同的关键词共用一个模式
+        Map<String, List<Integer>> rulesByPattern = new LinkedHashMap<>();
+        List<RegexRule> regexRules = new ArrayList<>();
+        int rejected = 0;
+        for (int i = 0; i < rules.size(); i++) {
+            KeywordRule rule = rules.get(i);
+            if (!rule.isRegex()) {
+                rulesByPattern.computeIfAbsent(AhoCorasick.fold(rule.keyword()), k -> new ArrayList<>()).add(i);
+                continue;
+            }
+            try {
+                SafeRegex regex = compiledPatterns.computeIfAbsent(rule.keyword(), SafeRegex::compile);
+                RegexRuleStats stats = previousStats.getOrDefault(rule.id(), new RegexRuleStats());
+                regexRules.add(new RegexRule(i, regex, stats));
+            } catch (IllegalArgumentException e) {
+                rejected++;
+                log.warn("【{}】正则关键词无法编译，已跳过: {} - {}", cookieId, rule.keyword(), e.getMessage());
+            }
+        }
+
+        List<String> patterns = new ArrayList<>(rulesByPattern.keySet());
+        int[][] patternRules = new int[patterns.size()][];
+        int p = 0;
+        for (List<Integer> ruleIndexes : rulesByPattern.values()) {
+            patternRules[p++] = ruleIndexes.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new KeywordRuleSet(rules, AhoCorasick.build(patterns), patternRules, regexRules, rejected);
+    }
+
+    /**
+     * 单条正则规则的匹配统计
+     */
+    private static final class RegexRuleStats {
+        final AtomicLong evaluations = new AtomicLong(0);
+        final AtomicLong matches = new AtomicLong(0);
+        final AtomicLong nanos = new AtomicLong(0);
+        final AtomicLong maxNanos = new AtomicLong(0);
+
+        void record(long elapsed, boolean matched) {
+            evaluations.incrementAndGet();
+            nanos.addAndGet(elapsed);
+            maxNanos.accumulateAndGet(elapsed, Math::max);
+            if (matched) {
+                matches.incrementAndGet();
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            long count = evaluations.get();
+            map.put("evaluations", count);
+            map.put("matches", matches.get());
+            map.put("avgMatchMicros", count == 0 ? 0.0 : nanos.get() / 1000.0 / count);
+            map.put("maxMatchMicros", maxNanos.get() / 1000);
+            return map;
+        }
+    }
+
+    /**
+     * 编译后的正则规则
+     */
+    private record RegexRule(int index, SafeRegex regex, RegexRuleStats stats) {
+    }
+
+    /**
+     * 单个账号编译后的规则集（不可变）
+     */
+    private static final class KeywordRuleSet {
+        final List<KeywordRule> rules;
+        final AhoCorasick automaton;
+        final int[][] patternRules; // 模式序号 -> 规则下标（升序）
+        final List<RegexRule> regexRules; // 按规则下标升序
+        final int rejectedRegexRules;
+
+        KeywordRuleSet(List<KeywordRule> rules, AhoCorasick automaton, int[][] patternRules,
+                       List<RegexRule> regexRules, int rejectedRegexRules) {
+            this.rules = rules;
+            this.automaton = automaton;
+            this.patternRules = patternRules;
+            this.regexRules = regexRules;
+            this.rejectedRegexRules = rejectedRegexRules;
+        }
+
+        boolean isEmpty() {
+            return rules.isEmpty();
+        }
+
+        KeywordRule match(String itemId, String message) {
+            int[] best = {Integer.MAX_VALUE, Integer.MAX_VALUE}; // [商品专属, 通用]
+            automaton.search(message, pattern -> {
+                for (int index : patternRules[pattern]) {
+                    String ruleItemId = rules.get(index).itemId();
+                    if (ruleItemId == null) {
+                        best[1] = Math.min(best[1], index);
+                    } else if (ruleItemId.equals(itemId)) {
+                        best[0] = Math.min(best[0], index);
+                    }
+                }
+            });
+
+            // 正则规则只在可能改变结果时才执行：商品专属已命中时跳过通用规则，且只看比当前结果更早的规则
+            for (RegexRule regexRule : regexRules) {
+                String ruleItemId = rules.get(regexRule.index).itemId();
+                int scope;
+                if (ruleItemId == null) {
+                    if (best[0] != Integer.MAX_VALUE) {
+                        continue;
+                    }
+                    scope = 1;
+                } else if (ruleItemId.equals(itemId)) {
+                    scope = 0;
+                } else {
+                    continue;
+                }
+                if (regexRule.index >= best[scope]) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                boolean matched = regexRule.regex.find(message);
+                regexRule.stats.record(System.nanoTime() - start, matched);
+                if (matched) {
+                    best[scope] = regexRule.index;
+                }
+            }
+
+            if (best[0] != Integer.MAX_VALUE) {
+                return rules.get(best[0]);
+            }
+            return best[1] != Integer.MAX_VALUE ? rules.get(best[1]) : null;
+        }
+    }
+}
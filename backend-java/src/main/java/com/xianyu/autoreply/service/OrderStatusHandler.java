@@ -1,9 +1,8 @@
 package com.xianyu.autoreply.service;
 
-import com.alibaba.fastjson2.JSON;
-import com.alibaba.fastjson2.JSONObject;
 import com.xianyu.autoreply.entity.Cookie;
 import com.xianyu.autoreply.repository.CookieRepository;
+import com.xianyu.autoreply.utils.ChatEnvelope;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -11,8 +10,6 @@ import org.springframework.stereotype.Component;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * 订单状态处理器（简化版）
@@ -55,17 +52,27 @@ public class OrderStatusHandler {
         put("[你关闭了订单，钱款已原路退返]", "cancelled");
     }};
     
+    /**
+     * 判断消息内容是否为订单状态系统消息
+     *
+     * @param sendMessage 消息内容
+     * @return 是否为订单状态消息
+     */
+    public boolean isOrderStatusMessage(String sendMessage) {
+        return sendMessage != null && MESSAGE_STATUS_MAPPING.containsKey(sendMessage);
+    }
+
     /**
      * 处理系统消息并更新订单状态
      * 对应Python: handle_system_message()
      * 
-     * @param message 原始消息数据
+     * @param envelope 消息字段信封
      * @param sendMessage 消息内容
      * @param cookieId Cookie ID
      * @param msgTime 消息时间
      * @return true=处理了订单状态更新，false=未处理
      */
-    public boolean handleSystemMessage(JSONObject message, String sendMessage, String cookieId, String msgTime) {
+    public boolean handleSystemMessage(ChatEnvelope envelope, String sendMessage, String cookieId, String msgTime) {
         lock.lock();
         try {
             // 检查消息是否在映射表中
@@ -76,7 +83,7 @@ public class OrderStatusHandler {
             String newStatus = MESSAGE_STATUS_MAPPING.get(sendMessage);
             
             // 提取订单ID
-            String orderId = extractOrderId(message);
+            String orderId = envelope.orderId();
             if (orderId == null) {
                 log.warn("[{}] 【{}】{}，无法提取订单ID，跳过处理", msgTime, cookieId, sendMessage);
                 return false;
@@ -102,14 +109,14 @@ public class OrderStatusHandler {
      * 处理红色提醒消息并更新订单状态
      * 对应Python: handle_red_reminder_message()
      * 
-     * @param message 原始消息数据
+     * @param envelope 消息字段信封
      * @param redReminder 红色提醒内容
      * @param userId 用户ID
      * @param cookieId Cookie ID
      * @param msgTime 消息时间
      * @return true=处理了订单状态更新，false=未处理
      */
-    public boolean handleRedReminderMessage(JSONObject message, String redReminder, String userId, 
+    public boolean handleRedReminderMessage(ChatEnvelope envelope, String redReminder, String userId, 
                                            String cookieId, String msgTime) {
         lock.lock();
         try {
@@ -119,7 +126,7 @@ public class OrderStatusHandler {
             }
             
             // 提取订单ID
-            String orderId = extractOrderId(message);
+            String orderId = envelope.orderId();
             if (orderId == null) {
                 log.warn("[{}] 【{}】交易关闭，无法提取订单ID，跳过处理", msgTime, cookieId);
                 return false;
@@ -139,73 +146,4 @@ public class OrderStatusHandler {
             lock.unlock();
         }
     }
-    
-    /**
-     * 从消息中提取订单ID
-     * 对应Python: extract_order_id()
-     * 
-     * @param message 消息对象
-     * @return 订单ID，提取失败返回null
-     */
-    private String extractOrderId(JSONObject message) {
-        try {
-            // 方法1: 从button的targetUrl中提取orderId
-            if (message.containsKey("1") && message.get("1") instanceof JSONObject) {
-                JSONObject message1 = message.getJSONObject("1");
-                if (message1.containsKey("6") && message1.get("6") instanceof JSONObject) {
-                    JSONObject message16 = message1.getJSONObject("6");
-                    if (message16.containsKey("3") && message16.get("3") instanceof JSONObject) {
-                        JSONObject message163 = message16.getJSONObject("3");
-                        String contentJsonStr = message163.getString("5");
-                        if (contentJsonStr != null) {
-                            try {
-                                JSONObject contentData = JSON.parseObject(contentJsonStr);
-                                
-                                // 从button的targetUrl提取
-                                String targetUrl = contentData.getJSONObject("dxCard")
-                                    .getJSONObject("item")
-                                    .getJSONObject("main")
-                                    .getJSONObject("exContent")
-                                    .getJSONObject("button")
-                                    .getString("targetUrl");
-                                    
-                                if (targetUrl != null) {
-                                    Pattern pattern = Pattern.compile("orderId=(\\d+)");
-                                    Matcher matcher = pattern.matcher(targetUrl);
-                                    if (matcher.find()) {
-                                        return matcher.group(1);
-                                    }
-                                }
-                            } catch (Exception e) {
-                                // 忽略解析错误，继续尝试其他方法
-                            }
-                        }
-                    }
-                }
-            }
-            
-            // 方法2: 在整个消息字符串中搜索订单ID模式
-            String messageStr = message.toJSONString();
-            String[] patterns = {
-                "orderId[=:](\\d{10,})",
-                "order_detail\\?id=(\\d{10,})",
-                "\"id\"\\s*:\\s*\"?(\\d{10,})\"?",
-                "bizOrderId[=:](\\d{10,})"
-            };
-            
-            for (String patternStr : patterns) {
-                Pattern pattern = Pattern.compile(patternStr);
-                Matcher matcher = pattern.matcher(messageStr);
-                if (matcher.find()) {
-                    return matcher.group(1);
-                }
-            }
-            
-            return null;
-            
-        } catch (Exception e) {
-            log.error("提取订单ID失败: {}", e.getMessage());
-            return null;
-        }
-    }
 }
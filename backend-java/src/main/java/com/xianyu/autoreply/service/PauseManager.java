@@ -31,10 +31,25 @@ public class PauseManager {
      * @param cookieId Cookie ID（用于日志）
      */
     public void pauseChat(String chatId, String cookieId) {
-        long pauseEndTime = System.currentTimeMillis() + (PAUSE_DURATION_SECONDS * 1000);
+        pauseChat(chatId, cookieId, (int) (PAUSE_DURATION_SECONDS / 60));
+    }
+    
+    /**
+     * 按账号配置的暂停时长暂停指定chat_id的自动回复
+     * 
+     * @param chatId 聊天ID
+     * @param cookieId Cookie ID（用于日志）
+     * @param pauseMinutes 暂停时长（分钟），不大于0时不暂停
+     */
+    public void pauseChat(String chatId, String cookieId, int pauseMinutes) {
+        if (pauseMinutes <= 0) {
+            log.info("【{}】暂停时长为0，不暂停chat_id {} 的自动回复", cookieId, chatId);
+            return;
+        }
+        long pauseEndTime = System.currentTimeMillis() + pauseMinutes * 60_000L;
         pausedChats.put(chatId, pauseEndTime);
         
-        log.info("【{}】已暂停chat_id {} 的自动回复，持续10分钟", cookieId, chatId);
+        log.info("【{}】已暂停chat_id {} 的自动回复，持续{}分钟", cookieId, chatId, pauseMinutes);
     }
     
     /**
@@ -26,6 +26,7 @@ public class QrLoginService {
 
     private final CookieRepository cookieRepository;
     private final BrowserService browserService;
+    private final AccountConfigService accountConfigService;
     private final Map<String, QrLoginSession> sessions = new ConcurrentHashMap<>();
     private final OkHttpClient client;
     private final ObjectMapper objectMapper;
@@ -36,9 +37,11 @@ public class QrLoginService {
     private final Map<String, ProcessedRecord> qrCheckProcessed = new ConcurrentHashMap<>();
 
     @Autowired
-    public QrLoginService(CookieRepository cookieRepository, BrowserService browserService) {
+    public QrLoginService(CookieRepository cookieRepository, BrowserService browserService,
+                          AccountConfigService accountConfigService) {
         this.cookieRepository = cookieRepository;
         this.browserService = browserService;
+        this.accountConfigService = accountConfigService;
         this.client = new OkHttpClient.Builder()
                 .cookieJar(new InMemoryCookieJar())
                 .build();
@@ -275,6 +278,7 @@ public class QrLoginService {
             }
             cookieEntity.setEnabled(true);
             cookieRepository.save(cookieEntity);
+            accountConfigService.refresh(accountId);
             
             log.info("【QR Login】Account saved to DB: {}", accountId);
             
@@ -297,6 +301,7 @@ public class QrLoginService {
              cookieEntity.setValue(finalCookieStr);
              cookieEntity.setEnabled(true);
              cookieRepository.save(cookieEntity);
+             accountConfigService.refresh(accountId);
              log.info("【QR Login】Fallback: Original API cookies saved for {}", accountId);
         }
     }
@@ -726,6 +731,7 @@ public class QrLoginService {
             
             cookieEntity.setEnabled(true);
             cookieRepository.save(cookieEntity);
+            accountConfigService.refresh(accountId);
             
             log.info("【QR Login】Cookie已保存到数据库: {}, 是否新账号: {}, 真实Cookie刷新: {}", 
                 accountId, isNewAccount, realCookieRefreshed);
@@ -0,0 +1,216 @@
+package com.xianyu.autoreply.service;
+
+import com.xianyu.autoreply.config.SqlCaptureInspector;
+import com.xianyu.autoreply.repository.AiConversationRepository;
+import com.xianyu.autoreply.repository.DefaultReplyRecordRepository;
+import com.xianyu.autoreply.repository.ItemInfoRepository;
+import com.xianyu.autoreply.repository.ItemInfoRepositoryImpl;
+import com.xianyu.autoreply.repository.KeywordRepository;
+import com.xianyu.autoreply.repository.OrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 热点查询的执行计划检查
+ * 在一个最终回滚的事务里逐个调用热点仓库方法（参数为不存在的账号/会话，不命中任何行），
+ * 由 {@link SqlCaptureInspector} 记下 Hibernate 实际生成的SQL，再对每条SQL执行 EXPLAIN QUERY PLAN；
+ * 全文搜索走JDBC，直接使用 {@link ItemInfoRepositoryImpl#buildSearch} 生成的语句。
+ * 计划中出现 SCAN（全表或全索引扫描）即视为退化，通常意味着迁移脚本中的索引缺失或查询条件改得用不上索引。
+ * 启动完成后自动检查一次并把退化记入错误日志，也可以通过 /api/system/query-plans 随时检查。
+ */
+@Slf4j
+@Service
+public class QueryPlanService {
+
+    private static final Pattern FTS_MATCH = Pattern.compile("VIRTUAL TABLE INDEX \\d+:M");
+    private static final String NONE = "__query_plan__"; // 不存在的账号/会话/商品ID
+
+    /**
+     * 热点仓库方法及其调用方式（参数取值不影响生成的SQL）
+     */
+    private record HotQuery(String name, Runnable call) {
+    }
+
+    private final DataSource dataSource;
+    private final SqlCaptureInspector sqlCapture;
+    private final TransactionTemplate rollbackTransaction;
+    private final List<HotQuery> hotQueries = new ArrayList<>();
+
+    @Autowired
+    public QueryPlanService(DataSource dataSource, SqlCaptureInspector sqlCapture,
+                            PlatformTransactionManager transactionManager,
+                            KeywordRepository keywordRepository, ItemInfoRepository itemInfoRepository,
+                            AiConversationRepository aiConversationRepository,
+                            DefaultReplyRecordRepository defaultReplyRecordRepository,
+                            OrderRepository orderRepository) {
+        this.dataSource = dataSource;
+        this.sqlCapture = sqlCapture;
+        this.rollbackTransaction = new TransactionTemplate(transactionManager);
+
+        hotQueries.add(new HotQuery("KeywordRepository.findByCookieId",
+                () -> keywordRepository.findByCookieId(NONE)));
+        hotQueries.add(new HotQuery("KeywordRepository.deleteTextKeywordsByCookieId",
+                () -> keywordRepository.deleteTextKeywordsByCookieId(NONE)));
+        hotQueries.add(new HotQuery("KeywordRepository.findConflictImageKeywords",
+                () -> keywordRepository.findConflictImageKeywords(NONE, NONE, NONE)));
+        hotQueries.add(new HotQuery("KeywordRepository.findConflictGenericImageKeywords",
+                () -> keywordRepository.findConflictGenericImageKeywords(NONE, NONE)));
+        hotQueries.add(new HotQuery("ItemInfoRepository.findByCookieId",
+                () -> itemInfoRepository.findByCookieId(NONE)));
+        // 与商品列表接口相同的分页和排序
+        hotQueries.add(new HotQuery("ItemInfoRepository.findByCookieId(Pageable)",
+                () -> itemInfoRepository.findByCookieId(NONE, PageRequest.of(0, 20, Sort.by("updatedAt").descending()))));
+        hotQueries.add(new HotQuery("ItemInfoRepository.findByCookieIdAndItemId",
+                () -> itemInfoRepository.findByCookieIdAndItemId(NONE, NONE)));
+        hotQueries.add(new HotQuery("ItemInfoRepository.deleteByCookieIdAndItemIdIn",
+                () -> itemInfoRepository.deleteByCookieIdAndItemIdIn(NONE, List.of(NONE + "1", NONE + "2"))));
+        hotQueries.add(new HotQuery("AiConversationRepository.findByCookieIdAndChatIdOrderByCreatedAtAsc",
+                () -> aiConversationRepository.findByCookieIdAndChatIdOrderByCreatedAtAsc(NONE, NONE)));
+        hotQueries.add(new HotQuery("AiConversationRepository.findTop20ByCookieIdAndChatIdOrderByIdDesc",
+                () -> aiConversationRepository.findTop20ByCookieIdAndChatIdOrderByIdDesc(NONE, NONE)));
+        hotQueries.add(new HotQuery("AiConversationRepository.countByChatIdAndCookieIdAndIntentAndRole",
+                () -> aiConversationRepository.countByChatIdAndCookieIdAndIntentAndRole(NONE, NONE, "price", "user")));
+        hotQueries.add(new HotQuery("DefaultReplyRecordRepository.findByCookieIdAndChatId",
+                () -> defaultReplyRecordRepository.findByCookieIdAndChatId(NONE, NONE)));
+        hotQueries.add(new HotQuery("DefaultReplyRecordRepository.deleteByCookieId",
+                () -> defaultReplyRecordRepository.deleteByCookieId(NONE)));
+        hotQueries.add(new HotQuery("OrderRepository.findByCookieId",
+                () -> orderRepository.findByCookieId(NONE)));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void verifyOnStartup() {
+        try {
+            Map<String, Object> report = verify();
+            if (Boolean.TRUE.equals(report.get("passed"))) {
+                log.info("热点查询执行计划检查通过（{} 个查询）", hotQueries.size() + 1);
+            } else {
+                log.error("热点查询执行计划退化: {}", report.get("regressions"));
+            }
+        } catch (SQLException e) {
+            log.error("热点查询执行计划检查失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 检查所有热点查询的执行计划
+     *
+     * @return passed（是否全部使用索引）、regressions（退化的查询）、plans（每个仓库方法发出的SQL及其计划）
+     */
+    public Map<String, Object> verify() throws SQLException {
+        Map<String, List<String>> statements = captureStatements();
+        ItemInfoRepositoryImpl.SearchQuery search = ItemInfoRepositoryImpl.buildSearch(List.of(NONE, NONE + "2"),
+                "keyword");
+        List<Object> searchArgs = new ArrayList<>(search.args());
+        searchArgs.add(20);
+        searchArgs.add(0);
+
+        Map<String, Object> plans = new LinkedHashMap<>();
+        Map<String, Object> regressions = new LinkedHashMap<>();
+        try (Connection connection = dataSource.getConnection()) {
+            for (Map.Entry<String, List<String>> query : statements.entrySet()) {
+                List<Map<String, Object>> explained = new ArrayList<>();
+                for (String sql : query.getValue()) {
+                    explained.add(explain(connection, sql, null));
+                }
+                record(query.getKey(), explained, plans, regressions);
+            }
+            record("ItemInfoRepository.searchItems", List.of(explain(connection, search.idSql(), searchArgs)),
+                    plans, regressions);
+        }
+        Map<String, Object> report = new HashMap<>();
+        report.put("passed", regressions.isEmpty());
+        report.put("regressions", regressions);
+        report.put("plans", plans);
+        return report;
+    }
+
+    /**
+     * 在回滚的事务中调用各仓库方法，记下 Hibernate 发出的SQL；调用失败时记为 ERROR
+     */
+    private Map<String, List<String>> captureStatements() {
+        Map<String, List<String>> statements = new LinkedHashMap<>();
+        rollbackTransaction.executeWithoutResult(status -> {
+            status.setRollbackOnly();
+            for (HotQuery query : hotQueries) {
+                List<String> sql;
+                try {
+                    sql = sqlCapture.capture(query.call());
+                } catch (RuntimeException e) {
+                    sql = List.of("ERROR: " + e.getMessage());
+                }
+                statements.put(query.name(), sql);
+            }
+        });
+        return statements;
+    }
+
+    private static void record(String name, List<Map<String, Object>> explained,
+                               Map<String, Object> plans, Map<String, Object> regressions) {
+        plans.put(name, explained);
+        boolean regressed = explained.isEmpty() || explained.stream()
+                .flatMap(entry -> ((List<?>) entry.get("plan")).stream())
+                .anyMatch(detail -> isRegression((String) detail));
+        if (regressed) {
+            regressions.put(name, explained.isEmpty() ? List.of("ERROR: 未捕获到SQL") : explained);
+        }
+    }
+
+    /**
+     * 对一条SQL执行 EXPLAIN QUERY PLAN
+     *
+     * @param args 绑定参数；为null时所有参数绑定为NULL（计划在编译时确定，与参数取值无关）
+     */
+    private static Map<String, Object> explain(Connection connection, String sql, List<Object> args) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("sql", sql);
+        List<String> plan = new ArrayList<>();
+        if (sql.startsWith("ERROR")) {
+            plan.add(sql);
+        } else {
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+                int count = statement.getParameterMetaData().getParameterCount();
+                for (int i = 0; i < count; i++) {
+                    statement.setObject(i + 1, args != null ? args.get(i) : null);
+                }
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        plan.add(rs.getString("detail"));
+                    }
+                }
+            } catch (SQLException e) {
+                plan.add("ERROR: " + e.getMessage());
+            }
+        }
+        entry.put("plan", plan);
+        return entry;
+    }
+
+    /**
+     * SCAN 表示逐行扫描整张表（或整个索引）；SEARCH 才是按索引定位。
+     * 全文索引虚拟表的计划固定显示为 SCAN ... VIRTUAL TABLE INDEX n:M（M 表示用 MATCH 查询全文索引），不算退化。
+     */
+    private static boolean isRegression(String detail) {
+        return detail.startsWith("ERROR") || (detail.startsWith("SCAN ") && !detail.startsWith("SCAN CONSTANT ROW")
+                && !FTS_MATCH.matcher(detail).find());
+    }
+}
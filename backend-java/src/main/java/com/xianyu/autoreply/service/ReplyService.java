@@ -1,44 +1,45 @@
 package com.xianyu.autoreply.service;
 
-import com.xianyu.autoreply.entity.DefaultReply;
 import com.xianyu.autoreply.entity.DefaultReplyRecord;
-import com.xianyu.autoreply.entity.Keyword;
+import com.xianyu.autoreply.model.AccountConfigSnapshot;
 import com.xianyu.autoreply.repository.*;
+import com.xianyu.autoreply.service.llm.FirstSentenceSender;
+import com.xianyu.autoreply.utils.ChatEnvelope;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @Slf4j
 public class ReplyService {
 
-    private final KeywordRepository keywordRepository;
-    private final DefaultReplyRepository defaultReplyRepository;
+    private final KeywordMatchService keywordMatchService;
+    private final AccountConfigService accountConfigService;
     private final DefaultReplyRecordRepository defaultReplyRecordRepository;
     private final AiReplyService aiReplyService;
+    private final WriteBehindService writeBehindService;
 
     @Autowired
-    public ReplyService(KeywordRepository keywordRepository,
-                        DefaultReplyRepository defaultReplyRepository,
+    public ReplyService(KeywordMatchService keywordMatchService,
+                        AccountConfigService accountConfigService,
                         DefaultReplyRecordRepository defaultReplyRecordRepository,
-                        AiReplyService aiReplyService) {
-        this.keywordRepository = keywordRepository;
-        this.defaultReplyRepository = defaultReplyRepository;
+                        AiReplyService aiReplyService,
+                        WriteBehindService writeBehindService) {
+        this.keywordMatchService = keywordMatchService;
+        this.accountConfigService = accountConfigService;
         this.defaultReplyRecordRepository = defaultReplyRecordRepository;
         this.aiReplyService = aiReplyService;
+        this.writeBehindService = writeBehindService;
     }
 
     public String determineReply(String cookieId, String chatId, String userId, String itemId, String message) {
         // 1. Check Keywords
-        List<Keyword> keywords = keywordRepository.findByCookieId(cookieId); // Should optimize to search cache or DB query
-        // Simple iteration for now
-        for (Keyword k : keywords) {
-            if (message.contains(k.getKeyword())) {
-                 return k.getReply();
-            }
+        String keywordReply = getKeywordReply(cookieId, null, userId, message, itemId);
+        if (keywordReply != null) {
+            return "EMPTY_REPLY".equals(keywordReply) ? null : keywordReply;
         }
 
         // 2. Check AI Reply
@@ -48,10 +49,10 @@ public class ReplyService {
         }
 
         // 3. Default Reply
-        DefaultReply defaultReply = defaultReplyRepository.findById(cookieId).orElse(null);
-        if (defaultReply != null && Boolean.TRUE.equals(defaultReply.getEnabled())) {
+        AccountConfigSnapshot.DefaultReplySettings defaultReply = accountConfigService.get(cookieId).defaultReply();
+        if (defaultReply.enabled()) {
             // Check reply once
-            if (Boolean.TRUE.equals(defaultReply.getReplyOnce())) {
+            if (defaultReply.replyOnce()) {
                 Optional<DefaultReplyRecord> record = defaultReplyRecordRepository.findByCookieIdAndChatId(cookieId, chatId);
                 if (record.isPresent()) {
                     return null; // Already replied
@@ -61,9 +62,14 @@ public class ReplyService {
             DefaultReplyRecord newRecord = new DefaultReplyRecord();
             newRecord.setCookieId(cookieId);
             newRecord.setChatId(chatId);
-            defaultReplyRecordRepository.save(newRecord);
+            CompletableFuture<DefaultReplyRecord> saved = writeBehindService.submit("default_reply_records",
+                    () -> defaultReplyRecordRepository.save(newRecord));
+            if (defaultReply.replyOnce()) {
+                // 只回复一次：等记录落库，同一会话的下一条消息才能查到
+                saved.join();
+            }
 
-            return defaultReply.getReplyContent();
+            return defaultReply.content();
         }
 
         return null;
@@ -79,10 +85,11 @@ public class ReplyService {
             log.info("【{}】开始处理消息", cookieId);
             
             // 提取消息信息
-            String chatId = extractChatId(message);
-            String userId = extractUserId(message);
-            String itemId = extractItemId(message);
-            String messageContent = extractMessageContent(message);
+            ChatEnvelope envelope = ChatEnvelope.of(message);
+            String chatId = envelope.chatId();
+            String userId = envelope.userIdOr("unknown_user");
+            String itemId = envelope.itemId();
+            String messageContent = envelope.content();
             
             if (chatId == null || messageContent == null) {
                 log.warn("【{}】消息格式不完整，跳过处理", cookieId);
@@ -115,98 +122,6 @@ public class ReplyService {
         }
     }
     
-    /**
-     * 从消息中提取chatId
-     */
-    private String extractChatId(com.alibaba.fastjson2.JSONObject message) {
-        try {
-            if (message.containsKey("1")) {
-                Object obj1 = message.get("1");
-                if (obj1 instanceof com.alibaba.fastjson2.JSONObject) {
-                    com.alibaba.fastjson2.JSONObject msg1 = (com.alibaba.fastjson2.JSONObject) obj1;
-                    if (msg1.containsKey("2")) {
-                        return msg1.getString("2");
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.warn("提取chatId失败", e);
-        }
-        return null;
-    }
-    
-    /**
-     * 从消息中提取userId
-     */
-    private String extractUserId(com.alibaba.fastjson2.JSONObject message) {
-        try {
-            if (message.containsKey("1")) {
-                Object obj1 = message.get("1");
-                if (obj1 instanceof com.alibaba.fastjson2.JSONObject) {
-                    com.alibaba.fastjson2.JSONObject msg1 = (com.alibaba.fastjson2.JSONObject) obj1;
-                    if (msg1.containsKey("10")) {
-                        com.alibaba.fastjson2.JSONObject msg10 = msg1.getJSONObject("10");
-                        if (msg10 != null && msg10.containsKey("senderUserId")) {
-                            return msg10.getString("senderUserId");
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.warn("提取userId失败", e);
-        }
-        return "unknown_user";
-    }
-    
-    /**
-     * 从消息中提取itemId
-     */
-    private String extractItemId(com.alibaba.fastjson2.JSONObject message) {
-        try {
-            if (message.containsKey("1")) {
-                Object obj1 = message.get("1");
-                if (obj1 instanceof com.alibaba.fastjson2.JSONObject) {
-                    com.alibaba.fastjson2.JSONObject msg1 = (com.alibaba.fastjson2.JSONObject) obj1;
-                    if (msg1.containsKey("10")) {
-                        com.alibaba.fastjson2.JSONObject msg10 = msg1.getJSONObject("10");
-                        if (msg10 != null && msg10.containsKey("reminderUrl")) {
-                            String url = msg10.getString("reminderUrl");
-                            if (url != null && url.contains("itemId=")) {
-                                return url.split("itemId=")[1].split("&")[0];
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.warn("提取itemId失败", e);
-        }
-        return null;
-    }
-    
-    /**
-     * 从消息中提取消息内容
-     */
-    private String extractMessageContent(com.alibaba.fastjson2.JSONObject message) {
-        try {
-            if (message.containsKey("1")) {
-                Object obj1 = message.get("1");
-                if (obj1 instanceof com.alibaba.fastjson2.JSONObject) {
-                    com.alibaba.fastjson2.JSONObject msg1 = (com.alibaba.fastjson2.JSONObject) obj1;
-                    if (msg1.containsKey("10")) {
-                        com.alibaba.fastjson2.JSONObject msg10 = msg1.getJSONObject("10");
-                        if (msg10 != null && msg10.containsKey("content")) {
-                            return msg10.getString("content");
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.warn("提取消息内容失败", e);
-        }
-        return null;
-    }
-
     // ========== 以下方法供 XianyuClient.processChatMessageReply 使用 ==========
 
     /**
@@ -225,16 +140,30 @@ public class ReplyService {
      * 获取关键词回复
      * 对应Python: get_keyword_reply
      *
+     * 先匹配商品专属关键词，再匹配通用关键词；图片关键词返回 "__IMAGE_SEND__" + 图片URL
+     *
      * @return 回复内容，或 "EMPTY_REPLY" 表示匹配到但不回复，或 null 表示未匹配
      */
-    public String getKeywordReply(String sendUserName, String sendUserId,
+    public String getKeywordReply(String cookieId, String sendUserName, String sendUserId,
                                   String sendMessage, String itemId) {
         try {
-            // 这里应该查询关键词库并匹配
-            // 简化实现：调用现有的determineReply逻辑
-            // 实际应该单独实现关键词匹配逻辑
-            log.debug("【关键词回复】暂使用简化实现");
-            return null;
+            KeywordMatchService.KeywordRule rule = keywordMatchService.match(cookieId, itemId, sendMessage);
+            if (rule == null) {
+                return null;
+            }
+            log.debug("【{}】命中关键词: {} (商品ID: {})", cookieId, rule.keyword(), rule.itemId());
+
+            if (rule.isImage() && rule.imageUrl() != null && !rule.imageUrl().isBlank()) {
+                return "__IMAGE_SEND__" + rule.imageUrl();
+            }
+            String reply = rule.reply();
+            if (reply == null || reply.isBlank()) {
+                return "EMPTY_REPLY";
+            }
+            // 变量替换（对应Python: reply.format(send_user_name=..., send_user_id=..., send_message=...)）
+            return reply.replace("{send_user_name}", sendUserName != null ? sendUserName : "")
+                    .replace("{send_user_id}", sendUserId != null ? sendUserId : "")
+                    .replace("{send_message}", sendMessage);
         } catch (Exception e) {
             log.error("关键词回复查询失败", e);
             return null;
@@ -242,17 +171,20 @@ public class ReplyService {
     }
 
     /**
-     * 获取AI回复
+     * 异步获取AI回复（LLM调用不阻塞消息处理线程）
      * 对应Python: get_ai_reply
+     *
+     * @param sentenceSender 流式回复的首句发送回调，可为null
+     * @return AI回复全文的Future；未启用AI或生成失败时结果为null
      */
-    public String getAiReply(String sendUserName, String sendUserId,
-                             String sendMessage, String itemId, String chatId) {
+    public CompletableFuture<String> getAiReplyAsync(String cookieId, String sendUserName, String sendUserId,
+                                                     String sendMessage, String itemId, String chatId,
+                                                     FirstSentenceSender sentenceSender) {
         try {
-            // 调用AI回复服务
-            return aiReplyService.generateReply(null, chatId, sendUserId, itemId, sendMessage);
+            return aiReplyService.generateReplyAsync(cookieId, chatId, sendUserId, itemId, sendMessage, sentenceSender);
         } catch (Exception e) {
-            log.error("AI回复生成失败", e);
-            return null;
+            log.error("【{}】AI回复生成失败", cookieId, e);
+            return CompletableFuture.completedFuture(null);
         }
     }
 
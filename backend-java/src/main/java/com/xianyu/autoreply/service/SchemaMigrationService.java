@@ -0,0 +1,279 @@
+package com.xianyu.autoreply.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * 版本化的数据库迁移
+ * 表结构仍由 Hibernate ddl-auto 维护，这里只负责它管不到的部分（二级索引、数据修正等）。
+ * 脚本放在 classpath:migration/ 下（与 init.sql 同级），命名为 V{版本号}__{说明}.sql，
+ * 启动时按版本号顺序执行尚未执行过的脚本，每个脚本一个事务，执行记录写入 schema_version。
+ * 依赖 entityManagerFactory 保证在 Hibernate 建表之后执行；账号客户端在迁移完成后才启动。
+ */
+@Slf4j
+@Service
+@DependsOn("entityManagerFactory")
+public class SchemaMigrationService {
+
+    private static final String LOCATION = "classpath:migration/V*__*.sql";
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+
+    private final DataSource dataSource;
+    private final String ddlAuto;
+    private final List<Map<String, Object>> applied = new ArrayList<>();
+
+    private record Migration(int version, String description, String sql, long checksum) {
+    }
+
+    @Autowired
+    public SchemaMigrationService(DataSource dataSource,
+                                  @Value("${app.ddl-auto:update}") String ddlAuto) {
+        this.dataSource = dataSource;
+        this.ddlAuto = ddlAuto;
+    }
+
+    @PostConstruct
+    public void migrate() throws IOException, SQLException {
+        List<Migration> migrations = load();
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS schema_version (version INTEGER PRIMARY KEY, "
+                        + "description TEXT NOT NULL, checksum INTEGER NOT NULL, applied_at TEXT NOT NULL)");
+                if (ddlAuto.startsWith("create")) {
+                    // 表已由 Hibernate 重建，之前建的索引随表一起删除，全部脚本需要重新执行
+                    statement.execute("DELETE FROM schema_version");
+                }
+            }
+            Map<Integer, Long> done = appliedVersions(connection);
+            int count = 0;
+            for (Migration migration : migrations) {
+                Long checksum = done.get(migration.version());
+                if (checksum == null) {
+                    apply(connection, migration);
+                    count++;
+                } else if (checksum != migration.checksum()) {
+                    log.warn("迁移脚本 V{}__{} 在执行后被修改过，不会重新执行", migration.version(), migration.description());
+                }
+            }
+            if (count > 0) {
+                // 让查询优化器基于新索引重新收集统计信息
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("PRAGMA optimize");
+                }
+            }
+            log.info("数据库迁移完成：本次执行 {} 个脚本，当前版本 V{}", count,
+                    migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version());
+        }
+    }
+
+    /**
+     * 本次启动执行过的迁移
+     */
+    public List<Map<String, Object>> getApplied() {
+        return applied;
+    }
+
+    private List<Migration> load() throws IOException {
+        List<Migration> migrations = new ArrayList<>();
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources(LOCATION)) {
+            Matcher matcher = FILE_NAME.matcher(String.valueOf(resource.getFilename()));
+            if (!matcher.matches()) {
+                continue;
+            }
+            String sql;
+            try (InputStream in = resource.getInputStream()) {
+                sql = StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(sql.getBytes(StandardCharsets.UTF_8));
+            migrations.add(new Migration(Integer.parseInt(matcher.group(1)), matcher.group(2), sql, crc.getValue()));
+        }
+        migrations.sort(Comparator.comparingInt(Migration::version));
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).version() == migrations.get(i - 1).version()) {
+                throw new IllegalStateException("迁移脚本版本号重复: V" + migrations.get(i).version());
+            }
+        }
+        return migrations;
+    }
+
+    private static Map<Integer, Long> appliedVersions(Connection connection) throws SQLException {
+        Map<Integer, Long> versions = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                versions.put(rs.getInt(1), rs.getLong(2));
+            }
+        }
+        return versions;
+    }
+
+    private void apply(Connection connection, Migration migration) throws SQLException {
+        long start = System.currentTimeMillis();
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : split(migration.sql())) {
+                statement.execute(sql);
+            }
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO schema_version (version, description, checksum, applied_at) VALUES (?, ?, ?, ?)")) {
+                insert.setInt(1, migration.version());
+                insert.setString(2, migration.description());
+                insert.setLong(3, migration.checksum());
+                insert.setString(4, LocalDateTime.now().toString());
+                insert.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("执行迁移脚本 V" + migration.version() + "__" + migration.description() + " 失败: "
+                    + e.getMessage(), e);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        long millis = System.currentTimeMillis() - start;
+        Map<String, Object> record = new HashMap<>();
+        record.put("version", migration.version());
+        record.put("description", migration.description());
+        record.put("millis", millis);
+        applied.add(record);
+        log.info("已执行迁移脚本 V{}__{}，耗时 {}ms", migration.version(), migration.description(), millis);
+    }
+
+    /**
+     * 按分号拆分脚本中的语句，去掉 -- 行注释和块注释
+     * 引号（'...'、"..."、`...`、[...]）内的分号和注释符号原样保留；
+     * CREATE [TEMP|TEMPORARY] TRIGGER 的 BEGIN ... END 块内的分号不拆分（块内 CASE ... END 不会提前结束触发器）
+     */
+    static List<String> split(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        List<String> leadingWords = new ArrayList<>(3); // 语句开头的关键词，用于识别触发器
+        boolean trigger = false;
+        boolean inBody = false;
+        int caseDepth = 0;
+        int length = script.length();
+        int i = 0;
+        while (i < length) {
+            char c = script.charAt(i);
+            if (c == '-' && i + 1 < length && script.charAt(i + 1) == '-') {
+                while (i < length && script.charAt(i) != '\n') {
+                    i++;
+                }
+                continue;
+            }
+            if (c == '/' && i + 1 < length && script.charAt(i + 1) == '*') {
+                int end = script.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                current.append(' ');
+                continue;
+            }
+            if (c == '\'' || c == '"' || c == '`' || c == '[') {
+                char close = c == '[' ? ']' : c;
+                int end = i + 1;
+                while (end < length) {
+                    if (script.charAt(end) == close) {
+                        // 引号内两个连续的引号表示引号本身
+                        if (close != ']' && end + 1 < length && script.charAt(end + 1) == close) {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                if (end >= length) {
+                    throw new IllegalArgumentException("迁移脚本中的引号未闭合: " + script.substring(i, Math.min(length, i + 40)));
+                }
+                current.append(script, i, end + 1);
+                i = end + 1;
+                continue;
+            }
+            if (Character.isLetter(c) || c == '_') {
+                int end = i + 1;
+                while (end < length && (Character.isLetterOrDigit(script.charAt(end)) || script.charAt(end) == '_')) {
+                    end++;
+                }
+                String word = script.substring(i, end).toUpperCase();
+                if (leadingWords.size() < 3) {
+                    leadingWords.add(word);
+                    trigger = isCreateTrigger(leadingWords);
+                }
+                if (trigger) {
+                    if (word.equals("BEGIN") && !inBody) {
+                        inBody = true;
+                    } else if (inBody && word.equals("CASE")) {
+                        caseDepth++;
+                    } else if (inBody && word.equals("END")) {
+                        if (caseDepth > 0) {
+                            caseDepth--;
+                        } else {
+                            inBody = false;
+                        }
+                    }
+                }
+                current.append(script, i, end);
+                i = end;
+                continue;
+            }
+            if (c == ';' && !inBody) {
+                String statement = current.toString().trim();
+                if (!statement.isEmpty()) {
+                    statements.add(statement);
+                }
+                current.setLength(0);
+                leadingWords.clear();
+                trigger = false;
+                caseDepth = 0;
+                i++;
+                continue;
+            }
+            current.append(c);
+            i++;
+        }
+        String statement = current.toString().trim();
+        if (!statement.isEmpty()) {
+            statements.add(statement);
+        }
+        return statements;
+    }
+
+    private static boolean isCreateTrigger(List<String> words) {
+        if (words.size() < 2 || !words.get(0).equals("CREATE")) {
+            return false;
+        }
+        String second = words.get(1);
+        if (second.equals("TRIGGER")) {
+            return true;
+        }
+        return words.size() == 3 && (second.equals("TEMP") || second.equals("TEMPORARY"))
+                && words.get(2).equals("TRIGGER");
+    }
+}
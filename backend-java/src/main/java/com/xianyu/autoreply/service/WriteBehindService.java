@@ -0,0 +1,243 @@
+package com.xianyu.autoreply.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 数据库单写线程
+ * SQLite同一时刻只允许一个写事务，多个线程各自写库时会互相等待数据库锁（SQLITE_BUSY）。
+ * 所有写操作提交到有界队列，由唯一的写线程取出：队列中已有的操作加上等待 linger 毫秒内到达的操作
+ * （最多 batch-size 个）合并在一个事务中提交，提交后再完成各自的future。
+ * 调用方需要确认已落库时等待返回的future，否则可以不等待。
+ * 批量事务失败时逐个重试，只有真正出错的操作以异常完成。
+ */
+@Slf4j
+@Service
+public class WriteBehindService {
+
+    private static final long OFFER_TIMEOUT_MILLIS = 1000; // 队列满时最多等待的时长，超时后在调用线程同步写入
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final long SHUTDOWN_WAIT_MILLIS = 10_000;
+
+    private final TransactionTemplate transactionTemplate;
+    private final LinkedBlockingQueue<WriteOp<?>> queue;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final AtomicLong submitted = new AtomicLong(0);
+    private final AtomicLong committed = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+    private final AtomicLong batches = new AtomicLong(0);
+    private final AtomicLong retriedBatches = new AtomicLong(0);
+    private final AtomicLong syncWrites = new AtomicLong(0);
+    private final AtomicLong maxQueueDepth = new AtomicLong(0);
+    private final AtomicLong lastBatchSize = new AtomicLong(0);
+    private final AtomicLong maxBatchSize = new AtomicLong(0);
+    private final AtomicLong lastCommitMicros = new AtomicLong(0);
+    private final AtomicLong maxCommitMicros = new AtomicLong(0);
+    private final AtomicLong totalCommitMicros = new AtomicLong(0);
+
+    @Autowired
+    public WriteBehindService(PlatformTransactionManager transactionManager,
+                              @Value("${app.write-behind.queue-capacity:10000}") int queueCapacity,
+                              @Value("${app.write-behind.batch-size:200}") int batchSize,
+                              @Value("${app.write-behind.linger-millis:5}") long lingerMillis) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMillis));
+        this.writer = new Thread(this::writeLoop, "db-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // 停止接收新批次，写完队列中剩余的操作再退出
+        running = false;
+        writer.join(SHUTDOWN_WAIT_MILLIS);
+        if (!queue.isEmpty()) {
+            log.warn("数据库写线程退出时仍有 {} 个写操作未执行", queue.size());
+        }
+    }
+
+    /**
+     * 提交一个写操作
+     *
+     * @param name   操作名（用于日志）
+     * @param action 在写事务中执行的操作，可以包含读-改-写
+     * @return 事务提交后以 action 的返回值完成；执行失败时以异常完成
+     */
+    public <T> CompletableFuture<T> submit(String name, Supplier<T> action) {
+        submitted.incrementAndGet();
+        WriteOp<T> op = new WriteOp<>(name, action, new CompletableFuture<>());
+        if (Thread.currentThread() == writer) {
+            // 写操作内部再提交的写操作：已在写事务中，直接执行
+            runInline(op);
+            return op.future;
+        }
+        boolean queued;
+        try {
+            queued = running && queue.offer(op, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (queued) {
+            maxQueueDepth.accumulateAndGet(queue.size(), Math::max);
+        } else {
+            // 写入积压过多或正在关闭：在调用线程同步写入，避免无界堆积
+            syncWrites.incrementAndGet();
+            commit(List.of(op));
+        }
+        return op.future;
+    }
+
+    /**
+     * 提交一个无返回值的写操作
+     */
+    public CompletableFuture<Void> submit(String name, Runnable action) {
+        return submit(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * 获取统计信息（耗时单位为微秒）
+     */
+    public Map<String, Object> getStats() {
+        long batchCount = batches.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queueDepth", (long) queue.size());
+        stats.put("maxQueueDepth", maxQueueDepth.get());
+        stats.put("submitted", submitted.get());
+        stats.put("committed", committed.get());
+        stats.put("failed", failed.get());
+        stats.put("batches", batchCount);
+        stats.put("retriedBatches", retriedBatches.get());
+        stats.put("syncWrites", syncWrites.get());
+        stats.put("lastBatchSize", lastBatchSize.get());
+        stats.put("maxBatchSize", maxBatchSize.get());
+        stats.put("avgBatchSize", batchCount == 0 ? 0L : committed.get() / batchCount);
+        stats.put("lastCommitMicros", lastCommitMicros.get());
+        stats.put("maxCommitMicros", maxCommitMicros.get());
+        stats.put("avgCommitMicros", batchCount == 0 ? 0L : totalCommitMicros.get() / batchCount);
+        return stats;
+    }
+
+    // ============== 写线程 ==============
+
+    private void writeLoop() {
+        List<WriteOp<?>> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                WriteOp<?> first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - batch.size());
+                // 批次未满时再等待一小段时间，让并发到达的写操作合并到同一事务
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize && running) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    WriteOp<?> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("数据库写线程异常: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中执行一批写操作；失败时逐个重试
+     */
+    private void commit(List<WriteOp<?>> batch) {
+        long start = System.nanoTime();
+        Object[] results = new Object[batch.size()];
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    results[i] = batch.get(i).action.get();
+                }
+            });
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                fail(batch.get(0), e);
+            } else {
+                retriedBatches.incrementAndGet();
+                log.warn("批量写入 {} 个操作失败，逐个重试: {}", batch.size(), e.getMessage());
+                for (WriteOp<?> op : batch) {
+                    commit(List.of(op));
+                }
+            }
+            return;
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        batches.incrementAndGet();
+        committed.addAndGet(batch.size());
+        lastBatchSize.set(batch.size());
+        maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+        lastCommitMicros.set(micros);
+        maxCommitMicros.accumulateAndGet(micros, Math::max);
+        totalCommitMicros.addAndGet(micros);
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results[i]);
+        }
+    }
+
+    private <T> void runInline(WriteOp<T> op) {
+        try {
+            op.future.complete(op.action.get());
+            committed.incrementAndGet();
+        } catch (Exception e) {
+            fail(op, e);
+            throw e; // 让外层事务回滚
+        }
+    }
+
+    private void fail(WriteOp<?> op, Exception e) {
+        failed.incrementAndGet();
+        log.error("写入失败 [{}]: {}", op.name, e.getMessage());
+        op.future.completeExceptionally(e);
+    }
+
+    private record WriteOp<T>(String name, Supplier<T> action, CompletableFuture<T> future) {
+        @SuppressWarnings("unchecked")
+        void complete(Object result) {
+            future.complete((T) result);
+        }
+    }
+}
@@ -6,12 +6,22 @@ import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
 import com.xianyu.autoreply.entity.Cookie;
-import com.xianyu.autoreply.entity.ItemInfo;
 import com.xianyu.autoreply.model.ItemDetailCache;
 import com.xianyu.autoreply.model.LockHoldInfo;
 import com.xianyu.autoreply.repository.CookieRepository;
 import com.xianyu.autoreply.repository.ItemInfoRepository;
+import com.xianyu.autoreply.repository.ItemInfoRepositoryCustom;
 import com.xianyu.autoreply.service.captcha.CaptchaHandler;
+import com.xianyu.autoreply.service.llm.FirstSentenceSender;
+import com.xianyu.autoreply.service.runtime.ClientRuntime;
+import com.xianyu.autoreply.service.runtime.FrameClassifier;
+import com.xianyu.autoreply.service.runtime.HashedWheelTimer;
+import com.xianyu.autoreply.service.runtime.IngressGate;
+import com.xianyu.autoreply.service.runtime.KeyedMailboxExecutor;
+import com.xianyu.autoreply.service.runtime.MessageIdDeduplicator;
+import com.xianyu.autoreply.service.runtime.OutboundWriter;
+import com.xianyu.autoreply.utils.ChatEnvelope;
+import com.xianyu.autoreply.utils.MsgPackJsonDecoder;
 import com.xianyu.autoreply.utils.XianyuUtils;
 import jakarta.websocket.ContainerProvider;
 import jakarta.websocket.WebSocketContainer;
@@ -27,23 +37,23 @@ import org.springframework.web.socket.client.standard.StandardWebSocketClient;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.net.URI;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 
 /**
@@ -101,6 +111,9 @@ public class XianyuClient extends TextWebSocketHandler {
     private final PauseManager pauseManager; // 暂停管理器
     private final OrderStatusHandler orderStatusHandler; // 订单状态处理器
     private final ItemInfoRepository itemInfoRepository; // 商品信息存储库
+    private final AccountConfigService accountConfigService; // 账号配置快照
+    private final WriteBehindService writeBehindService; // 数据库单写线程
+    private final ClientRuntime runtime; // 共享运行时（线程池由XianyuClientService统一持有）
 
     private String cookiesStr; // Cookie字符串
     private Map<String, String> cookies; // Cookie字典
@@ -117,6 +130,7 @@ public class XianyuClient extends TextWebSocketHandler {
     private static final int MAX_CONNECTION_FAILURES = 5;
     private final AtomicLong lastSuccessfulConnection = new AtomicLong(0);
     private final AtomicLong lastStateChangeTime = new AtomicLong(System.currentTimeMillis());
+    private volatile CompletableFuture<Void> disconnectSignal = CompletableFuture.completedFuture(null); // 连接断开信号
 
     // ============== Token相关 ==============
     private String currentToken; // 当前Token
@@ -128,18 +142,36 @@ public class XianyuClient extends TextWebSocketHandler {
     private final AtomicLong lastHeartbeatResponse = new AtomicLong(0);
 
     // ============== 后台任务 ==============
-    private ScheduledExecutorService scheduledExecutor;
+    private final Executor taskExecutor; // 绑定到本账号的共享工作线程池
+    private final KeyedMailboxExecutor ingressMailbox; // 入站同步包按到达顺序串行解密/分拣
+    private final KeyedMailboxExecutor chatMailboxes; // 按chatId分组的会话邮箱，同一会话严格串行
+    private final IngressGate ingressGate; // 会话邮箱前的有界闸门（优先级通道 + 合并/丢弃）
+    private final OutboundWriter outbound; // 出站写入器，所有帧经由它串行写入当前连接
     private ScheduledFuture<?> heartbeatTask;
     private ScheduledFuture<?> tokenRefreshTask;
     private ScheduledFuture<?> cleanupTask;
     private ScheduledFuture<?> cookieRefreshTask;
 
     // ============== 消息处理相关 ==============
-    private final Semaphore messageSemaphore = new Semaphore(100); // 最多100个并发消息
-    private final AtomicInteger activeMessageTasks = new AtomicInteger(0);
-    private final Map<String, Long> processedMessageIds = new ConcurrentHashMap<>(); // 消息去重
+    private static final int INGRESS_CAPACITY = 2000; // 入站同步包排队上限（解密前）
+    private static final int HIGH_LANE_CAPACITY = 1000; // 订单/系统消息通道上限
+    private static final int NORMAL_LANE_CAPACITY = 200; // 普通聊天消息通道上限
+    private static final int NORMAL_LANE_COALESCE_THRESHOLD = 50; // 普通聊天积压超过该值时按会话合并
+    private final AtomicLong ingressDropped = new AtomicLong(0); // 入站队列满被丢弃的同步包数
+    private static final int OUTBOUND_CONTROL_CAPACITY = 500; // ACK/心跳等控制帧排队上限
+    private static final int OUTBOUND_DATA_CAPACITY = 200; // 聊天/图片消息排队上限
+    private static final int OUTBOUND_SEND_TIMEOUT = 10; // 单次写入超时（秒），超时关闭连接触发重连
+    private static final int OUTBOUND_INIT_TIMEOUT = 30; // 初始化帧等待写出的超时（秒）
+    private final Map<FrameClassifier.FrameType, AtomicLong> frameCounters = new EnumMap<>(FrameClassifier.FrameType.class); // 按帧类型计数
+    private final AtomicLong frameBytes = new AtomicLong(0); // 收到的帧总字节数
+    private final AtomicLong frameClassifyNanos = new AtomicLong(0); // WebSocket线程内处理帧的总耗时
     private static final int MESSAGE_EXPIRE_TIME = 3600; // 消息过期时间（秒），1小时
-    private static final int PROCESSED_MESSAGE_IDS_MAX_SIZE = 10000;
+    private static final int PROCESSED_MESSAGE_IDS_MAX_SIZE = 20000; // 消息去重最大记录数
+    private static final long PROCESSED_MESSAGE_IDS_PEAK_PER_HOUR = 1_000_000; // 消息去重按此峰值速率确定桶宽（约9秒）
+    private final AtomicLong replySequence = new AtomicLong(0); // 回复处理序号
+    private final Map<String, Long> replyGenerations = new ConcurrentHashMap<>(); // 等待AI回复的会话 {chatId: 序号}
+    private final MessageIdDeduplicator processedMessageIds = MessageIdDeduplicator.forPeakRate(
+            MESSAGE_EXPIRE_TIME, TimeUnit.SECONDS, PROCESSED_MESSAGE_IDS_PEAK_PER_HOUR, PROCESSED_MESSAGE_IDS_MAX_SIZE); // 消息去重
 
     // ============== 防重复机制 ==============
     private final Map<String, Long> lastNotificationTime = new ConcurrentHashMap<>(); // 通知防重复
@@ -169,8 +201,6 @@ public class XianyuClient extends TextWebSocketHandler {
     // ============== 消息防抖管理 ==============
     private final Map<String, MessageDebounceInfo> messageDebounceTasks = new ConcurrentHashMap<>(); // 消息防抖任务
     private static final int MESSAGE_DEBOUNCE_DELAY = 1; // 防抖延迟时间（秒）
-    private final ReentrantLock messageDebounceLock = new ReentrantLock(); // 防抖任务管理的锁
-    private final ReentrantLock processedMessageIdsLock = new ReentrantLock(); // 消息ID去重的锁
 
     // ============== 发货已发送订单记录 ==============
     private final Map<String, Long> deliverySentOrders = new ConcurrentHashMap<>(); // 已发货订单记录 {order_id: timestamp}
@@ -182,11 +212,11 @@ public class XianyuClient extends TextWebSocketHandler {
      * 消息防抖信息类
      */
     private static class MessageDebounceInfo {
-        CompletableFuture<Void> task;
+        HashedWheelTimer.Timeout task;
         JSONObject lastMessage;
         long timer;
 
-        MessageDebounceInfo(CompletableFuture<Void> task, JSONObject lastMessage, long timer) {
+        MessageDebounceInfo(HashedWheelTimer.Timeout task, JSONObject lastMessage, long timer) {
             this.task = task;
             this.lastMessage = lastMessage;
             this.timer = timer;
@@ -224,7 +254,10 @@ public class XianyuClient extends TextWebSocketHandler {
                         ReplyService replyService, CaptchaHandler captchaHandler,
                         BrowserService browserService, PauseManager pauseManager,
                         OrderStatusHandler orderStatusHandler,
-                        ItemInfoRepository itemInfoRepository) {
+                        ItemInfoRepository itemInfoRepository,
+                        AccountConfigService accountConfigService,
+                        WriteBehindService writeBehindService,
+                        ClientRuntime runtime) {
         this.cookieId = cookieId;
         this.cookieRepository = cookieRepository;
         this.replyService = replyService;
@@ -233,6 +266,9 @@ public class XianyuClient extends TextWebSocketHandler {
         this.pauseManager = pauseManager;
         this.orderStatusHandler = orderStatusHandler;
         this.itemInfoRepository = itemInfoRepository;
+        this.accountConfigService = accountConfigService;
+        this.writeBehindService = writeBehindService;
+        this.runtime = runtime;
 
         // 创建HTTP客户端
         this.httpClient = new OkHttpClient.Builder()
@@ -241,13 +277,18 @@ public class XianyuClient extends TextWebSocketHandler {
                 .writeTimeout(30, TimeUnit.SECONDS)
                 .build();
 
-        // 创建定时任务线程池
-        this.scheduledExecutor = Executors.newScheduledThreadPool(5, r -> {
-            Thread t = new Thread(r);
-            t.setName("XianyuClient-" + cookieId + "-" + t.getId());
-            t.setDaemon(true);
-            return t;
-        });
+        // 使用共享运行时，不再为每个账号单独创建线程池
+        this.taskExecutor = runtime.executorFor(cookieId);
+        this.ingressMailbox = new KeyedMailboxExecutor(cookieId + "-ingress", taskExecutor);
+        this.chatMailboxes = new KeyedMailboxExecutor(cookieId + "-chat", taskExecutor);
+        this.ingressGate = new IngressGate("【" + cookieId + "】", chatMailboxes,
+                HIGH_LANE_CAPACITY, NORMAL_LANE_CAPACITY, NORMAL_LANE_COALESCE_THRESHOLD);
+        this.outbound = new OutboundWriter("【" + cookieId + "】", taskExecutor,
+                OUTBOUND_CONTROL_CAPACITY, OUTBOUND_DATA_CAPACITY, OUTBOUND_SEND_TIMEOUT, TimeUnit.SECONDS);
+
+        for (FrameClassifier.FrameType type : FrameClassifier.FrameType.values()) {
+            frameCounters.put(type, new AtomicLong(0));
+        }
 
         // 注册实例到全局字典
         registerInstance();
@@ -275,7 +316,7 @@ public class XianyuClient extends TextWebSocketHandler {
         }
 
         // 启动WebSocket连接循环
-        CompletableFuture.runAsync(this::connectionLoop, scheduledExecutor);
+        CompletableFuture.runAsync(this::connectionLoop, taskExecutor);
     }
 
     /**
@@ -296,24 +337,19 @@ public class XianyuClient extends TextWebSocketHandler {
         // 关闭WebSocket连接
         closeWebSocket();
 
+        // 丢弃尚未处理的入站消息
+        ingressMailbox.clear();
+        chatMailboxes.clear();
+        replyGenerations.clear();
+
         // 清理实例缓存
         cleanupInstanceCaches();
 
         // 从全局字典中注销实例
         unregisterInstance();
 
-        // 关闭线程池
-        if (scheduledExecutor != null && !scheduledExecutor.isShutdown()) {
-            scheduledExecutor.shutdown();
-            try {
-                if (!scheduledExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                    scheduledExecutor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                scheduledExecutor.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
-        }
+        // 释放共享运行时中的账号统计（线程池为共享资源，不在此关闭）
+        runtime.release(cookieId);
 
         log.info("【{}】XianyuClient已停止", cookieId);
     }
@@ -364,44 +400,56 @@ public class XianyuClient extends TextWebSocketHandler {
 
 
     /**
-     * WebSocket连接循环 - 重构版本，去除嵌套
-     * 核心逻辑：外层循环保持运行，内部单次连接尝试，失败后延迟重试
+     * WebSocket连接循环 - 事件驱动版本
+     * 核心逻辑：单次连接尝试成功后不再占用线程等待，由断开信号触发下一轮；失败后通过共享调度器延迟重试
      */
     private void connectionLoop() {
-        while (running.get()) {
-            try {
-                // 检查账号是否启用
-                if (!isAccountEnabled()) {
-                    log.info("【{}】账号已禁用，停止连接循环", cookieId);
-                    break;
-                }
+        if (!running.get()) {
+            log.info("【{}】WebSocket 连接循环已退出", cookieId);
+            return;
+        }
 
-                // 更新连接状态
-                setConnectionState(ConnectionState.INIT, "准备建立WebSocket连接");
-                log.info("【{}】WebSocket目标地址: {}", cookieId, WEBSOCKET_URL);
+        try {
+            // 检查账号是否启用
+            if (!isAccountEnabled()) {
+                log.info("【{}】账号已禁用，停止连接循环", cookieId);
+                log.info("【{}】WebSocket 连接循环已退出", cookieId);
+                return;
+            }
 
-                // 单次连接尝试
-                connectWebSocket();
+            // 更新连接状态
+            setConnectionState(ConnectionState.INIT, "准备建立WebSocket连接");
+            log.info("【{}】WebSocket目标地址: {}", cookieId, WEBSOCKET_URL);
 
-                // 连接成功后，进入等待循环，直到连接断开
-                waitForDisconnection();
+            // 单次连接尝试（先创建断开信号，避免握手期间的关闭事件丢失）
+            CompletableFuture<Void> signal = new CompletableFuture<>();
+            disconnectSignal = signal;
+            connectWebSocket();
 
-                log.info("【{}】WebSocket连接已断开", cookieId);
+            // 连接成功后，注册断开回调，直到连接断开再调度重连
+            waitForDisconnection(signal);
+            return;
 
-            } catch (Exception e) {
-                // 统一处理连接错误
-                handleConnectionError(e);
-            }
+        } catch (Exception e) {
+            // 统一处理连接错误
+            handleConnectionError(e);
+        }
 
-            // 计算并执行重连延迟
-            if (running.get()) {
-                int retryDelay = calculateRetryDelay(connectionFailures.get());
-                log.info("【{}】{}秒后尝试重连...", cookieId, retryDelay);
-                sleepWithInterruptCheck(retryDelay * 1000L);
-            }
+        scheduleReconnect();
+    }
+
+    /**
+     * 计算重连延迟并通过共享调度器安排下一轮连接
+     */
+    private void scheduleReconnect() {
+        if (!running.get()) {
+            log.info("【{}】WebSocket 连接循环已退出", cookieId);
+            return;
         }
 
-        log.info("【{}】WebSocket 连接循环已退出", cookieId);
+        int retryDelay = calculateRetryDelay(connectionFailures.get());
+        log.info("【{}】{}秒后尝试重连...", cookieId, retryDelay);
+        runtime.schedule(cookieId, this::connectionLoop, retryDelay, TimeUnit.SECONDS);
     }
 
     /**
@@ -409,8 +457,7 @@ public class XianyuClient extends TextWebSocketHandler {
      */
     private boolean isAccountEnabled() {
         try {
-            Optional<Cookie> cookieOpt = cookieRepository.findById(cookieId);
-            return cookieOpt.isPresent() && Boolean.TRUE.equals(cookieOpt.get().getEnabled());
+            return accountConfigService.get(cookieId).enabled();
         } catch (Exception e) {
             log.error("【{}】检查账号状态失败", cookieId, e);
             return false;
@@ -419,12 +466,21 @@ public class XianyuClient extends TextWebSocketHandler {
 
     /**
      * 等待WebSocket连接断开
+     * 不再轮询sleep：断开信号由afterConnectionClosed/handleTransportError/closeWebSocket完成
      */
-    private void waitForDisconnection() {
+    private void waitForDisconnection(CompletableFuture<Void> signal) {
         log.info("【{}】WebSocket连接已建立，等待连接断开...", cookieId);
-        while (connected.get() && running.get()) {
-            sleepWithInterruptCheck(1000);
-        }
+        signal.whenComplete((result, error) -> {
+            log.info("【{}】WebSocket连接已断开", cookieId);
+            scheduleReconnect();
+        });
+    }
+
+    /**
+     * 通知连接循环当前连接已断开
+     */
+    private void signalDisconnected() {
+        disconnectSignal.complete(null);
     }
 
     /**
@@ -506,6 +562,7 @@ public class XianyuClient extends TextWebSocketHandler {
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         log.info("【{}】WebSocket连接已建立", cookieId);
         this.webSocketSession = session;
+        outbound.attach(session);
         
         // 更新连接状态（连接已建立，但尚未初始化）
         setConnectionState(ConnectionState.CONNECTED, "握手完成，准备初始化");
@@ -544,7 +601,7 @@ public class XianyuClient extends TextWebSocketHandler {
                     log.error("【{}】关闭连接失败", cookieId, closeEx);
                 }
             }
-        }, scheduledExecutor);  // 使用已有的线程池执行异步任务
+        }, taskExecutor);  // 使用已有的线程池执行异步任务
     }
 
 
@@ -554,22 +611,79 @@ public class XianyuClient extends TextWebSocketHandler {
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
         String payload = message.getPayload();
-        log.info("【{}】收到WebSocket消息: {} 字节", cookieId, payload.length());
+        long startNanos = System.nanoTime();
 
         try {
-            JSONObject messageData = JSON.parseObject(payload);
+            // 预分类：只读取帧头，不构建JSON树
+            FrameClassifier.FrameHeader frame = FrameClassifier.classify(payload);
+            frameCounters.get(frame.type()).incrementAndGet();
+            frameBytes.addAndGet(payload.length());
+            log.debug("【{}】收到WebSocket消息: {} 字节，类型: {}", cookieId, payload.length(), frame.type());
+
+            switch (frame.type()) {
+                case RESPONSE:
+                    // 心跳/发送回执，直接处理
+                    handleHeartbeatResponse();
+                    return;
+                case ERROR_RESPONSE:
+                    log.debug("【{}】收到错误响应: code={}, lwp={}", cookieId, frame.code(), frame.lwp());
+                    return;
+                case PUSH:
+                    // 非同步包推送，只需ACK
+                    sendAck(frame, session);
+                    return;
+                default:
+                    break;
+            }
 
-            // 处理心跳响应
-            if (handleHeartbeatResponse(messageData)) {
+            // 同步包（或无法预分类的帧）才完整解析，异步处理避免阻塞
+            JSONObject messageData = JSON.parseObject(payload);
+            if (frame.type() == FrameClassifier.FrameType.UNKNOWN && handleHeartbeatResponse(messageData)) {
                 return;
             }
-
-            // 处理其他消息（异步处理，避免阻塞）
-            CompletableFuture.runAsync(() -> handleMessageWithSemaphore(messageData, session), scheduledExecutor);
+            // 按到达顺序串行解密/分拣，保证同一会话投递到邮箱的顺序与到达顺序一致
+            if (ingressMailbox.queuedTasks() >= INGRESS_CAPACITY) {
+                ingressDropped.incrementAndGet();
+                log.warn("【{}】入站队列已满（{}），丢弃同步包，等待服务端重推", cookieId, INGRESS_CAPACITY);
+                return;
+            }
+            ingressMailbox.submit(cookieId, () -> handleMessage(messageData, session));
 
         } catch (Exception e) {
             log.error("【{}】处理消息出错", cookieId, e);
+        } finally {
+            frameClassifyNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * 获取会话邮箱统计信息（邮箱数、排队深度、等待时间、消息去重）
+     */
+    public Map<String, Object> getMailboxStats() {
+        Map<String, Object> stats = chatMailboxes.getStats();
+        stats.putAll(ingressGate.getStats());
+        stats.put("ingressQueued", (long) ingressMailbox.queuedTasks());
+        stats.put("ingressDropped", ingressDropped.get());
+        stats.put("maxIngressWaitMillis", ingressMailbox.getStats().get("maxWaitMillis"));
+        stats.putAll(processedMessageIds.getStats());
+        return stats;
+    }
+
+    /**
+     * 获取帧处理统计信息（按帧类型计数）
+     */
+    public Map<String, Object> getFrameStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long total = 0;
+        for (Map.Entry<FrameClassifier.FrameType, AtomicLong> entry : frameCounters.entrySet()) {
+            long count = entry.getValue().get();
+            stats.put(entry.getKey().name(), count);
+            total += count;
         }
+        stats.put("totalFrames", total);
+        stats.put("totalBytes", frameBytes.get());
+        stats.put("avgInlineMicros", total == 0 ? 0.0 : frameClassifyNanos.get() / 1000.0 / total);
+        return stats;
     }
 
     /**
@@ -579,6 +693,7 @@ public class XianyuClient extends TextWebSocketHandler {
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         log.warn("【{}】WebSocket连接已关闭: {}", cookieId, status);
         connected.set(false);
+        outbound.detach(session);
 
         // 重置心跳任务（因为心跳依赖WebSocket连接）
         if (heartbeatTask != null && !heartbeatTask.isDone()) {
@@ -588,6 +703,9 @@ public class XianyuClient extends TextWebSocketHandler {
 
         // 更新连接状态
         setConnectionState(ConnectionState.DISCONNECTED, "连接已关闭");
+
+        // 通知连接循环调度重连
+        signalDisconnected();
     }
 
     /**
@@ -597,6 +715,8 @@ public class XianyuClient extends TextWebSocketHandler {
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
         log.error("【{}】WebSocket传输错误", cookieId, exception);
         connected.set(false);
+        outbound.detach(session);
+        signalDisconnected();
     }
 
     /**
@@ -648,7 +768,7 @@ public class XianyuClient extends TextWebSocketHandler {
         regMsg.put("headers", regHeaders);
 
         try {
-            session.sendMessage(new TextMessage(regMsg.toJSONString()));
+            sendFrameAndWait(session, regMsg);
             log.info("【{}】✅ /reg 消息已发送", cookieId);
         } catch (Exception e) {
             log.error("【{}】❌ 发送 /reg 消息失败: {}", cookieId, e.getMessage(), e);
@@ -685,7 +805,7 @@ public class XianyuClient extends TextWebSocketHandler {
         ackMsg.put("body", bodyArray);
 
         try {
-            session.sendMessage(new TextMessage(ackMsg.toJSONString()));
+            sendFrameAndWait(session, ackMsg);
             log.info("【{}】✅ /ackDiff 消息已发送", cookieId);
         } catch (Exception e) {
             log.error("【{}】❌ 发送 /ackDiff 消息失败: {}", cookieId, e.getMessage(), e);
@@ -934,7 +1054,8 @@ public class XianyuClient extends TextWebSocketHandler {
         // 启动心跳任务（依赖WebSocket，每次重连都需要重启）
         if (heartbeatTask == null || heartbeatTask.isDone()) {
             log.info("【{}】启动心跳任务...", cookieId);
-            heartbeatTask = scheduledExecutor.scheduleWithFixedDelay(
+            heartbeatTask = runtime.scheduleWithFixedDelay(
+                    cookieId,
                     this::heartbeatLoop,
                     0,
                     HEARTBEAT_INTERVAL,
@@ -945,7 +1066,8 @@ public class XianyuClient extends TextWebSocketHandler {
         // 启动Token刷新任务
         if (tokenRefreshTask == null || tokenRefreshTask.isDone()) {
             log.info("【{}】启动Token刷新任务...", cookieId);
-            tokenRefreshTask = scheduledExecutor.scheduleWithFixedDelay(
+            tokenRefreshTask = runtime.scheduleWithFixedDelay(
+                    cookieId,
                     this::tokenRefreshLoop,
                     60,
                     60,
@@ -956,7 +1078,8 @@ public class XianyuClient extends TextWebSocketHandler {
         // 启动清理任务
         if (cleanupTask == null || cleanupTask.isDone()) {
             log.info("【{}】启动暂停记录清理任务...", cookieId);
-            cleanupTask = scheduledExecutor.scheduleWithFixedDelay(
+            cleanupTask = runtime.scheduleWithFixedDelay(
+                    cookieId,
                     this::pauseCleanupLoop,
                     CLEANUP_INTERVAL,
                     CLEANUP_INTERVAL,
@@ -967,7 +1090,8 @@ public class XianyuClient extends TextWebSocketHandler {
         // 启动Cookie刷新任务
         if (cookieRefreshTask == null || cookieRefreshTask.isDone()) {
             log.info("【{}】启动Cookie刷新任务...", cookieId);
-            cookieRefreshTask = scheduledExecutor.scheduleWithFixedDelay(
+            cookieRefreshTask = runtime.scheduleWithFixedDelay(
+                    cookieId,
                     this::cookieRefreshLoop,
                     COOKIE_REFRESH_INTERVAL,
                     COOKIE_REFRESH_INTERVAL,
@@ -1008,7 +1132,8 @@ public class XianyuClient extends TextWebSocketHandler {
         headers.put("mid", XianyuUtils.generateMid());
         msg.put("headers", headers);
 
-        webSocketSession.sendMessage(new TextMessage(msg.toJSONString()));
+        // 上一个心跳尚未写出时直接合并
+        throwIfRejected(outbound.send(webSocketSession, msg.toJSONString(), OutboundWriter.Kind.CONTROL, "heartbeat"));
         lastHeartbeatTime.set(System.currentTimeMillis());
         log.debug("【{}】心跳包已发送", cookieId);
     }
@@ -1019,8 +1144,7 @@ public class XianyuClient extends TextWebSocketHandler {
     private boolean handleHeartbeatResponse(JSONObject messageData) {
         try {
             if (messageData.getIntValue("code") == 200) {
-                lastHeartbeatResponse.set(System.currentTimeMillis());
-                log.debug("【{}】收到心跳响应", cookieId);
+                handleHeartbeatResponse();
                 return true;
             }
         } catch (Exception e) {
@@ -1029,14 +1153,18 @@ public class XianyuClient extends TextWebSocketHandler {
         return false;
     }
 
+    private void handleHeartbeatResponse() {
+        lastHeartbeatResponse.set(System.currentTimeMillis());
+        log.debug("【{}】收到心跳响应", cookieId);
+    }
+
     /**
      * Token刷新循环 - 对应Python的token_refresh_loop()方法
      */
     private void tokenRefreshLoop() {
         try {
             // 检查账号是否启用
-            Optional<Cookie> cookieOpt = cookieRepository.findById(cookieId);
-            if (cookieOpt.isEmpty() || !Boolean.TRUE.equals(cookieOpt.get().getEnabled())) {
+            if (!isAccountEnabled()) {
                 log.info("【{}】账号已禁用，停止Token刷新循环", cookieId);
                 return;
             }
@@ -1072,7 +1200,7 @@ public class XianyuClient extends TextWebSocketHandler {
             cleanupExpiredMap(confirmedOrders, ORDER_CONFIRM_COOLDOWN * 1000L);
 
             // 清理过期的消息ID
-            cleanupExpiredMap(processedMessageIds, MESSAGE_EXPIRE_TIME * 1000L);
+            processedMessageIds.expire();
 
         } catch (Exception e) {
             log.error("【{}】清理循环出错", cookieId, e);
@@ -1085,8 +1213,7 @@ public class XianyuClient extends TextWebSocketHandler {
     private void cookieRefreshLoop() {
         try {
             // 检查账号是否启用
-            Optional<Cookie> cookieOpt = cookieRepository.findById(cookieId);
-            if (cookieOpt.isEmpty() || !Boolean.TRUE.equals(cookieOpt.get().getEnabled())) {
+            if (!isAccountEnabled()) {
                 log.info("【{}】账号已禁用，停止Cookie刷新循环", cookieId);
                 return;
             }
@@ -1114,34 +1241,6 @@ public class XianyuClient extends TextWebSocketHandler {
         }
     }
 
-    /**
-     * 带信号量的消息处理包装器，防止并发任务过多
-     * 对应Python的 _handle_message_with_semaphore()方法
-     */
-    private void handleMessageWithSemaphore(JSONObject messageData, WebSocketSession session) {
-        try {
-            messageSemaphore.acquire();
-            int currentTasks = activeMessageTasks.incrementAndGet();
-            try {
-                log.debug("【{}】收到的消息内容: {}", cookieId, JSON.toJSONString(messageData));
-                handleMessage(messageData, session);
-            } finally {
-                activeMessageTasks.decrementAndGet();
-                messageSemaphore.release();
-
-                // 定期记录活跃任务数（每100个任务记录一次）
-                // 对应Python: if self.active_message_tasks % 100 == 0 and self.active_message_tasks > 0
-                if (currentTasks % 100 == 0 && currentTasks > 0) {
-                    log.info("【{}】当前活跃消息处理任务数: {}", cookieId, currentTasks);
-                }
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.error("【{}】消息处理被中断", cookieId, e);
-        }
-    }
-
-
     // ============== 辅助方法 ==============
 
     /**
@@ -1157,7 +1256,8 @@ public class XianyuClient extends TextWebSocketHandler {
         ack.put("code", 200);
 
         JSONObject ackHeaders = new JSONObject();
-        ackHeaders.put("mid", headers.containsKey("mid") ? headers.getString("mid") : XianyuUtils.generateMid());
+        String mid = headers.getString("mid");
+        ackHeaders.put("mid", mid != null ? mid : XianyuUtils.generateMid());
         ackHeaders.put("sid", headers.containsKey("sid") ? headers.getString("sid") : "");
 
         if (headers.containsKey("app-key")) {
@@ -1171,35 +1271,110 @@ public class XianyuClient extends TextWebSocketHandler {
         }
 
         ack.put("headers", ackHeaders);
-        session.sendMessage(new TextMessage(ack.toJSONString()));
+        sendAckFrame(session, ack, mid);
     }
 
     /**
-     * 判断是否为同步包消息
+     * 根据预分类的帧头发送ACK确认消息（无需完整解析帧）
      */
-    private boolean isSyncPackage(JSONObject messageData) {
+    private void sendAck(FrameClassifier.FrameHeader frame, WebSocketSession session) throws Exception {
+        if (!frame.hasHeaders()) {
+            return;
+        }
+
+        JSONObject ack = new JSONObject();
+        ack.put("code", 200);
+
+        JSONObject ackHeaders = new JSONObject();
+        ackHeaders.put("mid", frame.mid() != null ? frame.mid() : XianyuUtils.generateMid());
+        ackHeaders.put("sid", frame.sid() != null ? frame.sid() : "");
+
+        if (frame.appKey() != null) {
+            ackHeaders.put("app-key", frame.appKey());
+        }
+        if (frame.ua() != null) {
+            ackHeaders.put("ua", frame.ua());
+        }
+        if (frame.dt() != null) {
+            ackHeaders.put("dt", frame.dt());
+        }
+
+        ack.put("headers", ackHeaders);
+        sendAckFrame(session, ack, frame.mid());
+    }
+
+    /**
+     * 提交ACK帧：同一mid的ACK尚未写出时（服务端重推）合并为一次写入
+     */
+    private void sendAckFrame(WebSocketSession session, JSONObject ack, String mid) throws Exception {
+        String coalesceKey = mid != null ? "ack:" + mid : null;
+        throwIfRejected(outbound.send(session, ack.toJSONString(), OutboundWriter.Kind.CONTROL, coalesceKey));
+    }
+
+    /**
+     * 提交业务消息帧（不等待写出，写出失败时记录日志）
+     *
+     * @return 写出完成的Future：方法返回只表示已入队，确认发出需等待它完成
+     */
+    private CompletableFuture<Void> sendDataFrame(WebSocketSession session, JSONObject msg) throws Exception {
+        CompletableFuture<Void> future = outbound.send(session, msg.toJSONString(), OutboundWriter.Kind.DATA, null);
+        throwIfRejected(future);
+        future.whenComplete((v, e) -> {
+            if (e != null) {
+                log.error("【{}】消息写出失败: {}", cookieId, e.getMessage());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 提交控制帧并等待写出完成（仅用于连接初始化）
+     */
+    private void sendFrameAndWait(WebSocketSession session, JSONObject msg) throws Exception {
+        awaitWritten(outbound.send(session, msg.toJSONString(), OutboundWriter.Kind.CONTROL, null),
+                OUTBOUND_INIT_TIMEOUT);
+    }
+
+    /**
+     * 等待已提交的帧写出，写出失败或超时时抛出异常
+     */
+    private void awaitWritten(CompletableFuture<Void> future, long timeoutSeconds) throws Exception {
         try {
-            return messageData.containsKey("body")
-                    && messageData.getJSONObject("body").containsKey("syncPushPackage")
-                    && messageData.getJSONObject("body").getJSONObject("syncPushPackage").containsKey("data")
-                    && messageData.getJSONObject("body").getJSONObject("syncPushPackage").getJSONArray("data").size() > 0;
-        } catch (Exception e) {
-            return false;
+            future.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw new Exception(e.getCause().getMessage(), e.getCause());
         }
     }
 
     /**
-     * 判断是否为用户聊天消息
-     * 对应Python的is_chat_message()方法 (Line 6824-6836)
+     * 帧被立即拒绝（连接已关闭或队列已满）时抛出异常，保持原同步发送的失败语义
+     */
+    private void throwIfRejected(CompletableFuture<Void> future) throws Exception {
+        if (future.isCompletedExceptionally()) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                throw new Exception(e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    /**
+     * 获取出站写入统计信息（发送延迟、队列深度、吞吐）
+     */
+    public Map<String, Object> getOutboundStats() {
+        return outbound.getStats();
+    }
+
+    /**
+     * 判断是否为同步包消息
      */
-    private boolean isChatMessage(JSONObject message) {
+    private boolean isSyncPackage(JSONObject messageData) {
         try {
-            return message != null
-                    && message.containsKey("1")
-                    && message.get("1") instanceof JSONObject
-                    && message.getJSONObject("1").containsKey("10")
-                    && message.getJSONObject("1").get("10") instanceof JSONObject
-                    && message.getJSONObject("1").getJSONObject("10").containsKey("reminderContent");
+            return messageData.containsKey("body")
+                    && messageData.getJSONObject("body").containsKey("syncPushPackage")
+                    && messageData.getJSONObject("body").getJSONObject("syncPushPackage").containsKey("data")
+                    && messageData.getJSONObject("body").getJSONObject("syncPushPackage").getJSONArray("data").size() > 0;
         } catch (Exception e) {
             return false;
         }
@@ -1535,8 +1710,8 @@ public class XianyuClient extends TextWebSocketHandler {
 
             msg.put("body", bodyArray);
 
-            // 发送消息
-            webSocketSession.sendMessage(new TextMessage(msg.toJSONString()));
+            // 发送消息（等待真正写出后才返回，调用方据此判断是否发送成功）
+            awaitWritten(sendDataFrame(webSocketSession, msg), OUTBOUND_SEND_TIMEOUT);
             log.info("【{}】消息已发送 - chatId: {}, toUserId: {}, message: {}",
                     cookieId, chatId, toUserId, messageText);
 
@@ -1587,8 +1762,8 @@ public class XianyuClient extends TextWebSocketHandler {
             bodyArray.add(bodyItem);
             msg.put("body", bodyArray);
 
-            webSocketSession.sendMessage(new TextMessage(msg.toJSONString()));
-            log.info("【{}】创建会话请求已发送 - toUserId: {}, itemId: {}", cookieId, toUserId, itemId);
+            sendDataFrame(webSocketSession, msg);
+            log.info("【{}】创建会话请求已提交 - toUserId: {}, itemId: {}", cookieId, toUserId, itemId);
 
             // 注意：会话ID需要从响应消息中提取，这里返回null
             // 实际使用中需要等待WebSocket响应并提取cid
@@ -1639,17 +1814,19 @@ public class XianyuClient extends TextWebSocketHandler {
      * 保存cookies到数据库
      */
     private void saveCookiesToDatabase() {
-        try {
+        String value = this.cookiesStr;
+        writeBehindService.submit("cookies", () -> {
             Optional<Cookie> cookieOpt = cookieRepository.findById(cookieId);
             if (cookieOpt.isPresent()) {
                 Cookie cookie = cookieOpt.get();
-                cookie.setValue(this.cookiesStr);
+                cookie.setValue(value);
                 cookieRepository.save(cookie);
                 log.info("【{}】Cookies已更新到数据库", cookieId);
             }
-        } catch (Exception e) {
+        }).exceptionally(e -> {
             log.error("【{}】保存cookies到数据库失败", cookieId, e);
-        }
+            return null;
+        });
     }
 
     // ============== 实例管理方法 ==============
@@ -1735,14 +1912,10 @@ public class XianyuClient extends TextWebSocketHandler {
      * 延迟释放锁的任务
      * 对应Python的_delayed_lock_release()方法
      */
-    private CompletableFuture<Void> delayedLockRelease(String lockKey, int delayMinutes) {
-        return CompletableFuture.runAsync(() -> {
+    private HashedWheelTimer.Timeout delayedLockRelease(String lockKey, int delayMinutes) {
+        log.info("【{}】订单锁 {} 将在 {} 分钟后释放", cookieId, lockKey, delayMinutes);
+        return runtime.newTimeout(cookieId, () -> {
             try {
-                long delayMillis = delayMinutes * 60L * 1000L;
-                log.info("【{}】订单锁 {} 将在 {} 分钟后释放", cookieId, lockKey, delayMinutes);
-
-                Thread.sleep(delayMillis);
-
                 // 检查锁是否仍然存在且需要释放
                 LockHoldInfo lockInfo = LOCK_HOLD_INFO.get(lockKey);
                 if (lockInfo != null && lockInfo.isLocked()) {
@@ -1752,7 +1925,9 @@ public class XianyuClient extends TextWebSocketHandler {
                 }
 
                 // 清理锁信息
-                lockInfo.setTask(null);
+                if (lockInfo != null) {
+                    lockInfo.setTask(null);
+                }
                 LOCK_HOLD_INFO.remove(lockKey);
                 LOCK_USAGE_TIMES.remove(lockKey);
 
@@ -1761,13 +1936,10 @@ public class XianyuClient extends TextWebSocketHandler {
                     ORDER_LOCKS.remove(lockKey);
                 }
 
-            } catch (InterruptedException e) {
-                log.info("【{}】订单锁 {} 延迟释放任务被中断", cookieId, lockKey);
-                Thread.currentThread().interrupt();
             } catch (Exception e) {
                 log.error("【{}】订单锁 {} 延迟释放失败", cookieId, lockKey, e);
             }
-        }, scheduledExecutor);
+        }, delayMinutes, TimeUnit.MINUTES);
     }
 
     /**
@@ -1794,7 +1966,7 @@ public class XianyuClient extends TextWebSocketHandler {
                 // 清理锁持有信息，取消延迟释放任务
                 LockHoldInfo lockInfo = LOCK_HOLD_INFO.remove(orderId);
                 if (lockInfo != null && lockInfo.getTask() != null) {
-                    lockInfo.getTask().cancel(true);
+                    lockInfo.getTask().cancel();
                 }
             }
 
@@ -1965,25 +2137,11 @@ public class XianyuClient extends TextWebSocketHandler {
                 log.warn("【{}】清理了 {} 个过期订单确认记录", cookieId, expiredConfirms.size());
             }
 
-            // 清理已处理的消息ID（保留1小时内的）
-            processedMessageIdsLock.lock();
-            try {
-                long messageExpireTime = MESSAGE_EXPIRE_TIME * 1000L;
-                Set<String> expiredMessages = new java.util.HashSet<>();
-                for (Map.Entry<String, Long> entry : processedMessageIds.entrySet()) {
-                    if (currentTime - entry.getValue() > messageExpireTime) {
-                        expiredMessages.add(entry.getKey());
-                    }
-                }
-                for (String messageId : expiredMessages) {
-                    processedMessageIds.remove(messageId);
-                }
-                if (!expiredMessages.isEmpty()) {
-                    cleanedTotal += expiredMessages.size();
-                    log.warn("【{}】清理了 {} 个过期消息ID", cookieId, expiredMessages.size());
-                }
-            } finally {
-                processedMessageIdsLock.unlock();
+            // 清理已处理的消息ID（淘汰过期的时间桶）
+            int expiredMessages = processedMessageIds.expire();
+            if (expiredMessages > 0) {
+                cleanedTotal += expiredMessages;
+                log.warn("【{}】清理了 {} 个过期消息ID", cookieId, expiredMessages);
             }
 
             if (cleanedTotal > 0) {
@@ -2089,8 +2247,10 @@ public class XianyuClient extends TextWebSocketHandler {
      * @param chatId 聊天ID
      * @param toUserId 接收者用户ID
      * @param content 消息文本内容
+     * @return 写出完成的Future（连接已关闭或队列已满时直接抛出异常）
      */
-    private void sendMsg(WebSocketSession session, String chatId, String toUserId, String content) throws Exception {
+    private CompletableFuture<Void> sendMsg(WebSocketSession session, String chatId, String toUserId,
+                                            String content) throws Exception {
         if (session == null || !session.isOpen()) {
             throw new Exception("WebSocket连接已关闭");
         }
@@ -2157,8 +2317,7 @@ public class XianyuClient extends TextWebSocketHandler {
         msg.put("body", body);
 
         // 4. 发送消息（对应Python Line 5196）
-        session.sendMessage(new TextMessage(msg.toJSONString()));
-        log.info("【{}】已发送文本消息到聊天: {}", cookieId, chatId);
+        return sendDataFrame(session, msg);
     }
 
     /**
@@ -2170,8 +2329,10 @@ public class XianyuClient extends TextWebSocketHandler {
      * @param toUserId 接收者用户ID
      * @param imageUrl 图片URL
      * @param cardId 卡券ID（可选，用于卡券图片）
+     * @return 写出完成的Future（连接已关闭或队列已满时直接抛出异常）
      */
-    private void sendImageMsg(WebSocketSession session, String chatId, String toUserId, String imageUrl, Integer cardId) throws Exception {
+    private CompletableFuture<Void> sendImageMsg(WebSocketSession session, String chatId, String toUserId,
+                                                 String imageUrl, Integer cardId) throws Exception {
         if (session == null || !session.isOpen()) {
             throw new Exception("WebSocket连接已关闭");
         }
@@ -2269,8 +2430,7 @@ public class XianyuClient extends TextWebSocketHandler {
         msg.put("body", body);
 
         // 4. 发送消息（对应Python Line 8470）
-        session.sendMessage(new TextMessage(msg.toJSONString()));
-        log.info("【{}】图片消息发送成功: {}", cookieId, imageUrl);
+        return sendDataFrame(session, msg);
     }
 
     // ============== 防重复机制方法 ==============
@@ -2422,6 +2582,7 @@ public class XianyuClient extends TextWebSocketHandler {
      */
     private void closeWebSocket() {
         if (webSocketSession != null) {
+            outbound.detach(webSocketSession);
             try {
                 if (webSocketSession.isOpen()) {
                     webSocketSession.close();
@@ -2432,6 +2593,7 @@ public class XianyuClient extends TextWebSocketHandler {
             } finally {
                 webSocketSession = null;
                 connected.set(false);
+                signalDisconnected();
             }
         }
     }
@@ -2439,125 +2601,6 @@ public class XianyuClient extends TextWebSocketHandler {
 
     // ============== 订单ID提取方法 ==============
 
-    /**
-     * 从消息中提取订单ID
-     * 对应Python的_extract_order_id()方法
-     */
-    private String extractOrderId(JSONObject message) {
-        try {
-            String orderId = null;
-
-            // 先查看消息的完整结构
-            log.warn("【{}】🔍 完整消息结构: {}", cookieId, message.toJSONString());
-
-            // 检查message['1']的结构
-            Object message1 = message.get("1");
-            String contentJsonStr = "";
-
-            if (message1 instanceof JSONObject) {
-                JSONObject message1Obj = (JSONObject) message1;
-                log.warn("【{}】🔍 message['1'] 是对象，keys: {}", cookieId, message1Obj.keySet());
-
-                // 检查message['1']['6']的结构
-                Object message16 = message1Obj.get("6");
-                if (message16 instanceof JSONObject) {
-                    JSONObject message16Obj = (JSONObject) message16;
-                    log.warn("【{}】🔍 message['1']['6'] 是对象，keys: {}", cookieId, message16Obj.keySet());
-
-                    // 方法1: 从button的targetUrl中提取orderId
-                    Object message163 = message16Obj.get("3");
-                    if (message163 instanceof JSONObject) {
-                        contentJsonStr = ((JSONObject) message163).getString("5");
-                    }
-                }
-            }
-
-            // 解析内容JSON
-            if (StrUtil.isNotBlank(contentJsonStr)) {
-                try {
-                    JSONObject contentData = JSON.parseObject(contentJsonStr);
-
-                    // 方法1a: 从button的targetUrl中提取orderId
-                    String targetUrl = contentData.getJSONObject("dxCard")
-                            .getJSONObject("item")
-                            .getJSONObject("main")
-                            .getJSONObject("exContent")
-                            .getJSONObject("button")
-                            .getString("targetUrl");
-
-                    if (StrUtil.isNotBlank(targetUrl)) {
-                        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile("orderId=(\\d+)");
-                        java.util.regex.Matcher matcher = pattern.matcher(targetUrl);
-                        if (matcher.find()) {
-                            orderId = matcher.group(1);
-                            log.info("【{}】✅ 从button提取到订单ID: {}", cookieId, orderId);
-                        }
-                    }
-
-                    // 方法1b: 从main的targetUrl中提取order_detail的id
-                    if (orderId == null) {
-                        String mainTargetUrl = contentData.getJSONObject("dxCard")
-                                .getJSONObject("item")
-                                .getJSONObject("main")
-                                .getString("targetUrl");
-
-                        if (StrUtil.isNotBlank(mainTargetUrl)) {
-                            java.util.regex.Pattern pattern = java.util.regex.Pattern.compile("order_detail\\?id=(\\d+)");
-                            java.util.regex.Matcher matcher = pattern.matcher(mainTargetUrl);
-                            if (matcher.find()) {
-                                orderId = matcher.group(1);
-                                log.info("【{}】✅ 从main targetUrl提取到订单ID: {}", cookieId, orderId);
-                            }
-                        }
-                    }
-
-                } catch (Exception parseE) {
-                    log.warn("解析内容JSON失败: {}", parseE.getMessage());
-                }
-            }
-
-            // 方法3: 如果前面的方法都失败，尝试在整个消息中搜索订单ID模式
-            if (orderId == null) {
-                try {
-                    String messageStr = message.toJSONString();
-
-                    // 搜索各种可能的订单ID模式
-                    String[] patterns = {
-                            "orderId[=:](\\d{10,})",
-                            "order_detail\\?id=(\\d{10,})",
-                            "\"id\"\\s*:\\s*\"?(\\d{10,})\"?",
-                            "bizOrderId[=:](\\d{10,})"
-                    };
-
-                    for (String patternStr : patterns) {
-                        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(patternStr);
-                        java.util.regex.Matcher matcher = pattern.matcher(messageStr);
-                        if (matcher.find()) {
-                            orderId = matcher.group(1);
-                            log.info("【{}】✅ 从消息字符串中提取到订单ID: {} (模式: {})", cookieId, orderId, patternStr);
-                            break;
-                        }
-                    }
-
-                } catch (Exception searchE) {
-                    log.warn("在消息字符串中搜索订单ID失败: {}", searchE.getMessage());
-                }
-            }
-
-            if (orderId != null) {
-                log.info("【{}】🎯 最终提取到订单ID: {}", cookieId, orderId);
-            } else {
-                log.warn("【{}】❌ 未能从消息中提取到订单ID", cookieId);
-            }
-
-            return orderId;
-
-        } catch (Exception e) {
-            log.error("【{}】提取订单ID失败", cookieId, e);
-            return null;
-        }
-    }
-
     /**
      * 检查消息是否为自动发货触发关键字
      * 对应Python的_is_auto_delivery_trigger()方法
@@ -2586,9 +2629,7 @@ public class XianyuClient extends TextWebSocketHandler {
      * 对应Python的is_auto_confirm_enabled()方法
      */
     private boolean isAutoConfirmEnabled() {
-        // 这里需要从数据库获取配置
-        // 暂时返回true，具体实现需要调用数据库服务
-        return true;
+        return accountConfigService.get(cookieId).autoConfirm();
     }
 
     /**
@@ -2596,7 +2637,7 @@ public class XianyuClient extends TextWebSocketHandler {
      * 对应Python的_create_tracked_task()方法
      */
     private CompletableFuture<Void> createTrackedTask(Runnable task) {
-        CompletableFuture<Void> future = CompletableFuture.runAsync(task, scheduledExecutor);
+        CompletableFuture<Void> future = CompletableFuture.runAsync(task, taskExecutor);
 
         // 添加到追踪集合
         backgroundTasks.add(future);
@@ -2627,10 +2668,11 @@ public class XianyuClient extends TextWebSocketHandler {
      */
     private void handleMessage(JSONObject messageData, WebSocketSession session) {
         try {
+            log.debug("【{}】收到的消息内容: {}", cookieId, JSON.toJSONString(messageData));
+
             // ========== 步骤1: 检查账号是否启用 ==========
-            // 对应Python: Line 7305-7309
-            Optional<Cookie> cookieOpt = cookieRepository.findById(cookieId);
-            if (cookieOpt.isEmpty() || !Boolean.TRUE.equals(cookieOpt.get().getEnabled())) {
+            // 对应Python: Line 7305-7309（读取内存中的配置快照，不访问数据库）
+            if (!isAccountEnabled()) {
                 log.warn("【{}】账号已禁用，跳过消息处理", cookieId);
                 return;
             }
@@ -2670,17 +2712,20 @@ public class XianyuClient extends TextWebSocketHandler {
             lastMessageReceivedTime.set(System.currentTimeMillis());
             log.warn("【{}】收到消息，更新消息接收时间标识", cookieId);
 
+            // 一次性提取后续步骤需要的字段
+            ChatEnvelope envelope = ChatEnvelope.of(message);
+
             // ========== 步骤5: 订单ID提取与订单详情获取 ==========
             // 对应Python: Line 7393-7460
-            String orderId = extractOrderId(message);
+            String orderId = envelope.orderId();
             if (orderId != null) {
                 String msgTime = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
                         .format(new java.util.Date());
                 log.info("[{}] 【{}】✅ 检测到订单ID: {}，开始获取订单详情", msgTime, cookieId, orderId);
 
                 // 提取用户ID和商品ID用于订单详情获取
-                String tempUserId = extractUserId(message);
-                String tempItemId = extractItemId(message);
+                String tempUserId = envelope.userIdOr("unknown_user");
+                String tempItemId = resolveItemId(envelope);
 
                 // 异步获取订单详情（不阻塞主流程）
                 String finalOrderId1 = orderId;
@@ -2692,7 +2737,7 @@ public class XianyuClient extends TextWebSocketHandler {
                     } catch (Exception e) {
                         log.error("[{}] 【{}】❌ 获取订单详情异常: {}", msgTime, cookieId, e.getMessage());
                     }
-                }, scheduledExecutor);
+                }, taskExecutor);
             }
 
             // ========== 步骤6: 订单状态处理 ==========
@@ -2703,14 +2748,10 @@ public class XianyuClient extends TextWebSocketHandler {
                         .format(new java.util.Date());
 
                 // 安全地检查订单状态（红色提醒）
-                String redReminder = null;
-                if (message.containsKey("3") && message.get("3") instanceof JSONObject) {
-                    JSONObject message3 = message.getJSONObject("3");
-                    redReminder = message3.getString("redReminder");
-                }
+                String redReminder = envelope.redReminder();
 
                 // 提取用户ID（用于构建URL）
-                String userId = extractUserId(message);
+                String userId = envelope.userIdOr("unknown_user");
                 String userUrl = "https://www.goofish.com/personal?userId=" + userId;
 
                 // 处理不同的订单状态
@@ -2731,80 +2772,64 @@ public class XianyuClient extends TextWebSocketHandler {
 
             // ========== 步骤7: 判断是否为聊天消息 ==========
             // 对应Python: Line 7526-7529
-            if (!isChatMessage(message)) {
+            if (!envelope.chatMessage()) {
                 log.warn("【{}】非聊天消息", cookieId);
                 return;
             }
 
             // ========== 步骤8: 提取聊天消息信息 ==========
             // 对应Python: Line 7531-7558
-            String sendUserName;
-            String sendUserId;
-            String sendMessage;
-            String chatId;
-            long createTime;
-            String itemId;
-
-            try {
-                // 安全地提取聊天消息信息
-                if (!message.containsKey("1") || !(message.get("1") instanceof JSONObject)) {
-                    log.error("【{}】消息格式错误：缺少必要的字段结构", cookieId);
-                    return;
-                }
-
-                JSONObject message1 = message.getJSONObject("1");
-                if (!message1.containsKey("10") || !(message1.get("10") instanceof JSONObject)) {
-                    log.error("【{}】消息格式错误：缺少消息详情字段", cookieId);
-                    return;
-                }
-
-                // 提取消息时间
-                createTime = message1.getLongValue("5");
-
-                // 提取消息详情
-                JSONObject message10 = message1.getJSONObject("10");
-                sendUserName = message10.getString("senderNick");
-                if (sendUserName == null || sendUserName.isEmpty()) {
-                    sendUserName = message10.getString("reminderTitle");
-                    if (sendUserName == null || sendUserName.isEmpty()) {
-                        sendUserName = "未知用户";
-                    }
-                }
-                sendUserId = message10.getString("senderUserId");
-                if (sendUserId == null) {
-                    sendUserId = "unknown";
-                }
-                sendMessage = message10.getString("reminderContent");
-                if (sendMessage == null) {
-                    sendMessage = "";
-                }
-
-                // 提取chatId
-                String chatIdRaw = message1.getString("2");
-                if (chatIdRaw == null) {
-                    chatIdRaw = "";
-                }
-                chatId = chatIdRaw.contains("@") ? chatIdRaw.split("@")[0] : chatIdRaw;
-
-                // 提取商品ID
-                itemId = extractItemId(message);
-
-            } catch (Exception e) {
-                log.error("【{}】提取聊天消息信息失败: {}", cookieId, e.getMessage(), e);
-                return;
-            }
+            String sendUserName = envelope.senderName();
+            String sendUserId = envelope.userIdOr("unknown");
+            String sendMessage = envelope.reminderContent() != null ? envelope.reminderContent() : "";
+            String chatId = envelope.chatId() != null ? envelope.chatId() : "";
+            long createTime = envelope.createTime();
+            String itemId = resolveItemId(envelope);
 
             // 格式化消息时间
             String msgTime = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
                     .format(new java.util.Date(createTime));
 
+            // 经入站闸门投递到chatId对应的会话邮箱，同一会话的后续步骤严格按到达顺序执行，不同会话并行
+            IngressGate.Lane lane = isPriorityMessage(envelope, sendUserId, sendMessage)
+                    ? IngressGate.Lane.HIGH : IngressGate.Lane.NORMAL;
+            ingressGate.submit(chatId, lane, () ->
+                    handleChatMessage(message, envelope, session, sendUserName, sendUserId,
+                            sendMessage, chatId, itemId, msgTime));
+
+        } catch (Exception e) {
+            log.error("【{}】处理消息时发生错误: {}", cookieId, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 判断是否走高优先级通道：订单/支付状态消息、红色提醒、手动发出的消息、发货触发和卡片消息
+     * 其余普通聊天消息在积压时可被合并或丢弃
+     */
+    private boolean isPriorityMessage(ChatEnvelope envelope, String sendUserId, String sendMessage) {
+        if (sendUserId.equals(myId) || envelope.redReminder() != null) {
+            return true;
+        }
+        return (orderStatusHandler != null && orderStatusHandler.isOrderStatusMessage(sendMessage))
+                || isSystemMessage(sendMessage)
+                || isAutoDeliveryTrigger(sendMessage)
+                || "[卡片消息]".equals(sendMessage);
+    }
+
+    /**
+     * 会话内的消息处理（步骤9-15），在chatId对应的邮箱中串行执行
+     */
+    private void handleChatMessage(JSONObject message, ChatEnvelope envelope, WebSocketSession session, String sendUserName,
+                                   String sendUserId, String sendMessage, String chatId,
+                                   String itemId, String msgTime) {
+        try {
             // ========== 步骤9: 判断消息方向 ==========
             // 对应Python: Line 7561-7568
             if (sendUserId.equals(myId)) {
                 log.info("[{}] 【手动发出】 商品({}): {}", msgTime, itemId, sendMessage);
 
-                // 暂停该chat_id的自动回复10分钟
-                pauseManager.pauseChat(chatId, cookieId);
+                // 按账号配置的暂停时长暂停该chat_id的自动回复
+                pauseManager.pauseChat(chatId, cookieId, accountConfigService.get(cookieId).pauseDurationMinutes());
 
                 return;
             }
@@ -2817,9 +2842,7 @@ public class XianyuClient extends TextWebSocketHandler {
             // 🔔 立即发送消息通知（独立于自动回复功能）
             // 检查是否为群组消息，如果是群组消息则跳过通知
             try {
-                JSONObject message1 = message.getJSONObject("1");
-                JSONObject message10 = message1.getJSONObject("10");
-                String sessionType = message10.getString("sessionType");
+                String sessionType = envelope.sessionType();
                 if (sessionType == null) {
                     sessionType = "1"; // 默认为个人消息类型
                 }
@@ -2842,7 +2865,7 @@ public class XianyuClient extends TextWebSocketHandler {
                         } catch (Exception notifyError) {
                             log.error("📢 发送消息通知失败: {}", notifyError.getMessage());
                         }
-                    }, scheduledExecutor);
+                    }, taskExecutor);
                 }
             } catch (Exception e) {
                 log.error("📱 消息通知处理异常: {}", e.getMessage());
@@ -2853,16 +2876,12 @@ public class XianyuClient extends TextWebSocketHandler {
             if (orderStatusHandler != null) {
                 try {
                     //处理系统消息的订单状态更新
-                    orderStatusHandler.handleSystemMessage(message, sendMessage, cookieId, msgTime);
+                    orderStatusHandler.handleSystemMessage(envelope, sendMessage, cookieId, msgTime);
 
                     // 处理红色提醒消息
-                    if (message.containsKey("3") && message.get("3") instanceof JSONObject) {
-                        JSONObject message3 = message.getJSONObject("3");
-                        String redReminder = message3.getString("redReminder");
-                        String userId = message3.getString("userId");
-                        if (redReminder != null) {
-                            orderStatusHandler.handleRedReminderMessage(message, redReminder, userId, cookieId, msgTime);
-                        }
+                    if (envelope.redReminder() != null) {
+                        orderStatusHandler.handleRedReminderMessage(envelope, envelope.redReminder(),
+                                envelope.redReminderUserId(), cookieId, msgTime);
                     }
                 } catch (Exception e) {
                     log.error("【{}】订单状态处理失败: {}", cookieId, e.getMessage());
@@ -2899,7 +2918,7 @@ public class XianyuClient extends TextWebSocketHandler {
                     } catch (Exception e) {
                         log.error("【{}】自动发货处理失败", cookieId, e);
                     }
-                }, scheduledExecutor);
+                }, taskExecutor);
 
                 return;
             }
@@ -2919,8 +2938,8 @@ public class XianyuClient extends TextWebSocketHandler {
                         log.warn("[{}] 【{}】✅ 商品 {} 归属验证通过", msgTime, cookieId, itemId);
                     }
 
-                    // 提取订单ID（使用已在2538行定义的orderId变量）
-                    orderId = extractOrderId(message);
+                    // 提取订单ID
+                    String orderId = envelope.orderId();
                     if (orderId == null) {
                         log.warn("[{}] 【{}】❌ 未能提取到订单ID，无法执行免拼发货", msgTime, cookieId);
                         return;
@@ -2937,11 +2956,9 @@ public class XianyuClient extends TextWebSocketHandler {
                     final String finalChatId = chatId;
                     final String finalMsgTime = msgTime;
 
-                    CompletableFuture.runAsync(() -> {
+                    // 延迟2秒执行
+                    runtime.newTimeout(cookieId, () -> {
                         try {
-                            // 延迟2秒
-                            Thread.sleep(2000);
-
                             // 调用自动免拼发货方法（简化版 - 实际应调用API）
                             log.info("[{}] 【{}】延迟2秒后执行免拼发货（autoFreeShipping已调用）", finalMsgTime, cookieId);
 
@@ -2951,7 +2968,7 @@ public class XianyuClient extends TextWebSocketHandler {
                         } catch (Exception e) {
                             log.error("【{}】处理免拼小刀异常", cookieId, e);
                         }
-                    }, scheduledExecutor);
+                    }, 2, TimeUnit.SECONDS);
 
                     return;
                 } else {
@@ -2965,7 +2982,7 @@ public class XianyuClient extends TextWebSocketHandler {
             // 对应Python: Line 7751-7762 调用 _schedule_debounced_reply
             // 使用防抖机制处理聊天消息回复
             // 如果用户连续发送消息，等待用户停止发送后再回复最后一条消息
-            scheduleDebouncedReply(chatId, message, session, sendUserName, sendUserId,
+            scheduleDebouncedReply(chatId, message, envelope, session, sendUserName, sendUserId,
                     sendMessage, itemId, msgTime);
 
             log.debug("【{}】消息处理完成（阶段3 - 全部15个步骤）", cookieId);
@@ -2998,12 +3015,20 @@ public class XianyuClient extends TextWebSocketHandler {
 
             String data = syncData.getString("data");
 
-            // 尝试Base64解码 + JSON解析（对应Python的第一次尝试）
+            // Base64解码一次，明文JSON直接解析，否则按MessagePack流式解码（对应Python的两次尝试）
+            MsgPackJsonDecoder.Result decoded;
             try {
-                byte[] decodedBytes = java.util.Base64.getDecoder().decode(data);
-                String decodedStr = new String(decodedBytes, "UTF-8");
-                JSONObject parsedData = JSON.parseObject(decodedStr);
+                decoded = MsgPackJsonDecoder.decodeSyncData(data);
+            } catch (Exception e) {
+                log.error("【{}】消息解密失败: {}", cookieId, e.getMessage());
+                return null;
+            }
+            if (decoded == null) {
+                return null;
+            }
 
+            JSONObject parsedData = decoded.data();
+            if (decoded.plainJson()) {
                 // 检查是否为系统消息（对应Python Line 7354-7366）
                 if (parsedData.containsKey("chatType")) {
                     if (parsedData.containsKey("operation")) {
@@ -3027,21 +3052,11 @@ public class XianyuClient extends TextWebSocketHandler {
                     }
                     return null;
                 }
-
-                // 如果不是系统消息，返回解析的数据
-                return parsedData;
-
-            } catch (Exception e) {
-                // Base64解析失败，尝试解密（对应Python Line 7372-7373）
-                try {
-                    String decryptedData = XianyuUtils.decrypt(data);
-                    return JSON.parseObject(decryptedData);
-                } catch (Exception decryptEx) {
-                    log.error("【{}】消息解密失败: {}", cookieId, decryptEx.getMessage());
-                    return null;
-                }
             }
 
+            // 如果不是系统消息，返回解析的数据
+            return parsedData;
+
         } catch (Exception e) {
             log.error("【{}】解密消息过程异常: {}", cookieId, e.getMessage());
             return null;
@@ -3049,242 +3064,14 @@ public class XianyuClient extends TextWebSocketHandler {
     }
 
     /**
-     * 从消息数据中提取消息ID，用于去重
-     * 对应Python: _extract_message_id (Line 6932-6974)
-     *
-     * @param messageData 原始消息数据
-     * @return 消息ID字符串，如果无法提取则返回null
+     * 获取消息的商品ID，提取失败时使用 auto_{userId}_{时间戳} 作为占位
+     * 对应Python: Line 7436-7445
      */
-    private String extractMessageId(JSONObject messageData) {
-        try {
-            // 尝试从 message['1']['10']['bizTag'] 中提取 messageId
-            if (messageData.containsKey("1") && messageData.get("1") instanceof JSONObject) {
-                JSONObject message1 = messageData.getJSONObject("1");
-                if (message1.containsKey("10") && message1.get("10") instanceof JSONObject) {
-                    JSONObject message10 = message1.getJSONObject("10");
-                    
-                    // 尝试从 bizTag 提取
-                    if (message10.containsKey("bizTag")) {
-                        String bizTag = message10.getString("bizTag");
-                        if (bizTag != null && !bizTag.isEmpty()) {
-                            try {
-                                JSONObject bizTagDict = JSON.parseObject(bizTag);
-                                if (bizTagDict.containsKey("messageId")) {
-                                    return bizTagDict.getString("messageId");
-                                }
-                            } catch (Exception е) {
-                                // bizTag 解析失败，继续尝试其他方式
-                            }
-                        }
-                    }
-                    
-                    // 如果 bizTag 解析失败，尝试从 extJson 中提取
-                    if (message10.containsKey("extJson")) {
-                        String extJson = message10.getString("extJson");
-                        if (extJson != null && !extJson.isEmpty()) {
-                            try {
-                                JSONObject extJsonDict = JSON.parseObject(extJson);
-                                if (extJsonDict.containsKey("messageId")) {
-                                    return extJsonDict.getString("messageId");
-                                }
-                            } catch (Exception е) {
-                                // extJson 解析失败
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            log.debug("【{}】提取消息ID失败: {}", cookieId, e.getMessage());
-        }
-        
-        return null;
-    }
-
-    /**
-     * 提取用户ID
-     * 对应Python: Line 7420-7434
-     */
-    private String extractUserId(JSONObject message) {
-        try {
-            Object message1 = message.get("1");
-            if (message1 instanceof String) {
-                String message1Str = (String) message1;
-                if (message1Str.contains("@")) {
-                    return message1Str.split("@")[0];
-                }
-            } else if (message1 instanceof JSONObject) {
-                JSONObject message1Obj = (JSONObject) message1;
-                if (message1Obj.containsKey("10") && message1Obj.get("10") instanceof JSONObject) {
-                    JSONObject message10 = message1Obj.getJSONObject("10");
-                    return message10.getString("senderUserId") != null ?
-                            message10.getString("senderUserId") : "unknown_user";
-                }
-            }
-        } catch (Exception e) {
-            log.debug("【{}】提取用户ID失败: {}", cookieId, e.getMessage());
-        }
-        return "unknown_user";
-    }
-
-    /**
-     * 提取商品ID
-     * 对应Python: Line 7436-7445
-     */
-    private String extractItemId(JSONObject message) {
-        try {
-            if (message.containsKey("1") && message.get("1") instanceof JSONObject) {
-                JSONObject message1 = message.getJSONObject("1");
-                if (message1.containsKey("10") && message1.get("10") instanceof JSONObject) {
-                    JSONObject message10 = message1.getJSONObject("10");
-                    String urlInfo = message10.getString("reminderUrl");
-                    if (urlInfo != null && urlInfo.contains("itemId=")) {
-                        return urlInfo.split("itemId=")[1].split("&")[0];
-                    }
-                }
-            }
-
-            // 如果没有提取到，调用辅助方法 extractItemIdFromMessage
-            // 对应Python: self.extract_item_id_from_message(message) (Line 3010-3084)
-            String extractedItemId = extractItemIdFromMessage(message);
-            if (extractedItemId != null) {
-                return extractedItemId;
-            }
-
-        } catch (Exception e) {
-            log.debug("【{}】提取商品ID失败: {}", cookieId, e.getMessage());
-        }
-
-        // 使用默认值
-        String userId = extractUserId(message);
-        return "auto_" + userId + "_" + System.currentTimeMillis();
-    }
-
-    /**
-     * 从消息中提取商品ID的辅助方法
-     * 对应Python: extract_item_id_from_message (Line 3010-3084)
-     *
-     * @param message 消息对象
-     * @return 商品ID，提取失败返回null
-     */
-    private String extractItemIdFromMessage(JSONObject message) {
-        try {
-            // 方法1: 从message["1"]中提取（如果是字符串格式）
-            Object message1 = message.get("1");
-            if (message1 instanceof String) {
-                // 尝试从字符串中提取数字ID（10位以上）
-                Pattern pattern = Pattern.compile("(\\d{10,})");
-                Matcher matcher = pattern.matcher((String) message1);
-                if (matcher.find()) {
-                    log.info("【{}】从message[1]字符串中提取商品ID: {}", cookieId, matcher.group(1));
-                    return matcher.group(1);
-                }
-            }
-
-            // 方法2: 从message["3"]中提取
-            if (message.containsKey("3") && message.get("3") instanceof JSONObject) {
-                JSONObject message3 = message.getJSONObject("3");
-
-                // 从extension中提取
-                if (message3.containsKey("extension") && message3.get("extension") instanceof JSONObject) {
-                    JSONObject extension = message3.getJSONObject("extension");
-                    String itemId = extension.getString("itemId");
-                    if (itemId == null) {
-                        itemId = extension.getString("item_id");
-                    }
-                    if (itemId != null) {
-                        log.info("【{}】从extension中提取商品ID: {}", cookieId, itemId);
-                        return itemId;
-                    }
-                }
-
-                // 从bizData中提取
-                if (message3.containsKey("bizData") && message3.get("bizData") instanceof JSONObject) {
-                    JSONObject bizData = message3.getJSONObject("bizData");
-                    String itemId = bizData.getString("itemId");
-                    if (itemId == null) {
-                        itemId = bizData.getString("item_id");
-                    }
-                    if (itemId != null) {
-                        log.info("【{}】从bizData中提取商品ID: {}", cookieId, itemId);
-                        return itemId;
-                    }
-                }
-
-                // 从其他可能的字段中提取
-                for (Map.Entry<String, Object> entry : message3.entrySet()) {
-                    if (entry.getValue() instanceof JSONObject) {
-                        JSONObject value = (JSONObject) entry.getValue();
-                        String itemId = value.getString("itemId");
-                        if (itemId == null) {
-                            itemId = value.getString("item_id");
-                        }
-                        if (itemId != null) {
-                            log.info("【{}】从{}字段中提取商品ID: {}", cookieId, entry.getKey(), itemId);
-                            return itemId;
-                        }
-                    }
-                }
-
-                // 从消息内容中提取数字ID
-                String content = message3.getString("content");
-                if (content != null && !content.isEmpty()) {
-                    Pattern pattern = Pattern.compile("(\\d{10,})");
-                    Matcher matcher = pattern.matcher(content);
-                    if (matcher.find()) {
-                        log.info("【{}】从消息内容中提取商品ID: {}", cookieId, matcher.group(1));
-                        return matcher.group(1);
-                    }
-                }
-            }
-
-            // 方法3: 遍历整个消息结构查找可能的商品ID
-            String foundItemId = findItemIdRecursive(message, "");
-            if (foundItemId != null) {
-                return foundItemId;
-            }
-
-            return null;
-
-        } catch (Exception e) {
-            log.debug("【{}】提取商品ID辅助方法失败: {}", cookieId, e.getMessage());
-            return null;
+    private String resolveItemId(ChatEnvelope envelope) {
+        if (envelope.itemId() != null) {
+            return envelope.itemId();
         }
-    }
-
-    /**
-     * 递归查找商品ID
-     * 对应Python: find_item_id_recursive (Line 3061-3084)
-     */
-    private String findItemIdRecursive(Object obj, String path) {
-        if (obj instanceof JSONObject) {
-            JSONObject jsonObj = (JSONObject) obj;
-
-            // 直接查找itemId字段
-            for (String key : new String[]{"itemId", "item_id", "id"}) {
-                if (jsonObj.containsKey(key)) {
-                    Object value = jsonObj.get(key);
-                    if (value instanceof String || value instanceof Number) {
-                        String valueStr = String.valueOf(value);
-                        if (valueStr.length() >= 10 && valueStr.matches("\\d+")) {
-                            log.info("【{}】从{}.{}中提取商品ID: {}", cookieId, path, key, valueStr);
-                            return valueStr;
-                        }
-                    }
-                }
-            }
-
-            // 递归查找子对象
-            for (Map.Entry<String, Object> entry : jsonObj.entrySet()) {
-                String newPath = path.isEmpty() ? entry.getKey() : path + "." + entry.getKey();
-                String result = findItemIdRecursive(entry.getValue(), newPath);
-                if (result != null) {
-                    return result;
-                }
-            }
-        }
-
-        return null;
+        return "auto_" + envelope.userIdOr("unknown_user") + "_" + System.currentTimeMillis();
     }
 
        // ============== 防抖回复调度逻辑 ==============
@@ -3295,6 +3082,7 @@ public class XianyuClient extends TextWebSocketHandler {
      *
      * @param chatId       聊天ID
      * @param messageData  原始消息数据
+     * @param envelope     消息字段信封
      * @param session      WebSocket会话
      * @param sendUserName 发送者用户名
      * @param sendUserId   发送者用户ID
@@ -3302,176 +3090,92 @@ public class XianyuClient extends TextWebSocketHandler {
      * @param itemId       商品ID
      * @param msgTime      消息时间
      */
-    private void scheduleDebouncedReply(String chatId, JSONObject messageData, WebSocketSession session,
+    private void scheduleDebouncedReply(String chatId, JSONObject messageData, ChatEnvelope envelope,
+                                      WebSocketSession session,
                                       String sendUserName, String sendUserId, String sendMessage,
                                       String itemId, String msgTime) {
         // 提取消息ID并检查是否已处理
-        String messageId = extractMessageId(messageData);
+        String messageId = envelope.messageId();
         
         // 如果没有 messageId，使用备用标识（chat_id + send_message + 时间戳）
         if (messageId == null || messageId.isEmpty()) {
-            try {
-                // 尝试从消息数据中提取时间戳
-                long createTime = 0;
-                if (messageData.containsKey("1") && messageData.get("1") instanceof JSONObject) {
-                    JSONObject message1 = messageData.getJSONObject("1");
-                    createTime = message1.getLongValue("5");
-                }
-                // 使用组合键作为备用标识
-                messageId = chatId + "_" + sendMessage + "_" + createTime;
-            } catch (Exception е) {
-                // 如果提取失败，使用当前时间戳
-                messageId = chatId + "_" + sendMessage + "_" + System.currentTimeMillis();
-            }
+            messageId = chatId + "_" + sendMessage + "_" + envelope.createTime();
         }
         
-        // 使用锁保护消息ID去重检查和更新
+        // 消息ID去重：时间分桶去重器，原子地检查并标记，过期和容量淘汰都按整桶进行
         final String finalMessageId = messageId;
-        processedMessageIdsLock.lock();
-        try {
-            long currentTime = System.currentTimeMillis() / 1000; // 转换为秒
-            
-            // 检查消息是否已处理且未过期
-            if (processedMessageIds.containsKey(finalMessageId)) {
-                long lastProcessTime = processedMessageIds.get(finalMessageId);
-                long timeElapsed = currentTime - lastProcessTime;
-                
-                // 如果消息处理时间未超过1小时，跳过
-                if (timeElapsed < MESSAGE_EXPIRE_TIME) {
-                    long remainingTime = MESSAGE_EXPIRE_TIME - timeElapsed;
-                    log.warn("【{}】消息ID {}... 已处理过，距离可重复回复还需 {} 秒",
-                            cookieId,
-                            finalMessageId.length() > 50 ? finalMessageId.substring(0, 50) : finalMessageId,
-                            remainingTime);
+        long elapsedMillis = processedMessageIds.markIfAbsent(finalMessageId);
+        if (elapsedMillis != MessageIdDeduplicator.ACCEPTED) {
+            // 消息处理时间未超过1小时，跳过
+            long remainingTime = Math.max(0L, (processedMessageIds.windowMillis() - elapsedMillis) / 1000);
+            log.warn("【{}】消息ID {}... 已处理过，距离可重复回复还需 {} 秒",
+                    cookieId,
+                    finalMessageId.length() > 50 ? finalMessageId.substring(0, 50) : finalMessageId,
+                    remainingTime);
+            return;
+        }
+        
+        // 防抖任务管理：本方法和防抖回调都在chat_id对应的会话邮箱中执行，同一会话天然串行，无需加锁
+        // 如果该chat_id已有防抖任务，取消它
+        if (messageDebounceTasks.containsKey(chatId)) {
+            MessageDebounceInfo oldInfo = messageDebounceTasks.get(chatId);
+            if (oldInfo != null && oldInfo.task != null && oldInfo.task.cancel()) {
+                log.warn("【{}】取消chat_id {} 的旧防抖任务", cookieId, chatId);
+            }
+        }
+        
+        // 更新最后一条消息信息
+        long currentTimer = System.currentTimeMillis();
+        JSONObject lastMessage = new JSONObject();
+        lastMessage.put("message_data", messageData);
+        lastMessage.put("send_user_name", sendUserName);
+        lastMessage.put("send_user_id", sendUserId);
+        lastMessage.put("send_message", sendMessage);
+        lastMessage.put("item_id", itemId);
+        lastMessage.put("msg_time", msgTime);
+        
+        // 保存session引用（不放入JSONObject）
+        final WebSocketSession finalSession = session;
+        
+        // 创建新的防抖任务（时间轮定时，到期后投递回该会话的邮箱执行）
+        HashedWheelTimer.Timeout debounceTask = runtime.newTimeout(cookieId, () -> chatMailboxes.submit(chatId, () -> {
+            long savedTimer = currentTimer; // 保存创建任务时的时间戳
+            try {
+                // 检查是否仍然是最新的消息（防止在等待期间有新消息）
+                MessageDebounceInfo debounceInfo = messageDebounceTasks.get(chatId);
+                if (debounceInfo == null) {
                     return;
-                } else {
-                    // 超过1小时，可以重新处理
-                    log.info("【{}】消息ID {}... 已超过 {} 分钟，允许重新回复",
-                            cookieId,
-                            finalMessageId.length() > 50 ? finalMessageId.substring(0, 50) : finalMessageId,
-                            (int) (timeElapsed / 60));
                 }
-            }
-            
-            // 标记消息ID为已处理（更新或添加时间戳）
-            processedMessageIds.put(finalMessageId, currentTime);
-            
-            // 定期清理过期的消息ID
-            if (processedMessageIds.size() > PROCESSED_MESSAGE_IDS_MAX_SIZE) {
-                // 清理超过1小时的旧记录
-                java.util.List<String> expiredIds = new java.util.ArrayList<>();
-                for (Map.Entry<String, Long> entry : processedMessageIds.entrySet()) {
-                    if (currentTime - entry.getValue() > MESSAGE_EXPIRE_TIME) {
-                        expiredIds.add(entry.getKey());
-                    }
+                // 检查时间戳是否匹配（确保这是最新的消息）
+                if (savedTimer != debounceInfo.timer) {
+                    log.warn("【{}】chat_id {} 在防抖期间有新消息，跳过旧消息处理", cookieId, chatId);
+                    return;
                 }
                 
-                for (String msgId : expiredIds) {
-                    processedMessageIds.remove(msgId);
-                }
+                // 从防抖任务中移除
+                messageDebounceTasks.remove(chatId);
                 
-                log.info("【{}】已清理 {} 个过期消息ID", cookieId, expiredIds.size());
+                // 处理最后一条消息
+                log.info("【{}】防抖延迟结束，开始处理chat_id {} 的最后一条消息: {}...",
+                        cookieId, chatId,
+                        sendMessage.length() > 30 ? sendMessage.substring(0, 30) : sendMessage);
                 
-                // 如果清理后仍然过大，删除最旧的一半
-                if (processedMessageIds.size() > PROCESSED_MESSAGE_IDS_MAX_SIZE) {
-                    java.util.List<Map.Entry<String, Long>> sortedIds = new java.util.ArrayList<>(processedMessageIds.entrySet());
-                    sortedIds.sort(Map.Entry.comparingByValue());
-                    int removeCount = sortedIds.size() / 2;
-                    for (int i = 0; i < removeCount; i++) {
-                        processedMessageIds.remove(sortedIds.get(i).getKey());
-                    }
-                    log.info("【{}】消息ID去重字典过大，已清理 {} 个最旧记录", cookieId, removeCount);
-                }
+                // 调用实际的回复处理方法
+                processChatMessageReply(messageData, finalSession, sendUserName, sendUserId,
+                        sendMessage, itemId, chatId, msgTime);
+                
+            } catch (Exception e) {
+                log.error("【{}】处理防抖回复时发生错误: {}", cookieId, e.getMessage(), e);
+                // 确保从防抖任务中移除
+                messageDebounceTasks.remove(chatId);
             }
-        } finally {
-            processedMessageIdsLock.unlock();
-        }
+        }), MESSAGE_DEBOUNCE_DELAY, TimeUnit.SECONDS);
         
-        // 使用防抖锁管理防抖任务
-        messageDebounceLock.lock();
-        try {
-            // 如果该chat_id已有防抖任务，取消它
-            if (messageDebounceTasks.containsKey(chatId)) {
-                MessageDebounceInfo oldInfo = messageDebounceTasks.get(chatId);
-                if (oldInfo != null && oldInfo.task != null && !oldInfo.task.isDone()) {
-                    oldInfo.task.cancel(true);
-                    log.warn("【{}】取消chat_id {} 的旧防抖任务", cookieId, chatId);
-                }
-            }
-            
-            // 更新最后一条消息信息
-            long currentTimer = System.currentTimeMillis();
-            JSONObject lastMessage = new JSONObject();
-            lastMessage.put("message_data", messageData);
-            lastMessage.put("send_user_name", sendUserName);
-            lastMessage.put("send_user_id", sendUserId);
-            lastMessage.put("send_message", sendMessage);
-            lastMessage.put("item_id", itemId);
-            lastMessage.put("msg_time", msgTime);
-            
-            // 保存session引用（不放入JSONObject）
-            final WebSocketSession finalSession = session;
-            
-            // 创建新的防抖任务
-            CompletableFuture<Void> debounceTask = CompletableFuture.runAsync(() -> {
-                long savedTimer = currentTimer; // 保存创建任务时的时间戳
-                try {
-                    // 等待防抖延迟时间
-                    Thread.sleep(MESSAGE_DEBOUNCE_DELAY * 1000L);
-                    
-                    // 检查是否仍然是最新的消息（防止在等待期间有新消息）
-                    messageDebounceLock.lock();
-                    try {
-                        if (!messageDebounceTasks.containsKey(chatId)) {
-                            return;
-                        }
-                        
-                        MessageDebounceInfo debounceInfo = messageDebounceTasks.get(chatId);
-                        // 检查时间戳是否匹配（确保这是最新的消息）
-                        if (savedTimer != debounceInfo.timer) {
-                            log.warn("【{}】chat_id {} 在防抖期间有新消息，跳过旧消息处理", cookieId, chatId);
-                            return;
-                        }
-                        
-                        // 从防抖任务中移除
-                        messageDebounceTasks.remove(chatId);
-                    } finally {
-                        messageDebounceLock.unlock();
-                    }
-                    
-                    // 处理最后一条消息
-                    log.info("【{}】防抖延迟结束，开始处理chat_id {} 的最后一条消息: {}...",
-                            cookieId, chatId,
-                            sendMessage.length() > 30 ? sendMessage.substring(0, 30) : sendMessage);
-                    
-                    // 调用实际的回复处理方法
-                    processChatMessageReply(messageData, finalSession, sendUserName, sendUserId,
-                            sendMessage, itemId, chatId, msgTime);
-                    
-                } catch (InterruptedException е) {
-                    log.warn("【{}】chat_id {} 的防抖任务被取消", cookieId, chatId);
-                    Thread.currentThread().interrupt();
-                } catch (Exception e) {
-                    log.error("【{}】处理防抖回复时发生错误: {}", cookieId, e.getMessage(), e);
-                    // 确保从防抖任务中移除
-                    messageDebounceLock.lock();
-                    try {
-                        messageDebounceTasks.remove(chatId);
-                    } finally {
-                        messageDebounceLock.unlock();
-                    }
-                }
-            }, scheduledExecutor);
-            
-            // 创建防抖信息对象并存储
-            MessageDebounceInfo debounceInfo = new MessageDebounceInfo(debounceTask, lastMessage, currentTimer);
-            messageDebounceTasks.put(chatId, debounceInfo);
-            
-            log.warn("【{}】为chat_id {} 创建防抖任务，延迟 {} 秒", cookieId, chatId, MESSAGE_DEBOUNCE_DELAY);
-            
-        } finally {
-            messageDebounceLock.unlock();
-        }
+        // 创建防抖信息对象并存储
+        MessageDebounceInfo debounceInfo = new MessageDebounceInfo(debounceTask, lastMessage, currentTimer);
+        messageDebounceTasks.put(chatId, debounceInfo);
+        
+        log.warn("【{}】为chat_id {} 创建防抖任务，延迟 {} 秒", cookieId, chatId, MESSAGE_DEBOUNCE_DELAY);
     }
 
     /**
@@ -3490,6 +3194,10 @@ public class XianyuClient extends TextWebSocketHandler {
     private void processChatMessageReply(JSONObject messageData, WebSocketSession session,
                                          String sendUserName, String sendUserId, String sendMessage,
                                          String itemId, String chatId, String msgTime) {
+        // 记录本次回复的序号，异步AI回复返回时据此判断是否已有更新的消息
+        long generation = replySequence.incrementAndGet();
+        replyGenerations.put(chatId, generation);
+        boolean awaitingAi = false;
         try {
             // 检查自动回复是否启用
             // 对应Python: Line 7140-7143
@@ -3545,7 +3253,7 @@ public class XianyuClient extends TextWebSocketHandler {
                 // 2. 首先尝试关键词匹配（传入商品ID）
                 // 对应Python: Line 7171-7178
                 try {
-                    reply = replyService.getKeywordReply(sendUserName, sendUserId, sendMessage, itemId);
+                    reply = replyService.getKeywordReply(cookieId, sendUserName, sendUserId, sendMessage, itemId);
                     if ("EMPTY_REPLY".equals(reply)) {
                         // 匹配到关键词但回复内容为空，不进行任何回复
                         log.info("[{}] 【{}】匹配到空回复关键词，跳过自动回复", msgTime, cookieId);
@@ -3558,146 +3266,259 @@ public class XianyuClient extends TextWebSocketHandler {
                     reply = null;
                 }
 
-                // 3. 关键词匹配失败，如果AI开关打开，尝试AI回复
+                // 3. 关键词匹配失败，如果AI开关打开，尝试AI回复（异步，不阻塞会话邮箱）
                 // 对应Python: Line 7179-7183
                 if (reply == null || reply.isEmpty()) {
-                    try {
-                        reply = replyService.getAiReply(sendUserName, sendUserId, sendMessage, itemId, chatId);
-                        if (reply != null && !reply.isEmpty()) {
-                            replySource = "AI"; // 标记为AI回复
-                        }
-                    } catch (Exception e) {
-                        log.error("【{}】AI回复获取失败: {}", cookieId, e.getMessage());
-                        reply = null;
-                    }
+                    final String aiMsgTime = msgTime;
+                    AtomicReference<String> earlySentence = new AtomicReference<>();
+                    FirstSentenceSender sentenceSender = sentence -> sendFirstSentence(session, sendUserName,
+                            sendUserId, itemId, chatId, generation, sentence, earlySentence);
+                    awaitingAi = true;
+                    replyService.getAiReplyAsync(cookieId, sendUserName, sendUserId, sendMessage, itemId, chatId,
+                                    sentenceSender)
+                            .whenComplete((aiReply, error) -> chatMailboxes.submit(chatId, () ->
+                                    continueAfterAiReply(session, sendUserName, sendUserId, sendMessage, itemId,
+                                            chatId, aiMsgTime, generation, aiReply, error, earlySentence.get())));
+                    return;
+                }
+            }
 
-                    // 4. 最后使用默认回复
-                    // 对应Python: Line 7184-7266
-                    if (reply == null || reply.isEmpty()) {
-                        try {
-                            Object defaultReplyResult = replyService.getDefaultReply(sendUserName, sendUserId,
-                                    sendMessage, chatId, itemId);
-                            
-                            if ("EMPTY_REPLY".equals(defaultReplyResult)) {
-                                // 默认回复内容为空，不进行任何回复
-                                log.info("[{}] 【{}】默认回复内容为空，跳过自动回复", msgTime, cookieId);
-                                return;
-                            }
-                            
-                            // 处理默认回复（可能包含图片和文字）
-                            // 对应Python: Line 7192-7266
-                            if (defaultReplyResult instanceof Map) {
-                                @SuppressWarnings("unchecked")
-                                Map<String, Object> defaultReplyMap = (Map<String, Object>) defaultReplyResult;
-                                replySource = "默认"; // 标记为默认回复
-                                
-                                String defaultImageUrl = (String) defaultReplyMap.get("image_url");
-                                String defaultText = (String) defaultReplyMap.get("text");
+            sendChatReply(session, sendUserName, sendUserId, itemId, chatId, msgTime, reply, replySource);
+        } catch (Exception e) {
+            // 对应Python: Line 7299-7300
+            log.error("【{}】处理聊天消息回复时发生错误: {}", cookieId, e.getMessage(), e);
+        } finally {
+            if (!awaitingAi) {
+                replyGenerations.remove(chatId, generation);
+            }
+        }
+    }
+
+    /**
+     * 流式AI回复的首句：投递到该会话的邮箱中发送，保证先于剩余内容发出
+     * 会话已有更新的消息或已暂停时不发送
+     *
+     * @param earlySentence 提交后记录首句原文，剩余内容据此截取
+     * @return 是否真正写出到连接
+     */
+    private CompletableFuture<Boolean> sendFirstSentence(WebSocketSession session, String sendUserName,
+                                                         String sendUserId, String itemId, String chatId,
+                                                         long generation, String sentence,
+                                                         AtomicReference<String> earlySentence) {
+        CompletableFuture<Boolean> sent = new CompletableFuture<>();
+        chatMailboxes.submit(chatId, () -> {
+            try {
+                if (!Long.valueOf(generation).equals(replyGenerations.get(chatId)) || pauseManager.isChatPaused(chatId)) {
+                    sent.complete(false);
+                    return;
+                }
+                String text = sentence.trim();
+                CompletableFuture<Void> written = sendMsg(session, chatId, sendUserId, text);
+                // 入队即记录：同一连接的业务帧按顺序写出，剩余内容一定排在首句之后
+                earlySentence.set(sentence);
+                logWhenWritten(written, "【AI首句发出】用户: {} (ID: {}), 商品({}): {}",
+                        sendUserName, sendUserId, itemId, text);
+                written.whenComplete((v, e) -> sent.complete(e == null));
+            } catch (Exception e) {
+                log.error("【{}】AI首句发送失败: {}", cookieId, e.getMessage());
+                sent.complete(false);
+            }
+        });
+        return sent;
+    }
+
+    /**
+     * 首句已提前发出后还需发送的内容
+     * 最终回复以首句开头时为其余部分；否则（如对冲请求的另一份结果胜出）为完整回复，不丢内容
+     */
+    static String remainingAfterEarlySentence(String aiReply, String earlySentence) {
+        if (aiReply.startsWith(earlySentence)) {
+            return aiReply.substring(earlySentence.length()).trim();
+        }
+        return aiReply;
+    }
+
+    /**
+     * AI回复返回后在该会话的邮箱中继续处理：AI无结果时使用默认回复，然后发送
+     * 等待AI期间该会话有新消息开始处理、或卖家手动回复触发暂停时，丢弃本次结果
+     *
+     * @param earlySentence 流式回复中已提前发出的首句，未发出时为null
+     */
+    private void continueAfterAiReply(WebSocketSession session, String sendUserName, String sendUserId,
+                                      String sendMessage, String itemId, String chatId, String msgTime,
+                                      long generation, String aiReply, Throwable error, String earlySentence) {
+        try {
+            if (!replyGenerations.remove(chatId, generation)) {
+                log.info("[{}] 【{}】chat_id {} 已有更新的消息，丢弃过期的AI回复", msgTime, cookieId, chatId);
+                return;
+            }
+            if (pauseManager.isChatPaused(chatId)) {
+                log.info("[{}] 【{}】chat_id {} 等待AI回复期间已暂停自动回复，丢弃AI回复", msgTime, cookieId, chatId);
+                return;
+            }
+            if (error != null) {
+                log.error("【{}】AI回复获取失败: {}", cookieId, error.getMessage());
+            }
+
+            if (earlySentence != null) {
+                // 首句已发出：只发送剩余内容，AI失败时也不再补发默认回复
+                if (aiReply == null) {
+                    return;
+                }
+                if (!aiReply.startsWith(earlySentence)) {
+                    log.warn("[{}] 【{}】chat_id {} AI回复与已发出的首句不一致，发送完整回复", msgTime, cookieId, chatId);
+                }
+                String rest = remainingAfterEarlySentence(aiReply, earlySentence);
+                if (!rest.isEmpty()) {
+                    sendChatReply(session, sendUserName, sendUserId, itemId, chatId, msgTime, rest, "AI");
+                }
+                return;
+            }
+
+            String reply = aiReply;
+            String replySource = "AI"; // 标记为AI回复
+
+            // 4. 最后使用默认回复
+            // 对应Python: Line 7184-7266
+            if (reply == null || reply.isEmpty()) {
+                try {
+                    Object defaultReplyResult = replyService.getDefaultReply(sendUserName, sendUserId,
+                            sendMessage, chatId, itemId);
+                    
+                    if ("EMPTY_REPLY".equals(defaultReplyResult)) {
+                        // 默认回复内容为空，不进行任何回复
+                        log.info("[{}] 【{}】默认回复内容为空，跳过自动回复", msgTime, cookieId);
+                        return;
+                    }
+                    
+                    // 处理默认回复（可能包含图片和文字）
+                    // 对应Python: Line 7192-7266
+                    if (defaultReplyResult instanceof Map) {
+                        @SuppressWarnings("unchecked")
+                        Map<String, Object> defaultReplyMap = (Map<String, Object>) defaultReplyResult;
+                        replySource = "默认"; // 标记为默认回复
+                        
+                        String defaultImageUrl = (String) defaultReplyMap.get("image_url");
+                        String defaultText = (String) defaultReplyMap.get("text");
+                        
+                        // 如果存在图片，先发送图片
+                        // 对应Python: Line 7198-7255
+                        if (defaultImageUrl != null && !defaultImageUrl.isEmpty()) {
+                            try {
+                                // Python中有复杂的图片处理逻辑（CDN检查、上传、尺寸获取）
+                                // Java中简化实现：直接使用图片URL
+                                String finalImageUrl = defaultImageUrl;
+                                int imageWidth = 800;  // 默认尺寸
+                                int imageHeight = 600; // 默认尺寸
                                 
-                                // 如果存在图片，先发送图片
-                                // 对应Python: Line 7198-7255
-                                if (defaultImageUrl != null && !defaultImageUrl.isEmpty()) {
-                                    try {
-                                        // Python中有复杂的图片处理逻辑（CDN检查、上传、尺寸获取）
-                                        // Java中简化实现：直接使用图片URL
-                                        String finalImageUrl = defaultImageUrl;
-                                        int imageWidth = 800;  // 默认尺寸
-                                        int imageHeight = 600; // 默认尺寸
-                                        
-                                        // 可以从配置或replyService获取图片尺寸
-                                        // 这里简化为使用默认值
-                                        
-                                        // 发送图片
-                                        if (finalImageUrl != null && !finalImageUrl.isEmpty()) {
-                                            sendImageMsg(session, chatId, sendUserId, finalImageUrl, null);
-                                            msgTime = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
-                                                    .format(new java.util.Date());
-                                            log.info("[{}] 【{}图片发出】用户: {} (ID: {}), 商品({}): 图片 {}",
-                                                    msgTime, replySource, sendUserName, sendUserId, itemId, finalImageUrl);
-                                        }
-                                    } catch (Exception e) {
-                                        log.error("【{}】默认回复图片发送失败: {}", cookieId, e.getMessage());
-                                    }
-                                }
+                                // 可以从配置或replyService获取图片尺寸
+                                // 这里简化为使用默认值
                                 
-                                // 然后发送文字（如果有）
-                                // 对应Python: Line 7257-7264
-                                if (defaultText != null && !defaultText.trim().isEmpty()) {
-                                    reply = defaultText;
-                                } else {
-                                    // 只有图片没有文字，已经发送完毕
-                                    if (defaultImageUrl != null && !defaultImageUrl.isEmpty()) {
-                                        return;
-                                    }
-                                    reply = null;
+                                // 发送图片
+                                if (finalImageUrl != null && !finalImageUrl.isEmpty()) {
+                                    logWhenWritten(sendImageMsg(session, chatId, sendUserId, finalImageUrl, null),
+                                            "【{}图片发出】用户: {} (ID: {}), 商品({}): 图片 {}",
+                                            replySource, sendUserName, sendUserId, itemId, finalImageUrl);
                                 }
-                            } else if (defaultReplyResult instanceof String) {
-                                // 字符串类型的默认回复
-                                reply = (String) defaultReplyResult;
-                                replySource = "默认";
-                            } else {
-                                reply = null;
+                            } catch (Exception e) {
+                                log.error("【{}】默认回复图片发送失败: {}", cookieId, e.getMessage());
+                            }
+                        }
+                        
+                        // 然后发送文字（如果有）
+                        // 对应Python: Line 7257-7264
+                        if (defaultText != null && !defaultText.trim().isEmpty()) {
+                            reply = defaultText;
+                        } else {
+                            // 只有图片没有文字，已经发送完毕
+                            if (defaultImageUrl != null && !defaultImageUrl.isEmpty()) {
+                                return;
                             }
-                        } catch (Exception e) {
-                            log.error("【{}】默认回复获取失败: {}", cookieId, e.getMessage());
                             reply = null;
                         }
+                    } else if (defaultReplyResult instanceof String) {
+                        // 字符串类型的默认回复
+                        reply = (String) defaultReplyResult;
+                        replySource = "默认";
+                    } else {
+                        reply = null;
                     }
+                } catch (Exception e) {
+                    log.error("【{}】默认回复获取失败: {}", cookieId, e.getMessage());
+                    reply = null;
                 }
             }
 
-            // 注意：这里只有商品ID，没有标题和详情，根据新的规则不保存到数据库
-            // 商品信息会在其他有完整信息的地方保存（如发货规则匹配时）
-            // 消息通知已在收到消息时立即发送，此处不再重复发送
-            // 对应Python: Line 7268-7270
-
-            // 如果有回复内容，发送消息
-            // 对应Python: Line 7272-7298
-            if (reply != null && !reply.isEmpty()) {
-                // 检查是否是图片发送标记
-                // 对应Python: Line 7274-7289
-                if (reply.startsWith("__IMAGE_SEND__")) {
-                    // 提取图片URL（关键词回复不包含卡券ID）
-                    String imageUrl = reply.replace("__IMAGE_SEND__", "");
-                    // 发送图片消息
-                    try {
-                        sendImageMsg(session, chatId, sendUserId, imageUrl, null);
-                        // 记录发出的图片消息
-                        msgTime = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
-                                .format(new java.util.Date());
-                        log.info("[{}] 【{}图片发出】用户: {} (ID: {}), 商品({}): 图片 {}",
-                                msgTime, replySource, sendUserName, sendUserId, itemId, imageUrl);
-                    } catch (Exception e) {
-                        // 图片发送失败，发送错误提示
-                        log.error("【{}】图片发送失败: {}", cookieId, e.getMessage());
-                        sendMsg(session, chatId, sendUserId, "抱歉，图片发送失败，请稍后重试。");
-                        msgTime = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
-                                .format(new java.util.Date());
-                        log.error("[{}] 【{}图片发送失败】用户: {} (ID: {}), 商品({})",
-                                msgTime, replySource, sendUserName, sendUserId, itemId);
-                    }
-                } else {
-                    // 普通文本消息
-                    // 对应Python: Line 7290-7295
-                    sendMsg(session, chatId, sendUserId, reply);
-                    // 记录发出的消息
+            sendChatReply(session, sendUserName, sendUserId, itemId, chatId, msgTime, reply, replySource);
+        } catch (Exception e) {
+            log.error("【{}】处理AI回复时发生错误: {}", cookieId, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 发送最终确定的回复（图片标记或文本）
+     * 对应Python: Line 7268-7298
+     */
+    private void sendChatReply(WebSocketSession session, String sendUserName, String sendUserId,
+                               String itemId, String chatId, String msgTime,
+                               String reply, String replySource) throws Exception {
+        // 注意：这里只有商品ID，没有标题和详情，根据新的规则不保存到数据库
+        // 商品信息会在其他有完整信息的地方保存（如发货规则匹配时）
+        // 消息通知已在收到消息时立即发送，此处不再重复发送
+        // 对应Python: Line 7268-7270
+
+        // 如果有回复内容，发送消息
+        // 对应Python: Line 7272-7298
+        if (reply != null && !reply.isEmpty()) {
+            // 检查是否是图片发送标记
+            // 对应Python: Line 7274-7289
+            if (reply.startsWith("__IMAGE_SEND__")) {
+                // 提取图片URL（关键词回复不包含卡券ID）
+                String imageUrl = reply.replace("__IMAGE_SEND__", "");
+                // 发送图片消息
+                try {
+                    // 写出后记录发出的图片消息
+                    logWhenWritten(sendImageMsg(session, chatId, sendUserId, imageUrl, null),
+                            "【{}图片发出】用户: {} (ID: {}), 商品({}): 图片 {}",
+                            replySource, sendUserName, sendUserId, itemId, imageUrl);
+                } catch (Exception e) {
+                    // 图片发送失败，发送错误提示
+                    log.error("【{}】图片发送失败: {}", cookieId, e.getMessage());
+                    sendMsg(session, chatId, sendUserId, "抱歉，图片发送失败，请稍后重试。");
                     msgTime = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
                             .format(new java.util.Date());
-                    log.info("[{}] 【{}发出】用户: {} (ID: {}), 商品({}): {}",
-                            msgTime, replySource, sendUserName, sendUserId, itemId, reply);
+                    log.error("[{}] 【{}图片发送失败】用户: {} (ID: {}), 商品({})",
+                            msgTime, replySource, sendUserName, sendUserId, itemId);
                 }
             } else {
-                // 对应Python: Line 7296-7298
-                msgTime = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
-                        .format(new java.util.Date());
-                log.info("[{}] 【{}】【系统】未找到匹配的回复规则，不回复", msgTime, cookieId);
+                // 普通文本消息
+                // 对应Python: Line 7290-7295
+                // 写出后记录发出的消息
+                logWhenWritten(sendMsg(session, chatId, sendUserId, reply),
+                        "【{}发出】用户: {} (ID: {}), 商品({}): {}",
+                        replySource, sendUserName, sendUserId, itemId, reply);
             }
-        } catch (Exception e) {
-            // 对应Python: Line 7299-7300
-            log.error("【{}】处理聊天消息回复时发生错误: {}", cookieId, e.getMessage(), e);
+        } else {
+            // 对应Python: Line 7296-7298
+            msgTime = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
+                    .format(new java.util.Date());
+            log.info("[{}] 【{}】【系统】未找到匹配的回复规则，不回复", msgTime, cookieId);
         }
     }
 
+    /**
+     * 消息写出后记录发出日志（时间取写出时刻；写出失败由 sendDataFrame 记录）
+     */
+    private void logWhenWritten(CompletableFuture<Void> written, String format, Object... args) {
+        written.thenRun(() -> {
+            Object[] withTime = new Object[args.length + 1];
+            withTime[0] = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new java.util.Date());
+            System.arraycopy(args, 0, withTime, 1, args.length);
+            log.info("[{}] " + format, withTime);
+        });
+    }
+
+
     // ============== 消息处理主逻辑 ==============
 
     /**
@@ -3705,12 +3526,12 @@ public class XianyuClient extends TextWebSocketHandler {
      * 对应Python的_handle_auto_delivery()方法
      * 注意：这是简化版本，核心流程完整但省略了部分复杂验证
      */
-    private void handleAutoDelivery(WebSocketSession session, JSONObject message,
+    private void handleAutoDelivery(WebSocketSession session, ChatEnvelope envelope,
                                     String sendUserName, String sendUserId,
                                     String itemId, String chatId) {
         try {
             // 提取订单ID
-            String orderId = extractOrderId(message);
+            String orderId = envelope.orderId();
 
             if (orderId == null) {
                 log.warn("【{}】未能提取到订单ID，跳过自动发货", cookieId);
@@ -3756,8 +3577,12 @@ public class XianyuClient extends TextWebSocketHandler {
                 // 简化实现：直接发送一个测试消息
                 String deliveryContent = "【自动发货】您的订单已发货，请查收！";
 
-                // 发送发货消息
-                sendMsg(session, chatId, sendUserId, deliveryContent);
+                // 发送发货消息（入队后即标记已发货，避免重复发货；写出失败需人工处理）
+                sendMsg(session, chatId, sendUserId, deliveryContent).whenComplete((v, e) -> {
+                    if (e != null) {
+                        log.error("【{}】订单 {} 发货消息写出失败，请手动发货: {}", cookieId, orderId, e.getMessage());
+                    }
+                });
 
                 // 标记已发货
                 markDeliverySent(orderId);
@@ -3767,10 +3592,10 @@ public class XianyuClient extends TextWebSocketHandler {
                 LOCK_HOLD_INFO.put(orderId, lockInfo);
 
                 // 启动延迟释放任务
-                CompletableFuture<Void> delayTask = delayedLockRelease(orderId, 10);
+                HashedWheelTimer.Timeout delayTask = delayedLockRelease(orderId, 10);
                 lockInfo.setTask(delayTask);
 
-                log.info("【{}】自动发货完成: {}", cookieId, orderId);
+                log.info("【{}】自动发货消息已提交: {}", cookieId, orderId);
 
             } finally {
                 orderLock.unlock();
@@ -4019,14 +3844,18 @@ public class XianyuClient extends TextWebSocketHandler {
      * 对应Python的update_config_cookies()方法
      */
     private void updateConfigCookies() {
+        String value = this.cookiesStr;
         try {
-            Optional<Cookie> cookieOpt = cookieRepository.findById(cookieId);
-            if (cookieOpt.isPresent()) {
-                Cookie cookie = cookieOpt.get();
-                cookie.setValue(this.cookiesStr);
-                cookieRepository.save(cookie);
-                log.warn("【{}】已更新Cookie到数据库", cookieId);
-            }
+            // Cookie更新需要确认落库，这里等待写入完成
+            writeBehindService.submit("cookies", () -> {
+                Optional<Cookie> cookieOpt = cookieRepository.findById(cookieId);
+                if (cookieOpt.isPresent()) {
+                    Cookie cookie = cookieOpt.get();
+                    cookie.setValue(value);
+                    cookieRepository.save(cookie);
+                    log.warn("【{}】已更新Cookie到数据库", cookieId);
+                }
+            }).join();
         } catch (Exception e) {
             log.error("【{}】更新数据库Cookie失败", cookieId, e);
         }
@@ -4076,6 +3905,9 @@ public class XianyuClient extends TextWebSocketHandler {
 
         int pageNumber = 1;
         int totalSaved = 0;
+        int totalInserted = 0;
+        int totalUpdated = 0;
+        int totalUnchanged = 0;
         int totalCount = 0;
 
         while (true) {
@@ -4109,6 +3941,9 @@ public class XianyuClient extends TextWebSocketHandler {
             Integer savedCount = (Integer) result.get("saved_count");
             if (savedCount != null) {
                 totalSaved += savedCount;
+                totalInserted += (Integer) result.get("inserted_count");
+                totalUpdated += (Integer) result.get("updated_count");
+                totalUnchanged += (Integer) result.get("unchanged_count");
             }
 
             log.info("【{}】第 {} 页获取到 {} 个商品", cookieId, pageNumber, currentItems.size());
@@ -4132,13 +3967,17 @@ public class XianyuClient extends TextWebSocketHandler {
             }
         }
 
-        log.info("【{}】所有商品获取完成，共 {} 个商品，保存了 {} 个", cookieId, totalCount, totalSaved);
+        log.info("【{}】所有商品获取完成，共 {} 个商品，保存了 {} 个（新增 {}，更新 {}，未变化 {}）", cookieId,
+                totalCount, totalSaved, totalInserted, totalUpdated, totalUnchanged);
 
         return Map.of(
                 "success", true,
                 "total_pages", pageNumber,
                 "total_count", totalCount,
-                "total_saved", totalSaved
+                "total_saved", totalSaved,
+                "total_inserted", totalInserted,
+                "total_updated", totalUpdated,
+                "total_unchanged", totalUnchanged
         );
     }
 
@@ -4283,10 +4122,10 @@ public class XianyuClient extends TextWebSocketHandler {
                 System.out.println("=".repeat(80));
 
                 // 自动保存商品信息到数据库
-                int savedCount = 0;
+                ItemInfoRepositoryCustom.UpsertResult saved = new ItemInfoRepositoryCustom.UpsertResult(0, 0, 0);
                 if (!itemsList.isEmpty()) {
-                    savedCount = saveItemsToDatabase(itemsList);
-                    log.info("【{}】已将 {} 个商品信息保存到数据库", cookieId, savedCount);
+                    saved = saveItemsToDatabase(itemsList);
+                    log.info("【{}】已将 {} 个商品信息保存到数据库", cookieId, saved.total());
                 }
 
                 return Map.of(
@@ -4295,7 +4134,10 @@ public class XianyuClient extends TextWebSocketHandler {
                         "page_size", pageSize,
                         "current_count", itemsList.size(),
                         "items", itemsList,
-                        "saved_count", savedCount
+                        "saved_count", saved.total(),
+                        "inserted_count", saved.inserted(),
+                        "updated_count", saved.updated(),
+                        "unchanged_count", saved.unchanged()
                 );
             } else {
                 // 检查是否是token失效
@@ -4328,58 +4170,42 @@ public class XianyuClient extends TextWebSocketHandler {
     /**
      * 保存商品列表到数据库
      * 对应Python: async def save_items_list_to_db(self, items_list)
+     * 整页商品在写线程的一个事务中批量写入，内容未变化的商品跳过
      *
      * @param itemsList 商品列表
-     * @return 保存的商品数量
+     * @return 新增、更新、未变化的商品数
      */
-    private int saveItemsToDatabase(java.util.List<Map<String, Object>> itemsList) {
-        int savedCount = 0;
-
-        try {
-            for (Map<String, Object> itemData : itemsList) {
-                try {
-                    String itemId = (String) itemData.get("id");
-                    if (itemId == null || itemId.isEmpty()) {
-                        log.warn("【{}】跳过保存：商品ID为空", cookieId);
-                        continue;
-                    }
-
-                    // 查找或创建商品实体
-                    ItemInfo itemInfo = itemInfoRepository.findByCookieIdAndItemId(cookieId, itemId)
-                            .orElse(new ItemInfo());
-
-                    // 设置字段
-                    itemInfo.setCookieId(cookieId);
-                    itemInfo.setItemId(itemId);
-                    itemInfo.setItemTitle((String) itemData.get("title"));
-                    itemInfo.setItemPrice((String) itemData.get("price"));
-
-                    // 尝试从 detail_params 中提取分类信息
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> detailParams = (Map<String, Object>) itemData.get("detail_params");
-                    if (detailParams != null) {
-                        Object categoryName = detailParams.get("categoryName");
-                        if (categoryName != null) {
-                            itemInfo.setItemCategory(categoryName.toString());
-                        }
-                    }
-
-                    // 保存到数据库
-                    itemInfoRepository.save(itemInfo);
-                    savedCount++;
-
-                } catch (Exception e) {
-                    log.error("【{}】保存商品信息失败: {}", cookieId, itemData.get("id"), e);
+    private ItemInfoRepositoryCustom.UpsertResult saveItemsToDatabase(java.util.List<Map<String, Object>> itemsList) {
+        java.util.List<ItemInfoRepositoryCustom.ItemRow> rows = new java.util.ArrayList<>(itemsList.size());
+        for (Map<String, Object> itemData : itemsList) {
+            String itemId = (String) itemData.get("id");
+            if (itemId == null || itemId.isEmpty()) {
+                log.warn("【{}】跳过保存：商品ID为空", cookieId);
+                continue;
+            }
+
+            // 尝试从 detail_params 中提取分类信息
+            String category = null;
+            if (itemData.get("detail_params") instanceof Map<?, ?> detailParams) {
+                Object categoryName = detailParams.get("categoryName");
+                if (categoryName != null) {
+                    category = categoryName.toString();
                 }
             }
+            rows.add(new ItemInfoRepositoryCustom.ItemRow(itemId, (String) itemData.get("title"),
+                    (String) itemData.get("price"), category));
+        }
 
-            log.info("【{}】成功保存 {} 个商品到数据库", cookieId, savedCount);
-
+        try {
+            ItemInfoRepositoryCustom.UpsertResult result = writeBehindService.submit("item_info",
+                    () -> itemInfoRepository.upsertItems(cookieId, rows)).join();
+            log.info("【{}】商品同步完成：新增 {}，更新 {}，未变化 {}", cookieId,
+                    result.inserted(), result.updated(), result.unchanged());
+            return result;
         } catch (Exception e) {
             log.error("【{}】批量保存商品信息时出错", cookieId, e);
+            return new ItemInfoRepositoryCustom.UpsertResult(0, 0, 0);
         }
-
-        return savedCount;
     }
 }
 
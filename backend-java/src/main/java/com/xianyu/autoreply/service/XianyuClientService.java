@@ -4,17 +4,24 @@ import com.xianyu.autoreply.entity.Cookie;
 import com.xianyu.autoreply.repository.CookieRepository;
 import com.xianyu.autoreply.repository.ItemInfoRepository;
 import com.xianyu.autoreply.service.captcha.CaptchaHandler;
+import com.xianyu.autoreply.service.intent.IntentService;
+import com.xianyu.autoreply.service.llm.LlmClient;
+import com.xianyu.autoreply.service.runtime.ClientRuntime;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
+@DependsOn("schemaMigrationService") // 迁移（索引）完成后再启动账号客户端
 public class XianyuClientService {
 
     private final CookieRepository cookieRepository;
@@ -25,11 +32,25 @@ public class XianyuClientService {
     private final OrderStatusHandler orderStatusHandler;
     private final Map<String, XianyuClient> clients = new ConcurrentHashMap<>();
     private final ItemInfoRepository itemInfoRepository;
+    private final AccountConfigService accountConfigService;
+    private final KeywordMatchService keywordMatchService;
+    private final LlmClient llmClient;
+    private final ConversationMemoryService conversationMemoryService;
+    private final AiReplyCacheService aiReplyCacheService;
+    private final AiReplyService aiReplyService;
+    private final IntentService intentService;
+    private final WriteBehindService writeBehindService;
+    // 所有客户端共享的运行时（工作线程池 + 调度器）
+    private final ClientRuntime clientRuntime = new ClientRuntime();
 
     @Autowired
     public XianyuClientService(CookieRepository cookieRepository, ReplyService replyService,
                                CaptchaHandler captchaHandler, BrowserService browserService,
-                               PauseManager pauseManager, OrderStatusHandler orderStatusHandler, ItemInfoRepository itemInfoRepository) {
+                               PauseManager pauseManager, OrderStatusHandler orderStatusHandler, ItemInfoRepository itemInfoRepository,
+                               AccountConfigService accountConfigService, KeywordMatchService keywordMatchService,
+                               LlmClient llmClient, ConversationMemoryService conversationMemoryService,
+                               AiReplyCacheService aiReplyCacheService, AiReplyService aiReplyService,
+                               IntentService intentService, WriteBehindService writeBehindService) {
         this.cookieRepository = cookieRepository;
         this.replyService = replyService;
         this.captchaHandler = captchaHandler;
@@ -37,6 +58,14 @@ public class XianyuClientService {
         this.pauseManager = pauseManager;
         this.orderStatusHandler = orderStatusHandler;
         this.itemInfoRepository = itemInfoRepository;
+        this.accountConfigService = accountConfigService;
+        this.keywordMatchService = keywordMatchService;
+        this.llmClient = llmClient;
+        this.conversationMemoryService = conversationMemoryService;
+        this.aiReplyCacheService = aiReplyCacheService;
+        this.aiReplyService = aiReplyService;
+        this.intentService = intentService;
+        this.writeBehindService = writeBehindService;
     }
 
     @PostConstruct
@@ -57,7 +86,7 @@ public class XianyuClientService {
         }
         XianyuClient client = new XianyuClient(cookieId, cookieRepository, replyService,
                 captchaHandler, browserService, pauseManager, orderStatusHandler,
-                itemInfoRepository);
+                itemInfoRepository, accountConfigService, writeBehindService, clientRuntime);
         clients.put(cookieId, client);
         client.start();
     }
@@ -72,4 +101,60 @@ public class XianyuClientService {
     public XianyuClient getClient(String cookieId) {
         return clients.get(cookieId);
     }
+
+    /**
+     * 获取共享运行时统计信息
+     */
+    public Map<String, Object> getRuntimeStats() {
+        Map<String, Object> stats = clientRuntime.getStats();
+        stats.put("clients", clients.size());
+
+        // 汇总所有客户端的帧统计、会话邮箱统计和出站写入统计
+        Map<String, Long> frames = new HashMap<>();
+        Map<String, Long> mailboxes = new HashMap<>();
+        Map<String, Long> outbound = new HashMap<>();
+        Map<String, Object> ingressByAccount = new HashMap<>();
+        Map<String, Object> outboundByAccount = new HashMap<>();
+        for (Map.Entry<String, XianyuClient> entry : clients.entrySet()) {
+            Map<String, Object> mailboxStats = entry.getValue().getMailboxStats();
+            mergeStats(frames, entry.getValue().getFrameStats());
+            mergeStats(mailboxes, mailboxStats);
+            ingressByAccount.put(entry.getKey(), mailboxStats);
+            Map<String, Object> outboundStats = entry.getValue().getOutboundStats();
+            mergeStats(outbound, outboundStats);
+            outboundByAccount.put(entry.getKey(), outboundStats);
+        }
+        stats.put("frames", frames);
+        stats.put("mailboxes", mailboxes);
+        stats.put("ingressByAccount", ingressByAccount);
+        stats.put("outbound", outbound);
+        stats.put("outboundByAccount", outboundByAccount);
+        stats.put("accountConfig", accountConfigService.getStats());
+        stats.put("keywords", keywordMatchService.getStats());
+        stats.put("llm", llmClient.getStats());
+        stats.put("llmBreakers", llmClient.getBreakerStats());
+        stats.put("conversations", conversationMemoryService.getStats());
+        stats.put("aiReplyCache", aiReplyCacheService.getStats());
+        stats.put("aiPrompt", aiReplyService.getStats());
+        stats.put("intent", intentService.getStats());
+        stats.put("dbWriter", writeBehindService.getStats());
+        return stats;
+    }
+
+    /**
+     * 合并数值型统计：max开头的取最大值，其余累加
+     */
+    private static void mergeStats(Map<String, Long> target, Map<String, Object> source) {
+        source.forEach((key, value) -> {
+            if (value instanceof Long) {
+                target.merge(key, (Long) value, key.startsWith("max") ? Math::max : Long::sum);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down XianyuClientService...");
+        clientRuntime.shutdown();
+    }
 }
@@ -0,0 +1,25 @@
+package com.xianyu.autoreply.service.intent;
+
+/**
+ * 买家消息意图分类器
+ * 结果决定AI回复使用的提示词，并写入 ai_conversations.intent 参与议价次数统计。
+ * 实现必须线程安全，且足够快以在消息处理线程上直接调用。
+ */
+public interface IntentClassifier {
+
+    String PRICE = "price";
+    String TECH = "tech";
+    String DEFAULT = "default";
+
+    /**
+     * 分类
+     *
+     * @return {@link #PRICE}、{@link #TECH} 或 {@link #DEFAULT}
+     */
+    String classify(String message);
+
+    /**
+     * 分类器名称（用于统计和日志）
+     */
+    String name();
+}
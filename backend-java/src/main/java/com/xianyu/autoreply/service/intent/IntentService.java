@@ -0,0 +1,229 @@
+package com.xianyu.autoreply.service.intent;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 意图分类服务
+ * 按配置 app.intent-classifier 选择分类器：lexicon（默认，关键词词典）或 naive-bayes（从模型文件加载，文件缺失时退回词典）。
+ * 朴素贝叶斯模型通过 {@link #train()} 离线训练，训练数据只来自人工标注的样本：
+ * 随代码提供的 classpath:intent/labeled_messages.tsv，加上卖家修正过的样本文件 app.intent-training-path（可选）。
+ * ai_conversations.intent 是分类器自己的输出，不能作为训练或评估的标签，否则词典会被拿来和自己比较，
+ * 模型也只会学着模仿（切换到 naive-bayes 后更会学习自己的输出）。
+ * 训练同时给出与词典分类器在留出集上的准确率对比和单条耗时。
+ */
+@Slf4j
+@Service
+public class IntentService {
+
+    private static final String MODE_NAIVE_BAYES = "naive-bayes";
+    private static final int MIN_TRAINING_SAMPLES = 50;
+    private static final double HOLDOUT_RATIO = 0.2;
+    private static final long SPLIT_SEED = 20240101L;
+    private static final int BENCHMARK_ROUNDS = 20;
+    private static final String BUILTIN_SAMPLES = "intent/labeled_messages.tsv";
+    private static final Set<String> LABELS = Set.of(IntentClassifier.PRICE, IntentClassifier.TECH,
+            IntentClassifier.DEFAULT);
+
+    private final String mode;
+    private final Path modelPath;
+    private final Path trainingPath;
+    private final LexiconIntentClassifier lexicon = new LexiconIntentClassifier();
+
+    private volatile IntentClassifier classifier = lexicon;
+    private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+    private final AtomicLong classifications = new AtomicLong(0);
+    private static volatile int benchmarkSink; // 防止计时循环被优化掉
+
+    public IntentService(@Value("${app.intent-classifier:lexicon}") String mode,
+                         @Value("${app.intent-model-path:./db/intent_model.bin}") String modelPath,
+                         @Value("${app.intent-training-path:./db/intent_labeled.tsv}") String trainingPath) {
+        this.mode = mode;
+        this.modelPath = Paths.get(modelPath);
+        this.trainingPath = Paths.get(trainingPath);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!MODE_NAIVE_BAYES.equals(mode)) {
+            log.info("意图分类器: {}", classifier.name());
+            return;
+        }
+        if (!Files.exists(modelPath)) {
+            log.warn("意图模型文件不存在: {}，使用词典分类器（可调用训练接口生成模型）", modelPath);
+            return;
+        }
+        try {
+            classifier = NaiveBayesIntentClassifier.load(modelPath);
+            log.info("意图分类器: {}（模型 {}）", classifier.name(), modelPath);
+        } catch (IOException e) {
+            log.error("加载意图模型失败: {}，使用词典分类器", e.getMessage());
+        }
+    }
+
+    /**
+     * 识别消息意图
+     */
+    public String classify(String message) {
+        String intent = classifier.classify(message);
+        classifications.incrementAndGet();
+        counts.computeIfAbsent(intent, k -> new AtomicLong()).incrementAndGet();
+        return intent;
+    }
+
+    /**
+     * 用人工标注的样本训练朴素贝叶斯模型并保存；配置为 naive-bayes 时立即生效
+     *
+     * @return 训练报告：样本数、留出集上两种分类器的准确率和混淆情况、单条分类耗时
+     */
+    public synchronized Map<String, Object> train() throws IOException {
+        List<String[]> samples;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ClassPathResource(BUILTIN_SAMPLES).getInputStream(), StandardCharsets.UTF_8))) {
+            samples = parseSamples(reader, BUILTIN_SAMPLES);
+        }
+        int builtinSamples = samples.size();
+        if (Files.exists(trainingPath)) {
+            try (BufferedReader reader = Files.newBufferedReader(trainingPath, StandardCharsets.UTF_8)) {
+                samples.addAll(parseSamples(reader, trainingPath.toString()));
+            }
+        }
+        if (samples.size() < MIN_TRAINING_SAMPLES) {
+            throw new IllegalStateException("训练样本不足: " + samples.size() + " 条，至少需要 " + MIN_TRAINING_SAMPLES + " 条");
+        }
+        Collections.shuffle(samples, new Random(SPLIT_SEED));
+        int holdoutSize = Math.max(1, (int) (samples.size() * HOLDOUT_RATIO));
+        List<String[]> holdout = samples.subList(0, holdoutSize);
+        List<String[]> training = samples.subList(holdoutSize, samples.size());
+
+        List<String> texts = new ArrayList<>(training.size());
+        List<String> labels = new ArrayList<>(training.size());
+        for (String[] sample : training) {
+            texts.add(sample[0]);
+            labels.add(sample[1]);
+        }
+        long trainStart = System.nanoTime();
+        NaiveBayesIntentClassifier model = NaiveBayesIntentClassifier.train(texts, labels);
+        long trainMillis = (System.nanoTime() - trainStart) / 1_000_000;
+        model.save(modelPath);
+
+        Map<String, Object> report = new HashMap<>();
+        report.put("samples", samples.size());
+        report.put("builtinSamples", builtinSamples);
+        report.put("correctedSamples", samples.size() - builtinSamples);
+        report.put("trainingSamples", training.size());
+        report.put("holdoutSamples", holdout.size());
+        report.put("trainMillis", trainMillis);
+        report.put("modelPath", modelPath.toAbsolutePath().toString());
+        report.put("modelBytes", Files.size(modelPath));
+        report.put("labels", model.labels());
+        report.put("lexicon", evaluate(lexicon, holdout));
+        report.put("naiveBayes", evaluate(model, holdout));
+
+        if (MODE_NAIVE_BAYES.equals(mode)) {
+            classifier = model;
+            report.put("active", true);
+        } else {
+            report.put("active", false);
+        }
+        log.info("意图模型训练完成: 样本 {} 条，词典准确率 {}，朴素贝叶斯准确率 {}",
+                samples.size(), ((Map<?, ?>) report.get("lexicon")).get("accuracyPercent"),
+                ((Map<?, ?>) report.get("naiveBayes")).get("accuracyPercent"));
+        return report;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("classifier", classifier.name());
+        stats.put("classifications", classifications.get());
+        Map<String, Object> byIntent = new HashMap<>();
+        counts.forEach((intent, count) -> byIntent.put(intent, count.get()));
+        stats.put("byIntent", byIntent);
+        return stats;
+    }
+
+    /**
+     * 解析标注样本：每行 {@code 意图<TAB>消息}，空行和 # 开头的行忽略
+     *
+     * @return [消息, 意图] 列表
+     * @throws IllegalArgumentException 格式错误或意图不是 price/tech/default
+     */
+    static List<String[]> parseSamples(BufferedReader reader, String source) throws IOException {
+        List<String[]> samples = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            int tab = line.indexOf('\t');
+            String intent = tab < 0 ? "" : line.substring(0, tab).trim();
+            String content = tab < 0 ? "" : line.substring(tab + 1).trim();
+            if (!LABELS.contains(intent) || content.isEmpty()) {
+                throw new IllegalArgumentException(source + " 第 " + lineNumber + " 行格式错误，应为 意图<TAB>消息，意图为 "
+                        + LABELS + ": " + line);
+            }
+            samples.add(new String[]{content, intent});
+        }
+        return samples;
+    }
+
+    /**
+     * 在留出集上评估准确率、混淆矩阵（真实意图 -> 预测意图 -> 数量）和单条分类耗时
+     */
+    private static Map<String, Object> evaluate(IntentClassifier candidate, List<String[]> holdout) {
+        int correct = 0;
+        Map<String, Map<String, Integer>> confusion = new HashMap<>();
+        for (String[] sample : holdout) {
+            String predicted = candidate.classify(sample[0]);
+            if (predicted.equals(sample[1])) {
+                correct++;
+            }
+            confusion.computeIfAbsent(sample[1], k -> new HashMap<>()).merge(predicted, 1, Integer::sum);
+        }
+
+        // 预热后多轮计时，取每条平均耗时
+        int sink = 0;
+        for (String[] sample : holdout) {
+            sink += candidate.classify(sample[0]).length();
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            for (String[] sample : holdout) {
+                sink += candidate.classify(sample[0]).length();
+            }
+        }
+        benchmarkSink = sink;
+        long nanosPerMessage = (System.nanoTime() - start) / ((long) BENCHMARK_ROUNDS * holdout.size());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("accuracyPercent", Math.round(correct * 10000.0 / holdout.size()) / 100.0);
+        result.put("confusion", confusion);
+        result.put("nanosPerMessage", nanosPerMessage);
+        return result;
+    }
+}
@@ -0,0 +1,63 @@
+package com.xianyu.autoreply.service.intent;
+
+import com.xianyu.autoreply.utils.AhoCorasick;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 词典意图分类器
+ * 议价词和技术词编译为一个 Aho-Corasick 自动机，一次扫描消息即可得到所有命中；
+ * 命中议价词即为 price，否则命中技术词为 tech，都未命中为 default（与 ai_reply_engine.py 的优先级一致）。
+ */
+public final class LexiconIntentClassifier implements IntentClassifier {
+
+    // Price keywords (from ai_reply_engine.py)
+    private static final String[] PRICE_KEYWORDS = {
+            "便宜", "优惠", "刀", "降价", "包邮", "价格", "多少钱", "能少", "还能", "最低", "底价",
+            "实诚价", "到100", "能到", "包个邮", "给个价", "什么价"
+    };
+
+    // Tech keywords
+    private static final String[] TECH_KEYWORDS = {"怎么用", "参数", "坏了", "故障", "设置", "说明书", "功能", "用法", "教程", "驱动"};
+
+    private final AhoCorasick automaton;
+    private final String[] intents; // 模式序号 -> 意图
+
+    public LexiconIntentClassifier() {
+        List<String> patterns = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        for (String keyword : PRICE_KEYWORDS) {
+            patterns.add(keyword);
+            labels.add(PRICE);
+        }
+        for (String keyword : TECH_KEYWORDS) {
+            patterns.add(keyword);
+            labels.add(TECH);
+        }
+        this.automaton = AhoCorasick.build(patterns);
+        this.intents = labels.toArray(new String[0]);
+    }
+
+    @Override
+    public String classify(String message) {
+        if (message == null || message.isEmpty()) {
+            return DEFAULT;
+        }
+        int[] best = {Integer.MAX_VALUE};
+        automaton.search(message, index -> {
+            int priority = PRICE.equals(intents[index]) ? 0 : 1;
+            best[0] = Math.min(best[0], priority);
+        });
+        return switch (best[0]) {
+            case 0 -> PRICE;
+            case 1 -> TECH;
+            default -> DEFAULT;
+        };
+    }
+
+    @Override
+    public String name() {
+        return "lexicon";
+    }
+}
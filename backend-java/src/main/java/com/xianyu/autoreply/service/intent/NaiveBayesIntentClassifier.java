@@ -0,0 +1,194 @@
+package com.xianyu.autoreply.service.intent;
+
+import com.xianyu.autoreply.utils.MinHash;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 多项式朴素贝叶斯意图分类器
+ * 特征为归一化消息的字符一元组和二元组，哈希到 2^{@value #BUCKET_BITS} 个桶（无需维护词表）。
+ * 模型由 {@link #train(List, List)} 离线训练，序列化为 gzip 压缩的二进制文件；打分只做数组查表和加法，单条消息耗时微秒级。
+ */
+public final class NaiveBayesIntentClassifier implements IntentClassifier {
+
+    private static final int MAGIC = 0x494E5442; // "INTB"
+    private static final int FORMAT_VERSION = 1;
+    private static final int BUCKET_BITS = 14;
+    private static final int BUCKETS = 1 << BUCKET_BITS;
+    private static final double SMOOTHING = 1.0; // 拉普拉斯平滑
+
+    private final String[] labels;
+    private final float[] logPriors;
+    private final float[][] logLikelihoods; // [类别][特征桶]
+
+    private NaiveBayesIntentClassifier(String[] labels, float[] logPriors, float[][] logLikelihoods) {
+        this.labels = labels;
+        this.logPriors = logPriors;
+        this.logLikelihoods = logLikelihoods;
+    }
+
+    /**
+     * 训练
+     *
+     * @param texts  消息文本
+     * @param labels 与 texts 一一对应的意图标签
+     */
+    public static NaiveBayesIntentClassifier train(List<String> texts, List<String> labels) {
+        if (texts.size() != labels.size() || texts.isEmpty()) {
+            throw new IllegalArgumentException("训练样本为空或文本与标签数量不一致");
+        }
+        Map<String, Integer> classIndex = new LinkedHashMap<>();
+        for (String label : labels) {
+            classIndex.putIfAbsent(label, classIndex.size());
+        }
+        int numClasses = classIndex.size();
+        long[] docCounts = new long[numClasses];
+        long[][] featureCounts = new long[numClasses][BUCKETS];
+        long[] featureTotals = new long[numClasses];
+
+        for (int i = 0; i < texts.size(); i++) {
+            int c = classIndex.get(labels.get(i));
+            docCounts[c]++;
+            int[] features = features(texts.get(i));
+            for (int feature : features) {
+                featureCounts[c][feature]++;
+            }
+            featureTotals[c] += features.length;
+        }
+
+        String[] classLabels = classIndex.keySet().toArray(new String[0]);
+        float[] logPriors = new float[numClasses];
+        float[][] logLikelihoods = new float[numClasses][BUCKETS];
+        for (int c = 0; c < numClasses; c++) {
+            logPriors[c] = (float) Math.log((double) docCounts[c] / texts.size());
+            double denominator = featureTotals[c] + SMOOTHING * BUCKETS;
+            for (int b = 0; b < BUCKETS; b++) {
+                logLikelihoods[c][b] = (float) Math.log((featureCounts[c][b] + SMOOTHING) / denominator);
+            }
+        }
+        return new NaiveBayesIntentClassifier(classLabels, logPriors, logLikelihoods);
+    }
+
+    @Override
+    public String classify(String message) {
+        int[] features = features(message);
+        if (features.length == 0) {
+            return DEFAULT;
+        }
+        int best = 0;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < labels.length; c++) {
+            double score = logPriors[c];
+            float[] likelihoods = logLikelihoods[c];
+            for (int feature : features) {
+                score += likelihoods[feature];
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return labels[best];
+    }
+
+    @Override
+    public String name() {
+        return "naive-bayes";
+    }
+
+    /**
+     * 模型包含的意图类别
+     */
+    public String[] labels() {
+        return labels.clone();
+    }
+
+    // ============== 序列化 ==============
+
+    public void save(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(tmp))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(BUCKET_BITS);
+            out.writeInt(labels.length);
+            for (int c = 0; c < labels.length; c++) {
+                out.writeUTF(labels[c]);
+                out.writeFloat(logPriors[c]);
+                for (float value : logLikelihoods[c]) {
+                    out.writeFloat(value);
+                }
+            }
+        }
+        Files.move(tmp, path, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static NaiveBayesIntentClassifier load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(path))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是意图模型文件: " + path);
+            }
+            int version = in.readInt();
+            int bucketBits = in.readInt();
+            if (version != FORMAT_VERSION || bucketBits != BUCKET_BITS) {
+                throw new IOException("意图模型版本不兼容: version=" + version + ", bucketBits=" + bucketBits);
+            }
+            int numClasses = in.readInt();
+            String[] labels = new String[numClasses];
+            float[] logPriors = new float[numClasses];
+            float[][] logLikelihoods = new float[numClasses][BUCKETS];
+            for (int c = 0; c < numClasses; c++) {
+                labels[c] = in.readUTF();
+                logPriors[c] = in.readFloat();
+                for (int b = 0; b < BUCKETS; b++) {
+                    logLikelihoods[c][b] = in.readFloat();
+                }
+            }
+            return new NaiveBayesIntentClassifier(labels, logPriors, logLikelihoods);
+        }
+    }
+
+    // ============== 特征 ==============
+
+    /**
+     * 归一化文本的字符一元组 + 二元组，哈希到特征桶
+     */
+    private static int[] features(String message) {
+        String text = MinHash.normalize(message);
+        if (text.isEmpty()) {
+            return new int[0];
+        }
+        int[] features = new int[text.length() * 2 - 1];
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            features[n++] = bucket(c);
+            if (i + 1 < text.length()) {
+                features[n++] = bucket(((long) c << 16 | text.charAt(i + 1)) + 0x10000L);
+            }
+        }
+        return features;
+    }
+
+    private static int bucket(long shingle) {
+        long h = shingle * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> (64 - BUCKET_BITS));
+    }
+}
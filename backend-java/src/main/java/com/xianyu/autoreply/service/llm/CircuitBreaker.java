@@ -0,0 +1,224 @@
+package com.xianyu.autoreply.service.llm;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 单个LLM接口（地址 + 模型）的熔断器
+ * - 关闭：统计最近 {@value #WINDOW_SIZE} 次调用，样本足够且失败率或成功调用的P95延迟超过阈值时打开
+ * - 打开：直接拒绝调用（不发请求、不占并发额度），持续一段时间后进入半开；连续打开时持续时间翻倍，有上限
+ * - 半开：同一时刻只放行一个探测请求，连续 {@value #HALF_OPEN_SUCCESSES} 次成功后关闭，任一失败重新打开
+ */
+@Slf4j
+public final class CircuitBreaker {
+
+    private static final int WINDOW_SIZE = 20;
+    private static final int MIN_CALLS = 10; // 打开熔断所需的最少样本
+    private static final int FAILURE_RATE_PERCENT = 50;
+    private static final long SLOW_P95_MILLIS = 15_000;
+    private static final long OPEN_MILLIS = 30_000;
+    private static final long MAX_OPEN_MILLIS = 5 * 60_000;
+    private static final int HALF_OPEN_SUCCESSES = 3;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String endpoint;
+    private final LongSupplier clock;
+
+    // 以下字段由 this 保护
+    private State state = State.CLOSED;
+    private final long[] window = new long[WINDOW_SIZE]; // 成功为耗时毫秒，失败为 -1
+    private int next;
+    private int size;
+    private long openUntil;
+    private long openMillis = OPEN_MILLIS;
+    private boolean probeInFlight;
+    private int probeSuccesses;
+    private long stateSince;
+    private String lastReason;
+
+    private final AtomicLong rejected = new AtomicLong(0);
+    private final AtomicLong opened = new AtomicLong(0);
+
+    CircuitBreaker(String endpoint) {
+        this(endpoint, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(String endpoint, LongSupplier clock) {
+        this.endpoint = endpoint;
+        this.clock = clock;
+        this.stateSince = clock.getAsLong();
+    }
+
+    public String endpoint() {
+        return endpoint;
+    }
+
+    /**
+     * 申请调用许可；返回true时调用方必须在调用结束后回报 {@link #onSuccess}、{@link #onFailure} 或 {@link #onIgnored}
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() < openUntil) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            transition(State.HALF_OPEN, "打开时长已到，进入半开探测");
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            probeInFlight = true;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess(long millis) {
+        if (state == State.OPEN) {
+            return; // 打开前已发出的调用，不计入新窗口
+        }
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+            if (++probeSuccesses >= HALF_OPEN_SUCCESSES) {
+                openMillis = OPEN_MILLIS;
+                transition(State.CLOSED, "探测成功");
+            }
+            return;
+        }
+        record(millis);
+    }
+
+    public synchronized void onFailure(String reason) {
+        lastReason = reason;
+        if (state == State.OPEN) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+            openMillis = Math.min(openMillis * 2, MAX_OPEN_MILLIS);
+            open("探测失败: " + reason);
+            return;
+        }
+        record(-1);
+    }
+
+    /**
+     * 调用未到达服务商（如本地排队已满），不计入统计
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    /**
+     * 手动关闭熔断（管理接口）
+     */
+    public synchronized void reset() {
+        openMillis = OPEN_MILLIS;
+        transition(State.CLOSED, "手动重置");
+    }
+
+    /**
+     * 手动打开熔断（管理接口，用于主动摘除服务商）
+     */
+    public synchronized void forceOpen() {
+        open("手动打开");
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (this) {
+            long now = clock.getAsLong();
+            stats.put("state", state.name());
+            stats.put("stateSinceMillis", now - stateSince);
+            stats.put("openRemainingMillis", state == State.OPEN ? Math.max(0, openUntil - now) : 0L);
+            stats.put("windowCalls", (long) size);
+            stats.put("failureRatePercent", (long) failureRatePercent());
+            stats.put("p95Millis", p95Millis());
+            stats.put("lastFailure", lastReason);
+        }
+        stats.put("rejected", rejected.get());
+        stats.put("opened", opened.get());
+        return stats;
+    }
+
+    // ============== 内部实现（调用方持有 this 锁） ==============
+
+    private void record(long millis) {
+        window[next] = millis;
+        next = (next + 1) % WINDOW_SIZE;
+        size = Math.min(size + 1, WINDOW_SIZE);
+        if (size < MIN_CALLS) {
+            return;
+        }
+        int failureRate = failureRatePercent();
+        if (failureRate >= FAILURE_RATE_PERCENT) {
+            open("失败率 " + failureRate + "%");
+            return;
+        }
+        long p95 = p95Millis();
+        if (p95 >= SLOW_P95_MILLIS) {
+            open("P95延迟 " + p95 + "ms");
+        }
+    }
+
+    private void open(String reason) {
+        openUntil = clock.getAsLong() + openMillis;
+        opened.incrementAndGet();
+        transition(State.OPEN, reason + "，" + openMillis / 1000 + " 秒内不再调用");
+    }
+
+    private void transition(State target, String reason) {
+        if (state != target) {
+            log.warn("LLM熔断器 [{}]: {} -> {}（{}）", endpoint, state, target, reason);
+        }
+        state = target;
+        stateSince = clock.getAsLong();
+        size = 0;
+        next = 0;
+        probeInFlight = false;
+        probeSuccesses = 0;
+    }
+
+    private int failureRatePercent() {
+        if (size == 0) {
+            return 0;
+        }
+        int failures = 0;
+        for (int i = 0; i < size; i++) {
+            if (window[i] < 0) {
+                failures++;
+            }
+        }
+        return failures * 100 / size;
+    }
+
+    private long p95Millis() {
+        long[] latencies = new long[size];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (window[i] >= 0) {
+                latencies[n++] = window[i];
+            }
+        }
+        if (n == 0) {
+            return 0;
+        }
+        Arrays.sort(latencies, 0, n);
+        return latencies[Math.max(0, (int) Math.ceil(0.95 * n) - 1)];
+    }
+}
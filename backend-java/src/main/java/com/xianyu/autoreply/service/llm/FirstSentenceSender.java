@@ -0,0 +1,19 @@
+package com.xianyu.autoreply.service.llm;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 流式回复的首句发送回调
+ * 在读取流的线程上调用，实现方不应阻塞（发送应投递到会话自己的执行队列）
+ */
+@FunctionalInterface
+public interface FirstSentenceSender {
+
+    /**
+     * 发送首句
+     *
+     * @param sentence 首句原文（回复全文的前缀，未去除空白）
+     * @return 完成值表示是否真的发出（会话已过期或被暂停时为false）
+     */
+    CompletableFuture<Boolean> send(String sentence);
+}
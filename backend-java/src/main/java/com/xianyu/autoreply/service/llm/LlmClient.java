@@ -0,0 +1,815 @@
+package com.xianyu.autoreply.service.llm;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.xianyu.autoreply.model.AccountConfigSnapshot;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步LLM客户端
+ * 所有账号共享一个OkHttp客户端（连接池复用、TLS上自动协商HTTP/2），调用全程不阻塞业务线程：
+ * - 超时：连接 / 读取 / 单次请求总时长，以及包含排队时间在内的整体截止时间
+ * - 并发：按服务商（OpenAI兼容、DashScope、Gemini）限制在途请求数，超出时进入有界等待队列，队列满直接拒绝
+ * - 对冲：服务商样本足够时，主请求超过近期P95延迟仍未返回且有空闲并发额度，则发出第二个相同请求，先返回者胜出
+ * - 流式：按SSE逐段解析，首句完整后立即交给调用方发送（流式请求不对冲）
+ * - 熔断：按接口地址 + 模型统计失败率和延迟，熔断打开期间直接失败（{@link CircuitOpenException}），由调用方走降级
+ */
+@Slf4j
+@Component
+public class LlmClient {
+
+    private static final MediaType JSON_TYPE = MediaType.get("application/json; charset=utf-8");
+    private static final String GEMINI_BASE_URL = "https://generativelanguage.googleapis.com/v1beta";
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 5;
+    private static final long READ_TIMEOUT_SECONDS = 30;
+    private static final long WRITE_TIMEOUT_SECONDS = 10;
+    private static final long CALL_TIMEOUT_SECONDS = 40; // 单次HTTP请求总时长
+    private static final long DEADLINE_SECONDS = 45; // 整体截止时间（含排队和对冲）
+    private static final int MAX_QUEUED_PER_PROVIDER = 64; // 每个服务商的等待队列上限
+    private static final int HEDGE_MIN_SAMPLES = 20; // 启用对冲所需的最少延迟样本
+    private static final long HEDGE_MIN_DELAY_MILLIS = 1000; // 对冲延迟下限
+    private static final double HEDGE_PERCENTILE = 0.95;
+    private static final int MAX_FIRST_SENTENCE_CHARS = 40; // 首句长度上限，与提示词的总字数限制一致
+    private static final int NO_SENTENCE = -2; // 前 MAX_FIRST_SENTENCE_CHARS 个字符内没有句子结束符
+    private static final String SENTENCE_TERMINATORS = "。！？!?；;～~…\n";
+    private static final String SENTENCE_CLOSERS = "”’」』）)\"'";
+
+    /**
+     * LLM服务商
+     */
+    public enum Provider {
+        OPENAI_COMPATIBLE(16),
+        DASHSCOPE(8),
+        GEMINI(8);
+
+        private final int maxConcurrent;
+
+        Provider(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        /**
+         * 根据模型名和接口地址识别服务商
+         */
+        public static Provider detect(String modelName, String baseUrl) {
+            if (modelName != null && modelName.toLowerCase().contains("gemini")) {
+                return GEMINI;
+            }
+            if (baseUrl != null && baseUrl.contains("dashscope")) {
+                return DASHSCOPE;
+            }
+            return OPENAI_COMPATIBLE;
+        }
+    }
+
+    private final OkHttpClient httpClient;
+    private final ScheduledThreadPoolExecutor hedgeScheduler;
+    private final Map<Provider, ProviderState> providers = new EnumMap<>(Provider.class);
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * 熔断打开，调用未发出
+     */
+    public static final class CircuitOpenException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException(String endpoint) {
+            super("LLM接口熔断中: " + endpoint);
+        }
+    }
+
+    public LlmClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(64);
+        dispatcher.setMaxRequestsPerHost(32);
+        this.httpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(16, 5, TimeUnit.MINUTES))
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .callTimeout(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+        this.hedgeScheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "llm-hedge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.hedgeScheduler.setRemoveOnCancelPolicy(true);
+        for (Provider provider : Provider.values()) {
+            providers.put(provider, new ProviderState(provider));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hedgeScheduler.shutdownNow();
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+
+    /**
+     * 异步调用对话补全接口
+     *
+     * @param setting  账号AI设置
+     * @param messages OpenAI格式的消息列表（system/user）
+     * @return 回复文本；失败、超时或被拒绝时异常完成
+     */
+    public CompletableFuture<String> chat(AccountConfigSnapshot.AiSettings setting, JSONArray messages) {
+        Provider provider = Provider.detect(setting.modelName(), setting.baseUrl());
+        Request request;
+        try {
+            request = buildRequest(provider, setting, messages, false);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CircuitBreaker breaker = breaker(request, setting.modelName());
+        if (!breaker.tryAcquire()) {
+            return CompletableFuture.failedFuture(new CircuitOpenException(breaker.endpoint()));
+        }
+        Exchange exchange = new Exchange(providers.get(provider), breaker, request, null);
+        exchange.state.requests.incrementAndGet();
+        exchange.state.acquire(exchange);
+        return exchange.result;
+    }
+
+    /**
+     * 异步流式调用：逐段读取生成内容，首句完整时先回调发送
+     * 首句须在前 {@value #MAX_FIRST_SENTENCE_CHARS} 个字符内结束，且流结束前已确定（否则不提前发送，由调用方整体发送）
+     *
+     * @param setting        账号AI设置
+     * @param messages       OpenAI格式的消息列表（system/user）
+     * @param sentenceSender 首句发送回调
+     * @return 完整回复文本（包含已提前发送的首句）；失败、超时或被拒绝时异常完成
+     */
+    public CompletableFuture<String> chatStream(AccountConfigSnapshot.AiSettings setting, JSONArray messages,
+                                                FirstSentenceSender sentenceSender) {
+        Provider provider = Provider.detect(setting.modelName(), setting.baseUrl());
+        Request request;
+        try {
+            request = buildRequest(provider, setting, messages, true);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CircuitBreaker breaker = breaker(request, setting.modelName());
+        if (!breaker.tryAcquire()) {
+            return CompletableFuture.failedFuture(new CircuitOpenException(breaker.endpoint()));
+        }
+        Exchange exchange = new Exchange(providers.get(provider), breaker, request, sentenceSender);
+        exchange.state.requests.incrementAndGet();
+        exchange.state.streamRequests.incrementAndGet();
+        exchange.state.acquire(exchange);
+        return exchange.result;
+    }
+
+    /**
+     * 获取各服务商的调用统计（在途、排队、成功/失败、对冲、延迟分位）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        for (ProviderState state : providers.values()) {
+            stats.put(state.provider.name(), state.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 获取各接口的熔断状态
+     */
+    public Map<String, Object> getBreakerStats() {
+        Map<String, Object> stats = new HashMap<>();
+        breakers.forEach((endpoint, breaker) -> stats.put(endpoint, breaker.getStats()));
+        return stats;
+    }
+
+    /**
+     * 手动重置或打开熔断器
+     *
+     * @param open true 打开（主动摘除该接口），false 关闭
+     * @return 接口不存在时返回false
+     */
+    public boolean setBreaker(String endpoint, boolean open) {
+        CircuitBreaker breaker = breakers.get(endpoint);
+        if (breaker == null) {
+            return false;
+        }
+        if (open) {
+            breaker.forceOpen();
+        } else {
+            breaker.reset();
+        }
+        return true;
+    }
+
+    /**
+     * 熔断器按 接口主机/模型 区分：同一服务商的备用模型有独立的熔断状态
+     */
+    private CircuitBreaker breaker(Request request, String modelName) {
+        String endpoint = request.url().host() + "/" + modelName;
+        return breakers.computeIfAbsent(endpoint, CircuitBreaker::new);
+    }
+
+    // ============== 请求构建与响应解析 ==============
+
+    private Request buildRequest(Provider provider, AccountConfigSnapshot.AiSettings setting, JSONArray messages,
+                                 boolean stream) {
+        String model = setting.modelName();
+        if (model == null || model.isEmpty()) {
+            throw new IllegalArgumentException("未配置AI模型");
+        }
+        if (provider == Provider.GEMINI) {
+            // 接口地址以 /v1beta 结尾时视为Gemini兼容网关（或本地模拟服务），否则使用官方地址
+            String base = setting.baseUrl() != null && setting.baseUrl().endsWith("/v1beta")
+                    ? setting.baseUrl() : GEMINI_BASE_URL;
+            String url = base + "/models/" + model
+                    + (stream ? ":streamGenerateContent?alt=sse&key=" : ":generateContent?key=") + setting.apiKey();
+            return new Request.Builder()
+                    .url(url)
+                    .post(RequestBody.create(geminiBody(messages).toString(), JSON_TYPE))
+                    .build();
+        }
+
+        String url = setting.baseUrl();
+        if (url == null || url.isEmpty()) {
+            throw new IllegalArgumentException("未配置AI接口地址");
+        }
+        if (!url.endsWith("/chat/completions") && !url.contains("dashscope")) {
+            url += "/chat/completions";
+        }
+        JSONObject body = new JSONObject();
+        body.put("model", model);
+        body.put("messages", messages);
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .header("Authorization", "Bearer " + setting.apiKey());
+        if (stream) {
+            body.put("stream", true);
+            builder.header("Accept", "text/event-stream");
+            if (provider == Provider.DASHSCOPE && !url.contains("compatible-mode")) {
+                // DashScope 应用接口：开启SSE并只返回增量内容
+                builder.header("X-DashScope-SSE", "enable");
+                body.put("parameters", new JSONObject().fluentPut("incremental_output", true));
+            }
+        }
+        return builder.post(RequestBody.create(body.toString(), JSON_TYPE)).build();
+    }
+
+    /**
+     * Gemini generateContent 格式：system 转为 systemInstruction，只发送最后一条用户消息
+     */
+    private JSONObject geminiBody(JSONArray messages) {
+        String systemText = "";
+        for (int i = 0; i < messages.size(); i++) {
+            if ("system".equals(messages.getJSONObject(i).getString("role"))) {
+                systemText = messages.getJSONObject(i).getString("content");
+                break;
+            }
+        }
+        String userText = messages.getJSONObject(messages.size() - 1).getString("content");
+
+        JSONObject body = new JSONObject();
+        JSONObject contentPart = new JSONObject();
+        contentPart.put("role", "user");
+        contentPart.put("parts", new JSONArray().fluentAdd(new JSONObject().fluentPut("text", userText)));
+        body.put("contents", new JSONArray().fluentAdd(contentPart));
+        if (!systemText.isEmpty()) {
+            body.put("systemInstruction", new JSONObject().fluentPut("parts",
+                    new JSONArray().fluentAdd(new JSONObject().fluentPut("text", systemText))));
+        }
+        return body;
+    }
+
+    private String parseResponse(Provider provider, String responseBody) throws IOException {
+        JSONObject res = JSON.parseObject(responseBody);
+        if (res != null) {
+            if (provider == Provider.GEMINI) {
+                JSONArray candidates = res.getJSONArray("candidates");
+                if (candidates != null && !candidates.isEmpty()) {
+                    JSONObject content = candidates.getJSONObject(0).getJSONObject("content");
+                    if (content != null && content.getJSONArray("parts") != null && !content.getJSONArray("parts").isEmpty()) {
+                        return content.getJSONArray("parts").getJSONObject(0).getString("text");
+                    }
+                }
+            } else if (res.containsKey("choices")) {
+                JSONArray choices = res.getJSONArray("choices");
+                if (choices != null && !choices.isEmpty()) {
+                    return choices.getJSONObject(0).getJSONObject("message").getString("content");
+                }
+            } else if (res.containsKey("output")) {
+                // DashScope 应用接口
+                return res.getJSONObject("output").getString("text");
+            }
+        }
+        throw new IOException("无法解析LLM响应: " + abbreviate(responseBody));
+    }
+
+    /**
+     * 解析一条SSE数据中的增量文本
+     */
+    private String parseDelta(Provider provider, String data) throws IOException {
+        JSONObject chunk = JSON.parseObject(data);
+        if (chunk == null) {
+            return null;
+        }
+        if (chunk.containsKey("error")) {
+            throw new IOException("LLM流式响应错误: " + abbreviate(data));
+        }
+        if (provider == Provider.GEMINI) {
+            JSONArray candidates = chunk.getJSONArray("candidates");
+            if (candidates == null || candidates.isEmpty()) {
+                return null;
+            }
+            JSONObject content = candidates.getJSONObject(0).getJSONObject("content");
+            JSONArray parts = content != null ? content.getJSONArray("parts") : null;
+            if (parts == null || parts.isEmpty()) {
+                return null;
+            }
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < parts.size(); i++) {
+                String part = parts.getJSONObject(i).getString("text");
+                if (part != null) {
+                    text.append(part);
+                }
+            }
+            return text.toString();
+        }
+        JSONArray choices = chunk.getJSONArray("choices");
+        if (choices != null) {
+            if (choices.isEmpty()) {
+                return null;
+            }
+            JSONObject delta = choices.getJSONObject(0).getJSONObject("delta");
+            return delta != null ? delta.getString("content") : null;
+        }
+        JSONObject output = chunk.getJSONObject("output");
+        return output != null ? output.getString("text") : null;
+    }
+
+    /**
+     * 首句结束位置（不含）
+     *
+     * @param complete 流是否已结束
+     * @return 首句结束位置；-1 表示还需更多内容；{@link #NO_SENTENCE} 表示不提前发送
+     */
+    static int firstSentenceEnd(CharSequence text, boolean complete) {
+        boolean hasContent = false;
+        int limit = Math.min(text.length(), MAX_FIRST_SENTENCE_CHARS);
+        for (int i = 0; i < limit; i++) {
+            char c = text.charAt(i);
+            if (SENTENCE_TERMINATORS.indexOf(c) < 0) {
+                hasContent |= !Character.isWhitespace(c);
+                continue;
+            }
+            if (!hasContent) {
+                continue;
+            }
+            // 连续的结束符和收尾引号、括号归入首句
+            int end = i + 1;
+            while (end < text.length() && (SENTENCE_TERMINATORS.indexOf(text.charAt(end)) >= 0
+                    || SENTENCE_CLOSERS.indexOf(text.charAt(end)) >= 0)) {
+                end++;
+            }
+            if (end > MAX_FIRST_SENTENCE_CHARS) {
+                return NO_SENTENCE;
+            }
+            if (end < text.length()) {
+                return end;
+            }
+            // 结束符位于当前末尾：可能还有后续结束符；流已结束则整段就是一句，无需提前发送
+            return complete ? NO_SENTENCE : -1;
+        }
+        if (complete || text.length() >= MAX_FIRST_SENTENCE_CHARS) {
+            return NO_SENTENCE;
+        }
+        return -1;
+    }
+
+    private static String abbreviate(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.length() > 200 ? text.substring(0, 200) + "..." : text;
+    }
+
+    // ============== 单次调用（含对冲） ==============
+
+    /**
+     * 一次逻辑调用：主请求 + 可选的对冲请求，共享同一个结果Future
+     */
+    private final class Exchange {
+        final ProviderState state;
+        final CircuitBreaker breaker;
+        final Request request;
+        final FirstSentenceSender sentenceSender; // 非空表示流式请求
+        final long startNanos = System.nanoTime();
+        final long deadlineNanos = startNanos + TimeUnit.SECONDS.toNanos(DEADLINE_SECONDS);
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        final List<Call> calls = new CopyOnWriteArrayList<>();
+        final AtomicInteger outstanding = new AtomicInteger(0);
+        volatile ScheduledFuture<?> hedgeTask;
+        volatile long winnerMillis; // 胜出请求自身的耗时（不含排队）
+        boolean sentenceResolved; // 仅由读取流的线程访问
+
+        Exchange(ProviderState state, CircuitBreaker breaker, Request request, FirstSentenceSender sentenceSender) {
+            this.state = state;
+            this.breaker = breaker;
+            this.request = request;
+            this.sentenceSender = sentenceSender;
+            result.orTimeout(DEADLINE_SECONDS, TimeUnit.SECONDS);
+            result.whenComplete((text, error) -> {
+                ScheduledFuture<?> task = hedgeTask;
+                if (task != null) {
+                    task.cancel(false);
+                }
+                // 胜出或超时后取消仍在进行的请求
+                for (Call call : calls) {
+                    call.cancel();
+                }
+                if (error instanceof TimeoutException) {
+                    state.timeouts.incrementAndGet();
+                }
+                if (error == null) {
+                    breaker.onSuccess(winnerMillis);
+                } else if (error instanceof RejectedExecutionException || calls.isEmpty()) {
+                    breaker.onIgnored(); // 本地排队被拒或排队超时，请求未到达服务商
+                } else {
+                    breaker.onFailure(error.getMessage());
+                }
+            });
+        }
+
+        boolean expired() {
+            return System.nanoTime() - deadlineNanos >= 0;
+        }
+
+        boolean streaming() {
+            return sentenceSender != null;
+        }
+
+        long elapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * 已获得并发额度后发起请求
+         */
+        void start(boolean hedge) {
+            if (result.isDone()) {
+                state.release();
+                return;
+            }
+            outstanding.incrementAndGet();
+            if (hedge) {
+                state.hedged.incrementAndGet();
+            } else if (!streaming()) {
+                scheduleHedge();
+            }
+            long attemptStart = System.nanoTime();
+            Call call = httpClient.newCall(request);
+            calls.add(call);
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call c, IOException e) {
+                    finish(hedge, attemptStart, null, e);
+                }
+
+                @Override
+                public void onResponse(Call c, Response response) {
+                    try (ResponseBody body = response.body()) {
+                        if (body == null) {
+                            finish(hedge, attemptStart, null, new IOException("HTTP " + response.code() + " 无响应体"));
+                            return;
+                        }
+                        if (!response.isSuccessful()) {
+                            log.error("LLM API Error: {} - {}", response.code(), abbreviate(body.string()));
+                            finish(hedge, attemptStart, null, new IOException("HTTP " + response.code()));
+                            return;
+                        }
+                        MediaType type = body.contentType();
+                        if (streaming() && type != null && "event-stream".equals(type.subtype())) {
+                            finish(hedge, attemptStart, readStream(body.source()), null);
+                            return;
+                        }
+                        // 非流式请求，或服务端未按SSE返回时按完整响应解析
+                        finish(hedge, attemptStart, parseResponse(state.provider, body.string()), null);
+                    } catch (Exception e) {
+                        finish(hedge, attemptStart, null, e);
+                    }
+                }
+            });
+        }
+
+        /**
+         * 读取SSE流，拼接增量文本；期间检测首句并回调发送
+         */
+        private String readStream(BufferedSource source) throws IOException {
+            StringBuilder text = new StringBuilder();
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (result.isDone()) {
+                    break; // 已超时或被取消
+                }
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                String data = line.substring(5).trim();
+                if (data.isEmpty()) {
+                    continue;
+                }
+                if ("[DONE]".equals(data)) {
+                    break;
+                }
+                String delta = parseDelta(state.provider, data);
+                if (delta == null || delta.isEmpty()) {
+                    continue;
+                }
+                if (text.length() == 0) {
+                    state.ttft.record(elapsedMillis());
+                }
+                text.append(delta);
+                offerFirstSentence(text);
+            }
+            if (text.length() == 0) {
+                throw new IOException("LLM流式响应为空");
+            }
+            return text.toString();
+        }
+
+        private void offerFirstSentence(CharSequence text) {
+            if (sentenceResolved) {
+                return;
+            }
+            int end = firstSentenceEnd(text, false);
+            if (end == -1) {
+                return;
+            }
+            sentenceResolved = true;
+            if (end == NO_SENTENCE) {
+                return;
+            }
+            CompletableFuture<Boolean> sent;
+            try {
+                sent = sentenceSender.send(text.subSequence(0, end).toString());
+            } catch (RuntimeException e) {
+                log.error("LLM首句发送回调异常: {}", e.getMessage());
+                return;
+            }
+            if (sent != null) {
+                sent.thenAccept(ok -> {
+                    if (Boolean.TRUE.equals(ok)) {
+                        state.earlySends.incrementAndGet();
+                        state.firstSend.record(elapsedMillis());
+                    }
+                });
+            }
+        }
+
+        private void scheduleHedge() {
+            long delayMillis = state.hedgeDelayMillis();
+            if (delayMillis <= 0) {
+                return;
+            }
+            try {
+                hedgeTask = hedgeScheduler.schedule(() -> {
+                    if (!result.isDone() && !expired() && state.tryAcquire()) {
+                        start(true);
+                    }
+                }, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                log.debug("对冲调度器已关闭，跳过对冲");
+            }
+        }
+
+        private void finish(boolean hedge, long attemptStart, String text, Throwable error) {
+            state.release();
+            int remaining = outstanding.decrementAndGet();
+            if (error == null) {
+                winnerMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - attemptStart);
+                if (result.complete(text)) {
+                    state.successes.incrementAndGet();
+                    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - attemptStart);
+                    // 流式请求的总耗时与普通请求不可比，不计入对冲用的延迟样本
+                    (streaming() ? state.streamLatency : state.latency).record(millis);
+                    if (hedge) {
+                        state.hedgeWins.incrementAndGet();
+                    }
+                }
+                return;
+            }
+            if (result.isDone()) {
+                return; // 已有结果（或被取消），忽略落败请求的异常
+            }
+            // 还有请求在途时等待其结果；对冲尚未发出时同样直接失败，不做重试
+            if (remaining == 0) {
+                ScheduledFuture<?> task = hedgeTask;
+                if (task != null) {
+                    task.cancel(false);
+                }
+                if (result.completeExceptionally(error)) {
+                    state.failures.incrementAndGet();
+                    log.error("LLM调用失败 [{}]: {}", state.provider, error.getMessage());
+                }
+            }
+        }
+    }
+
+    // ============== 服务商状态 ==============
+
+    /**
+     * 单个服务商的并发限制、等待队列、延迟统计
+     */
+    private static final class ProviderState {
+        final Provider provider;
+        final LatencyWindow latency = new LatencyWindow(128);
+        final LatencyWindow streamLatency = new LatencyWindow(128); // 流式请求总耗时
+        final LatencyWindow ttft = new LatencyWindow(128); // 流式首个token耗时（含排队）
+        final LatencyWindow firstSend = new LatencyWindow(128); // 流式首句发出耗时（含排队）
+        final ArrayDeque<Exchange> waiting = new ArrayDeque<>(); // 由 this 保护
+        int inFlight; // 由 this 保护
+        int maxInFlight; // 由 this 保护
+
+        final AtomicLong requests = new AtomicLong(0);
+        final AtomicLong successes = new AtomicLong(0);
+        final AtomicLong failures = new AtomicLong(0);
+        final AtomicLong timeouts = new AtomicLong(0);
+        final AtomicLong rejected = new AtomicLong(0);
+        final AtomicLong hedged = new AtomicLong(0);
+        final AtomicLong hedgeWins = new AtomicLong(0);
+        final AtomicLong streamRequests = new AtomicLong(0);
+        final AtomicLong earlySends = new AtomicLong(0);
+
+        ProviderState(Provider provider) {
+            this.provider = provider;
+        }
+
+        /**
+         * 获取并发额度：有空闲额度立即发起，否则排队；队列满时拒绝
+         */
+        void acquire(Exchange exchange) {
+            boolean startNow = false;
+            synchronized (this) {
+                if (inFlight < provider.maxConcurrent) {
+                    inFlight++;
+                    maxInFlight = Math.max(maxInFlight, inFlight);
+                    startNow = true;
+                } else if (waiting.size() < MAX_QUEUED_PER_PROVIDER) {
+                    waiting.add(exchange);
+                } else {
+                    rejected.incrementAndGet();
+                    exchange.result.completeExceptionally(new RejectedExecutionException(
+                            provider + " 并发已满且等待队列已满"));
+                    return;
+                }
+            }
+            if (startNow) {
+                exchange.start(false);
+            }
+        }
+
+        /**
+         * 仅在有空闲额度时获取（对冲请求不排队）
+         */
+        synchronized boolean tryAcquire() {
+            if (inFlight < provider.maxConcurrent && waiting.isEmpty()) {
+                inFlight++;
+                maxInFlight = Math.max(maxInFlight, inFlight);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 归还额度：优先交给等待队列中未过期的调用
+         */
+        void release() {
+            Exchange next = null;
+            synchronized (this) {
+                while (!waiting.isEmpty()) {
+                    Exchange candidate = waiting.poll();
+                    if (candidate.result.isDone()) {
+                        continue;
+                    }
+                    if (candidate.expired()) {
+                        candidate.result.completeExceptionally(new TimeoutException("排队等待超时"));
+                        continue;
+                    }
+                    next = candidate;
+                    break;
+                }
+                if (next == null) {
+                    inFlight--;
+                }
+            }
+            if (next != null) {
+                next.start(false);
+            }
+        }
+
+        /**
+         * 对冲延迟：近期P95延迟（样本不足时不对冲）
+         */
+        long hedgeDelayMillis() {
+            if (latency.size() < HEDGE_MIN_SAMPLES) {
+                return 0;
+            }
+            return Math.max(HEDGE_MIN_DELAY_MILLIS, latency.percentile(HEDGE_PERCENTILE));
+        }
+
+        Map<String, Object> getStats() {
+            Map<String, Object> stats = new HashMap<>();
+            synchronized (this) {
+                stats.put("inFlight", (long) inFlight);
+                stats.put("maxInFlight", (long) maxInFlight);
+                stats.put("queued", (long) waiting.size());
+            }
+            stats.put("maxConcurrent", (long) provider.maxConcurrent);
+            stats.put("requests", requests.get());
+            stats.put("successes", successes.get());
+            stats.put("failures", failures.get());
+            stats.put("timeouts", timeouts.get());
+            stats.put("rejected", rejected.get());
+            stats.put("hedged", hedged.get());
+            stats.put("hedgeWins", hedgeWins.get());
+            stats.put("p50Millis", latency.percentile(0.5));
+            stats.put("p95Millis", latency.percentile(0.95));
+            stats.put("streamRequests", streamRequests.get());
+            stats.put("earlySends", earlySends.get());
+            stats.put("p50StreamMillis", streamLatency.percentile(0.5));
+            stats.put("p95StreamMillis", streamLatency.percentile(0.95));
+            stats.put("p50TtftMillis", ttft.percentile(0.5));
+            stats.put("p95TtftMillis", ttft.percentile(0.95));
+            stats.put("p50FirstSendMillis", firstSend.percentile(0.5));
+            stats.put("p95FirstSendMillis", firstSend.percentile(0.95));
+            return stats;
+        }
+    }
+
+    /**
+     * 最近N次成功调用的延迟样本（环形缓冲）
+     */
+    private static final class LatencyWindow {
+        private final long[] samples;
+        private int next;
+        private int size;
+
+        LatencyWindow(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        synchronized void record(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long percentile(double p) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p * size) - 1;
+            return sorted[Math.max(0, Math.min(size - 1, index))];
+        }
+    }
+}
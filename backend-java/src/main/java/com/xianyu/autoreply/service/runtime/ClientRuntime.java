@@ -0,0 +1,248 @@
+package com.xianyu.autoreply.service.runtime;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 客户端共享运行时
+ * 所有XianyuClient实例共用一个按需伸缩的工作线程池（执行阻塞型任务）和一个小型调度器（只负责触发周期任务），
+ * 取代每个账号独占的5线程ScheduledThreadPool。空闲账号不占用任何线程。
+ * <p>
+ * 运行环境为JDK 17，没有虚拟线程；工作线程池的线程上限随已注册账号数调整（每账号 {@value #WORKER_THREADS_PER_ACCOUNT} 个，
+ * 介于 {@value #MIN_WORKER_THREADS} 和 {@value #MAX_WORKER_THREADS} 之间），线程空闲后回收。
+ * 线程用满后任务进入容量为 {@value #WORKER_QUEUE_CAPACITY} 的有界队列，队列也满时拒绝并抛出 RejectedExecutionException，
+ * 由调用方（会话邮箱、出站写入、时间轮等）按各自的失败路径处理，避免下游阻塞时线程数无限增长。
+ */
+@Slf4j
+public class ClientRuntime {
+
+    private static final int SCHEDULER_THREADS = 2; // 调度线程数（只做分发，不执行业务）
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 60; // 工作线程空闲回收时间（秒）
+    private static final int WORKER_THREADS_PER_ACCOUNT = 8; // 每个账号的工作线程配额（连接循环常驻占用1个）
+    private static final int MIN_WORKER_THREADS = 16; // 工作线程上限的下限
+    private static final int MAX_WORKER_THREADS = 512; // 工作线程上限的上限
+    private static final int WORKER_QUEUE_CAPACITY = 1000; // 线程用满后的排队容量
+    private static final long TIMER_TICK_MILLIS = 100; // 时间轮tick时长（毫秒）
+    private static final int TIMER_WHEEL_SIZE = 512; // 时间轮槽数
+
+    private final ThreadPoolExecutor workers;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final HashedWheelTimer timer;
+
+    // 每个账号的在途任务数 {cookieId: count}
+    private final Map<String, AtomicInteger> activeTasksByAccount = new ConcurrentHashMap<>();
+    private final AtomicLong submittedTasks = new AtomicLong(0);
+    private final AtomicLong skippedTicks = new AtomicLong(0);
+    private final AtomicLong rejectedTasks = new AtomicLong(0);
+
+    public ClientRuntime() {
+        // 核心线程数与上限相同并允许核心线程空闲回收：先加线程到上限，再排队，最后拒绝
+        this.workers = new ThreadPoolExecutor(MIN_WORKER_THREADS, MIN_WORKER_THREADS,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(WORKER_QUEUE_CAPACITY), namedThreadFactory("xianyu-worker-"),
+                rejectionHandler());
+        this.workers.allowCoreThreadTimeOut(true);
+        this.scheduler = new ScheduledThreadPoolExecutor(SCHEDULER_THREADS, namedThreadFactory("xianyu-scheduler-"));
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        this.timer = new HashedWheelTimer("xianyu-timer", TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS,
+                TIMER_WHEEL_SIZE, workers);
+        log.info("客户端共享运行时已创建，调度线程数: {}", SCHEDULER_THREADS);
+    }
+
+    /**
+     * 拒绝策略：计数后抛出 RejectedExecutionException（不在提交线程中执行，调度线程和时间轮线程不能被业务阻塞）
+     */
+    private RejectedExecutionHandler rejectionHandler() {
+        return (task, executor) -> {
+            long rejected = rejectedTasks.incrementAndGet();
+            if (rejected == 1 || rejected % 100 == 0) {
+                log.warn("客户端工作线程池已满（线程上限: {}，排队: {}），已累计拒绝 {} 个任务",
+                        executor.getMaximumPoolSize(), executor.getQueue().size(), rejected);
+            }
+            throw new RejectedExecutionException(executor.isShutdown() ? "客户端运行时已关闭" : "客户端工作线程池已满");
+        };
+    }
+
+    /**
+     * 按已注册账号数调整工作线程上限
+     */
+    private synchronized void resizeWorkers() {
+        int size = Math.max(MIN_WORKER_THREADS,
+                Math.min(MAX_WORKER_THREADS, activeTasksByAccount.size() * WORKER_THREADS_PER_ACCOUNT));
+        if (size == workers.getMaximumPoolSize()) {
+            return;
+        }
+        // 核心线程数不能超过上限：扩容先调上限，缩容先调核心线程数
+        if (size > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(size);
+            workers.setCorePoolSize(size);
+        } else {
+            workers.setCorePoolSize(size);
+            workers.setMaximumPoolSize(size);
+        }
+        log.info("客户端工作线程上限调整为: {}（账号数: {}）", size, activeTasksByAccount.size());
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger(0);
+        return r -> {
+            Thread t = new Thread(r);
+            t.setName(prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * 获取绑定到指定账号的Executor，可直接用于CompletableFuture.runAsync
+     * 同时注册账号，工作线程上限随之增加
+     */
+    public Executor executorFor(String cookieId) {
+        activeTasksByAccount.computeIfAbsent(cookieId, k -> new AtomicInteger(0));
+        resizeWorkers();
+        return task -> execute(cookieId, task);
+    }
+
+    /**
+     * 在工作线程池中执行账号任务
+     *
+     * @throws RejectedExecutionException 线程和队列均已用满，或运行时已关闭
+     */
+    public void execute(String cookieId, Runnable task) {
+        AtomicInteger counter = activeTasksByAccount.computeIfAbsent(cookieId, k -> new AtomicInteger(0));
+        counter.incrementAndGet();
+        submittedTasks.incrementAndGet();
+        try {
+            workers.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    counter.decrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            counter.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * 延迟执行一次账号任务（调度线程到期后转交工作线程池）
+     */
+    public ScheduledFuture<?> schedule(String cookieId, Runnable task, long delay, TimeUnit unit) {
+        return scheduler.schedule(() -> {
+            try {
+                execute(cookieId, task);
+            } catch (RuntimeException e) {
+                log.error("【{}】延迟任务分发失败", cookieId, e);
+            }
+        }, delay, unit);
+    }
+
+    /**
+     * 创建账号的轻量延迟任务（防抖、延迟释放锁、冷却等待），到期后在工作线程池中执行
+     * 挂起期间不占用线程，可通过返回的句柄O(1)取消
+     */
+    public HashedWheelTimer.Timeout newTimeout(String cookieId, Runnable task, long delay, TimeUnit unit) {
+        return timer.newTimeout(() -> execute(cookieId, task), delay, unit);
+    }
+
+    /**
+     * 周期执行账号任务
+     * 调度线程只负责按周期触发，任务本身在工作线程池中执行；上一轮尚未结束时跳过本轮，避免同一任务重叠执行
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(String cookieId, Runnable task,
+                                                     long initialDelay, long delay, TimeUnit unit) {
+        AtomicBoolean inFlight = new AtomicBoolean(false);
+        return scheduler.scheduleWithFixedDelay(() -> {
+            if (!inFlight.compareAndSet(false, true)) {
+                skippedTicks.incrementAndGet();
+                return;
+            }
+            try {
+                execute(cookieId, () -> {
+                    try {
+                        task.run();
+                    } finally {
+                        inFlight.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                inFlight.set(false);
+                log.error("【{}】周期任务分发失败", cookieId, e);
+            }
+        }, initialDelay, delay, unit);
+    }
+
+    /**
+     * 账号停止后释放其统计信息，工作线程上限随之减少
+     */
+    public void release(String cookieId) {
+        if (activeTasksByAccount.remove(cookieId) != null) {
+            resizeWorkers();
+        }
+    }
+
+    /**
+     * 获取运行时统计信息（线程数、任务数、每账号开销）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        int accounts = activeTasksByAccount.size();
+        int workerThreads = workers.getPoolSize();
+        int totalThreads = workerThreads + scheduler.getPoolSize() + 1; // +1 为时间轮线程
+
+        stats.put("workerThreads", workerThreads);
+        stats.put("activeWorkerThreads", workers.getActiveCount());
+        stats.put("largestWorkerThreads", workers.getLargestPoolSize());
+        stats.put("maxWorkerThreads", workers.getMaximumPoolSize());
+        stats.put("queuedWorkerTasks", workers.getQueue().size());
+        stats.put("rejectedTasks", rejectedTasks.get());
+        stats.put("schedulerThreads", scheduler.getPoolSize());
+        stats.put("scheduledTasks", scheduler.getQueue().size());
+        stats.put("submittedTasks", submittedTasks.get());
+        stats.put("completedTasks", workers.getCompletedTaskCount());
+        stats.put("skippedPeriodicTicks", skippedTicks.get());
+        stats.put("timer", timer.getStats());
+        stats.put("accounts", accounts);
+        stats.put("threadsPerAccount", accounts == 0 ? 0.0 : (double) totalThreads / accounts);
+
+        Map<String, Integer> activeTasks = new HashMap<>();
+        activeTasksByAccount.forEach((cookieId, count) -> activeTasks.put(cookieId, count.get()));
+        stats.put("activeTasksByAccount", activeTasks);
+        return stats;
+    }
+
+    /**
+     * 关闭运行时
+     */
+    public void shutdown() {
+        log.info("正在关闭客户端共享运行时...");
+        timer.stop();
+        scheduler.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
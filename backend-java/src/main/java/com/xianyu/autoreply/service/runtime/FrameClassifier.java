@@ -0,0 +1,131 @@
+package com.xianyu.autoreply.service.runtime;
+
+import com.alibaba.fastjson2.JSONReader;
+
+/**
+ * WebSocket帧预分类器
+ * 只流式读取 lwp、code、headers 中ACK所需的字段以及 body.syncPushPackage 是否存在，不构建JSON树。
+ * 心跳响应和普通推送可以据此直接处理，只有同步包才需要完整解析。
+ */
+public final class FrameClassifier {
+
+    /**
+     * 帧类型
+     */
+    public enum FrameType {
+        /** 服务端响应（code=200，心跳/发送回执） */
+        RESPONSE,
+        /** 服务端错误响应（code!=200） */
+        ERROR_RESPONSE,
+        /** 同步包推送（body.syncPushPackage），需要完整解析 */
+        SYNC_PACKAGE,
+        /** 其他推送，只需ACK */
+        PUSH,
+        /** 无法识别的帧，走完整解析兜底 */
+        UNKNOWN
+    }
+
+    /**
+     * 帧头信息
+     */
+    public record FrameHeader(FrameType type, String lwp, Integer code, boolean hasHeaders,
+                              String mid, String sid, String appKey, String ua, String dt) {
+    }
+
+    private static final FrameHeader UNKNOWN_FRAME =
+            new FrameHeader(FrameType.UNKNOWN, null, null, false, null, null, null, null, null);
+
+    private FrameClassifier() {
+    }
+
+    /**
+     * 对帧进行预分类，解析失败时返回UNKNOWN
+     */
+    public static FrameHeader classify(String payload) {
+        String lwp = null;
+        Integer code = null;
+        String mid = null, sid = null, appKey = null, ua = null, dt = null;
+        boolean hasHeaders = false;
+        boolean syncPackage = false;
+
+        try (JSONReader reader = JSONReader.of(payload)) {
+            if (!reader.nextIfObjectStart()) {
+                return UNKNOWN_FRAME;
+            }
+            while (!reader.nextIfObjectEnd()) {
+                String name = reader.readFieldName();
+                if (name == null) {
+                    return UNKNOWN_FRAME;
+                }
+                switch (name) {
+                    case "lwp":
+                        lwp = reader.readString();
+                        break;
+                    case "code":
+                        // 装箱数字分支：否则 parseCode 返回的 null 会被拆箱
+                        code = reader.isNumber() ? Integer.valueOf(reader.readInt32Value())
+                                : parseCode(reader.readString());
+                        break;
+                    case "headers":
+                        if (!reader.nextIfObjectStart()) {
+                            reader.skipValue();
+                            break;
+                        }
+                        hasHeaders = true;
+                        while (!reader.nextIfObjectEnd()) {
+                            String header = reader.readFieldName();
+                            switch (header) {
+                                case "mid" -> mid = reader.readString();
+                                case "sid" -> sid = reader.readString();
+                                case "app-key" -> appKey = reader.readString();
+                                case "ua" -> ua = reader.readString();
+                                case "dt" -> dt = reader.readString();
+                                default -> reader.skipValue();
+                            }
+                        }
+                        break;
+                    case "body":
+                        if (!reader.nextIfObjectStart()) {
+                            reader.skipValue();
+                            break;
+                        }
+                        while (!reader.nextIfObjectEnd()) {
+                            String field = reader.readFieldName();
+                            if (reader.nextIfNull()) {
+                                continue;
+                            }
+                            if ("syncPushPackage".equals(field)) {
+                                syncPackage = true;
+                            }
+                            reader.skipValue();
+                        }
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+        } catch (Exception e) {
+            return UNKNOWN_FRAME;
+        }
+
+        FrameType type;
+        if (code != null && code == 200) {
+            type = FrameType.RESPONSE;
+        } else if (syncPackage) {
+            type = FrameType.SYNC_PACKAGE;
+        } else if (code != null) {
+            type = FrameType.ERROR_RESPONSE;
+        } else {
+            type = FrameType.PUSH;
+        }
+        return new FrameHeader(type, lwp, code, hasHeaders, mid, sid, appKey, ua, dt);
+    }
+
+    private static Integer parseCode(String value) {
+        try {
+            return value == null ? null : Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.xianyu.autoreply.service.runtime;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 哈希时间轮定时器
+ * 用于替代 Thread.sleep 实现的延迟任务（消息防抖、订单锁延迟释放、冷却等待等）。
+ * <p>
+ * - 新增/取消定时任务均为O(1)：新增只入队，取消只做状态CAS，真正的链表操作由时间轮线程完成
+ * - 整个定时器只占用一个tick线程，挂起的定时任务不占用任何线程，每个任务仅一个链表节点
+ * - 到期任务交给dispatcher执行，tick线程本身不执行业务逻辑
+ * - 精度为一个tick（默认100ms），适合秒级以上的延迟
+ */
+@Slf4j
+public class HashedWheelTimer {
+
+    private static final int ST_INIT = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    private static final int MAX_TRANSFER_PER_TICK = 100_000; // 每个tick最多从待添加队列转移的任务数
+
+    /**
+     * 定时任务句柄
+     */
+    public interface Timeout {
+
+        /**
+         * 取消定时任务，已到期或已取消时返回false
+         */
+        boolean cancel();
+
+        boolean isCancelled();
+
+        boolean isExpired();
+    }
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor dispatcher;
+    private final Thread workerThread;
+
+    private final Queue<Node> pendingAdds = new ConcurrentLinkedQueue<>();
+    private final Queue<Node> pendingCancels = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingTimeouts = new AtomicLong(0);
+    private final AtomicLong expiredTimeouts = new AtomicLong(0);
+    private final AtomicLong cancelledTimeouts = new AtomicLong(0);
+
+    private final long startTime;
+    private volatile boolean running = true;
+    private long tick; // 仅由时间轮线程访问
+
+    /**
+     * @param name       tick线程名称
+     * @param tick       tick时长
+     * @param unit       tick时长单位
+     * @param wheelSize  时间轮槽数（向上取整为2的幂）
+     * @param dispatcher 到期任务的执行器
+     */
+    public HashedWheelTimer(String name, long tick, TimeUnit unit, int wheelSize, Executor dispatcher) {
+        if (tick <= 0) {
+            throw new IllegalArgumentException("tick must be greater than 0");
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("wheelSize out of range: " + wheelSize);
+        }
+        int normalized = 1;
+        while (normalized < wheelSize) {
+            normalized <<= 1;
+        }
+
+        this.tickNanos = unit.toNanos(tick);
+        this.wheel = new Bucket[normalized];
+        for (int i = 0; i < normalized; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = normalized - 1;
+        this.dispatcher = dispatcher;
+        this.startTime = System.nanoTime();
+
+        this.workerThread = new Thread(this::run, name);
+        this.workerThread.setDaemon(true);
+        this.workerThread.start();
+    }
+
+    /**
+     * 创建一个延迟执行的定时任务
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("timer has been stopped");
+        }
+        long deadline = System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay));
+        Node node = new Node(task, deadline);
+        pendingTimeouts.incrementAndGet();
+        pendingAdds.add(node);
+        return node;
+    }
+
+    /**
+     * 当前挂起（未到期且未取消）的定时任务数
+     */
+    public long pendingTimeouts() {
+        return pendingTimeouts.get();
+    }
+
+    /**
+     * 获取定时器统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pendingTimeouts", pendingTimeouts.get());
+        stats.put("expiredTimeouts", expiredTimeouts.get());
+        stats.put("cancelledTimeouts", cancelledTimeouts.get());
+        stats.put("tickMillis", TimeUnit.NANOSECONDS.toMillis(tickNanos));
+        stats.put("wheelSize", wheel.length);
+        return stats;
+    }
+
+    /**
+     * 停止定时器，未到期的任务将被丢弃
+     */
+    public void stop() {
+        running = false;
+        workerThread.interrupt();
+    }
+
+    // ============== 时间轮线程 ==============
+
+    private void run() {
+        while (running) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                break;
+            }
+            int idx = (int) (tick & mask);
+            processCancelled();
+            transferPending();
+            wheel[idx].expire(deadline);
+            tick++;
+        }
+        log.info("时间轮定时器已停止，丢弃 {} 个未到期任务", pendingTimeouts.get());
+    }
+
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long current = System.nanoTime() - startTime;
+            long sleepMillis = (deadline - current + 999_999) / 1_000_000;
+            if (sleepMillis <= 0) {
+                return current;
+            }
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Node node = pendingAdds.poll();
+            if (node == null) {
+                return;
+            }
+            if (node.state.get() == ST_CANCELLED) {
+                pendingTimeouts.decrementAndGet();
+                continue;
+            }
+            long calculated = node.deadline / tickNanos;
+            node.remainingRounds = (calculated - tick) / wheel.length;
+            long ticks = Math.max(calculated, tick); // 已过期的任务放到当前槽，本tick立即执行
+            wheel[(int) (ticks & mask)].add(node);
+        }
+    }
+
+    private void processCancelled() {
+        Node node;
+        while ((node = pendingCancels.poll()) != null) {
+            if (node.bucket != null) {
+                node.bucket.remove(node);
+                pendingTimeouts.decrementAndGet();
+            }
+        }
+    }
+
+    private void expire(Node node) {
+        if (!node.state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+            return;
+        }
+        expiredTimeouts.incrementAndGet();
+        try {
+            dispatcher.execute(node.task);
+        } catch (Exception e) {
+            log.error("时间轮定时任务分发失败", e);
+        }
+    }
+
+    // ============== 内部结构 ==============
+
+    private final class Node implements Timeout {
+        final Runnable task;
+        final long deadline;
+        final AtomicInteger state = new AtomicInteger(ST_INIT);
+        long remainingRounds;
+        Node prev;
+        Node next;
+        Bucket bucket;
+
+        Node(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            cancelledTimeouts.incrementAndGet();
+            pendingCancels.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+    }
+
+    /**
+     * 时间轮槽：双向链表，仅由时间轮线程访问
+     */
+    private final class Bucket {
+        Node head;
+        Node tail;
+
+        void add(Node node) {
+            node.bucket = this;
+            if (head == null) {
+                head = tail = node;
+            } else {
+                tail.next = node;
+                node.prev = tail;
+                tail = node;
+            }
+        }
+
+        Node remove(Node node) {
+            Node next = node.next;
+            if (node.prev != null) {
+                node.prev.next = next;
+            }
+            if (node.next != null) {
+                node.next.prev = node.prev;
+            }
+            if (node == head) {
+                head = next;
+            }
+            if (node == tail) {
+                tail = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            node.bucket = null;
+            return next;
+        }
+
+        void expire(long deadline) {
+            Node node = head;
+            while (node != null) {
+                Node next = node.next;
+                if (node.state.get() == ST_CANCELLED) {
+                    next = remove(node);
+                    pendingTimeouts.decrementAndGet();
+                } else if (node.remainingRounds <= 0) {
+                    next = remove(node);
+                    pendingTimeouts.decrementAndGet();
+                    if (node.deadline <= deadline) {
+                        HashedWheelTimer.this.expire(node);
+                    } else {
+                        // 理论上不会出现：放错槽位的任务重新入队
+                        pendingTimeouts.incrementAndGet();
+                        pendingAdds.add(node);
+                    }
+                } else {
+                    node.remainingRounds--;
+                }
+                node = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.xianyu.autoreply.service.runtime;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 账号级入站消息闸门（有界队列 + 优先级通道）
+ * 取代阻塞工作线程的Semaphore：消息在进入会话邮箱前先经过闸门，按通道计数，超限时按策略处理，不再阻塞任何线程。
+ * <p>
+ * - HIGH：订单/支付等系统消息、手动发出的消息，只受较大的硬上限约束，不合并、不丢弃（超过硬上限才丢弃并告警）
+ * - NORMAL：普通聊天消息；积压超过合并阈值时，同一会话尚未开始处理的消息直接被新消息替换（防抖本就只回复最后一条），
+ *   积压达到容量上限时直接丢弃
+ * <p>
+ * 同一会话内的消息通过 {@link KeyedMailboxExecutor} 串行执行：HIGH 作为优先任务排在该会话积压的 NORMAL 消息之前，
+ * 同一通道内保持到达顺序。
+ */
+@Slf4j
+public class IngressGate {
+
+    /**
+     * 入站通道
+     */
+    public enum Lane {
+        HIGH,
+        NORMAL
+    }
+
+    private final String name;
+    private final KeyedMailboxExecutor mailboxes;
+    private final int highCapacity;
+    private final int normalCapacity;
+    private final int coalesceThreshold;
+
+    // 尚未开始处理、可被合并的普通消息 {chatId: slot}
+    private final Map<String, Slot> coalescible = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pendingHigh = new AtomicInteger(0);
+    private final AtomicInteger pendingNormal = new AtomicInteger(0);
+    private final AtomicLong admittedHigh = new AtomicLong(0);
+    private final AtomicLong admittedNormal = new AtomicLong(0);
+    private final AtomicLong coalesced = new AtomicLong(0);
+    private final AtomicLong shedNormal = new AtomicLong(0);
+    private final AtomicLong droppedHigh = new AtomicLong(0);
+    private final AtomicLong highWaitNanos = new AtomicLong(0);
+    private final AtomicLong normalWaitNanos = new AtomicLong(0);
+    private final AtomicLong maxWaitNanos = new AtomicLong(0);
+    private final AtomicLong startedHigh = new AtomicLong(0);
+    private final AtomicLong startedNormal = new AtomicLong(0);
+
+    /**
+     * @param name              闸门名称（用于日志）
+     * @param mailboxes         会话邮箱执行器
+     * @param highCapacity      高优先级通道硬上限
+     * @param normalCapacity    普通通道容量上限，达到后丢弃新消息
+     * @param coalesceThreshold 普通通道合并阈值，超过后同一会话的待处理消息被新消息替换
+     */
+    public IngressGate(String name, KeyedMailboxExecutor mailboxes,
+                       int highCapacity, int normalCapacity, int coalesceThreshold) {
+        this.name = name;
+        this.mailboxes = mailboxes;
+        this.highCapacity = highCapacity;
+        this.normalCapacity = normalCapacity;
+        this.coalesceThreshold = coalesceThreshold;
+    }
+
+    /**
+     * 提交消息处理任务
+     *
+     * @param key  会话key（chatId）
+     * @param lane 通道
+     * @param task 处理任务
+     * @return 是否被接收（合并也视为接收）
+     */
+    public boolean submit(String key, Lane lane, Runnable task) {
+        return lane == Lane.HIGH ? submitHigh(key, task) : submitNormal(key, task);
+    }
+
+    private boolean submitHigh(String key, Runnable task) {
+        if (pendingHigh.incrementAndGet() > highCapacity) {
+            pendingHigh.decrementAndGet();
+            droppedHigh.incrementAndGet();
+            log.error("{} 高优先级入站队列已满（{}），丢弃消息: chat={}", name, highCapacity, key);
+            return false;
+        }
+        admittedHigh.incrementAndGet();
+        long enqueueNanos = System.nanoTime();
+        mailboxes.submitUrgent(key, () -> {
+            recordWait(enqueueNanos, highWaitNanos, startedHigh);
+            try {
+                task.run();
+            } finally {
+                pendingHigh.decrementAndGet();
+            }
+        });
+        return true;
+    }
+
+    private boolean submitNormal(String key, Runnable task) {
+        int pending = pendingNormal.get();
+
+        // 有积压时，优先合并到该会话尚未开始处理的消息上
+        if (pending >= coalesceThreshold) {
+            Slot slot = coalescible.get(key);
+            if (slot != null && slot.replace(task)) {
+                coalesced.incrementAndGet();
+                return true;
+            }
+        }
+
+        if (pendingNormal.incrementAndGet() > normalCapacity) {
+            pendingNormal.decrementAndGet();
+            shedNormal.incrementAndGet();
+            log.warn("{} 普通入站队列已满（{}），丢弃聊天消息: chat={}", name, normalCapacity, key);
+            return false;
+        }
+        admittedNormal.incrementAndGet();
+
+        Slot slot = new Slot(task, System.nanoTime());
+        coalescible.put(key, slot);
+        mailboxes.submit(key, () -> {
+            coalescible.remove(key, slot);
+            Runnable latest = slot.start();
+            recordWait(slot.enqueueNanos, normalWaitNanos, startedNormal);
+            try {
+                latest.run();
+            } finally {
+                pendingNormal.decrementAndGet();
+            }
+        });
+        return true;
+    }
+
+    private void recordWait(long enqueueNanos, AtomicLong laneWaitNanos, AtomicLong laneStarted) {
+        long waitNanos = System.nanoTime() - enqueueNanos;
+        laneWaitNanos.addAndGet(waitNanos);
+        laneStarted.incrementAndGet();
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    /**
+     * 获取闸门统计信息（队列深度、等待时间、合并/丢弃数）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long high = startedHigh.get();
+        long normal = startedNormal.get();
+        stats.put("pendingHigh", (long) pendingHigh.get());
+        stats.put("pendingNormal", (long) pendingNormal.get());
+        stats.put("admittedHigh", admittedHigh.get());
+        stats.put("admittedNormal", admittedNormal.get());
+        stats.put("coalescedNormal", coalesced.get());
+        stats.put("shedNormal", shedNormal.get());
+        stats.put("droppedHigh", droppedHigh.get());
+        stats.put("avgHighWaitMillis", high == 0 ? 0.0 : highWaitNanos.get() / 1_000_000.0 / high);
+        stats.put("avgNormalWaitMillis", normal == 0 ? 0.0 : normalWaitNanos.get() / 1_000_000.0 / normal);
+        stats.put("maxGateWaitMillis", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+        return stats;
+    }
+
+    /**
+     * 可合并的待处理消息：开始处理前可被同一会话的新消息替换
+     */
+    private static final class Slot {
+        private final long enqueueNanos;
+        private Runnable task;
+        private boolean started;
+
+        Slot(Runnable task, long enqueueNanos) {
+            this.task = task;
+            this.enqueueNanos = enqueueNanos;
+        }
+
+        synchronized boolean replace(Runnable newTask) {
+            if (started) {
+                return false;
+            }
+            task = newTask;
+            return true;
+        }
+
+        synchronized Runnable start() {
+            started = true;
+            return task;
+        }
+    }
+}
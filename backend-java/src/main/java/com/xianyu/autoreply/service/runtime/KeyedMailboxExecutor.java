@@ -0,0 +1,202 @@
+package com.xianyu.autoreply.service.runtime;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按key分组的邮箱执行器（actor模型）
+ * - 同一key（如chatId）的任务严格按提交顺序串行执行；优先任务（{@link #submitUrgent}）插到该邮箱所有普通任务之前，
+ *   优先任务之间仍按提交顺序
+ * - 不同key的任务在底层线程池中并行执行
+ * - 邮箱清空后立即回收，空闲会话不占用任何内存和线程
+ * <p>
+ * 每个邮箱一次最多连续执行 {@value #BATCH_SIZE} 个任务后让出线程，避免单个繁忙会话长期占用工作线程。
+ */
+@Slf4j
+public class KeyedMailboxExecutor {
+
+    private static final int BATCH_SIZE = 32; // 单个邮箱每轮最多执行的任务数
+
+    private final String name;
+    private final Executor executor;
+    private final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger queuedTasks = new AtomicInteger(0);
+    private final AtomicInteger maxMailboxDepth = new AtomicInteger(0);
+    private final AtomicLong processedTasks = new AtomicLong(0);
+    private final AtomicLong urgentTasks = new AtomicLong(0);
+    private final AtomicLong totalWaitNanos = new AtomicLong(0);
+    private final AtomicLong maxWaitNanos = new AtomicLong(0);
+    private final AtomicLong createdMailboxes = new AtomicLong(0);
+
+    /**
+     * @param name     执行器名称（用于日志）
+     * @param executor 实际执行任务的线程池
+     */
+    public KeyedMailboxExecutor(String name, Executor executor) {
+        this.name = name;
+        this.executor = executor;
+    }
+
+    /**
+     * 向指定key的邮箱投递任务
+     */
+    public void submit(String key, Runnable task) {
+        submit(key, task, false);
+    }
+
+    /**
+     * 向指定key的邮箱投递优先任务：在该邮箱排队中的普通任务之前执行（正在执行的任务不受影响）
+     */
+    public void submitUrgent(String key, Runnable task) {
+        submit(key, task, true);
+    }
+
+    private void submit(String key, Runnable task, boolean urgent) {
+        Envelope envelope = new Envelope(task, System.nanoTime(), urgent);
+        while (true) {
+            Mailbox mailbox = mailboxes.computeIfAbsent(key, k -> {
+                createdMailboxes.incrementAndGet();
+                return new Mailbox(k);
+            });
+            if (mailbox.offer(envelope)) {
+                return;
+            }
+            // 邮箱恰好被回收，重新获取
+        }
+    }
+
+    /**
+     * 当前排队中的任务数
+     */
+    public int queuedTasks() {
+        return queuedTasks.get();
+    }
+
+    /**
+     * 丢弃所有排队中的任务（客户端停止时调用）
+     */
+    public void clear() {
+        for (Mailbox mailbox : mailboxes.values()) {
+            mailbox.close();
+        }
+        mailboxes.clear();
+    }
+
+    /**
+     * 获取邮箱统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long processed = processedTasks.get();
+        stats.put("activeMailboxes", (long) mailboxes.size());
+        stats.put("createdMailboxes", createdMailboxes.get());
+        stats.put("queuedTasks", (long) queuedTasks.get());
+        stats.put("maxMailboxDepth", (long) maxMailboxDepth.get());
+        stats.put("processedTasks", processed);
+        stats.put("urgentTasks", urgentTasks.get());
+        stats.put("totalWaitMillis", TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()));
+        stats.put("maxWaitMillis", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+        stats.put("avgWaitMillis", processed == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / processed);
+        return stats;
+    }
+
+    private record Envelope(Runnable task, long enqueueNanos, boolean urgent) {
+    }
+
+    private final class Mailbox implements Runnable {
+        private final String key;
+        private final ArrayDeque<Envelope> queue = new ArrayDeque<>();
+        private final ArrayDeque<Envelope> urgent = new ArrayDeque<>(); // 优先任务，先于queue取出
+        private boolean scheduled;
+        private boolean closed;
+
+        Mailbox(String key) {
+            this.key = key;
+        }
+
+        boolean offer(Envelope envelope) {
+            boolean schedule;
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                (envelope.urgent() ? urgent : queue).add(envelope);
+                queuedTasks.incrementAndGet();
+                maxMailboxDepth.accumulateAndGet(queue.size() + urgent.size(), Math::max);
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule) {
+                dispatch();
+            }
+            return true;
+        }
+
+        synchronized void close() {
+            closed = true;
+            queuedTasks.addAndGet(-(queue.size() + urgent.size()));
+            queue.clear();
+            urgent.clear();
+        }
+
+        private void dispatch() {
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                log.error("{} 邮箱 {} 调度失败，丢弃排队任务", name, key, e);
+                synchronized (this) {
+                    scheduled = false;
+                }
+                close();
+                mailboxes.remove(key, this);
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Envelope envelope;
+                synchronized (this) {
+                    envelope = urgent.poll();
+                    if (envelope == null) {
+                        envelope = queue.poll();
+                    }
+                    if (envelope == null) {
+                        // 邮箱已空，回收
+                        scheduled = false;
+                        closed = true;
+                        mailboxes.remove(key, this);
+                        return;
+                    }
+                }
+                queuedTasks.decrementAndGet();
+
+                long waitNanos = System.nanoTime() - envelope.enqueueNanos();
+                totalWaitNanos.addAndGet(waitNanos);
+                maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+
+                try {
+                    envelope.task().run();
+                } catch (Throwable t) {
+                    log.error("{} 邮箱 {} 任务执行异常", name, key, t);
+                } finally {
+                    processedTasks.incrementAndGet();
+                    if (envelope.urgent()) {
+                        urgentTasks.incrementAndGet();
+                    }
+                }
+            }
+            // 本轮已达上限，让出线程后继续
+            dispatch();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.xianyu.autoreply.service.runtime;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 按时间分桶的消息ID去重器
+ * 去重窗口被切分为固定数量的时间桶（环形数组），每个消息ID记录在其首次处理时刻所在的桶中：
+ * - 标记/查询：一次ConcurrentHashMap原子操作，O(1)
+ * - 过期：时间前进到新桶时整桶淘汰最旧的桶，只处理该桶内的ID，不再扫描全表
+ * - 容量：条目数超过上限时提前淘汰最旧的桶，不再排序删除一半，单账号内存有固定上限
+ * <p>
+ * 过期精度为一个桶的时长，即ID最多在窗口结束后多保留一个桶的时间。
+ * 当前桶永远不会被提前淘汰（否则刚标记的ID会立即失效），所以桶宽需要按峰值速率确定，
+ * 见 {@link #forPeakRate}；速率超过峰值时当前桶可以暂时超出上限。
+ */
+public class MessageIdDeduplicator {
+
+    /**
+     * 未命中（首次处理或已过期）时 {@link #markIfAbsent(String)} 的返回值
+     */
+    public static final long ACCEPTED = -1L;
+
+    /**
+     * 按峰值速率确定桶宽时，上限内至少能容纳的桶数
+     */
+    static final int MIN_RETAINED_BUCKETS = 8;
+
+    private final long bucketMillis;
+    private final int bucketCount;
+    private final int maxEntries;
+    private final LongSupplier clock;
+
+    // 消息ID -> 所在桶的序号（时间 / 桶时长）
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    private final Bucket[] ring;
+    private final AtomicInteger size = new AtomicInteger(0);
+    private volatile long currentEpoch;
+
+    private final AtomicLong accepted = new AtomicLong(0);
+    private final AtomicLong duplicates = new AtomicLong(0);
+    private final AtomicLong expired = new AtomicLong(0);
+    private final AtomicLong evicted = new AtomicLong(0);
+
+    /**
+     * @param window      去重窗口
+     * @param unit        窗口时间单位
+     * @param bucketCount 时间桶数量
+     * @param maxEntries  最大记录数（内存上限）
+     */
+    public MessageIdDeduplicator(long window, TimeUnit unit, int bucketCount, int maxEntries) {
+        this(window, unit, bucketCount, maxEntries, System::currentTimeMillis);
+    }
+
+    MessageIdDeduplicator(long window, TimeUnit unit, int bucketCount, int maxEntries, LongSupplier clock) {
+        if (bucketCount <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("bucketCount和maxEntries必须大于0");
+        }
+        this.bucketCount = bucketCount;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.bucketMillis = Math.max(1L, unit.toMillis(window) / bucketCount);
+        this.ring = new Bucket[bucketCount];
+        this.currentEpoch = clock.getAsLong() / bucketMillis;
+        for (int i = 0; i < bucketCount; i++) {
+            ring[i] = new Bucket();
+        }
+        ring[slot(currentEpoch)].epoch = currentEpoch;
+    }
+
+    /**
+     * 按峰值速率创建：桶宽取峰值速率下填满上限 1/{@value #MIN_RETAINED_BUCKETS} 所需的时间（不超过窗口），
+     * 持续处于峰值时提前淘汰后仍至少保留 {@value #MIN_RETAINED_BUCKETS} 个桶的历史
+     *
+     * @param window         去重窗口
+     * @param unit           窗口时间单位
+     * @param peakIdsPerHour 单账号峰值消息速率（每小时ID数）
+     * @param maxEntries     最大记录数（内存上限）
+     */
+    public static MessageIdDeduplicator forPeakRate(long window, TimeUnit unit, long peakIdsPerHour, int maxEntries) {
+        return forPeakRate(window, unit, peakIdsPerHour, maxEntries, System::currentTimeMillis);
+    }
+
+    static MessageIdDeduplicator forPeakRate(long window, TimeUnit unit, long peakIdsPerHour, int maxEntries,
+                                             LongSupplier clock) {
+        if (peakIdsPerHour <= 0 || maxEntries < MIN_RETAINED_BUCKETS) {
+            throw new IllegalArgumentException("peakIdsPerHour必须大于0，maxEntries不能小于" + MIN_RETAINED_BUCKETS);
+        }
+        long windowMillis = unit.toMillis(window);
+        long bucketMillis = Math.max(1L, Math.min(windowMillis,
+                TimeUnit.HOURS.toMillis(1) * (maxEntries / MIN_RETAINED_BUCKETS) / peakIdsPerHour));
+        int bucketCount = (int) Math.max(1L, (windowMillis + bucketMillis - 1) / bucketMillis);
+        return new MessageIdDeduplicator(window, unit, bucketCount, maxEntries, clock);
+    }
+
+    /**
+     * 原子地检查并标记消息ID
+     *
+     * @param messageId 消息ID
+     * @return {@link #ACCEPTED} 表示首次处理（或上次处理已过期），已被标记；否则返回距上次处理已经过的毫秒数
+     */
+    public long markIfAbsent(String messageId) {
+        long now = clock.getAsLong();
+        long epoch = now / bucketMillis;
+        advance(epoch);
+
+        long[] previous = {ACCEPTED};
+        index.compute(messageId, (id, lastEpoch) -> {
+            if (lastEpoch != null && epoch - lastEpoch < bucketCount) {
+                previous[0] = lastEpoch;
+                return lastEpoch;
+            }
+            return epoch;
+        });
+
+        if (previous[0] != ACCEPTED) {
+            duplicates.incrementAndGet();
+            return Math.max(0L, now - previous[0] * bucketMillis);
+        }
+
+        accepted.incrementAndGet();
+        ring[slot(epoch)].ids.add(messageId);
+        if (size.incrementAndGet() > maxEntries) {
+            evictOldest();
+        }
+        return ACCEPTED;
+    }
+
+    /**
+     * 去重窗口时长（毫秒）
+     */
+    public long windowMillis() {
+        return bucketMillis * bucketCount;
+    }
+
+    /**
+     * 淘汰已过期的时间桶（定期清理任务调用，无消息时也能及时释放内存）
+     *
+     * @return 本次淘汰的ID数量
+     */
+    public int expire() {
+        long before = expired.get();
+        advance(clock.getAsLong() / bucketMillis);
+        return (int) (expired.get() - before);
+    }
+
+    /**
+     * 时间桶数量
+     */
+    public int bucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * 当前记录的消息ID数量
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * 清空所有记录
+     */
+    public synchronized void clear() {
+        for (Bucket bucket : ring) {
+            bucket.ids.clear();
+        }
+        index.clear();
+        size.set(0);
+    }
+
+    /**
+     * 获取去重统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("trackedIds", (long) size.get());
+        stats.put("maxIds", (long) maxEntries);
+        stats.put("bucketMillis", bucketMillis);
+        stats.put("acceptedIds", accepted.get());
+        stats.put("duplicateIds", duplicates.get());
+        long checked = accepted.get() + duplicates.get();
+        stats.put("duplicateRate", checked == 0 ? 0.0 : (double) duplicates.get() / checked);
+        stats.put("expiredIds", expired.get());
+        stats.put("evictedIds", evicted.get());
+        return stats;
+    }
+
+    private int slot(long epoch) {
+        return (int) Math.floorMod(epoch, (long) bucketCount);
+    }
+
+    /**
+     * 时间前进到新桶时，淘汰被复用的旧桶
+     */
+    private void advance(long epoch) {
+        if (epoch <= currentEpoch) {
+            return;
+        }
+        synchronized (this) {
+            long from = currentEpoch + 1;
+            if (epoch < from) {
+                return;
+            }
+            // 跨越超过一整圈时，每个桶只需清理一次
+            long start = Math.max(from, epoch - bucketCount + 1);
+            for (long e = start; e <= epoch; e++) {
+                Bucket bucket = ring[slot(e)];
+                expired.addAndGet(drain(bucket));
+                bucket.epoch = e;
+            }
+            currentEpoch = epoch;
+        }
+    }
+
+    /**
+     * 超过容量上限时提前淘汰最旧的非空桶；当前桶不淘汰
+     */
+    private synchronized void evictOldest() {
+        if (size.get() <= maxEntries) {
+            return;
+        }
+        long epoch = currentEpoch;
+        for (long e = epoch - bucketCount + 1; e < epoch; e++) {
+            Bucket bucket = ring[slot(e)];
+            if (bucket.epoch == e && !bucket.ids.isEmpty()) {
+                evicted.addAndGet(drain(bucket));
+                if (size.get() <= maxEntries) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private int drain(Bucket bucket) {
+        Long epoch = bucket.epoch;
+        int removed = 0;
+        String id;
+        while ((id = bucket.ids.poll()) != null) {
+            // ID过期后被重新标记到了新桶，则保留
+            index.remove(id, epoch);
+            size.decrementAndGet();
+            removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * 时间桶：记录该时间段内首次处理的消息ID
+     */
+    private static final class Bucket {
+        final ConcurrentLinkedQueue<String> ids = new ConcurrentLinkedQueue<>();
+        volatile long epoch = Long.MIN_VALUE;
+    }
+}
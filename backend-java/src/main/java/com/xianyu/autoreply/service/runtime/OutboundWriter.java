@@ -0,0 +1,322 @@
+package com.xianyu.autoreply.service.runtime;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket出站写入器（每个连接一个写入者）
+ * 所有出站帧先进入有界队列，由单个排空任务在共享线程池中串行写入会话，
+ * 任何业务线程都不再直接调用 {@code session.sendMessage}，慢连接也不会阻塞调用方。
+ * <p>
+ * - CONTROL：ACK、心跳、注册等控制帧，优先写出；相同合并key（如ACK的mid、心跳）尚未写出时直接合并
+ * - DATA：聊天/图片等业务消息，按提交顺序写出
+ * - 队列满时新帧被拒绝（返回失败的Future），不阻塞调用方
+ * - 单次写入超过发送超时视为连接不可用，关闭会话触发重连
+ */
+@Slf4j
+public class OutboundWriter {
+
+    /**
+     * 出站帧类型
+     */
+    public enum Kind {
+        CONTROL,
+        DATA
+    }
+
+    private static final int BATCH_SIZE = 64; // 每轮最多连续写出的帧数
+
+    private final String name;
+    private final Executor executor;
+    private final int controlCapacity;
+    private final int dataCapacity;
+    private final long sendTimeoutNanos;
+
+    // 以下状态由 this 保护
+    private final ArrayDeque<Frame> controlQueue = new ArrayDeque<>();
+    private final ArrayDeque<Frame> dataQueue = new ArrayDeque<>();
+    private final Map<String, Frame> pendingByKey = new HashMap<>();
+    private WebSocketSession session;
+    private boolean scheduled;
+
+    private volatile long inFlightSinceNanos; // 当前写入开始时间，0表示没有进行中的写入
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger(0);
+    private final AtomicLong sentFrames = new AtomicLong(0);
+    private final AtomicLong sentBytes = new AtomicLong(0);
+    private final AtomicLong writeNanos = new AtomicLong(0);
+    private final AtomicLong maxWriteNanos = new AtomicLong(0);
+    private final AtomicLong queueNanos = new AtomicLong(0);
+    private final AtomicLong maxQueueNanos = new AtomicLong(0);
+    private final AtomicLong coalescedFrames = new AtomicLong(0);
+    private final AtomicLong rejectedFrames = new AtomicLong(0);
+    private final AtomicLong failedFrames = new AtomicLong(0);
+    private final AtomicLong sendTimeouts = new AtomicLong(0);
+
+    // 吞吐率采样
+    private long rateSampleNanos = System.nanoTime();
+    private long rateSampleBytes;
+    private long bytesPerSecond;
+
+    /**
+     * @param name            写入器名称（用于日志）
+     * @param executor        执行写入的线程池
+     * @param controlCapacity 控制帧队列容量
+     * @param dataCapacity    业务帧队列容量
+     * @param sendTimeout     单次写入超时
+     * @param unit            超时时间单位
+     */
+    public OutboundWriter(String name, Executor executor, int controlCapacity, int dataCapacity,
+                          long sendTimeout, TimeUnit unit) {
+        this.name = name;
+        this.executor = executor;
+        this.controlCapacity = controlCapacity;
+        this.dataCapacity = dataCapacity;
+        this.sendTimeoutNanos = unit.toNanos(sendTimeout);
+    }
+
+    /**
+     * 绑定新的WebSocket会话（连接建立时调用），旧会话中未写出的帧全部失败
+     */
+    public void attach(WebSocketSession newSession) {
+        synchronized (this) {
+            if (session == newSession) {
+                return;
+            }
+            failPending("连接已切换");
+            session = newSession;
+        }
+    }
+
+    /**
+     * 解绑会话（连接关闭时调用），未写出的帧全部失败
+     *
+     * @param oldSession 要解绑的会话，与当前会话不一致时忽略
+     */
+    public void detach(WebSocketSession oldSession) {
+        synchronized (this) {
+            if (oldSession != null && session != oldSession) {
+                return;
+            }
+            failPending("连接已关闭");
+            session = null;
+        }
+    }
+
+    /**
+     * 提交出站帧
+     *
+     * @param target      目标会话，与当前绑定的会话不一致时直接失败
+     * @param payload     帧内容
+     * @param kind        帧类型
+     * @param coalesceKey 合并key，相同key的帧尚未写出时合并为一次写入；null表示不合并
+     * @return 写出完成的Future（被拒绝时为失败的Future）
+     */
+    public CompletableFuture<Void> send(WebSocketSession target, String payload, Kind kind, String coalesceKey) {
+        checkStalled();
+        boolean dispatch;
+        Frame frame;
+        synchronized (this) {
+            if (session == null || target != session || !session.isOpen()) {
+                rejectedFrames.incrementAndGet();
+                return CompletableFuture.failedFuture(new IOException("WebSocket连接已关闭"));
+            }
+            if (coalesceKey != null) {
+                Frame pending = pendingByKey.get(coalesceKey);
+                if (pending != null) {
+                    coalescedFrames.incrementAndGet();
+                    return pending.future;
+                }
+            }
+            ArrayDeque<Frame> queue = kind == Kind.CONTROL ? controlQueue : dataQueue;
+            int capacity = kind == Kind.CONTROL ? controlCapacity : dataCapacity;
+            if (queue.size() >= capacity) {
+                rejectedFrames.incrementAndGet();
+                log.warn("{} 出站{}队列已满（{}），拒绝发送", name, kind, capacity);
+                return CompletableFuture.failedFuture(new IOException("出站队列已满"));
+            }
+            frame = new Frame(payload, coalesceKey, System.nanoTime());
+            queue.add(frame);
+            if (coalesceKey != null) {
+                pendingByKey.put(coalesceKey, frame);
+            }
+            maxQueueDepth.accumulateAndGet(controlQueue.size() + dataQueue.size(), Math::max);
+            dispatch = !scheduled;
+            scheduled = true;
+        }
+        if (dispatch) {
+            dispatch();
+        }
+        return frame.future;
+    }
+
+    /**
+     * 当前排队中的帧数
+     */
+    public synchronized int queuedFrames() {
+        return controlQueue.size() + dataQueue.size();
+    }
+
+    /**
+     * 检查进行中的写入是否超时，超时则关闭会话触发重连
+     */
+    public void checkStalled() {
+        long since = inFlightSinceNanos;
+        if (since == 0 || System.nanoTime() - since < sendTimeoutNanos) {
+            return;
+        }
+        WebSocketSession stalled;
+        synchronized (this) {
+            if (inFlightSinceNanos != since || session == null) {
+                return;
+            }
+            stalled = session;
+            sendTimeouts.incrementAndGet();
+            failPending("发送超时");
+            session = null;
+        }
+        log.error("{} 出站写入超过 {} ms 未完成，关闭连接", name, TimeUnit.NANOSECONDS.toMillis(sendTimeoutNanos));
+        try {
+            stalled.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (Exception e) {
+            log.debug("{} 关闭超时连接失败: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * 获取出站统计信息（发送延迟、队列深度、吞吐）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long sent = sentFrames.get();
+        long bytes = sentBytes.get();
+        synchronized (this) {
+            stats.put("queuedControl", (long) controlQueue.size());
+            stats.put("queuedData", (long) dataQueue.size());
+            long now = System.nanoTime();
+            long elapsed = now - rateSampleNanos;
+            if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+                bytesPerSecond = (bytes - rateSampleBytes) * 1_000_000_000L / elapsed;
+                rateSampleNanos = now;
+                rateSampleBytes = bytes;
+            }
+            stats.put("bytesPerSecond", bytesPerSecond);
+        }
+        stats.put("maxOutboundQueueDepth", (long) maxQueueDepth.get());
+        stats.put("sentFrames", sent);
+        stats.put("sentBytes", bytes);
+        stats.put("coalescedFrames", coalescedFrames.get());
+        stats.put("rejectedFrames", rejectedFrames.get());
+        stats.put("failedFrames", failedFrames.get());
+        stats.put("sendTimeouts", sendTimeouts.get());
+        stats.put("avgSendMillis", sent == 0 ? 0.0 : writeNanos.get() / 1_000_000.0 / sent);
+        stats.put("maxSendMillis", TimeUnit.NANOSECONDS.toMillis(maxWriteNanos.get()));
+        stats.put("avgOutboundQueueMillis", sent == 0 ? 0.0 : queueNanos.get() / 1_000_000.0 / sent);
+        stats.put("maxOutboundQueueMillis", TimeUnit.NANOSECONDS.toMillis(maxQueueNanos.get()));
+        return stats;
+    }
+
+    private void dispatch() {
+        try {
+            executor.execute(this::drain);
+        } catch (RuntimeException e) {
+            log.error("{} 出站写入任务调度失败，丢弃排队帧", name, e);
+            synchronized (this) {
+                scheduled = false;
+                failPending("调度失败");
+            }
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Frame frame;
+            WebSocketSession target;
+            synchronized (this) {
+                frame = controlQueue.poll();
+                if (frame == null) {
+                    frame = dataQueue.poll();
+                }
+                if (frame == null) {
+                    scheduled = false;
+                    return;
+                }
+                if (frame.coalesceKey != null) {
+                    pendingByKey.remove(frame.coalesceKey, frame);
+                }
+                target = session;
+            }
+            write(target, frame);
+        }
+        // 本轮已达上限，让出线程后继续
+        dispatch();
+    }
+
+    private void write(WebSocketSession target, Frame frame) {
+        if (target == null || !target.isOpen()) {
+            failedFrames.incrementAndGet();
+            frame.future.completeExceptionally(new IOException("WebSocket连接已关闭"));
+            return;
+        }
+        long start = System.nanoTime();
+        long waited = start - frame.enqueueNanos;
+        queueNanos.addAndGet(waited);
+        maxQueueNanos.accumulateAndGet(waited, Math::max);
+        inFlightSinceNanos = start;
+        try {
+            target.sendMessage(new TextMessage(frame.payload));
+            long elapsed = System.nanoTime() - start;
+            writeNanos.addAndGet(elapsed);
+            maxWriteNanos.accumulateAndGet(elapsed, Math::max);
+            sentFrames.incrementAndGet();
+            sentBytes.addAndGet(frame.payload.length());
+            frame.future.complete(null);
+        } catch (Exception e) {
+            failedFrames.incrementAndGet();
+            log.warn("{} 出站写入失败: {}", name, e.getMessage());
+            frame.future.completeExceptionally(e);
+        } finally {
+            inFlightSinceNanos = 0;
+        }
+    }
+
+    /**
+     * 使所有排队中的帧失败（需持有锁）
+     */
+    private void failPending(String reason) {
+        IOException cause = new IOException(reason);
+        for (ArrayDeque<Frame> queue : java.util.List.of(controlQueue, dataQueue)) {
+            Frame frame;
+            while ((frame = queue.poll()) != null) {
+                failedFrames.incrementAndGet();
+                frame.future.completeExceptionally(cause);
+            }
+        }
+        pendingByKey.clear();
+    }
+
+    private static final class Frame {
+        final String payload;
+        final String coalesceKey;
+        final long enqueueNanos;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Frame(String payload, String coalesceKey, long enqueueNanos) {
+            this.payload = payload;
+            this.coalesceKey = coalesceKey;
+            this.enqueueNanos = enqueueNanos;
+        }
+    }
+}
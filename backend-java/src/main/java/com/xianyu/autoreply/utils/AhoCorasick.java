@@ -0,0 +1,171 @@
+package com.xianyu.autoreply.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Aho-Corasick 多模式匹配自动机（不可变，线程安全）
+ * 一次扫描文本即可找出所有出现的模式串，耗时与模式数量无关：O(文本长度 + 命中数)。
+ * 匹配忽略大小写（按字符 {@link Character#toLowerCase(char)} 折叠）。
+ * <p>
+ * 构建完成后每个节点的转移表压缩为有序字符数组 + 目标数组，查找时二分，
+ * 避免上万个关键词时逐节点持有 HashMap 的内存开销。
+ */
+public final class AhoCorasick {
+
+    private static final char[] NO_KEYS = new char[0];
+    private static final int[] NO_TARGETS = new int[0];
+
+    private final char[][] keys;     // 节点 -> 有序转移字符
+    private final int[][] targets;   // 节点 -> 转移目标节点
+    private final int[] fail;        // 失败指针
+    private final int[] output;      // 节点 -> 在此结束的模式序号，-1表示无
+    private final int[] outputLink;  // 节点 -> 沿失败链最近的输出节点，-1表示无
+    private final int patternCount;
+
+    private AhoCorasick(char[][] keys, int[][] targets, int[] fail, int[] output, int[] outputLink, int patternCount) {
+        this.keys = keys;
+        this.targets = targets;
+        this.fail = fail;
+        this.output = output;
+        this.outputLink = outputLink;
+        this.patternCount = patternCount;
+    }
+
+    /**
+     * 构建自动机
+     *
+     * @param patterns 模式串列表，命中时回调其在列表中的下标；空串被忽略，折叠大小写后重复的模式只保留第一个
+     */
+    public static AhoCorasick build(List<String> patterns) {
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        ends.add(-1);
+
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            if (pattern == null || pattern.isEmpty()) {
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = Character.toLowerCase(pattern.charAt(i));
+                Integer next = trie.get(node).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    ends.add(-1);
+                    trie.get(node).put(c, next);
+                }
+                node = next;
+            }
+            if (ends.get(node) < 0) {
+                ends.set(node, p);
+            }
+        }
+
+        int size = trie.size();
+        char[][] keys = new char[size][];
+        int[][] targets = new int[size][];
+        int[] output = new int[size];
+        for (int n = 0; n < size; n++) {
+            TreeMap<Character, Integer> edges = trie.get(n);
+            if (edges.isEmpty()) {
+                keys[n] = NO_KEYS;
+                targets[n] = NO_TARGETS;
+            } else {
+                keys[n] = new char[edges.size()];
+                targets[n] = new int[edges.size()];
+                int i = 0;
+                for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                    keys[n][i] = edge.getKey();
+                    targets[n][i] = edge.getValue();
+                    i++;
+                }
+            }
+            output[n] = ends.get(n);
+        }
+
+        // BFS计算失败指针和输出链
+        int[] fail = new int[size];
+        int[] outputLink = new int[size];
+        Arrays.fill(outputLink, -1);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            fail[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < keys[node].length; i++) {
+                char c = keys[node][i];
+                int child = targets[node][i];
+                int f = fail[node];
+                int next;
+                while ((next = step(keys, targets, f, c)) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = next >= 0 ? next : 0;
+                int suffix = fail[child];
+                outputLink[child] = output[suffix] >= 0 ? suffix : outputLink[suffix];
+                queue.add(child);
+            }
+        }
+
+        return new AhoCorasick(keys, targets, fail, output, outputLink, patterns.size());
+    }
+
+    /**
+     * 扫描文本，每出现一次模式串回调一次其下标（同一模式多次出现会多次回调）
+     */
+    public void search(CharSequence text, IntConsumer onMatch) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = step(keys, targets, state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next >= 0 ? next : 0;
+            for (int n = output[state] >= 0 ? state : outputLink[state]; n >= 0; n = outputLink[n]) {
+                onMatch.accept(output[n]);
+            }
+        }
+    }
+
+    /**
+     * 按自动机的规则折叠大小写（折叠后相同的模式串会落到同一个节点）
+     */
+    public static String fold(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 构建时传入的模式数量
+     */
+    public int patternCount() {
+        return patternCount;
+    }
+
+    /**
+     * 自动机节点数
+     */
+    public int nodeCount() {
+        return fail.length;
+    }
+
+    private static int step(char[][] keys, int[][] targets, int node, char c) {
+        int i = Arrays.binarySearch(keys[node], c);
+        return i >= 0 ? targets[node][i] : -1;
+    }
+}
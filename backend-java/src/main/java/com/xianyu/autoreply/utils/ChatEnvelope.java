@@ -0,0 +1,389 @@
+package com.xianyu.autoreply.utils;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.util.Map;
+
+/**
+ * 解密后聊天消息的字段信封
+ * 按固定路径一次性提取 message["1"]、message["1"]["10"]、message["3"] 中的常用字段，
+ * 需要兜底查找商品ID/订单ID时只对消息树做一次遍历，不再为每个字段各走一遍路径，
+ * 也不再对每个节点拼接路径字符串、执行正则或序列化整条消息后做正则搜索。
+ * <p>
+ * 提取规则与原有的 extractOrderId / extractUserId / extractItemId / extractMessageId / isChatMessage 保持一致。
+ *
+ * @param chatMessage       是否为用户聊天消息（message["1"]["10"] 包含 reminderContent）
+ * @param chatId            会话ID（message["1"]["2"]，去掉@后缀）
+ * @param createTime        消息时间（message["1"]["5"]）
+ * @param userId            发送者用户ID（message["1"]["10"]["senderUserId"]，或 message["1"] 字符串@前的部分）
+ * @param senderName        发送者昵称（senderNick，为空时使用reminderTitle，仍为空时为"未知用户"）
+ * @param reminderContent   消息内容（message["1"]["10"]["reminderContent"]）
+ * @param content           原始消息内容（message["1"]["10"]["content"]）
+ * @param sessionType       会话类型（message["1"]["10"]["sessionType"]，30为群组）
+ * @param redReminder       红色提醒（message["3"]["redReminder"]）
+ * @param redReminderUserId 红色提醒关联的用户ID（message["3"]["userId"]）
+ * @param itemId            商品ID，提取失败为null
+ * @param messageId         消息ID（bizTag或extJson中的messageId），提取失败为null
+ * @param orderId           订单ID，提取失败为null
+ */
+public record ChatEnvelope(boolean chatMessage, String chatId, long createTime, String userId,
+                           String senderName, String reminderContent, String content, String sessionType,
+                           String redReminder, String redReminderUserId,
+                           String itemId, String messageId, String orderId) {
+
+    private static final int MAX_DEPTH = 64; // 最大遍历深度，防止异常数据导致栈溢出
+    private static final int MIN_ID_DIGITS = 10; // 商品ID/订单ID兜底搜索的最小位数
+
+    private static final String[] ITEM_ID_KEYS = {"itemId", "item_id", "id"};
+    private static final String[] ITEM_ID_CONTAINERS = {"extension", "bizData"};
+
+    // 订单ID兜底搜索的链接模式，按优先级排列（对应原正则 orderId[=:] / order_detail\?id= / bizOrderId[=:]）
+    private static final String[][] ORDER_ID_MARKERS = {
+            {"orderId=", "orderId:"},
+            {"order_detail?id="},
+            null, // "id"字段，见 TreeScan
+            {"bizOrderId=", "bizOrderId:"}
+    };
+    private static final int ORDER_ID_FIELD_PRIORITY = 2;
+
+    /**
+     * 发送者用户ID，缺失时返回默认值
+     */
+    public String userIdOr(String defaultValue) {
+        return userId != null ? userId : defaultValue;
+    }
+
+    /**
+     * 从解密后的消息中提取字段信封
+     */
+    public static ChatEnvelope of(JSONObject message) {
+        Object raw1 = message.get("1");
+        JSONObject message1 = raw1 instanceof JSONObject ? (JSONObject) raw1 : null;
+        JSONObject message10 = message1 != null && message1.get("10") instanceof JSONObject
+                ? message1.getJSONObject("10") : null;
+        JSONObject message3 = message.get("3") instanceof JSONObject ? message.getJSONObject("3") : null;
+
+        boolean chatMessage = message10 != null && message10.containsKey("reminderContent");
+
+        String chatId = null;
+        long createTime = 0;
+        if (message1 != null) {
+            String chatIdRaw = message1.getString("2");
+            if (chatIdRaw != null) {
+                int at = chatIdRaw.indexOf('@');
+                chatId = at >= 0 ? chatIdRaw.substring(0, at) : chatIdRaw;
+            }
+            createTime = message1.getLongValue("5");
+        }
+
+        String userId = null;
+        String senderName = "未知用户";
+        String reminderContent = null;
+        String content = null;
+        String sessionType = null;
+        String messageId = null;
+        String itemId = null;
+        if (message10 != null) {
+            userId = message10.getString("senderUserId");
+            String nick = message10.getString("senderNick");
+            if (nick == null || nick.isEmpty()) {
+                nick = message10.getString("reminderTitle");
+            }
+            if (nick != null && !nick.isEmpty()) {
+                senderName = nick;
+            }
+            reminderContent = message10.getString("reminderContent");
+            content = message10.getString("content");
+            sessionType = message10.getString("sessionType");
+            messageId = messageIdFrom(message10.getString("bizTag"));
+            if (messageId == null) {
+                messageId = messageIdFrom(message10.getString("extJson"));
+            }
+            itemId = itemIdFromUrl(message10.getString("reminderUrl"));
+        } else if (raw1 instanceof String) {
+            String message1Str = (String) raw1;
+            int at = message1Str.indexOf('@');
+            if (at >= 0) {
+                userId = message1Str.substring(0, at);
+            }
+        }
+
+        String redReminder = null;
+        String redReminderUserId = null;
+        if (message3 != null) {
+            redReminder = message3.getString("redReminder");
+            redReminderUserId = message3.getString("userId");
+        }
+
+        if (itemId == null && raw1 instanceof String) {
+            itemId = digitRun((String) raw1, MIN_ID_DIGITS);
+        }
+        if (itemId == null && message3 != null) {
+            itemId = itemIdFromMessage3(message3);
+        }
+
+        String orderId = orderIdFromCard(message1);
+
+        // 固定路径都没有找到时，遍历一次消息树兜底查找
+        if (itemId == null || orderId == null) {
+            TreeScan scan = new TreeScan(itemId == null, orderId == null);
+            scan.visit(message, true, 0);
+            if (itemId == null) {
+                itemId = scan.itemId;
+            }
+            if (orderId == null) {
+                orderId = scan.orderId();
+            }
+        }
+
+        return new ChatEnvelope(chatMessage, chatId, createTime, userId, senderName, reminderContent, content,
+                sessionType, redReminder, redReminderUserId, itemId, messageId, orderId);
+    }
+
+    private static String messageIdFrom(String json) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+        try {
+            JSONObject parsed = JSON.parseObject(json);
+            return parsed != null ? parsed.getString("messageId") : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String itemIdFromUrl(String url) {
+        if (url == null) {
+            return null;
+        }
+        int start = url.indexOf("itemId=");
+        if (start < 0) {
+            return null;
+        }
+        start += "itemId=".length();
+        int end = url.indexOf('&', start);
+        String itemId = end >= 0 ? url.substring(start, end) : url.substring(start);
+        return itemId.isEmpty() ? null : itemId;
+    }
+
+    /**
+     * 从 message["3"] 的 extension、bizData、其他子对象和 content 中提取商品ID
+     */
+    private static String itemIdFromMessage3(JSONObject message3) {
+        for (String field : ITEM_ID_CONTAINERS) {
+            if (message3.get(field) instanceof JSONObject) {
+                String itemId = itemIdField(message3.getJSONObject(field));
+                if (itemId != null) {
+                    return itemId;
+                }
+            }
+        }
+        for (Object value : message3.values()) {
+            if (value instanceof JSONObject) {
+                String itemId = itemIdField((JSONObject) value);
+                if (itemId != null) {
+                    return itemId;
+                }
+            }
+        }
+        String content = message3.getString("content");
+        return content != null ? digitRun(content, MIN_ID_DIGITS) : null;
+    }
+
+    private static String itemIdField(JSONObject object) {
+        String itemId = object.getString("itemId");
+        return itemId != null ? itemId : object.getString("item_id");
+    }
+
+    /**
+     * 从卡片消息（message["1"]["6"]["3"]["5"]）的按钮或主体链接中提取订单ID
+     */
+    private static String orderIdFromCard(JSONObject message1) {
+        if (message1 == null || !(message1.get("6") instanceof JSONObject)) {
+            return null;
+        }
+        JSONObject message16 = message1.getJSONObject("6");
+        if (!(message16.get("3") instanceof JSONObject)) {
+            return null;
+        }
+        String contentJson = message16.getJSONObject("3").getString("5");
+        if (contentJson == null || contentJson.isBlank()) {
+            return null;
+        }
+        try {
+            JSONObject main = path(JSON.parseObject(contentJson), "dxCard", "item", "main");
+            if (main == null) {
+                return null;
+            }
+            JSONObject button = path(main, "exContent", "button");
+            String orderId = button != null ? digitsAfter(button.getString("targetUrl"), new String[]{"orderId="}, 1) : null;
+            if (orderId == null) {
+                orderId = digitsAfter(main.getString("targetUrl"), new String[]{"order_detail?id="}, 1);
+            }
+            return orderId;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static JSONObject path(JSONObject object, String... keys) {
+        JSONObject current = object;
+        for (String key : keys) {
+            if (current == null || !(current.get(key) instanceof JSONObject)) {
+                return null;
+            }
+            current = current.getJSONObject(key);
+        }
+        return current;
+    }
+
+    /**
+     * 查找任一 marker 之后紧跟的数字串（至少minDigits位），取位置最靠前的匹配，
+     * 等价于正则 (marker1|marker2)(\d{minDigits,}) 的首个匹配
+     */
+    static String digitsAfter(String text, String[] markers, int minDigits) {
+        if (text == null) {
+            return null;
+        }
+        String found = null;
+        int foundAt = Integer.MAX_VALUE;
+        for (String marker : markers) {
+            int index = text.indexOf(marker);
+            while (index >= 0 && index < foundAt) {
+                int start = index + marker.length();
+                int end = start;
+                while (end < text.length() && isDigit(text.charAt(end))) {
+                    end++;
+                }
+                if (end - start >= minDigits) {
+                    found = text.substring(start, end);
+                    foundAt = index;
+                    break;
+                }
+                index = text.indexOf(marker, index + 1);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 开头的连续数字（至少minDigits位），否则返回null
+     */
+    private static String leadingDigits(String text, int minDigits) {
+        int end = 0;
+        while (end < text.length() && isDigit(text.charAt(end))) {
+            end++;
+        }
+        return end >= minDigits ? text.substring(0, end) : null;
+    }
+
+    /**
+     * 查找第一段至少minDigits位的连续数字，等价于正则 (\d{minDigits,}) 的首个匹配
+     */
+    static String digitRun(String text, int minDigits) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            if (!isDigit(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < length && isDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i - start >= minDigits) {
+                return text.substring(start, i);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLongDigits(String value) {
+        if (value.length() < MIN_ID_DIGITS) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 对消息树的单次前序遍历：
+     * - 商品ID：只沿对象节点查找 itemId / item_id / id 字段中的长数字（与原递归查找一致，不进入数组）
+     * - 订单ID：在所有字符串值中查找 orderId= / order_detail?id= / bizOrderId= 后的长数字，以及 id 字段的长数字，
+     *   每种模式记录按文档顺序的第一个匹配，最后按模式优先级取值（与原先序列化后逐个正则搜索的结果一致）
+     */
+    private static final class TreeScan {
+        private final boolean wantItemId;
+        private final boolean wantOrderId;
+        private final String[] orderIds = new String[ORDER_ID_MARKERS.length];
+        private String itemId;
+
+        TreeScan(boolean wantItemId, boolean wantOrderId) {
+            this.wantItemId = wantItemId;
+            this.wantOrderId = wantOrderId;
+        }
+
+        String orderId() {
+            for (String orderId : orderIds) {
+                if (orderId != null) {
+                    return orderId;
+                }
+            }
+            return null;
+        }
+
+        void visit(Object node, boolean objectPath, int depth) {
+            if (depth > MAX_DEPTH) {
+                return;
+            }
+            if (node instanceof JSONObject) {
+                JSONObject object = (JSONObject) node;
+                if (wantItemId && itemId == null && objectPath) {
+                    for (String key : ITEM_ID_KEYS) {
+                        Object value = object.get(key);
+                        if (value instanceof String || value instanceof Number) {
+                            String valueStr = String.valueOf(value);
+                            if (isLongDigits(valueStr)) {
+                                itemId = valueStr;
+                                break;
+                            }
+                        }
+                    }
+                }
+                for (Map.Entry<String, Object> entry : object.entrySet()) {
+                    Object value = entry.getValue();
+                    if (wantOrderId && orderIds[ORDER_ID_FIELD_PRIORITY] == null && "id".equals(entry.getKey())
+                            && (value instanceof String || value instanceof Number)) {
+                        orderIds[ORDER_ID_FIELD_PRIORITY] = leadingDigits(String.valueOf(value), MIN_ID_DIGITS);
+                    }
+                    visit(value, objectPath, depth + 1);
+                }
+            } else if (node instanceof JSONArray) {
+                for (Object element : (JSONArray) node) {
+                    visit(element, false, depth + 1);
+                }
+            } else if (node instanceof String && wantOrderId) {
+                scanOrderId((String) node);
+            }
+        }
+
+        private void scanOrderId(String text) {
+            for (int priority = 0; priority < ORDER_ID_MARKERS.length; priority++) {
+                if (ORDER_ID_MARKERS[priority] != null && orderIds[priority] == null) {
+                    orderIds[priority] = digitsAfter(text, ORDER_ID_MARKERS[priority], MIN_ID_DIGITS);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.xianyu.autoreply.utils;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 基于字符二元组（bigram）的 MinHash 签名，用于估算两段短文本的 Jaccard 相似度
+ * 文本先经 {@link #normalize(String)} 归一化（去掉空白、标点、表情，统一小写），
+ * 签名相同位置取值相等的比例即为相似度估计值。
+ */
+public final class MinHash {
+
+    public static final int NUM_HASHES = 64;
+
+    private static final long[] SEEDS = new long[NUM_HASHES];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_CAFEL);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            SEEDS[i] = random.nextLong();
+        }
+    }
+
+    private MinHash() {
+    }
+
+    /**
+     * 归一化：只保留字母和数字（含汉字），英文转小写
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        text.codePoints()
+                .filter(Character::isLetterOrDigit)
+                .map(Character::toLowerCase)
+                .forEach(sb::appendCodePoint);
+        return sb.toString();
+    }
+
+    /**
+     * 计算归一化文本的签名；单个字符的文本以该字符本身作为唯一特征
+     *
+     * @param normalized 非空的归一化文本
+     */
+    public static int[] signature(String normalized) {
+        int[] signature = new int[NUM_HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        if (normalized.length() < 2) {
+            update(signature, normalized.isEmpty() ? 0 : normalized.charAt(0));
+            return signature;
+        }
+        for (int i = 0; i + 1 < normalized.length(); i++) {
+            update(signature, ((long) normalized.charAt(i) << 16) | normalized.charAt(i + 1));
+        }
+        return signature;
+    }
+
+    /**
+     * 两个签名的相似度估计（0~1）
+     */
+    public static double similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (a[i] == b[i]) {
+                same++;
+            }
+        }
+        return (double) same / NUM_HASHES;
+    }
+
+    private static void update(int[] signature, long shingle) {
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int h = (int) mix(shingle ^ SEEDS[i]);
+            if (h < signature[i]) {
+                signature[i] = h;
+            }
+        }
+    }
+
+    /**
+     * MurmurHash3 的 64 位混淆函数
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,198 @@
+package com.xianyu.autoreply.utils;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import org.msgpack.core.ExtensionTypeHeader;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.core.buffer.ArrayBufferInput;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 同步包数据解码器
+ * 将同步包中的Base64数据一次性解码为fastjson2的JSONObject/JSONArray：
+ * - 明文JSON直接从字节解析，不再构造中间字符串
+ * - MessagePack数据直接流式读取为JSONObject/JSONArray，不再经过Jackson对象树和JSON字符串中转
+ * <p>
+ * 每个线程复用Base64解码缓冲区和MessagePack读取器，与 {@link XianyuUtils#decrypt(String)} 的解码结果保持一致
+ * （整数键转为字符串键、二进制数据转为Base64字符串）。
+ */
+public final class MsgPackJsonDecoder {
+
+    private static final int MAX_DEPTH = 64; // 最大嵌套深度，防止异常数据导致栈溢出
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024; // 线程缓冲区最大保留大小（字节）
+
+    private static final ThreadLocal<Context> CONTEXT = ThreadLocal.withInitial(Context::new);
+
+    /**
+     * 解码结果
+     *
+     * @param data      解码后的数据
+     * @param plainJson 是否为明文JSON（否则为MessagePack）
+     */
+    public record Result(JSONObject data, boolean plainJson) {
+    }
+
+    private MsgPackJsonDecoder() {
+    }
+
+    /**
+     * 解码同步包中的data字段
+     *
+     * @param data Base64编码的数据
+     * @return 解码结果，数据不是对象类型时返回null
+     * @throws IOException 数据无法解码
+     */
+    public static Result decodeSyncData(String data) throws IOException {
+        Context ctx = CONTEXT.get();
+        try {
+            int length = ctx.decodeBase64(data);
+            byte[] bytes = ctx.bytes;
+
+            // 明文JSON（'{' 开头），解析失败再按MessagePack处理
+            if (length > 0 && bytes[0] == '{') {
+                try {
+                    JSONObject parsed = JSON.parseObject(bytes, 0, length, StandardCharsets.UTF_8);
+                    if (parsed != null) {
+                        return new Result(parsed, true);
+                    }
+                } catch (Exception ignored) {
+                    // 不是合法JSON，继续按MessagePack解码
+                }
+            }
+
+            Object value = ctx.unpack(bytes, length);
+            return value instanceof JSONObject ? new Result((JSONObject) value, false) : null;
+        } finally {
+            ctx.trim();
+        }
+    }
+
+    /**
+     * 解码MessagePack字节为JSONObject/JSONArray或基本类型
+     */
+    public static Object decode(byte[] bytes) throws IOException {
+        return CONTEXT.get().unpack(bytes, bytes.length);
+    }
+
+    /**
+     * 线程内复用的解码上下文
+     */
+    private static final class Context {
+        final ArrayBufferInput input = new ArrayBufferInput(new byte[0]);
+        final MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(input);
+        byte[] bytes = new byte[4096];
+
+        /**
+         * Base64解码到复用缓冲区，返回有效长度
+         */
+        int decodeBase64(String data) {
+            byte[] src = data.getBytes(StandardCharsets.ISO_8859_1);
+            int required = src.length / 4 * 3 + 3;
+            if (bytes.length < required) {
+                bytes = new byte[required];
+            }
+            try {
+                return Base64.getDecoder().decode(src, bytes);
+            } catch (IllegalArgumentException e) {
+                // 非标准Base64，沿用原有的宽松解码 + 补齐padding逻辑
+                String cleanData = data;
+                byte[] decoded;
+                try {
+                    decoded = cn.hutool.core.codec.Base64.decode(cleanData);
+                } catch (Exception ex) {
+                    int missingPadding = cleanData.length() % 4;
+                    if (missingPadding == 0) {
+                        throw ex;
+                    }
+                    cleanData += "=".repeat(4 - missingPadding);
+                    decoded = cn.hutool.core.codec.Base64.decode(cleanData);
+                }
+                bytes = decoded;
+                return decoded.length;
+            }
+        }
+
+        Object unpack(byte[] data, int length) throws IOException {
+            input.reset(data, 0, length);
+            unpacker.reset(input);
+            return readValue(0);
+        }
+
+        void trim() {
+            if (bytes.length > MAX_RETAINED_BUFFER) {
+                bytes = new byte[4096];
+            }
+        }
+
+        private Object readValue(int depth) throws IOException {
+            if (depth > MAX_DEPTH) {
+                throw new IOException("MessagePack数据嵌套过深");
+            }
+            MessageFormat format = unpacker.getNextFormat();
+            switch (format.getValueType()) {
+                case NIL:
+                    unpacker.unpackNil();
+                    return null;
+                case BOOLEAN:
+                    return unpacker.unpackBoolean();
+                case INTEGER:
+                    return readInteger(format);
+                case FLOAT:
+                    // 与fastjson2解析JSON小数的结果保持一致（BigDecimal）
+                    return format == MessageFormat.FLOAT32
+                            ? new BigDecimal(Float.toString(unpacker.unpackFloat()))
+                            : BigDecimal.valueOf(unpacker.unpackDouble());
+                case STRING:
+                    return unpacker.unpackString();
+                case BINARY: {
+                    int len = unpacker.unpackBinaryHeader();
+                    return Base64.getEncoder().encodeToString(unpacker.readPayload(len));
+                }
+                case ARRAY: {
+                    int size = unpacker.unpackArrayHeader();
+                    JSONArray array = new JSONArray(size);
+                    for (int i = 0; i < size; i++) {
+                        array.add(readValue(depth + 1));
+                    }
+                    return array;
+                }
+                case MAP: {
+                    int size = unpacker.unpackMapHeader();
+                    JSONObject object = new JSONObject(Math.max(16, size * 2));
+                    for (int i = 0; i < size; i++) {
+                        Object key = readValue(depth + 1);
+                        object.put(String.valueOf(key), readValue(depth + 1));
+                    }
+                    return object;
+                }
+                case EXTENSION: {
+                    ExtensionTypeHeader header = unpacker.unpackExtensionTypeHeader();
+                    return Base64.getEncoder().encodeToString(unpacker.readPayload(header.getLength()));
+                }
+                default:
+                    unpacker.skipValue();
+                    return null;
+            }
+        }
+
+        private Object readInteger(MessageFormat format) throws IOException {
+            if (format == MessageFormat.UINT64) {
+                BigInteger value = unpacker.unpackBigInteger();
+                return value.bitLength() < 64 ? (Object) value.longValue() : value;
+            }
+            long value = unpacker.unpackLong();
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return (int) value;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,696 @@
+package com.xianyu.autoreply.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * 线性时间正则匹配器（关键词正则规则专用）
+ * 编译时将正则转换为 NFA 再通过子集构造生成 DFA，匹配时每个字符只做一次查表，
+ * 耗时与文本长度成正比，不存在 java.util.regex 回溯导致的指数级耗时。
+ * <p>
+ * 支持的语法：字面量、{@code .}、字符类 {@code [...]}/{@code [^...]}、{@code \d \D \w \W \s \S}、
+ * 分组 {@code (...)}/{@code (?:...)}、{@code |}、量词 {@code * + ? {m} {m,} {m,n}}（可带惰性后缀 ?），
+ * 以及整个模式首尾的 {@code ^}/{@code $}。
+ * 不支持（编译时拒绝）：反向引用、环视、命名分组、内联标志、占有量词、单词边界等依赖回溯的语法。
+ * <p>
+ * 匹配语义为查找（文本中任意位置出现即命中），ASCII字母忽略大小写。
+ * 模式长度、重复次数、NFA/DFA状态数均有上限，超出时编译失败。
+ */
+public final class SafeRegex {
+
+    public static final int MAX_PATTERN_LENGTH = 200;
+    public static final int MAX_REPEAT = 50;
+    public static final int MAX_NFA_STATES = 2000;
+    public static final int MAX_DFA_STATES = 500;
+
+    private static final char MAX_CHAR = Character.MAX_VALUE;
+    private static final int[] DOT = {0, '\n' - 1, '\n' + 1, MAX_CHAR};
+    private static final int[] DIGIT = {'0', '9'};
+    private static final int[] WORD = normalize(new int[]{'0', '9', 'A', 'Z', '_', '_', 'a', 'z', 0x4E00, 0x9FFF});
+    private static final int[] SPACE = normalize(new int[]{'\t', '\r', ' ', ' ', 0x3000, 0x3000});
+
+    private final String pattern;
+    private final int[] classStarts;   // 字符等价类的起始字符（升序）
+    private final byte[] asciiClasses; // ASCII字符 -> 等价类（加速查表）
+    private final int[][] transitions; // DFA状态 -> 等价类 -> 下一状态
+    private final boolean[] accepting;
+    private final int deadState;       // 锚定开头时的死状态，-1表示无
+    private final boolean anchoredEnd;
+
+    private SafeRegex(String pattern, int[] classStarts, int[][] transitions, boolean[] accepting,
+                      int deadState, boolean anchoredEnd) {
+        this.pattern = pattern;
+        this.classStarts = classStarts;
+        this.transitions = transitions;
+        this.accepting = accepting;
+        this.deadState = deadState;
+        this.anchoredEnd = anchoredEnd;
+        this.asciiClasses = new byte[128];
+        if (classStarts.length <= Byte.MAX_VALUE) {
+            for (int c = 0; c < 128; c++) {
+                asciiClasses[c] = (byte) lookupClass(c);
+            }
+        }
+    }
+
+    /**
+     * 编译正则
+     *
+     * @throws IllegalArgumentException 语法错误、包含不支持的语法或超出复杂度上限
+     */
+    public static SafeRegex compile(String pattern) {
+        if (pattern == null || pattern.isEmpty()) {
+            throw new IllegalArgumentException("正则不能为空");
+        }
+        if (pattern.length() > MAX_PATTERN_LENGTH) {
+            throw new IllegalArgumentException("正则长度超过上限 " + MAX_PATTERN_LENGTH);
+        }
+        Parser parser = new Parser(pattern);
+        Node root = parser.parse();
+        if ((parser.anchoredStart || parser.anchoredEnd) && root instanceof Alt) {
+            throw new IllegalArgumentException("^/$ 与顶层 | 同时使用时请用分组包裹，例如 ^(a|b)$");
+        }
+        Nfa nfa = new Nfa();
+        int start = nfa.build(root, nfa.add(Nfa.MATCH, null, -1, -1));
+        return determinize(pattern, nfa, start, parser.anchoredStart, parser.anchoredEnd);
+    }
+
+    /**
+     * 文本中是否存在匹配
+     */
+    public boolean find(CharSequence text) {
+        int state = 0;
+        if (!anchoredEnd && accepting[state]) {
+            return true;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+            state = transitions[state][classOf(c)];
+            if (state == deadState) {
+                return false;
+            }
+            if (!anchoredEnd && accepting[state]) {
+                return true;
+            }
+        }
+        return accepting[state];
+    }
+
+    public String pattern() {
+        return pattern;
+    }
+
+    /**
+     * DFA状态数
+     */
+    public int stateCount() {
+        return transitions.length;
+    }
+
+    private int classOf(char c) {
+        if (c < 128 && classStarts.length <= Byte.MAX_VALUE) {
+            return asciiClasses[c];
+        }
+        return lookupClass(c);
+    }
+
+    private int lookupClass(int c) {
+        int i = Arrays.binarySearch(classStarts, c);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    // ============== 子集构造 ==============
+
+    private static SafeRegex determinize(String pattern, Nfa nfa, int start, boolean anchoredStart, boolean anchoredEnd) {
+        // 所有字符集的边界划分出字符等价类，同一类中的字符在任何状态下转移都相同
+        TreeSet<Integer> bounds = new TreeSet<>();
+        bounds.add(0);
+        for (int[] ranges : nfa.sets) {
+            if (ranges == null) {
+                continue;
+            }
+            for (int i = 0; i < ranges.length; i += 2) {
+                bounds.add(ranges[i]);
+                if (ranges[i + 1] < MAX_CHAR) {
+                    bounds.add(ranges[i + 1] + 1);
+                }
+            }
+        }
+        int[] classStarts = bounds.stream().mapToInt(Integer::intValue).toArray();
+
+        BitSet startSet = nfa.closure(singleton(start));
+        Map<BitSet, Integer> ids = new HashMap<>();
+        List<BitSet> states = new ArrayList<>();
+        List<int[]> transitions = new ArrayList<>();
+        ids.put(startSet, 0);
+        states.add(startSet);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+
+        while (!queue.isEmpty()) {
+            int id = queue.poll();
+            BitSet current = states.get(id);
+            int[] row = new int[classStarts.length];
+            for (int cls = 0; cls < classStarts.length; cls++) {
+                BitSet moved = new BitSet();
+                int c = classStarts[cls];
+                for (int s = current.nextSetBit(0); s >= 0; s = current.nextSetBit(s + 1)) {
+                    if (nfa.types.get(s) == Nfa.CHARS && contains(nfa.sets.get(s), c)) {
+                        moved.set(nfa.out1.get(s));
+                    }
+                }
+                BitSet next = nfa.closure(moved);
+                if (!anchoredStart) {
+                    // 未锚定开头：每个位置都可以开始新的匹配
+                    next.or(startSet);
+                }
+                Integer target = ids.get(next);
+                if (target == null) {
+                    if (states.size() >= MAX_DFA_STATES) {
+                        throw new IllegalArgumentException("正则过于复杂（DFA状态数超过 " + MAX_DFA_STATES + "）");
+                    }
+                    target = states.size();
+                    ids.put(next, target);
+                    states.add(next);
+                    queue.add(target);
+                }
+                row[cls] = target;
+            }
+            while (transitions.size() <= id) {
+                transitions.add(null);
+            }
+            transitions.set(id, row);
+        }
+
+        boolean[] accepting = new boolean[states.size()];
+        int deadState = -1;
+        for (int i = 0; i < states.size(); i++) {
+            BitSet set = states.get(i);
+            accepting[i] = set.get(nfa.matchState);
+            if (anchoredStart && set.isEmpty()) {
+                deadState = i;
+            }
+        }
+        return new SafeRegex(pattern, classStarts, transitions.toArray(new int[0][]), accepting, deadState, anchoredEnd);
+    }
+
+    private static BitSet singleton(int state) {
+        BitSet set = new BitSet();
+        set.set(state);
+        return set;
+    }
+
+    private static boolean contains(int[] ranges, int c) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (c < ranges[i]) {
+                return false;
+            }
+            if (c <= ranges[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ============== 字符集（升序、不重叠的闭区间对） ==============
+
+    private static int[] normalize(int[] ranges) {
+        int n = ranges.length / 2;
+        int[][] pairs = new int[n][];
+        for (int i = 0; i < n; i++) {
+            pairs[i] = new int[]{ranges[2 * i], ranges[2 * i + 1]};
+        }
+        Arrays.sort(pairs, (a, b) -> Integer.compare(a[0], b[0]));
+        int[] merged = new int[ranges.length];
+        int size = 0;
+        for (int[] pair : pairs) {
+            if (size > 0 && pair[0] <= merged[size - 1] + 1) {
+                merged[size - 1] = Math.max(merged[size - 1], pair[1]);
+            } else {
+                merged[size++] = pair[0];
+                merged[size++] = pair[1];
+            }
+        }
+        return Arrays.copyOf(merged, size);
+    }
+
+    private static int[] complement(int[] ranges) {
+        int[] result = new int[ranges.length + 2];
+        int size = 0;
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                result[size++] = next;
+                result[size++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= MAX_CHAR) {
+            result[size++] = next;
+            result[size++] = MAX_CHAR;
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * 匹配时文本中的ASCII大写字母已折叠为小写，字符集中的大写区间需要补充对应的小写区间
+     */
+    private static int[] foldCase(int[] ranges) {
+        int[] result = Arrays.copyOf(ranges, ranges.length * 2);
+        int size = ranges.length;
+        for (int i = 0; i < ranges.length; i += 2) {
+            int lo = Math.max(ranges[i], 'A');
+            int hi = Math.min(ranges[i + 1], 'Z');
+            if (lo <= hi) {
+                result[size++] = lo + ('a' - 'A');
+                result[size++] = hi + ('a' - 'A');
+            }
+        }
+        return normalize(Arrays.copyOf(result, size));
+    }
+
+    // ============== 语法树 ==============
+
+    private interface Node {
+    }
+
+    private record Chars(int[] ranges) implements Node {
+    }
+
+    private record Concat(List<Node> items) implements Node {
+    }
+
+    private record Alt(List<Node> options) implements Node {
+    }
+
+    private record Repeat(Node child, int min, int max) implements Node { // max为-1表示无上限
+    }
+
+    private static final Node EMPTY = new Concat(List.of());
+
+    /**
+     * 递归下降解析器
+     */
+    private static final class Parser {
+        private final String src;
+        private int pos;
+        private final int end;
+        boolean anchoredStart;
+        boolean anchoredEnd;
+
+        Parser(String src) {
+            this.src = src;
+            int from = 0;
+            int to = src.length();
+            if (src.charAt(0) == '^') {
+                anchoredStart = true;
+                from = 1;
+            }
+            if (to > from && src.charAt(to - 1) == '$' && !isEscaped(src, to - 1)) {
+                anchoredEnd = true;
+                to--;
+            }
+            this.pos = from;
+            this.end = to;
+        }
+
+        private static boolean isEscaped(String s, int index) {
+            int backslashes = 0;
+            for (int i = index - 1; i >= 0 && s.charAt(i) == '\\'; i--) {
+                backslashes++;
+            }
+            return backslashes % 2 == 1;
+        }
+
+        Node parse() {
+            Node node = parseAlt();
+            if (pos < end) {
+                throw error("多余的 ')'");
+            }
+            return node;
+        }
+
+        private Node parseAlt() {
+            List<Node> options = new ArrayList<>();
+            options.add(parseConcat());
+            while (pos < end && src.charAt(pos) == '|') {
+                pos++;
+                options.add(parseConcat());
+            }
+            return options.size() == 1 ? options.get(0) : new Alt(options);
+        }
+
+        private Node parseConcat() {
+            List<Node> items = new ArrayList<>();
+            while (pos < end && src.charAt(pos) != '|' && src.charAt(pos) != ')') {
+                items.add(parseRepeat());
+            }
+            return items.size() == 1 ? items.get(0) : new Concat(items);
+        }
+
+        private Node parseRepeat() {
+            Node atom = parseAtom();
+            if (pos >= end) {
+                return atom;
+            }
+            char c = src.charAt(pos);
+            int min;
+            int max;
+            if (c == '*') {
+                min = 0;
+                max = -1;
+                pos++;
+            } else if (c == '+') {
+                min = 1;
+                max = -1;
+                pos++;
+            } else if (c == '?') {
+                min = 0;
+                max = 1;
+                pos++;
+            } else if (c == '{' && isCountedRepeat()) {
+                pos++;
+                min = readInt();
+                max = min;
+                if (src.charAt(pos) == ',') {
+                    pos++;
+                    max = src.charAt(pos) == '}' ? -1 : readInt();
+                }
+                pos++; // '}'
+                if (max != -1 && max < min) {
+                    throw error("重复次数范围无效");
+                }
+                if (min > MAX_REPEAT || max > MAX_REPEAT) {
+                    throw error("重复次数超过上限 " + MAX_REPEAT);
+                }
+            } else {
+                return atom;
+            }
+            if (pos < end) {
+                char suffix = src.charAt(pos);
+                if (suffix == '?') {
+                    pos++; // 惰性量词不影响是否命中
+                } else if (suffix == '+') {
+                    throw error("不支持占有量词");
+                }
+            }
+            if (pos < end && "*+?".indexOf(src.charAt(pos)) >= 0) {
+                throw error("重复的量词");
+            }
+            return new Repeat(atom, min, max);
+        }
+
+        private boolean isCountedRepeat() {
+            int i = pos + 1;
+            int digits = 0;
+            while (i < end && Character.isDigit(src.charAt(i))) {
+                i++;
+                digits++;
+            }
+            if (digits == 0) {
+                return false;
+            }
+            if (i < end && src.charAt(i) == ',') {
+                i++;
+                while (i < end && Character.isDigit(src.charAt(i))) {
+                    i++;
+                }
+            }
+            return i < end && src.charAt(i) == '}';
+        }
+
+        private int readInt() {
+            int start = pos;
+            while (pos < end && Character.isDigit(src.charAt(pos))) {
+                pos++;
+            }
+            if (pos - start > 4) {
+                throw error("重复次数超过上限 " + MAX_REPEAT);
+            }
+            return Integer.parseInt(src.substring(start, pos));
+        }
+
+        private Node parseAtom() {
+            char c = src.charAt(pos);
+            switch (c) {
+                case '(' -> {
+                    pos++;
+                    if (pos < end && src.charAt(pos) == '?') {
+                        if (pos + 1 < end && src.charAt(pos + 1) == ':') {
+                            pos += 2;
+                        } else {
+                            throw error("不支持环视、命名分组或内联标志");
+                        }
+                    }
+                    Node inner = parseAlt();
+                    if (pos >= end || src.charAt(pos) != ')') {
+                        throw error("缺少 ')'");
+                    }
+                    pos++;
+                    return inner;
+                }
+                case '[' -> {
+                    pos++;
+                    return new Chars(parseClass());
+                }
+                case '.' -> {
+                    pos++;
+                    return new Chars(DOT);
+                }
+                case '\\' -> {
+                    pos++;
+                    return new Chars(foldCase(parseEscape(false)));
+                }
+                case '*', '+', '?' -> throw error("量词前缺少内容");
+                case '^', '$' -> throw error("^ 和 $ 只能出现在模式首尾");
+                default -> {
+                    pos++;
+                    return new Chars(foldCase(new int[]{c, c}));
+                }
+            }
+        }
+
+        private int[] parseClass() {
+            boolean negate = false;
+            if (pos < end && src.charAt(pos) == '^') {
+                negate = true;
+                pos++;
+            }
+            List<Integer> ranges = new ArrayList<>();
+            boolean first = true;
+            while (true) {
+                if (pos >= end) {
+                    throw error("缺少 ']'");
+                }
+                char c = src.charAt(pos);
+                if (c == ']' && !first) {
+                    pos++;
+                    break;
+                }
+                first = false;
+                int[] lo;
+                if (c == '\\') {
+                    pos++;
+                    lo = parseEscape(true);
+                } else {
+                    pos++;
+                    lo = new int[]{c, c};
+                }
+                if (lo.length == 2 && lo[0] == lo[1] && pos + 1 < end
+                        && src.charAt(pos) == '-' && src.charAt(pos + 1) != ']') {
+                    pos++;
+                    char h = src.charAt(pos);
+                    int[] hi;
+                    if (h == '\\') {
+                        pos++;
+                        hi = parseEscape(true);
+                    } else {
+                        pos++;
+                        hi = new int[]{h, h};
+                    }
+                    if (hi.length != 2 || hi[0] != hi[1]) {
+                        throw error("字符范围无效");
+                    }
+                    if (hi[0] < lo[0]) {
+                        throw error("字符范围顺序错误");
+                    }
+                    ranges.add(lo[0]);
+                    ranges.add(hi[0]);
+                } else {
+                    for (int r : lo) {
+                        ranges.add(r);
+                    }
+                }
+            }
+            // 先折叠大小写再取反，否则 [^b] 会因补集中含 'B' 而匹配到折叠后的 'b'
+            int[] set = foldCase(normalize(ranges.stream().mapToInt(Integer::intValue).toArray()));
+            return negate ? complement(set) : set;
+        }
+
+        private int[] parseEscape(boolean inClass) {
+            if (pos >= end) {
+                throw error("模式以 '\\' 结尾");
+            }
+            char c = src.charAt(pos++);
+            switch (c) {
+                case 'd':
+                    return DIGIT;
+                case 'D':
+                    return complement(DIGIT);
+                case 'w':
+                    return WORD;
+                case 'W':
+                    return complement(WORD);
+                case 's':
+                    return SPACE;
+                case 'S':
+                    return complement(SPACE);
+                case 'n':
+                    return new int[]{'\n', '\n'};
+                case 't':
+                    return new int[]{'\t', '\t'};
+                case 'r':
+                    return new int[]{'\r', '\r'};
+                case 'f':
+                    return new int[]{'\f', '\f'};
+                case 'v':
+                    return new int[]{0x0B, 0x0B};
+                case 'x':
+                    return hexChar(2);
+                case 'u':
+                    return hexChar(4);
+                default:
+                    break;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (c >= '1' && c <= '9') {
+                    throw error("不支持反向引用");
+                }
+                if (c == 'b' && inClass) {
+                    return new int[]{'\b', '\b'};
+                }
+                throw error("不支持的转义 \\" + c);
+            }
+            return new int[]{c, c};
+        }
+
+        private int[] hexChar(int digits) {
+            if (pos + digits > end) {
+                throw error("十六进制转义不完整");
+            }
+            try {
+                int value = Integer.parseInt(src.substring(pos, pos + digits), 16);
+                pos += digits;
+                return new int[]{value, value};
+            } catch (NumberFormatException e) {
+                throw error("十六进制转义无效");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + "（位置 " + pos + "）");
+        }
+    }
+
+    // ============== Thompson NFA ==============
+
+    private static final class Nfa {
+        static final int CHARS = 0;
+        static final int SPLIT = 1;
+        static final int MATCH = 2;
+
+        final List<Integer> types = new ArrayList<>();
+        final List<int[]> sets = new ArrayList<>();
+        final List<Integer> out1 = new ArrayList<>();
+        final List<Integer> out2 = new ArrayList<>();
+        int matchState = -1;
+
+        int add(int type, int[] set, int o1, int o2) {
+            if (types.size() >= MAX_NFA_STATES) {
+                throw new IllegalArgumentException("正则过于复杂（NFA状态数超过 " + MAX_NFA_STATES + "）");
+            }
+            types.add(type);
+            sets.add(set);
+            out1.add(o1);
+            out2.add(o2);
+            int id = types.size() - 1;
+            if (type == MATCH) {
+                matchState = id;
+            }
+            return id;
+        }
+
+        /**
+         * 反向构建：返回匹配node后转到next的起始状态
+         */
+        int build(Node node, int next) {
+            if (node instanceof Chars chars) {
+                return add(CHARS, chars.ranges(), next, -1);
+            }
+            if (node instanceof Concat concat) {
+                int start = next;
+                for (int i = concat.items().size() - 1; i >= 0; i--) {
+                    start = build(concat.items().get(i), start);
+                }
+                return start;
+            }
+            if (node instanceof Alt alt) {
+                int start = build(alt.options().get(alt.options().size() - 1), next);
+                for (int i = alt.options().size() - 2; i >= 0; i--) {
+                    start = add(SPLIT, null, build(alt.options().get(i), next), start);
+                }
+                return start;
+            }
+            Repeat repeat = (Repeat) node;
+            int tail = next;
+            if (repeat.max() == -1) {
+                int loop = add(SPLIT, null, -1, next);
+                out1.set(loop, build(repeat.child(), loop));
+                tail = loop;
+            } else {
+                for (int i = repeat.min(); i < repeat.max(); i++) {
+                    tail = add(SPLIT, null, build(repeat.child(), tail), next);
+                }
+            }
+            for (int i = 0; i < repeat.min(); i++) {
+                tail = build(repeat.child(), tail);
+            }
+            return tail;
+        }
+
+        /**
+         * ε闭包（只保留字符状态和匹配状态）
+         */
+        BitSet closure(BitSet states) {
+            BitSet result = new BitSet();
+            BitSet visited = new BitSet();
+            ArrayDeque<Integer> stack = new ArrayDeque<>();
+            for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+                stack.push(s);
+            }
+            while (!stack.isEmpty()) {
+                int s = stack.pop();
+                if (s < 0 || visited.get(s)) {
+                    continue;
+                }
+                visited.set(s);
+                if (types.get(s) == SPLIT) {
+                    stack.push(out1.get(s));
+                    stack.push(out2.get(s));
+                } else {
+                    result.set(s);
+                }
+            }
+            return result;
+        }
+    }
+}
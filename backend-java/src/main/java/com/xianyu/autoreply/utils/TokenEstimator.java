@@ -0,0 +1,66 @@
+package com.xianyu.autoreply.utils;
+
+/**
+ * token数快速估算（不依赖具体模型的分词表）
+ * 中日韩字符按一字一token计；连续的英文字母、数字按约4个字符一个token计；其余符号各计一个。
+ * 与主流模型的实际计数相比误差在两成以内，用于提示词预算控制和统计足够。
+ */
+public final class TokenEstimator {
+
+    private static final int ASCII_CHARS_PER_TOKEN = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * 估算文本的token数
+     */
+    public static int count(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int tokens = 0;
+        int asciiRun = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128 && Character.isLetterOrDigit(c)) {
+                asciiRun++;
+                continue;
+            }
+            tokens += tokensOfRun(asciiRun);
+            asciiRun = 0;
+            if (!Character.isWhitespace(c) && !Character.isLowSurrogate(c)) {
+                tokens++;
+            }
+        }
+        return tokens + tokensOfRun(asciiRun);
+    }
+
+    /**
+     * 截断文本使其不超过token预算，超出时以省略号结尾
+     */
+    public static String truncate(String text, int maxTokens) {
+        if (text == null || count(text) <= maxTokens) {
+            return text;
+        }
+        // 二分查找满足预算的最长前缀（留一个token给省略号）
+        int lo = 0;
+        int hi = text.length();
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (count(text.subSequence(0, mid)) <= maxTokens - 1) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (lo > 0 && Character.isHighSurrogate(text.charAt(lo - 1))) {
+            lo--;
+        }
+        return text.substring(0, lo) + "…";
+    }
+
+    private static int tokensOfRun(int asciiRun) {
+        return (asciiRun + ASCII_CHARS_PER_TOKEN - 1) / ASCII_CHARS_PER_TOKEN;
+    }
+}
@@ -0,0 +1,19 @@
+-- 热点查询的二级索引（表结构由 Hibernate ddl-auto 生成，不会自动建这些索引）
+
+-- 关键词：按账号加载规则、删除文本规则
+CREATE INDEX IF NOT EXISTS idx_keywords_cookie_id ON keywords (cookie_id);
+
+-- 商品：按账号+商品ID查找/更新。先清理重复行（保留最新一条），再建唯一索引
+DELETE FROM item_info WHERE id NOT IN (SELECT MAX(id) FROM item_info GROUP BY cookie_id, item_id);
+CREATE UNIQUE INDEX IF NOT EXISTS uk_item_info_cookie_item ON item_info (cookie_id, item_id);
+
+-- AI对话：按会话加载历史
+CREATE INDEX IF NOT EXISTS idx_ai_conversations_chat_history ON ai_conversations (cookie_id, chat_id, created_at);
+-- AI对话：统计会话内的议价次数
+CREATE INDEX IF NOT EXISTS idx_ai_conversations_chat_intent ON ai_conversations (chat_id, cookie_id, intent, role);
+
+-- 默认回复记录：只回复一次的判断（旧版数据库的表上没有唯一约束）
+CREATE INDEX IF NOT EXISTS idx_default_reply_records_chat ON default_reply_records (cookie_id, chat_id);
+
+-- 订单：按账号列出
+CREATE INDEX IF NOT EXISTS idx_orders_cookie_id ON orders (cookie_id);
@@ -0,0 +1,27 @@
+-- 商品全文索引：标题、描述、分类，trigram 分词（按三字符切分，中文不需要分词器），外部内容表不重复存储原文
+CREATE VIRTUAL TABLE IF NOT EXISTS item_info_fts USING fts5(
+    item_title, item_description, item_category,
+    content='item_info', content_rowid='id', tokenize='trigram'
+);
+
+-- 由触发器与 item_info 保持同步（JPA保存和批量upsert都会触发）
+CREATE TRIGGER IF NOT EXISTS item_info_fts_insert AFTER INSERT ON item_info BEGIN
+    INSERT INTO item_info_fts (rowid, item_title, item_description, item_category)
+    VALUES (new.id, new.item_title, new.item_description, new.item_category);
+END;
+
+CREATE TRIGGER IF NOT EXISTS item_info_fts_delete AFTER DELETE ON item_info BEGIN
+    INSERT INTO item_info_fts (item_info_fts, rowid, item_title, item_description, item_category)
+    VALUES ('delete', old.id, old.item_title, old.item_description, old.item_category);
+END;
+
+CREATE TRIGGER IF NOT EXISTS item_info_fts_update AFTER UPDATE OF item_title, item_description, item_category
+    ON item_info BEGIN
+    INSERT INTO item_info_fts (item_info_fts, rowid, item_title, item_description, item_category)
+    VALUES ('delete', old.id, old.item_title, old.item_description, old.item_category);
+    INSERT INTO item_info_fts (rowid, item_title, item_description, item_category)
+    VALUES (new.id, new.item_title, new.item_description, new.item_category);
+END;
+
+-- 为已有商品建立索引
+INSERT INTO item_info_fts (item_info_fts) VALUES ('rebuild');
@@ -0,0 +1,157 @@
+package com.xianyu.autoreply.config;
+
+import com.xianyu.autoreply.entity.Cookie;
+import com.xianyu.autoreply.entity.Keyword;
+import com.xianyu.autoreply.entity.User;
+import com.xianyu.autoreply.repository.CookieRepository;
+import com.xianyu.autoreply.repository.KeywordRepository;
+import com.xianyu.autoreply.service.BrowserService;
+import com.xianyu.autoreply.service.TokenService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 同一个HTTP请求里先读后写：读走只读连接池，写必须拿到写连接。
+ * 请求期间若一直持有同一个连接（open-in-view），写操作会落在只读连接上并报 SQLITE_READONLY。
+ * 使用 application.yml 的配置（WAL读写分离开启），数据库放在临时目录。
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT) // WebSocket配置需要真实的Servlet容器
+@AutoConfigureMockMvc
+class SqliteReadWriteRoutingTest {
+
+    private static final String COOKIE_ID = "routing-account";
+    private static final Path DIR = createTempDir();
+
+    // 浏览器在启动时下载并启动Chromium，与本测试无关
+    @MockBean
+    private BrowserService browserService;
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private CookieRepository cookieRepository;
+
+    @Autowired
+    private KeywordRepository keywordRepository;
+
+    @Autowired
+    private TokenService tokenService;
+
+    private String token;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + DIR.resolve("routing.db"));
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("app.ddl-auto", () -> "create");
+        registry.add("app.intent-model-path", () -> DIR.resolve("intent_model.bin").toString());
+        registry.add("app.intent-training-path", () -> DIR.resolve("intent_labeled.tsv").toString());
+    }
+
+    @BeforeEach
+    void setUp() {
+        User admin = new User();
+        admin.setId(1L);
+        admin.setUsername("admin");
+        token = "Bearer " + tokenService.generateToken(admin, true);
+
+        // 不启用的账号，不会连接闲鱼
+        Cookie cookie = new Cookie();
+        cookie.setId(COOKIE_ID);
+        cookie.setValue("");
+        cookie.setUserId(1L);
+        cookie.setEnabled(false);
+        cookie.setPauseDuration(10);
+        cookieRepository.save(cookie);
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        deleteQuietly(DIR.toFile());
+    }
+
+    @Test
+    void findThenSaveInOneRequest() throws Exception {
+        mvc.perform(put("/cookies/" + COOKIE_ID + "/pause-duration").header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"pause_duration\": 30}"))
+                .andExpect(status().isOk());
+        assertEquals(30, cookieRepository.findById(COOKIE_ID).orElseThrow().getPauseDuration());
+    }
+
+    @Test
+    void readKeywordsThenReplaceInOneRequest() throws Exception {
+        String body = "{\"keywords\": [{\"keyword\": \"包邮吗\", \"reply\": \"包邮\", \"item_id\": \"\"},"
+                + "{\"keyword\": \"能便宜吗\", \"reply\": \"不议价\", \"item_id\": \"item1\"}]}";
+        for (int i = 0; i < 2; i++) {
+            // 第二次提交先读到第一次保存的关键词，再删除重建
+            mvc.perform(post("/keywords-with-item-id/" + COOKIE_ID).header("Authorization", token)
+                            .contentType(MediaType.APPLICATION_JSON).content(body))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.count").value(2));
+        }
+
+        List<Keyword> saved = keywordRepository.findByCookieId(COOKIE_ID);
+        assertEquals(2, saved.size());
+        assertTrue(saved.stream().anyMatch(k -> "包邮吗".equals(k.getKeyword())));
+    }
+
+    @Test
+    void writesAfterReadOnlyRequestsStillSucceed() throws Exception {
+        // 先让只读连接池里的连接都被用过，再发写请求
+        for (int i = 0; i < 8; i++) {
+            mvc.perform(get("/cookies/" + COOKIE_ID + "/pause-duration").header("Authorization", token))
+                    .andExpect(status().isOk());
+        }
+        mvc.perform(put("/cookies/" + COOKIE_ID + "/pause-duration").header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON).content("{\"pause_duration\": 45}"))
+                .andExpect(status().isOk());
+        mvc.perform(get("/cookies/" + COOKIE_ID + "/pause-duration").header("Authorization", token))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.pause_duration").value(45));
+    }
+
+    private static Path createTempDir() {
+        try {
+            return Files.createTempDirectory("routing-test");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteQuietly(child);
+            }
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
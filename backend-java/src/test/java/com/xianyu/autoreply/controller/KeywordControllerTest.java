@@ -0,0 +1,61 @@
+package com.xianyu.autoreply.controller;
+
+import com.xianyu.autoreply.service.KeywordMatchService;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KeywordControllerTest {
+
+    private static Map<String, Object> entry(String keyword, String itemId, String type) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("keyword", keyword);
+        data.put("reply", "reply");
+        data.put("item_id", itemId);
+        if (type != null) {
+            data.put("type", type);
+        }
+        return data;
+    }
+
+    @Test
+    void regexRuleSurvivesEditOfAnotherKeyword() {
+        // 账号已有一条正则规则和一条文本规则，前端编辑文本规则后整表提交
+        String regexKey = KeywordController.keywordKey("\\d+元", null);
+        Set<String> existingRegex = Set.of(regexKey);
+
+        Map<String, Object> regex = entry("\\d+元", "", "regex");
+        Map<String, Object> edited = entry("包邮吗（已修改）", "", "text");
+
+        assertEquals(KeywordMatchService.TYPE_REGEX, KeywordController.keywordType(regex, regexKey, existingRegex));
+        assertEquals("text", KeywordController.keywordType(edited,
+                KeywordController.keywordKey("包邮吗（已修改）", null), existingRegex));
+    }
+
+    @Test
+    void regexRuleSurvivesPayloadWithoutType() {
+        // 旧版前端不发送 type
+        String regexKey = KeywordController.keywordKey("\\d+元", "item1");
+        Set<String> existingRegex = Set.of(regexKey);
+
+        assertEquals(KeywordMatchService.TYPE_REGEX,
+                KeywordController.keywordType(entry("\\d+元", "item1", null), regexKey, existingRegex));
+        assertEquals("text", KeywordController.keywordType(entry("\\d+元", "item2", null),
+                KeywordController.keywordKey("\\d+元", "item2"), existingRegex));
+    }
+
+    @Test
+    void explicitTextTypeConvertsRegexRule() {
+        String regexKey = KeywordController.keywordKey("\\d+元", null);
+        assertEquals("text", KeywordController.keywordType(entry("\\d+元", "", "text"), regexKey, Set.of(regexKey)));
+    }
+
+    @Test
+    void emptyAndNullItemIdShareKey() {
+        assertEquals(KeywordController.keywordKey("k", null), KeywordController.keywordKey("k", ""));
+    }
+}
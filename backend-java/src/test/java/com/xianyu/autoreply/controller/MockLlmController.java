@@ -0,0 +1,85 @@
+package com.xianyu.autoreply.controller;
+
+import com.xianyu.autoreply.service.llm.LlmClient;
+import com.xianyu.autoreply.service.llm.MockLlmService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 模拟LLM接口（只在测试类路径中，且 app.mock-llm.enabled=true 时注册），把测试账号AI设置的接口地址指向这里：
+ * - OpenAI兼容：http://localhost:{port}/mock-llm/v1
+ * - DashScope应用：http://localhost:{port}/mock-llm/dashscope/api/v1/apps/mock/completion
+ * - Gemini：http://localhost:{port}/mock-llm/v1beta（模型名需包含 gemini）
+ */
+@RestController
+@RequestMapping("/mock-llm")
+@ConditionalOnProperty(name = "app.mock-llm.enabled", havingValue = "true")
+public class MockLlmController {
+
+    private final MockLlmService mockLlmService;
+
+    @Autowired
+    public MockLlmController(MockLlmService mockLlmService) {
+        this.mockLlmService = mockLlmService;
+    }
+
+    @PostMapping("/v1/chat/completions")
+    public DeferredResult<ResponseEntity<String>> openAiComplete() {
+        return mockLlmService.complete(LlmClient.Provider.OPENAI_COMPATIBLE);
+    }
+
+    @PostMapping(value = "/v1/chat/completions", headers = "Accept=text/event-stream")
+    public SseEmitter openAiStream() {
+        return mockLlmService.stream(LlmClient.Provider.OPENAI_COMPATIBLE);
+    }
+
+    @PostMapping("/dashscope/**")
+    public DeferredResult<ResponseEntity<String>> dashScopeComplete() {
+        return mockLlmService.complete(LlmClient.Provider.DASHSCOPE);
+    }
+
+    @PostMapping(value = "/dashscope/**", headers = "X-DashScope-SSE=enable")
+    public SseEmitter dashScopeStream() {
+        return mockLlmService.stream(LlmClient.Provider.DASHSCOPE);
+    }
+
+    @PostMapping("/v1beta/models/{model:[^:]+}:generateContent")
+    public DeferredResult<ResponseEntity<String>> geminiComplete(@PathVariable String model) {
+        return mockLlmService.complete(LlmClient.Provider.GEMINI);
+    }
+
+    @PostMapping("/v1beta/models/{model:[^:]+}:streamGenerateContent")
+    public SseEmitter geminiStream(@PathVariable String model) {
+        return mockLlmService.stream(LlmClient.Provider.GEMINI);
+    }
+
+    // 查看模拟参数和调用统计
+    @GetMapping("/config")
+    public Map<String, Object> getConfig() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("settings", mockLlmService.getSettings());
+        result.put("stats", mockLlmService.getStats());
+        return result;
+    }
+
+    // 运行时调整延迟分布、生成速度和故障注入比例（未传的字段保持不变）
+    @PutMapping("/config")
+    public MockLlmService.Settings updateConfig(@RequestBody Map<String, Number> body) {
+        MockLlmService.Settings current = mockLlmService.getSettings();
+        MockLlmService.Settings updated = new MockLlmService.Settings(
+                body.getOrDefault("median_millis", current.medianMillis()).longValue(),
+                body.getOrDefault("p99_millis", current.p99Millis()).longValue(),
+                body.getOrDefault("tokens_per_second", current.tokensPerSecond()).intValue(),
+                body.getOrDefault("error_percent", current.errorPercent()).doubleValue(),
+                body.getOrDefault("hang_percent", current.hangPercent()).doubleValue());
+        mockLlmService.updateSettings(updated);
+        return updated;
+    }
+}
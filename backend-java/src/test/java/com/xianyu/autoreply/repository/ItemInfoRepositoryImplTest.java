@@ -0,0 +1,235 @@
+package com.xianyu.autoreply.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ItemInfoRepositoryImplTest {
+
+    private Path dir;
+    private Connection connection;
+    private ItemInfoRepositoryImpl repository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dir = Files.createTempDirectory("item-search-test");
+        connection = DriverManager.getConnection("jdbc:sqlite:" + dir.resolve("test.db"));
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE item_info (id integer PRIMARY KEY, cookie_id varchar(255) NOT NULL, "
+                    + "item_id varchar(255) NOT NULL, item_title varchar(255), item_description TEXT, "
+                    + "item_category varchar(255), item_price varchar(255), is_multi_spec boolean, "
+                    + "multi_quantity_delivery boolean, created_at timestamp, updated_at timestamp)");
+            // 与迁移脚本V1相同的唯一索引（upsert 依赖它做 ON CONFLICT）
+            statement.execute("CREATE UNIQUE INDEX uk_item_info_cookie_item ON item_info (cookie_id, item_id)");
+            // 与迁移脚本V2相同的全文索引定义
+            statement.execute("CREATE VIRTUAL TABLE item_info_fts USING fts5(item_title, item_description, "
+                    + "item_category, content='item_info', content_rowid='id', tokenize='trigram')");
+        }
+        insert(1, "c1", "打折50%出清");
+        insert(2, "c1", "电池容量5000毫安");
+        insert(3, "c1", "型号a_b款");
+        insert(4, "c1", "型号axb款");
+        insert(5, "c1", "路径C:\\docs备份盘");
+        insert(6, "c1", "他说\"全新\"未拆封");
+        insert(7, "c2", "打折50%出清");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO item_info_fts (item_info_fts) VALUES ('rebuild')");
+        }
+        repository = new ItemInfoRepositoryImpl(new JdbcTemplate(new SingleConnectionDataSource(connection, true)));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        connection.close();
+        Files.deleteIfExists(dir.resolve("test.db"));
+        Files.deleteIfExists(dir);
+    }
+
+    private void insert(long id, String cookieId, String title) throws Exception {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO item_info (id, cookie_id, item_id, item_title, updated_at) VALUES (?, ?, ?, ?, ?)")) {
+            insert.setLong(1, id);
+            insert.setString(2, cookieId);
+            insert.setString(3, "item" + id);
+            insert.setString(4, title);
+            insert.setLong(5, id);
+            insert.executeUpdate();
+        }
+    }
+
+    private List<Long> search(String keyword, String... cookieIds) throws Exception {
+        ItemInfoRepositoryImpl.SearchQuery query = ItemInfoRepositoryImpl.buildSearch(List.of(cookieIds), keyword);
+        List<Long> ids = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT i.id " + query.from() + " " + query.orderBy())) {
+            for (int i = 0; i < query.args().size(); i++) {
+                statement.setObject(i + 1, query.args().get(i));
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    @Test
+    void likeFallbackEscapesWildcards() throws Exception {
+        // 少于3个字符走 LIKE：% 和 _ 必须按字面匹配
+        assertTrue(ItemInfoRepositoryImpl.buildSearch(List.of("c1"), "0%").from().contains("LIKE"));
+        assertEquals(List.of(1L), search("0%", "c1"));
+        assertEquals(List.of(3L), search("a_", "c1"));
+        assertEquals(List.of(5L), search(":\\", "c1"));
+    }
+
+    @Test
+    void ftsPathQuotesTermsAsPhrases() throws Exception {
+        ItemInfoRepositoryImpl.SearchQuery query = ItemInfoRepositoryImpl.buildSearch(List.of("c1"), "\"全新\"未 50%出");
+        assertTrue(query.from().contains("MATCH"));
+        assertEquals("\"\"\"全新\"\"未\" \"50%出\"", query.args().get(0));
+
+        assertEquals(List.of(3L), search("a_b", "c1"));
+        assertEquals(List.of(6L), search("\"全新\"未", "c1"));
+        assertEquals(List.of(1L), search("50%出", "c1"));
+        // FTS5 语法字符不会被当作运算符
+        assertEquals(List.of(), search("NOT 型号a", "c1"));
+        assertEquals(List.of(), search("型号a*", "c1"));
+    }
+
+    @Test
+    void restrictsToGivenAccounts() throws Exception {
+        assertEquals(List.of(1L, 7L), search("50%出清", "c1", "c2"));
+        assertEquals(List.of(7L), search("50%出清", "c2"));
+        assertEquals(List.of(1L, 7L), search("0%", "c1", "c2"));
+    }
+
+    @Test
+    void blankKeywordListsAllItemsOfAccount() throws Exception {
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), search("  ", "c1"));
+    }
+
+    private static ItemInfoRepositoryCustom.ItemRow row(String itemId, String title, String price, String category) {
+        return new ItemInfoRepositoryCustom.ItemRow(itemId, title, price, category);
+    }
+
+    private Map<String, Object> stored(String cookieId, String itemId) {
+        return new JdbcTemplate(new SingleConnectionDataSource(connection, true)).queryForMap(
+                "SELECT item_title, item_price, item_category, created_at, updated_at FROM item_info "
+                        + "WHERE cookie_id = ? AND item_id = ?", cookieId, itemId);
+    }
+
+    private void assertResult(int inserted, int updated, int unchanged, ItemInfoRepositoryCustom.UpsertResult result) {
+        assertEquals(new ItemInfoRepositoryCustom.UpsertResult(inserted, updated, unchanged), result);
+    }
+
+    private int count(String cookieId) throws Exception {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT count(*) FROM item_info WHERE cookie_id = ?")) {
+            statement.setString(1, cookieId);
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    @Test
+    void upsertInsertsUpdatesAndSkipsUnchanged() throws Exception {
+        assertResult(2, 0, 0, repository.upsertItems("c3", List.of(
+                row("a", "相机", "100", "数码"), row("b", "镜头", "200", "数码"))));
+        // 把更新时间改旧，确认未变化的行没有被重写
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("UPDATE item_info SET created_at = 1, updated_at = 1 WHERE cookie_id = 'c3'");
+        }
+
+        ItemInfoRepositoryCustom.UpsertResult result = repository.upsertItems("c3", List.of(
+                row("a", "相机", "100", "数码"), row("b", "镜头", "180", "数码"), row("c", "三脚架", "50", null)));
+
+        assertResult(1, 1, 1, result);
+        assertEquals(3, result.total());
+        assertEquals(3, count("c3"));
+        assertEquals(1L, ((Number) stored("c3", "a").get("updated_at")).longValue());
+        assertEquals("180", stored("c3", "b").get("item_price"));
+        assertTrue(((Number) stored("c3", "b").get("updated_at")).longValue() > 1L);
+        // 更新不覆盖创建时间
+        assertEquals(1L, ((Number) stored("c3", "b").get("created_at")).longValue());
+    }
+
+    @Test
+    void nullCategoryKeepsStoredCategory() {
+        repository.upsertItems("c3", List.of(row("a", "相机", "100", "数码")));
+
+        // 分类为空且其余内容相同：视为未变化
+        assertResult(0, 0, 1, repository.upsertItems("c3", List.of(row("a", "相机", "100", null))));
+        // 标题变化时更新，但保留原分类
+        assertResult(0, 1, 0, repository.upsertItems("c3", List.of(row("a", "微单相机", "100", null))));
+        assertEquals("微单相机", stored("c3", "a").get("item_title"));
+        assertEquals("数码", stored("c3", "a").get("item_category"));
+    }
+
+    @Test
+    void sameItemIdInOtherAccountIsSeparateRow() throws Exception {
+        repository.upsertItems("c3", List.of(row("a", "相机", "100", "数码")));
+
+        assertResult(1, 0, 0, repository.upsertItems("c4", List.of(row("a", "相机", "100", "数码"))));
+        assertEquals(1, count("c3"));
+        assertEquals(1, count("c4"));
+    }
+
+    @Test
+    void duplicateIdsInOneBatchKeepLastRow() throws Exception {
+        // 重复的 a 只计一次
+        assertResult(2, 0, 0, repository.upsertItems("c3", List.of(
+                row("a", "旧标题", "100", "数码"), row("b", "镜头", "200", null), row("a", "新标题", "90", null))));
+
+        assertEquals(2, count("c3"));
+        assertEquals("新标题", stored("c3", "a").get("item_title"));
+        assertEquals("90", stored("c3", "a").get("item_price"));
+        assertNull(stored("c3", "a").get("item_category"));
+        assertResult(0, 0, 0, repository.upsertItems("c3", List.of()));
+    }
+
+    @Test
+    void loadsExistingContentAcrossInChunks() throws Exception {
+        int size = ItemInfoRepositoryImpl.IN_CHUNK_SIZE * 2 + 7;
+        List<ItemInfoRepositoryCustom.ItemRow> rows = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            rows.add(row("item-" + i, "商品" + i, String.valueOf(i), "分类"));
+        }
+        assertResult(size, 0, 0, repository.upsertItems("c3", rows));
+
+        // 每个分块里都有变化和未变化的商品；若某个分块没有查出当前内容，会被误计为新增
+        List<ItemInfoRepositoryCustom.ItemRow> next = new ArrayList<>();
+        int changed = 0;
+        for (int i = 0; i < size; i++) {
+            boolean change = i % 3 == 0;
+            changed += change ? 1 : 0;
+            next.add(row("item-" + i, "商品" + i, String.valueOf(change ? i + 1 : i), "分类"));
+        }
+        next.add(row("item-new", "新商品", "1", null));
+
+        assertResult(1, changed, size - changed, repository.upsertItems("c3", next));
+        assertEquals(size + 1, count("c3"));
+        assertEquals("1000", stored("c3", "item-999").get("item_price"));
+        assertEquals("1000", stored("c3", "item-1000").get("item_price"));
+    }
+}
@@ -0,0 +1,242 @@
+package com.xianyu.autoreply.service;
+
+import com.xianyu.autoreply.service.llm.FirstSentenceSender;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AI回复链路压测驱动（由 {@link AiReplyLoadTest} 在独立的应用实例中使用）
+ * 以 N 个并发会话（每个会话内消息依次发送，与真实买家一致）驱动 {@link AiReplyService}，
+ * 统计吞吐、延迟分位、每条回复的数据库语句数、内存分配速率和GC；账号开启流式回复时另外统计首句到达耗时。
+ * 数据库语句、内存分配和GC是进程级统计，所以只在没有其他业务流量的压测进程中使用。
+ */
+@Slf4j
+class AiLoadTestDriver {
+
+    private static final int MAX_CHATS = 1000;
+    private static final int MAX_MESSAGES_PER_CHAT = 50;
+    private static final long TIMEOUT_SECONDS_PER_MESSAGE = 60;
+    private static final long DRAIN_TIMEOUT_MILLIS = 10_000; // 等待对话后台写库完成
+    private static final String[] SAMPLE_MESSAGES = {
+            "你好，还在吗",
+            "这个能便宜点吗",
+            "包邮吗",
+            "是全新的吗，有没有磕碰",
+            "最低多少钱",
+            "怎么使用，需要充电吗",
+            "今天拍明天能发货吗",
+            "再便宜十块行不行",
+            "有保修吗",
+            "好的，我考虑一下"
+    };
+
+    private final AiReplyService aiReplyService;
+    private final AccountConfigService accountConfigService;
+    private final ConversationMemoryService conversationMemoryService;
+    private final AiReplyCacheService aiReplyCacheService;
+    private final EntityManagerFactory entityManagerFactory;
+
+    AiLoadTestDriver(AiReplyService aiReplyService,
+                     AccountConfigService accountConfigService,
+                     ConversationMemoryService conversationMemoryService,
+                     AiReplyCacheService aiReplyCacheService,
+                     EntityManagerFactory entityManagerFactory) {
+        this.aiReplyService = aiReplyService;
+        this.accountConfigService = accountConfigService;
+        this.conversationMemoryService = conversationMemoryService;
+        this.aiReplyCacheService = aiReplyCacheService;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    /**
+     * 执行一轮压测
+     *
+     * @param cookieId        已开启AI回复的账号
+     * @param itemId          商品ID
+     * @param chats           并发会话数
+     * @param messagesPerChat 每个会话的消息数
+     * @return 压测报告
+     */
+    Map<String, Object> run(String cookieId, String itemId, int chats, int messagesPerChat)
+            throws InterruptedException {
+        if (chats < 1 || chats > MAX_CHATS || messagesPerChat < 1 || messagesPerChat > MAX_MESSAGES_PER_CHAT) {
+            throw new IllegalArgumentException("并发会话数需在1~" + MAX_CHATS + "之间，每会话消息数需在1~"
+                    + MAX_MESSAGES_PER_CHAT + "之间");
+        }
+        if (!accountConfigService.get(cookieId).ai().enabled()) {
+            throw new IllegalArgumentException("账号未开启AI回复: " + cookieId);
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        boolean statisticsEnabled = statistics.isStatisticsEnabled();
+        try {
+            statistics.setStatisticsEnabled(true);
+            return execute(cookieId, itemId, chats, messagesPerChat, statistics);
+        } finally {
+            statistics.setStatisticsEnabled(statisticsEnabled);
+        }
+    }
+
+    private Map<String, Object> execute(String cookieId, String itemId, int chats, int messagesPerChat,
+                                        Statistics statistics) throws InterruptedException {
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        int total = chats * messagesPerChat;
+        long[] latencies = new long[total];
+        long[] firstSentences = new long[total];
+        AtomicInteger completed = new AtomicInteger(0);
+        AtomicInteger earlySentences = new AtomicInteger(0);
+        AtomicLong failures = new AtomicLong(0);
+        long cacheHitsBefore = cacheHits();
+        long statementsBefore = statistics.getPrepareStatementCount();
+        long allocatedBefore = allocatedBytes();
+        long[] gcBefore = gcCountAndMillis();
+        log.info("AI压测开始 [{}]: 账号 {}，{} 个会话 x {} 条消息", runId, cookieId, chats, messagesPerChat);
+
+        long start = System.nanoTime();
+        CompletableFuture<?>[] sessions = new CompletableFuture<?>[chats];
+        for (int i = 0; i < chats; i++) {
+            String chatId = "loadtest-" + runId + "-" + i;
+            sessions[i] = runChat(new ChatRun(cookieId, chatId, itemId, i, messagesPerChat, latencies, firstSentences,
+                    completed, earlySentences, failures), 0);
+        }
+        try {
+            CompletableFuture.allOf(sessions).get(TIMEOUT_SECONDS_PER_MESSAGE * messagesPerChat, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("AI压测 [{}] 未全部完成: {}", runId, e.getMessage());
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        long[] gcAfter = gcCountAndMillis();
+        awaitConversationWrites();
+        long statements = statistics.getPrepareStatementCount() - statementsBefore;
+
+        int replies = completed.get();
+        long[] sorted = Arrays.copyOf(latencies, replies);
+        Arrays.sort(sorted);
+        double elapsedSeconds = elapsedNanos / 1e9;
+
+        Map<String, Object> report = new HashMap<>();
+        report.put("runId", runId);
+        report.put("chats", chats);
+        report.put("messagesPerChat", messagesPerChat);
+        report.put("replies", (long) replies);
+        report.put("failures", failures.get());
+        report.put("cacheHits", cacheHits() - cacheHitsBefore);
+        report.put("elapsedMillis", elapsedNanos / 1_000_000);
+        report.put("repliesPerSecond", round(replies / elapsedSeconds));
+        report.put("p50Millis", percentile(sorted, 0.5));
+        report.put("p95Millis", percentile(sorted, 0.95));
+        report.put("p99Millis", percentile(sorted, 0.99));
+        report.put("maxMillis", replies == 0 ? 0L : sorted[replies - 1]);
+        long[] sortedFirst = Arrays.copyOf(firstSentences, earlySentences.get());
+        Arrays.sort(sortedFirst);
+        report.put("earlySentences", (long) sortedFirst.length);
+        report.put("p50FirstSentenceMillis", percentile(sortedFirst, 0.5));
+        report.put("p95FirstSentenceMillis", percentile(sortedFirst, 0.95));
+        report.put("dbStatements", statements);
+        report.put("dbStatementsPerReply", replies == 0 ? 0.0 : round((double) statements / replies));
+        report.put("allocatedBytes", allocated);
+        report.put("allocatedBytesPerReply", replies == 0 ? 0L : allocated / replies);
+        report.put("allocationMBPerSecond", round(allocated / 1048576.0 / elapsedSeconds));
+        report.put("gcCount", gcAfter[0] - gcBefore[0]);
+        report.put("gcMillis", gcAfter[1] - gcBefore[1]);
+        log.info("AI压测完成 [{}]: {}", runId, report);
+        return report;
+    }
+
+    private record ChatRun(String cookieId, String chatId, String itemId, int chatIndex, int messagesPerChat,
+                           long[] latencies, long[] firstSentences, AtomicInteger completed,
+                           AtomicInteger earlySentences, AtomicLong failures) {
+    }
+
+    /**
+     * 依次发送一个会话的消息：上一条回复返回后再发下一条
+     */
+    private CompletableFuture<Void> runChat(ChatRun run, int seq) {
+        if (seq >= run.messagesPerChat()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String message = SAMPLE_MESSAGES[(run.chatIndex() + seq) % SAMPLE_MESSAGES.length];
+        long sent = System.nanoTime();
+        // 首句回调只记录耗时，不真正发送
+        FirstSentenceSender sentenceSender = sentence -> {
+            run.firstSentences()[run.earlySentences().getAndIncrement()] = (System.nanoTime() - sent) / 1_000_000;
+            return CompletableFuture.completedFuture(true);
+        };
+        return aiReplyService.generateReplyAsync(run.cookieId(), run.chatId(), "loadtest-buyer-" + run.chatIndex(),
+                        run.itemId(), message, sentenceSender)
+                .handle((reply, error) -> {
+                    run.latencies()[run.completed().getAndIncrement()] = (System.nanoTime() - sent) / 1_000_000;
+                    if (error != null || reply == null) {
+                        run.failures().incrementAndGet();
+                    }
+                    return null;
+                })
+                .thenCompose(v -> runChat(run, seq + 1));
+    }
+
+    private void awaitConversationWrites() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        while (((Number) conversationMemoryService.getStats().get("pendingWrites")).longValue() > 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    private long cacheHits() {
+        Map<String, Object> stats = aiReplyCacheService.getStats();
+        return ((Number) stats.get("exactHits")).longValue() + ((Number) stats.get("similarHits")).longValue();
+    }
+
+    /**
+     * 所有存活线程累计分配的字节数
+     */
+    private static long allocatedBytes() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+                || !threads.isThreadAllocatedMemorySupported()) {
+            return 0;
+        }
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    private static long[] gcCountAndMillis() {
+        long count = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{count, millis};
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,178 @@
+package com.xianyu.autoreply.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AiReplyCacheServiceTest {
+
+    private static final String QUESTION = "请问这个商品现在还在卖吗";
+    /** 与 QUESTION 的相似度约0.92，高于默认阈值0.8 */
+    private static final String NEAR_QUESTION = "请问这个商品现在还在卖吗亲";
+    /** 与 QUESTION 的相似度约0.75，低于默认阈值，但高于降级阈值0.6 */
+    private static final String LOOSE_QUESTION = "请问这个商品现在还在吗";
+    private static final String REPLY = "在的亲，欢迎拍下。";
+    private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(360);
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.DAYS.toMillis(1));
+    private final AiReplyCacheService cache = new AiReplyCacheService(true, 0.8, 360, 5000, clock::get);
+
+    private void store(String message, long contextVersion) {
+        cache.store("acc", "item", "default", message, contextVersion, REPLY, 1200, 300);
+    }
+
+    private AiReplyCacheService.Hit lookup(String message, long contextVersion) {
+        return cache.lookup("acc", "item", "default", message, contextVersion);
+    }
+
+    private long stat(String name) {
+        return (Long) cache.getStats().get(name);
+    }
+
+    @Test
+    void sameQuestionAfterNormalizationIsExactHit() {
+        store(QUESTION, 1);
+
+        // 空白、标点、表情不影响匹配
+        AiReplyCacheService.Hit hit = lookup(" 请问，这个商品现在还在卖吗？😊", 1);
+
+        assertNotNull(hit);
+        assertTrue(hit.exact());
+        assertEquals(REPLY, hit.reply());
+        assertEquals(1200, hit.savedMillis());
+        assertEquals(300, hit.savedTokens());
+        assertEquals(1L, stat("exactHits"));
+        assertEquals(1200L, stat("savedMillis"));
+        assertEquals(300L, stat("savedTokens"));
+    }
+
+    @Test
+    void similarQuestionIsNearHit() {
+        store(QUESTION, 1);
+
+        AiReplyCacheService.Hit hit = lookup(NEAR_QUESTION, 1);
+        assertNotNull(hit);
+        assertFalse(hit.exact());
+        assertEquals(REPLY, hit.reply());
+
+        // 低于阈值或无关的问题不命中
+        assertNull(lookup(LOOSE_QUESTION, 1));
+        assertNull(lookup("包邮吗", 1));
+        assertEquals(1L, stat("similarHits"));
+        assertEquals(3L, stat("lookups"));
+        assertEquals(33L, stat("hitRatePercent"));
+    }
+
+    @Test
+    void otherItemIntentOrAccountMisses() {
+        store(QUESTION, 1);
+
+        assertNull(cache.lookup("acc", "other", "default", QUESTION, 1));
+        assertNull(cache.lookup("acc", "item", "tech", QUESTION, 1));
+        assertNull(cache.lookup("other", "item", "default", QUESTION, 1));
+        assertNotNull(lookup(QUESTION, 1));
+    }
+
+    @Test
+    void expiredEntriesAreDropped() {
+        store(QUESTION, 1);
+        store("包邮吗", 1);
+
+        clock.addAndGet(TTL_MILLIS);
+        assertNotNull(lookup(QUESTION, 1));
+
+        clock.addAndGet(1);
+        assertNull(lookup(QUESTION, 1));
+        // 近似匹配时顺带清理桶内其他过期条目
+        assertEquals(2L, stat("expired"));
+        assertEquals(0L, stat("entries"));
+
+        // 重新写入后从写入时刻重新计时
+        store(QUESTION, 1);
+        clock.addAndGet(TTL_MILLIS);
+        assertNotNull(lookup(NEAR_QUESTION, 1));
+    }
+
+    @Test
+    void contextVersionChangeInvalidatesBucket() {
+        store(QUESTION, 1);
+        store("包邮吗", 1);
+        cache.store("acc", "item", "tech", QUESTION, 1, REPLY, 1200, 300);
+
+        // 商品信息或提示词变化：整个桶失效，其他意图的桶不受影响
+        assertNull(lookup("包邮吗", 2));
+        assertEquals(1L, stat("invalidations"));
+        assertEquals(1L, stat("entries"));
+        assertNull(lookup(QUESTION, 1));
+        assertNotNull(cache.lookup("acc", "item", "tech", QUESTION, 1));
+
+        // 新版本的回复写入新桶
+        store(QUESTION, 2);
+        assertNotNull(lookup(QUESTION, 2));
+        assertEquals(2L, stat("buckets"));
+    }
+
+    @Test
+    void fallbackLookupAcceptsLooserMatch() {
+        store(QUESTION, 1);
+
+        assertNull(lookup(LOOSE_QUESTION, 1));
+        AiReplyCacheService.Hit hit = cache.lookupFallback("acc", "item", "default", LOOSE_QUESTION, 1);
+        assertNotNull(hit);
+        assertEquals(REPLY, hit.reply());
+        assertNull(cache.lookupFallback("acc", "item", "default", "包邮吗", 1));
+        assertEquals(2L, stat("fallbackLookups"));
+        assertEquals(1L, stat("fallbackHits"));
+        // 降级查找不计入命中率
+        assertEquals(0L, stat("hitRatePercent"));
+    }
+
+    @Test
+    void bucketKeepsLatestEntries() {
+        for (int i = 0; i < 40; i++) {
+            store("问题" + i, 1);
+        }
+
+        // 每桶最多32条，按写入顺序淘汰
+        assertEquals(32L, stat("entries"));
+        assertEquals(8L, stat("evicted"));
+        assertNull(lookup("问题7", 1));
+        assertNotNull(lookup("问题8", 1));
+    }
+
+    @Test
+    void totalSizeLimitEvictsOldestEntries() {
+        AiReplyCacheService small = new AiReplyCacheService(true, 0.8, 360, 20, clock::get);
+        for (int i = 0; i < 21; i++) {
+            small.store("acc", "item" + i, "default", QUESTION, 1, REPLY, 1200, 300);
+            clock.incrementAndGet();
+        }
+
+        // 超限时淘汰最早写入的条目，额外腾出10%的空间
+        assertEquals(3L, (Long) small.getStats().get("evicted"));
+        assertEquals(18L, (Long) small.getStats().get("entries"));
+        assertNull(small.lookup("acc", "item0", "default", QUESTION, 1));
+        assertNull(small.lookup("acc", "item2", "default", QUESTION, 1));
+        assertNotNull(small.lookup("acc", "item3", "default", QUESTION, 1));
+    }
+
+    @Test
+    void disabledCacheOrEmptyInputIsIgnored() {
+        AiReplyCacheService disabled = new AiReplyCacheService(false, 0.8, 360, 5000, clock::get);
+        disabled.store("acc", "item", "default", QUESTION, 1, REPLY, 1200, 300);
+        assertNull(disabled.lookup("acc", "item", "default", QUESTION, 1));
+        assertEquals(0L, (Long) disabled.getStats().get("lookups"));
+
+        store("？！😊", 1);
+        cache.store("acc", "item", "default", QUESTION, 1, "", 1200, 300);
+        assertEquals(0L, stat("stores"));
+        assertNull(lookup("？！", 1));
+    }
+}
@@ -0,0 +1,149 @@
+package com.xianyu.autoreply.service;
+
+import com.xianyu.autoreply.entity.AiReplySetting;
+import com.xianyu.autoreply.entity.Cookie;
+import com.xianyu.autoreply.repository.AiReplySettingRepository;
+import com.xianyu.autoreply.repository.CookieRepository;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * AI回复链路压测（默认不运行）：mvn test -Dtest=AiReplyLoadTest -Dloadtest=true
+ * 在临时目录的独立数据库上启动一个完整应用实例，打开测试代码中的模拟LLM服务（/mock-llm），
+ * 创建一次性账号并把它的接口地址指向模拟服务，然后用 {@link AiLoadTestDriver} 驱动AI回复。
+ * 回复缓存关闭，熔断器、并发上限和进程级统计都属于这个实例，结束后整个目录删除，不接触业务库。
+ * 可调参数（系统属性）：loadtest.chats、loadtest.messages、loadtest.stream、loadtest.median-millis、loadtest.p99-millis。
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT) // 模拟LLM服务需要真实的HTTP端口
+class AiReplyLoadTest {
+
+    private static final Path DIR = createTempDir();
+    private static final String COOKIE_ID = "loadtest-account";
+    private static final String ITEM_ID = "loadtest_item";
+
+    // 浏览器在启动时下载并启动Chromium，与本测试无关
+    @MockBean
+    private BrowserService browserService;
+
+    @Autowired
+    private AiReplyService aiReplyService;
+
+    @Autowired
+    private AccountConfigService accountConfigService;
+
+    @Autowired
+    private ConversationMemoryService conversationMemoryService;
+
+    @Autowired
+    private AiReplyCacheService aiReplyCacheService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CookieRepository cookieRepository;
+
+    @Autowired
+    private AiReplySettingRepository aiReplySettingRepository;
+
+    @LocalServerPort
+    private int port;
+
+    /**
+     * 动态属性的优先级高于 application.yml，数据源一定指向临时目录
+     */
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + DIR.resolve("loadtest.db"));
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("app.ddl-auto", () -> "create");
+        registry.add("app.ai-reply-cache.enabled", () -> "false");
+        registry.add("app.intent-model-path", () -> DIR.resolve("intent_model.bin").toString());
+        registry.add("app.intent-training-path", () -> DIR.resolve("intent_labeled.tsv").toString());
+        registry.add("app.mock-llm.enabled", () -> "true");
+        registry.add("app.mock-llm.median-millis", () -> Long.getLong("loadtest.median-millis", 800));
+        registry.add("app.mock-llm.p99-millis", () -> Long.getLong("loadtest.p99-millis", 4000));
+    }
+
+    @AfterAll
+    static void cleanUp() {
+        deleteQuietly(DIR.toFile());
+    }
+
+    private static Path createTempDir() {
+        try {
+            return Files.createTempDirectory("ai-loadtest");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    void generatesRepliesAgainstMockLlm() throws Exception {
+        int chats = Integer.getInteger("loadtest.chats", 20);
+        int messages = Integer.getInteger("loadtest.messages", 5);
+        createAccount("http://localhost:" + port + "/mock-llm/v1", Boolean.getBoolean("loadtest.stream"));
+
+        AiLoadTestDriver driver = new AiLoadTestDriver(aiReplyService, accountConfigService,
+                conversationMemoryService, aiReplyCacheService, entityManagerFactory);
+        Map<String, Object> report = driver.run(COOKIE_ID, ITEM_ID, chats, messages);
+        log.info("AI压测报告: {}", report);
+
+        assertEquals((long) chats * messages, report.get("replies"));
+        assertEquals(0L, report.get("failures"));
+    }
+
+    /**
+     * 一次性账号：不启用（不会连接闲鱼），只开启AI回复
+     */
+    private void createAccount(String baseUrl, boolean stream) {
+        Cookie cookie = new Cookie();
+        cookie.setId(COOKIE_ID);
+        cookie.setValue("");
+        cookie.setUserId(1L);
+        cookie.setEnabled(false);
+        cookieRepository.save(cookie);
+
+        AiReplySetting setting = new AiReplySetting();
+        setting.setCookieId(COOKIE_ID);
+        setting.setAiEnabled(true);
+        setting.setModelName("mock-model");
+        setting.setApiKey("mock-key");
+        setting.setBaseUrl(baseUrl);
+        setting.setStreamEnabled(stream);
+        aiReplySettingRepository.save(setting);
+        accountConfigService.refresh(COOKIE_ID);
+    }
+
+    private static void deleteQuietly(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteQuietly(child);
+            }
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
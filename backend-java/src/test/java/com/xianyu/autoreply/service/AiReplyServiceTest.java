@@ -0,0 +1,260 @@
+package com.xianyu.autoreply.service;
+
+import com.xianyu.autoreply.model.AccountConfigSnapshot;
+import com.xianyu.autoreply.repository.AiItemCacheRepository;
+import com.xianyu.autoreply.service.intent.IntentService;
+import com.xianyu.autoreply.service.llm.FirstSentenceSender;
+import com.xianyu.autoreply.service.llm.LlmClient;
+import com.xianyu.autoreply.utils.TokenEstimator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * LLM调用失败时的降级链：备用模型 -> 相近问题的缓存回复 -> null（由调用方发送默认回复）
+ * 流式回复中只有真正发出的首句才阻止换备用模型和使用缓存回复；主模型的流式调用由替身模拟为“先回调首句，再失败”。
+ */
+class AiReplyServiceTest {
+
+    private static final String COOKIE_ID = "acc";
+    private static final String SENTENCE = "在的亲。";
+
+    private final AccountConfigService accountConfigService = mock(AccountConfigService.class);
+    private final ConversationMemoryService conversationMemoryService = mock(ConversationMemoryService.class);
+    private final LlmClient llmClient = mock(LlmClient.class);
+    private final AiReplyCacheService aiReplyCacheService = mock(AiReplyCacheService.class);
+    private final IntentService intentService = mock(IntentService.class);
+    private final AiReplyService service = new AiReplyService(accountConfigService, conversationMemoryService,
+            mock(AiItemCacheRepository.class), llmClient, aiReplyCacheService, intentService);
+    private final List<String> sentSentences = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        when(intentService.classify(anyString())).thenReturn("default");
+        when(conversationMemoryService.context(anyString(), anyString(), anyInt(), anyInt()))
+                .thenReturn(new ConversationMemoryService.ChatContext(null, List.of()));
+        // 主模型：回调首句后失败
+        when(llmClient.chatStream(argThat(s -> s != null && "main".equals(s.modelName())), any(), any()))
+                .thenAnswer(invocation -> {
+                    FirstSentenceSender sender = invocation.getArgument(2);
+                    sender.send(SENTENCE);
+                    return CompletableFuture.failedFuture(new IOException("LLM流式响应错误"));
+                });
+    }
+
+    private void configure(String fallbackModel) {
+        configure(fallbackModel, true);
+    }
+
+    private void configure(String fallbackModel, boolean stream) {
+        AccountConfigSnapshot.AiSettings ai = new AccountConfigSnapshot.AiSettings(true, "main", "key",
+                "http://localhost/v1", 10, 100, 3, null, stream, fallbackModel, null, null);
+        when(accountConfigService.get(COOKIE_ID)).thenReturn(new AccountConfigSnapshot(COOKIE_ID, true, true, false,
+                10, ai, new AccountConfigSnapshot.DefaultReplySettings(false, null, null, false), 1));
+    }
+
+    private CompletableFuture<String> reply(CompletableFuture<Boolean> sendResult) {
+        return service.generateReplyAsync(COOKIE_ID, "chat", "buyer", "item", "还在吗", sentence -> {
+            sentSentences.add(sentence);
+            return sendResult;
+        });
+    }
+
+    private void mainModelCircuitOpen() {
+        when(llmClient.chat(argThat(s -> s != null && "main".equals(s.modelName())), any()))
+                .thenReturn(CompletableFuture.failedFuture(new LlmClient.CircuitOpenException("localhost/main")));
+    }
+
+    private void backupModelReplies(CompletableFuture<String> reply) {
+        when(llmClient.chat(argThat(s -> s != null && "backup".equals(s.modelName())), any())).thenReturn(reply);
+    }
+
+    @Test
+    void openCircuitFallsBackToBackupModel() throws Exception {
+        configure("backup", false);
+        mainModelCircuitOpen();
+        backupModelReplies(CompletableFuture.completedFuture("在的，商品还在。"));
+
+        String result = service.generateReplyAsync(COOKIE_ID, "chat", "buyer", "item", "还在吗")
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals("在的，商品还在。", result);
+        assertEquals(1L, service.getStats().get("fallbackModelReplies"));
+        assertEquals(0L, service.getStats().get("llmFailures"));
+        // 备用模型的回复照常写入缓存
+        verify(aiReplyCacheService).store(anyString(), anyString(), anyString(), anyString(), anyLong(),
+                argThat("在的，商品还在。"::equals), anyLong(), anyLong());
+    }
+
+    @Test
+    void bothModelsFailingUsesCachedReply() throws Exception {
+        configure("backup", false);
+        mainModelCircuitOpen();
+        backupModelReplies(CompletableFuture.failedFuture(new IOException("HTTP 503")));
+        when(aiReplyCacheService.lookupFallback(anyString(), anyString(), anyString(), anyString(), anyLong()))
+                .thenReturn(new AiReplyCacheService.Hit("在的，欢迎拍下。", false, 0, 0));
+
+        String result = service.generateReplyAsync(COOKIE_ID, "chat", "buyer", "item", "还在吗")
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals("在的，欢迎拍下。", result);
+        assertEquals(1L, service.getStats().get("llmFailures"));
+        assertEquals(1L, service.getStats().get("fallbackCacheReplies"));
+        assertEquals(0L, service.getStats().get("fallbackModelReplies"));
+    }
+
+    @Test
+    void noFallbackLeftReturnsNull() throws Exception {
+        configure(null, false);
+        mainModelCircuitOpen();
+
+        assertNull(service.generateReplyAsync(COOKIE_ID, "chat", "buyer", "item", "还在吗")
+                .get(5, TimeUnit.SECONDS));
+        assertEquals(1L, service.getStats().get("llmFailures"));
+    }
+
+    @Test
+    void priceReplyIsNotTakenFromCache() throws Exception {
+        configure(null, false);
+        mainModelCircuitOpen();
+        when(intentService.classify(anyString())).thenReturn("price");
+        when(conversationMemoryService.append(anyString(), anyString(), anyString(), anyString(), anyString(),
+                anyString(), anyString())).thenReturn(1L);
+
+        // 议价回复依赖议价轮数，不用其他会话的缓存回复兜底
+        assertNull(service.generateReplyAsync(COOKIE_ID, "chat", "buyer", "item", "能便宜点吗")
+                .get(5, TimeUnit.SECONDS));
+        verify(aiReplyCacheService, never()).lookupFallback(anyString(), anyString(), anyString(), anyString(),
+                anyLong());
+    }
+
+    @Test
+    void priceReplyIsNotCached() throws Exception {
+        configure(null, false);
+        when(llmClient.chat(argThat(s -> s != null && "main".equals(s.modelName())), any()))
+                .thenReturn(CompletableFuture.completedFuture("最低了亲。"));
+        when(intentService.classify(anyString())).thenReturn("price");
+        when(conversationMemoryService.append(anyString(), anyString(), anyString(), anyString(), anyString(),
+                anyString(), anyString())).thenReturn(1L);
+
+        assertEquals("最低了亲。", service.generateReplyAsync(COOKIE_ID, "chat", "buyer", "item", "能便宜点吗")
+                .get(5, TimeUnit.SECONDS));
+        verify(aiReplyCacheService, never()).lookup(anyString(), anyString(), anyString(), anyString(), anyLong());
+        verify(aiReplyCacheService, never()).store(anyString(), anyString(), anyString(), anyString(), anyLong(),
+                anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void cachedReplySkipsLlmCall() throws Exception {
+        configure(null, false);
+        when(aiReplyCacheService.lookup(anyString(), anyString(), anyString(), anyString(), anyLong()))
+                .thenReturn(new AiReplyCacheService.Hit("在的，欢迎拍下。", true, 1200, 300));
+
+        assertEquals("在的，欢迎拍下。", service.generateReplyAsync(COOKIE_ID, "chat", "buyer", "item", "还在吗")
+                .get(5, TimeUnit.SECONDS));
+        verify(llmClient, never()).chat(any(), any());
+        // 缓存的回复同样记入对话历史
+        verify(conversationMemoryService).append(COOKIE_ID, "chat", "buyer", "item", "assistant",
+                "在的，欢迎拍下。", "default");
+    }
+
+    private ConversationMemoryService.SummaryJob summaryJobAfterReply(CompletableFuture<String> summary) {
+        configure(null, false);
+        ConversationMemoryService.SummaryJob job = mock(ConversationMemoryService.SummaryJob.class);
+        when(job.turns()).thenReturn(List.of(new ConversationMemoryService.Turn("user", "还在吗", "default")));
+        when(conversationMemoryService.claimSummaryJob(COOKIE_ID, "chat", 8, 4)).thenReturn(job);
+        // 第一次调用生成回复，第二次调用生成摘要
+        when(llmClient.chat(argThat(s -> s != null && "main".equals(s.modelName())), any()))
+                .thenReturn(CompletableFuture.completedFuture("在的亲。"), summary);
+        return job;
+    }
+
+    @Test
+    void summaryIsTruncatedToBudget() throws Exception {
+        ConversationMemoryService.SummaryJob job =
+                summaryJobAfterReply(CompletableFuture.completedFuture(" " + "买家询问商品是否还在。".repeat(30) + " "));
+
+        assertEquals("在的亲。", service.generateReplyAsync(COOKIE_ID, "chat", "buyer", "item", "还在吗")
+                .get(5, TimeUnit.SECONDS));
+
+        verify(job).complete(argThat(summary -> summary.endsWith("…") && TokenEstimator.count(summary) <= 150));
+        verify(job, never()).fail();
+    }
+
+    @Test
+    void failedOrEmptySummaryReleasesJob() throws Exception {
+        ConversationMemoryService.SummaryJob failed =
+                summaryJobAfterReply(CompletableFuture.failedFuture(new IOException("HTTP 503")));
+        service.generateReplyAsync(COOKIE_ID, "chat", "buyer", "item", "还在吗").get(5, TimeUnit.SECONDS);
+        verify(failed).fail();
+        verify(failed, never()).complete(any());
+
+        ConversationMemoryService.SummaryJob empty = summaryJobAfterReply(CompletableFuture.completedFuture(" "));
+        service.generateReplyAsync(COOKIE_ID, "chat", "buyer", "item", "还在吗").get(5, TimeUnit.SECONDS);
+        verify(empty).fail();
+        verify(empty, never()).complete(any());
+    }
+
+    @Test
+    void unsentSentenceStillUsesFallbackModel() throws Exception {
+        configure("backup");
+        backupModelReplies(CompletableFuture.completedFuture("在的，商品还在。"));
+
+        // 会话已有更新的消息，首句没有发出
+        String result = reply(CompletableFuture.completedFuture(false)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(SENTENCE), sentSentences);
+        assertEquals("在的，商品还在。", result);
+        assertEquals(1L, service.getStats().get("fallbackModelReplies"));
+    }
+
+    @Test
+    void failedSendStillUsesCachedReply() throws Exception {
+        configure(null);
+        when(aiReplyCacheService.lookupFallback(anyString(), anyString(), anyString(), anyString(), anyLong()))
+                .thenReturn(new AiReplyCacheService.Hit("在的，欢迎拍下。", false, 0, 0));
+
+        String result = reply(CompletableFuture.failedFuture(new IOException("连接已断开")))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals("在的，欢迎拍下。", result);
+        assertEquals(1L, service.getStats().get("fallbackCacheReplies"));
+    }
+
+    @Test
+    void sentSentenceStopsFallbackOnceSendCompletes() throws Exception {
+        configure("backup");
+        CompletableFuture<Boolean> sendResult = new CompletableFuture<>();
+
+        CompletableFuture<String> result = reply(sendResult);
+        // 发送结果未知前不做决定：既不换模型，也不结束
+        assertFalse(result.isDone());
+        verify(llmClient, never()).chat(any(), any());
+
+        sendResult.complete(true);
+        // 首句已发出：换模型会导致内容重复，返回null（不再补发默认回复）
+        assertNull(result.get(5, TimeUnit.SECONDS));
+        verify(llmClient, never()).chat(any(), any());
+        verify(aiReplyCacheService, never()).lookupFallback(anyString(), anyString(), anyString(), anyString(),
+                anyLong());
+        assertEquals(1L, service.getStats().get("llmFailures"));
+    }
+}
@@ -0,0 +1,328 @@
+package com.xianyu.autoreply.service;
+
+import com.xianyu.autoreply.entity.AiConversation;
+import com.xianyu.autoreply.repository.AiConversationRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 对话缓存针对临时SQLite数据库：启动完整应用（表由 Hibernate 创建），每个测试新建一个不启动后台线程的服务实例，
+ * 由测试控制时钟并手动触发写入和淘汰。
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT) // WebSocket配置需要真实的Servlet容器
+class ConversationMemoryServiceTest {
+
+    private static final Path DIR = createTempDir();
+    private static final AtomicInteger CHAT_IDS = new AtomicInteger();
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    // 浏览器在启动时下载并启动Chromium，与本测试无关
+    @MockBean
+    private BrowserService browserService;
+
+    @Autowired
+    private AiConversationRepository aiConversationRepository;
+
+    @Autowired
+    private WriteBehindService writeBehindService;
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.DAYS.toMillis(1));
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + DIR.resolve("memory.db"));
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("app.ddl-auto", () -> "create");
+        registry.add("app.intent-model-path", () -> DIR.resolve("intent_model.bin").toString());
+        registry.add("app.intent-training-path", () -> DIR.resolve("intent_labeled.tsv").toString());
+    }
+
+    @AfterAll
+    static void cleanUp() throws IOException {
+        File[] files = DIR.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(DIR);
+    }
+
+    private static Path createTempDir() {
+        try {
+            return Files.createTempDirectory("conversation-memory-test");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ConversationMemoryService newService() {
+        return new ConversationMemoryService(aiConversationRepository, writeBehindService, clock::get);
+    }
+
+    private static String newChatId() {
+        return "chat" + CHAT_IDS.incrementAndGet();
+    }
+
+    private static AiConversation row(String cookieId, String chatId, String role, String content, String intent) {
+        AiConversation row = new AiConversation();
+        row.setCookieId(cookieId);
+        row.setChatId(chatId);
+        row.setUserId("buyer");
+        row.setItemId("item");
+        row.setRole(role);
+        row.setContent(content);
+        row.setIntent(intent);
+        return row;
+    }
+
+    private void insert(List<AiConversation> rows) {
+        writeBehindService.submit("ai_conversations", () -> aiConversationRepository.saveAll(rows)).join();
+    }
+
+    private static List<String> contents(ConversationMemoryService.ChatContext context) {
+        return contents(context.turns());
+    }
+
+    private static List<String> contents(List<ConversationMemoryService.Turn> turns) {
+        List<String> contents = new ArrayList<>();
+        for (ConversationMemoryService.Turn turn : turns) {
+            contents.add(turn.content());
+        }
+        return contents;
+    }
+
+    private static long stat(ConversationMemoryService service, String name) {
+        return (Long) service.getStats().get(name);
+    }
+
+    @Test
+    void loadsRecentHistoryFromSqlite() {
+        String chatId = newChatId();
+        List<AiConversation> rows = new ArrayList<>();
+        for (int i = 1; i <= 25; i++) {
+            boolean user = i % 2 == 1;
+            rows.add(row("acc", chatId, user ? "user" : "assistant", "m" + i, i <= 10 ? "price" : "default"));
+        }
+        // 其他账号、其他会话的记录不加载
+        rows.add(row("other", chatId, "user", "x1", "price"));
+        rows.add(row("acc", chatId + "-other", "user", "x2", "price"));
+        insert(rows);
+        ConversationMemoryService service = newService();
+
+        ConversationMemoryService.ChatContext context = service.context("acc", chatId, 100, 0);
+
+        // 最近20条，按时间正序
+        List<String> expected = new ArrayList<>();
+        for (int i = 6; i <= 25; i++) {
+            expected.add("m" + i);
+        }
+        assertEquals(expected, contents(context));
+        assertEquals("assistant", context.turns().get(0).role());
+        assertEquals("price", context.turns().get(0).intent());
+        assertNull(context.summary());
+        // 议价次数按数据库中全部记录统计（含已超出缓冲区的早期消息）：前10条中的5条用户消息
+        assertEquals(5, service.bargainCount("acc", chatId));
+        assertEquals(1L, stat(service, "hydrations"));
+
+        // 之后的读取都在内存中完成
+        service.context("acc", chatId, 100, 0);
+        assertEquals(1L, stat(service, "hydrations"));
+        assertEquals(2L, stat(service, "hits"));
+    }
+
+    @Test
+    void ringBufferKeepsLatestTurns() {
+        String chatId = newChatId();
+        ConversationMemoryService service = newService();
+        for (int i = 1; i <= 25; i++) {
+            service.append("acc", chatId, "buyer", "item", i % 2 == 1 ? "user" : "assistant", "m" + i, "default");
+        }
+
+        List<String> all = contents(service.context("acc", chatId, 100, 0));
+        assertEquals(20, all.size());
+        assertEquals("m6", all.get(0));
+        assertEquals("m25", all.get(19));
+        // 最多 maxTurns 条，跳过刚追加的当前消息
+        assertEquals(List.of("m17", "m18", "m19", "m20", "m21", "m22", "m23", "m24"),
+                contents(service.context("acc", chatId, 8, 1)));
+        assertEquals(25L, stat(service, "appendedTurns"));
+        assertEquals(25L, stat(service, "pendingWrites"));
+    }
+
+    @Test
+    void bargainCountsOnlyBuyerPriceMessages() {
+        String chatId = newChatId();
+        insert(List.of(row("acc", chatId, "user", "能便宜吗", "price"),
+                row("acc", chatId, "assistant", "最低了", "price")));
+        ConversationMemoryService service = newService();
+
+        assertEquals(2, service.append("acc", chatId, "buyer", "item", "user", "再便宜点", "price"));
+        assertEquals(2, service.append("acc", chatId, "buyer", "item", "assistant", "少五块", "price"));
+        assertEquals(2, service.append("acc", chatId, "buyer", "item", "user", "包邮吗", "default"));
+        assertEquals(3, service.append("acc", chatId, "buyer", "item", "user", "八十行吗", "price"));
+        assertEquals(3, service.bargainCount("acc", chatId));
+        // 其他会话独立计数
+        assertEquals(0, service.bargainCount("acc", newChatId()));
+
+        // 写入数据库后，重新加载的计数一致
+        service.flush();
+        assertEquals(3, newService().bargainCount("acc", chatId));
+    }
+
+    private static void appendTurns(ConversationMemoryService service, String chatId, int from, int to) {
+        for (int i = from; i <= to; i++) {
+            service.append("acc", chatId, "buyer", "item", i % 2 == 1 ? "user" : "assistant", "m" + i, "default");
+        }
+    }
+
+    private static List<String> range(int from, int to) {
+        List<String> contents = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            contents.add("m" + i);
+        }
+        return contents;
+    }
+
+    @Test
+    void summaryJobFoldsOlderTurnsIntoSummary() {
+        String chatId = newChatId();
+        ConversationMemoryService service = newService();
+        appendTurns(service, chatId, 1, 9);
+        // 未摘要的消息不足 threshold 条
+        assertNull(service.claimSummaryJob("acc", chatId, 10, 4));
+
+        appendTurns(service, chatId, 10, 10);
+        ConversationMemoryService.SummaryJob job = service.claimSummaryJob("acc", chatId, 10, 4);
+        assertNull(job.previousSummary());
+        assertEquals(range(1, 6), contents(job.turns()));
+        // 同一会话同时只有一个摘要任务
+        assertNull(service.claimSummaryJob("acc", chatId, 10, 4));
+
+        job.complete(" 买家问还在不在 ");
+
+        ConversationMemoryService.ChatContext context = service.context("acc", chatId, 100, 0);
+        assertEquals("买家问还在不在", context.summary());
+        // 已并入摘要的消息不再出现在上下文中
+        assertEquals(range(7, 10), contents(context));
+        assertEquals(1L, stat(service, "summaries"));
+        assertNull(service.claimSummaryJob("acc", chatId, 10, 4));
+
+        // 下一轮摘要在旧摘要的基础上合并新的消息
+        appendTurns(service, chatId, 11, 16);
+        ConversationMemoryService.SummaryJob next = service.claimSummaryJob("acc", chatId, 10, 4);
+        assertEquals("买家问还在不在", next.previousSummary());
+        assertEquals(range(7, 12), contents(next.turns()));
+        next.complete("买家问还在不在，又问包邮");
+        assertEquals(range(13, 16), contents(service.context("acc", chatId, 100, 0)));
+    }
+
+    @Test
+    void failedSummaryJobCanBeClaimedAgain() {
+        String chatId = newChatId();
+        ConversationMemoryService service = newService();
+        appendTurns(service, chatId, 1, 10);
+
+        service.claimSummaryJob("acc", chatId, 10, 4).fail();
+
+        assertEquals(1L, stat(service, "summaryFailures"));
+        assertNull(service.context("acc", chatId, 100, 0).summary());
+        assertEquals(range(1, 10), contents(service.context("acc", chatId, 100, 0)));
+        // 失败后释放领取，消息范围不变
+        assertEquals(range(1, 6), contents(service.claimSummaryJob("acc", chatId, 10, 4).turns()));
+    }
+
+    @Test
+    void blankOrRepeatedCompletionKeepsSummary() {
+        String chatId = newChatId();
+        ConversationMemoryService service = newService();
+        appendTurns(service, chatId, 1, 10);
+
+        // 空摘要不覆盖，但释放领取
+        service.claimSummaryJob("acc", chatId, 10, 4).complete("  ");
+        assertNull(service.context("acc", chatId, 100, 0).summary());
+        ConversationMemoryService.SummaryJob job = service.claimSummaryJob("acc", chatId, 10, 4);
+        job.complete("摘要1");
+
+        // 同一任务重复完成：范围未超出当前摘要，忽略
+        job.complete("摘要2");
+        assertEquals("摘要1", service.context("acc", chatId, 100, 0).summary());
+        assertEquals(range(7, 10), contents(service.context("acc", chatId, 100, 0)));
+    }
+
+    @Test
+    void summaryJobOnlyCoversBufferedTurns() {
+        String chatId = newChatId();
+        ConversationMemoryService service = newService();
+        appendTurns(service, chatId, 1, 25);
+
+        // 超出缓冲区的早期消息已无原文，从缓冲区中最早的一条开始摘要
+        ConversationMemoryService.SummaryJob job = service.claimSummaryJob("acc", chatId, 10, 4);
+        assertEquals(range(6, 21), contents(job.turns()));
+        job.complete("摘要");
+        assertEquals(range(22, 25), contents(service.context("acc", chatId, 100, 0)));
+        // 跳过最新消息后，上下文不回退到已摘要的部分
+        assertEquals(range(22, 24), contents(service.context("acc", chatId, 100, 1)));
+    }
+
+    @Test
+    void idleChatWithUnwrittenRowsIsKept() {
+        String chatId = newChatId();
+        ConversationMemoryService service = newService();
+        service.append("acc", chatId, "buyer", "item", "user", "还在吗", "default");
+
+        clock.addAndGet(IDLE_MILLIS + 1);
+        service.sweep();
+        // 消息尚未写入数据库：淘汰后重新加载会丢失，必须保留
+        assertEquals(1L, stat(service, "chats"));
+        assertEquals(0L, stat(service, "evictedChats"));
+
+        assertEquals(1, service.flush());
+        assertEquals(1L, stat(service, "flushedRows"));
+        service.sweep();
+        assertEquals(0L, stat(service, "chats"));
+        assertEquals(1L, stat(service, "evictedChats"));
+
+        // 再次访问时从数据库加载，内容不丢
+        assertEquals(List.of("还在吗"), contents(service.context("acc", chatId, 100, 0)));
+        assertEquals(2L, stat(service, "hydrations"));
+    }
+
+    @Test
+    void recentlyAccessedChatIsKept() {
+        String idle = newChatId();
+        String active = newChatId();
+        ConversationMemoryService service = newService();
+        service.context("acc", idle, 10, 0);
+        service.context("acc", active, 10, 0);
+
+        clock.addAndGet(IDLE_MILLIS);
+        service.context("acc", active, 10, 0);
+        clock.addAndGet(1);
+        service.sweep();
+
+        assertEquals(1L, stat(service, "chats"));
+        assertEquals(1L, stat(service, "evictedChats"));
+        service.context("acc", active, 10, 0);
+        assertEquals(2L, stat(service, "hydrations"));
+    }
+}
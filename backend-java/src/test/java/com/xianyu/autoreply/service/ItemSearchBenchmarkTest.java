@@ -0,0 +1,236 @@
+package com.xianyu.autoreply.service;
+
+import com.xianyu.autoreply.config.SqliteReadWriteDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 商品搜索基准（默认不运行）：mvn test -Dtest=ItemSearchBenchmarkTest -Dbenchmark=true
+ * 同一份数据上对比 LIKE 与全文索引，分别在单个账号和全部账号范围内搜索；
+ * 建表、唯一索引和全文索引脚本与业务库一致（迁移脚本V1的唯一索引 + V2）。
+ * 同时校验两种方式命中的商品集合相同。
+ * 可调参数（系统属性）：benchmark.rows、benchmark.accounts、benchmark.queries。
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ItemSearchBenchmarkTest {
+
+    private static final String SEARCH_SCRIPT = "migration/V2__item_search_fts.sql";
+    private static final String[] BRANDS = {"苹果", "华为", "小米", "索尼", "佳能", "尼康", "戴森", "任天堂", "联想", "大疆",
+            "罗技", "三星", "飞利浦", "松下", "美的", "耐克", "阿迪达斯", "优衣库", "乐高", "星巴克"};
+    private static final String[] PRODUCTS = {"手机", "平板电脑", "笔记本电脑", "蓝牙耳机", "机械键盘", "无线鼠标", "显示器",
+            "微单相机", "镜头", "吹风机", "游戏机", "无人机", "运动鞋", "羽绒服", "积木", "保温杯", "电动牙刷", "充电宝"};
+    private static final String[] CONDITIONS = {"全新未拆封", "九五新", "九成新", "自用闲置", "功能完好", "有划痕", "配件齐全",
+            "国行正品", "包邮", "可小刀"};
+    // 搜索词：常见词（命中大量商品）、品牌+品类（中等）、带型号的组合（少量命中）和 trigram 以下的短词（走 LIKE 回退）
+    private static final String[] SEARCH_KEYWORDS = {"包邮", "九五新", "蓝牙耳机", "机械键盘", "微单相机 九五新",
+            "无人机 全新未拆封", "型号1234", "索尼 游戏机", "苹果"};
+    private static final String LIKE = "(item_title LIKE ? OR item_description LIKE ? OR item_category LIKE ?)";
+    private static final String FTS = "SELECT i.id FROM item_info_fts JOIN item_info i ON i.id = item_info_fts.rowid "
+            + "WHERE item_info_fts MATCH ? AND i.cookie_id %s ORDER BY bm25(item_info_fts, 10.0, 1.0, 3.0), i.id";
+
+    @Test
+    void comparesLikeAndFullTextSearch() throws Exception {
+        int rows = Integer.getInteger("benchmark.rows", 100_000);
+        int accounts = Integer.getInteger("benchmark.accounts", 50);
+        int queries = Integer.getInteger("benchmark.queries", 50);
+        Path dir = Files.createTempDirectory("sqlite-search-bench");
+        try (SqliteReadWriteDataSource split = SqliteReadWriteDataSource.create("jdbc:sqlite:" + dir.resolve("search.db"),
+                new SqliteReadWriteDataSource.Pragmas("NORMAL", 16384, 256, 5000), 1)) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("rows", rows);
+            report.put("accounts", accounts);
+            report.put("queries", queries);
+            report.put("seedMillis", seedItems(split.writer(), rows, accounts));
+
+            Map<String, Object> keywords = new LinkedHashMap<>();
+            for (String keyword : SEARCH_KEYWORDS) {
+                String[] terms = keyword.split(" ");
+                boolean indexable = Arrays.stream(terms).allMatch(term -> term.codePointCount(0, term.length()) >= 3);
+                StringBuilder likeWhere = new StringBuilder();
+                StringBuilder match = new StringBuilder();
+                for (String term : terms) {
+                    likeWhere.append(" AND ").append(LIKE);
+                    match.append(match.isEmpty() ? "" : " ").append('"').append(term).append('"');
+                }
+                String likeAll = "SELECT id FROM item_info WHERE 1 = 1" + likeWhere + " ORDER BY updated_at DESC";
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("likeOneAccount", measureSearch(split.reader(), "SELECT id FROM item_info WHERE cookie_id = ?"
+                        + likeWhere + " ORDER BY updated_at DESC LIMIT 20", terms, null, accounts, queries));
+                result.put("likeAllAccounts", measureSearch(split.reader(), likeAll + " LIMIT 20", terms, null, 0,
+                        queries));
+                if (indexable) {
+                    String ftsAll = String.format(FTS, "IS NOT NULL");
+                    result.put("ftsOneAccount", measureSearch(split.reader(), String.format(FTS, "= ?") + " LIMIT 20",
+                            terms, match.toString(), accounts, queries));
+                    result.put("ftsAllAccounts", measureSearch(split.reader(), ftsAll + " LIMIT 20", terms,
+                            match.toString(), 0, queries));
+                    // 两种方式命中的商品必须完全相同，只是排序不同
+                    assertEquals(ids(split.reader(), likeAll, terms, null), ids(split.reader(), ftsAll, terms,
+                            match.toString()), keyword);
+                } else {
+                    result.put("fts", "搜索词短于3个字符，trigram 索引无法匹配，线上走 LIKE 回退");
+                }
+                keywords.put(keyword, result);
+            }
+            report.put("keywords", keywords);
+            log.info("商品搜索基准: {}", report);
+        } finally {
+            deleteQuietly(dir.toFile());
+        }
+    }
+
+    private static long seedItems(DataSource dataSource, int rows, int accounts) throws Exception {
+        String script;
+        try (InputStream in = new ClassPathResource(SEARCH_SCRIPT).getInputStream()) {
+            script = StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        }
+        long start = System.currentTimeMillis();
+        Random random = new Random(42); // 固定种子，多次运行的数据一致
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE item_info (id INTEGER PRIMARY KEY AUTOINCREMENT, cookie_id TEXT NOT NULL, "
+                        + "item_id TEXT NOT NULL, item_title TEXT, item_description TEXT, item_category TEXT, "
+                        + "updated_at INTEGER)");
+                statement.execute("CREATE UNIQUE INDEX uk_item_info_cookie_item ON item_info(cookie_id, item_id)");
+                // 先建全文索引再写入，计入触发器维护索引的开销
+                for (String sql : SchemaMigrationService.split(script)) {
+                    statement.execute(sql);
+                }
+            }
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO item_info (cookie_id, item_id, "
+                    + "item_title, item_description, item_category, updated_at) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < rows; i++) {
+                    String brand = BRANDS[random.nextInt(BRANDS.length)];
+                    String product = PRODUCTS[random.nextInt(PRODUCTS.length)];
+                    String condition = CONDITIONS[random.nextInt(CONDITIONS.length)];
+                    insert.setString(1, "account_" + (i % accounts));
+                    insert.setString(2, "item_" + i);
+                    insert.setString(3, brand + " " + product + " " + condition + " 型号" + random.nextInt(10_000));
+                    insert.setString(4, "出" + brand + product + "，" + condition + "，同城可面交，非诚勿扰");
+                    insert.setString(5, product);
+                    insert.setLong(6, System.currentTimeMillis() - random.nextInt(86_400_000));
+                    insert.addBatch();
+                    if ((i + 1) % 10_000 == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+            connection.setAutoCommit(autoCommit);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE");
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * 绑定参数：全文索引的 MATCH 表达式、账号ID（accounts 大于0时）、LIKE 的每个词三个 %词% 参数
+     */
+    private static void bind(PreparedStatement query, String[] terms, String match, int accounts, int n)
+            throws SQLException {
+        int index = 1;
+        if (match != null) {
+            query.setString(index++, match);
+        }
+        if (accounts > 0) {
+            query.setString(index++, "account_" + (n % accounts));
+        }
+        if (match == null) {
+            for (String term : terms) {
+                for (int k = 0; k < 3; k++) {
+                    query.setString(index++, "%" + term + "%");
+                }
+            }
+        }
+    }
+
+    private static List<Long> ids(DataSource dataSource, String sql, String[] terms, String match) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement query = connection.prepareStatement(sql)) {
+            bind(query, terms, match, 0, 0);
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    /**
+     * 执行 queries 次查询，账号轮流选取
+     */
+    private static Map<String, Object> measureSearch(DataSource dataSource, String sql, String[] terms, String match,
+                                                     int accounts, int queries) throws SQLException {
+        long[] samples = new long[queries];
+        long hits = 0;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement query = connection.prepareStatement(sql)) {
+            for (int n = 0; n < queries; n++) {
+                bind(query, terms, match, accounts, n);
+                long begin = System.nanoTime();
+                try (ResultSet rs = query.executeQuery()) {
+                    while (rs.next()) {
+                        hits++;
+                    }
+                }
+                samples[n] = (System.nanoTime() - begin) / 1000;
+            }
+        }
+        long total = Arrays.stream(samples).sum();
+        Arrays.sort(samples);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("avgMicros", total / queries);
+        result.put("p50Micros", percentile(samples, 0.5));
+        result.put("p99Micros", percentile(samples, 0.99));
+        result.put("hitsPerQuery", hits / queries);
+        return result;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static void deleteQuietly(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteQuietly(child);
+            }
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.xianyu.autoreply.service;
+
+import com.xianyu.autoreply.entity.Keyword;
+import com.xianyu.autoreply.repository.KeywordRepository;
+import com.xianyu.autoreply.utils.AhoCorasick;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 关键词匹配基准（默认不运行）：mvn test -Dtest=KeywordMatchBenchmarkTest -Dbenchmark=true
+ * 为一个账号生成大量中文关键词（部分为商品专属），测量：
+ * - 规则集重建耗时（{@link KeywordMatchService#refresh(String)}，含排序、折叠和自动机构建）及自动机节点数
+ * - 每条买家消息的匹配耗时和内存分配，与改造前逐条 contains 的方式对比
+ * 同时校验两种方式对每条消息命中的规则相同。
+ * 可调参数（系统属性）：benchmark.keywords、benchmark.messages、benchmark.rounds。
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class KeywordMatchBenchmarkTest {
+
+    private static final String COOKIE_ID = "bench";
+    private static final String ITEM_ID = "700000000001";
+    private static final String CHARS = "的一是不了人我在有他这中大来上个们到说时地也子就出要会可你对生能而那得于着下自之年过"
+            + "发后作里用道行所然家种事成方多经么去法学如都同现当没动面起看定天分还进好小部其些主样理心她本前开但因只从想实"
+            + "包邮价便宜能少吗发货快递新旧保修正品原装全新拆封划痕电池容量屏幕尺寸颜色型号配件发票";
+
+    private long sink;
+
+    @Test
+    void matchesTenThousandKeywords() {
+        int keywordCount = Integer.getInteger("benchmark.keywords", 10_000);
+        int messageCount = Integer.getInteger("benchmark.messages", 2_000);
+        int rounds = Integer.getInteger("benchmark.rounds", 5);
+        Random random = new Random(42);
+
+        List<Keyword> keywords = new ArrayList<>(keywordCount);
+        for (int i = 0; i < keywordCount; i++) {
+            Keyword keyword = new Keyword();
+            keyword.setId((long) i + 1);
+            keyword.setCookieId(COOKIE_ID);
+            keyword.setKeyword(randomText(random, 2 + random.nextInt(4)));
+            keyword.setReply("回复" + i);
+            // 约5%为当前商品专属，5%为其他商品专属
+            int scope = random.nextInt(20);
+            keyword.setItemId(scope == 0 ? ITEM_ID : scope == 1 ? "700000000002" : null);
+            keywords.add(keyword);
+        }
+        List<String> messages = new ArrayList<>(messageCount);
+        for (int i = 0; i < messageCount; i++) {
+            StringBuilder message = new StringBuilder(randomText(random, 5 + random.nextInt(30)));
+            if (random.nextBoolean()) {
+                message.insert(random.nextInt(message.length() + 1),
+                        keywords.get(random.nextInt(keywordCount)).getKeyword());
+            }
+            messages.add(message.toString());
+        }
+
+        KeywordRepository repository = mock(KeywordRepository.class);
+        when(repository.findByCookieId(COOKIE_ID)).thenReturn(keywords);
+        KeywordMatchService service = new KeywordMatchService(repository);
+
+        // 规则集重建
+        service.refresh(COOKIE_ID); // 预热
+        long[] buildSamples = new long[rounds];
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            service.refresh(COOKIE_ID);
+            buildSamples[r] = System.nanoTime() - start;
+        }
+        Arrays.sort(buildSamples);
+
+        int hits = 0;
+        for (String message : messages) {
+            KeywordMatchService.KeywordRule rule = service.match(COOKIE_ID, ITEM_ID, message);
+            Keyword expected = naiveMatch(keywords, ITEM_ID, message);
+            assertEquals(expected == null ? null : expected.getId(), rule == null ? null : rule.id(), message);
+            hits += rule != null ? 1 : 0;
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("keywords", keywordCount);
+        report.put("messages", messageCount);
+        report.put("hitRate", String.format("%.2f", (double) hits / messageCount));
+        report.put("automatonNodes", service.getStats().get("automatonNodes"));
+        report.put("buildMillis", String.format("%.1f", buildSamples[rounds / 2] / 1e6));
+        Map<String, Long> nanos = new LinkedHashMap<>();
+        for (String path : List.of("automaton", "contains")) {
+            boolean automaton = "automaton".equals(path);
+            run(service, keywords, messages, automaton); // 预热
+            long[] samples = new long[rounds];
+            long allocated = 0;
+            for (int r = 0; r < rounds; r++) {
+                long bytesBefore = allocatedBytes();
+                long start = System.nanoTime();
+                run(service, keywords, messages, automaton);
+                samples[r] = (System.nanoTime() - start) / messageCount;
+                allocated += allocatedBytes() - bytesBefore;
+            }
+            Arrays.sort(samples);
+            nanos.put(path, samples[rounds / 2]);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("nanosPerMessage", samples[rounds / 2]);
+            result.put("bytesAllocatedPerMessage", allocated / ((long) rounds * messageCount));
+            report.put(path, result);
+        }
+        report.put("speedup", String.format("%.1f", (double) nanos.get("contains") / nanos.get("automaton")));
+        log.info("关键词匹配基准: {}", report);
+        assertTrue(sink > 0);
+    }
+
+    private void run(KeywordMatchService service, List<Keyword> keywords, List<String> messages, boolean automaton) {
+        for (String message : messages) {
+            if (automaton) {
+                KeywordMatchService.KeywordRule rule = service.match(COOKIE_ID, ITEM_ID, message);
+                sink += rule != null ? rule.id() : 1;
+            } else {
+                Keyword keyword = naiveMatch(keywords, ITEM_ID, message);
+                sink += keyword != null ? keyword.getId() : 1;
+            }
+        }
+    }
+
+    /**
+     * 改造前的匹配方式：先商品专属、再通用，逐条忽略大小写 contains，取最早添加的规则
+     */
+    private static Keyword naiveMatch(List<Keyword> keywords, String itemId, String message) {
+        String folded = AhoCorasick.fold(message);
+        for (boolean itemScope : new boolean[]{true, false}) {
+            for (Keyword keyword : keywords) {
+                boolean inScope = itemScope ? itemId.equals(keyword.getItemId()) : keyword.getItemId() == null;
+                if (inScope && folded.contains(AhoCorasick.fold(keyword.getKeyword()))) {
+                    return keyword;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(CHARS.charAt(random.nextInt(CHARS.length())));
+        }
+        return text.toString();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,141 @@
+package com.xianyu.autoreply.service;
+
+import com.xianyu.autoreply.entity.Keyword;
+import com.xianyu.autoreply.repository.KeywordRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 执行计划检查针对 Hibernate 实际生成的SQL：启动完整应用（临时数据库，表由 Hibernate 创建，索引由迁移脚本创建）。
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT) // WebSocket配置需要真实的Servlet容器
+class QueryPlanServiceTest {
+
+    private static final Path DIR = createTempDir();
+
+    // 浏览器在启动时下载并启动Chromium，与本测试无关
+    @MockBean
+    private BrowserService browserService;
+
+    @Autowired
+    private QueryPlanService queryPlanService;
+
+    @Autowired
+    private KeywordRepository keywordRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + DIR.resolve("plans.db"));
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("app.ddl-auto", () -> "create");
+        registry.add("app.intent-model-path", () -> DIR.resolve("intent_model.bin").toString());
+        registry.add("app.intent-training-path", () -> DIR.resolve("intent_labeled.tsv").toString());
+    }
+
+    @AfterAll
+    static void cleanUp() throws IOException {
+        File[] files = DIR.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(DIR);
+    }
+
+    private static Path createTempDir() {
+        try {
+            return Files.createTempDirectory("query-plan-test");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> statements(Map<String, Object> report, String method) {
+        return (List<Map<String, Object>>) ((Map<String, Object>) report.get("plans")).get(method);
+    }
+
+    private static String sql(Map<String, Object> report, String method) {
+        List<Map<String, Object>> statements = statements(report, method);
+        assertFalse(statements.isEmpty(), method);
+        return ((String) statements.get(0).get("sql")).toLowerCase();
+    }
+
+    @Test
+    void explainsSqlGeneratedByHibernate() throws Exception {
+        Map<String, Object> report = queryPlanService.verify();
+
+        assertEquals(true, report.get("passed"), "regressions: " + report.get("regressions"));
+        // 计划针对的是 Hibernate 发出的语句（带表别名和 ? 参数），而不是手写的等价SQL
+        String keywords = sql(report, "KeywordRepository.findByCookieId");
+        assertTrue(keywords.contains("from keywords") && keywords.contains("cookie_id=?"), keywords);
+        String delete = sql(report, "KeywordRepository.deleteTextKeywordsByCookieId");
+        assertTrue(delete.startsWith("delete from keywords"), delete);
+        String page = sql(report, "ItemInfoRepository.findByCookieId(Pageable)");
+        assertTrue(page.contains("order by") && page.contains("updated_at desc"), page);
+        String deleteIn = sql(report, "ItemInfoRepository.deleteByCookieIdAndItemIdIn");
+        assertTrue(deleteIn.contains("in (?,?)"), deleteIn);
+        assertTrue(sql(report, "ItemInfoRepository.searchItems").contains("match ?"));
+        for (Object method : ((Map<?, ?>) report.get("plans")).keySet()) {
+            for (Map<String, Object> statement : statements(report, (String) method)) {
+                assertFalse(((List<?>) statement.get("plan")).isEmpty(), method + ": " + statement);
+            }
+        }
+    }
+
+    @Test
+    void reportsRegressionWhenIndexIsMissing() throws Exception {
+        jdbcTemplate.execute("DROP INDEX idx_keywords_cookie_id");
+        try {
+            Map<String, Object> report = queryPlanService.verify();
+
+            assertEquals(false, report.get("passed"));
+            Map<?, ?> regressions = (Map<?, ?>) report.get("regressions");
+            assertTrue(regressions.containsKey("KeywordRepository.findByCookieId"), regressions.toString());
+            assertTrue(regressions.containsKey("KeywordRepository.deleteTextKeywordsByCookieId"),
+                    regressions.toString());
+            assertFalse(regressions.containsKey("OrderRepository.findByCookieId"), regressions.toString());
+        } finally {
+            jdbcTemplate.execute("CREATE INDEX idx_keywords_cookie_id ON keywords (cookie_id)");
+        }
+    }
+
+    @Test
+    void rollsBackModifyingQueries() throws Exception {
+        // 与检查用的占位账号同名：删除语句若被提交，这条规则会被删掉
+        Keyword keyword = new Keyword();
+        keyword.setCookieId("__query_plan__");
+        keyword.setKeyword("包邮吗");
+        keyword.setReply("包邮");
+        keyword = keywordRepository.save(keyword);
+        try {
+            queryPlanService.verify();
+
+            assertTrue(keywordRepository.findById(keyword.getId()).isPresent());
+        } finally {
+            keywordRepository.delete(keyword);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.xianyu.autoreply.service;
+
+import org.junit.jupiter.api.Test;
+import org.sqlite.SQLiteDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaMigrationServiceTest {
+
+    /**
+     * 与 Hibernate 按实体生成的表结构一致（只保留迁移脚本和热点查询用到的列）
+     */
+    private static final String[] TABLES = {
+            "CREATE TABLE keywords (id integer PRIMARY KEY, cookie_id varchar(255), keyword varchar(255), "
+                    + "reply varchar(255), item_id varchar(255), type varchar(255), image_url varchar(255))",
+            "CREATE TABLE item_info (id integer PRIMARY KEY, cookie_id varchar(255) NOT NULL, "
+                    + "item_id varchar(255) NOT NULL, item_title varchar(255), item_description TEXT, "
+                    + "item_category varchar(255), item_price varchar(255), item_detail TEXT, "
+                    + "created_at timestamp, updated_at timestamp)",
+            "CREATE TABLE ai_conversations (id integer PRIMARY KEY, cookie_id varchar(255) NOT NULL, "
+                    + "chat_id varchar(255) NOT NULL, user_id varchar(255) NOT NULL, item_id varchar(255) NOT NULL, "
+                    + "role varchar(255), content varchar(255), intent varchar(255), bargain_count integer, "
+                    + "created_at timestamp)",
+            "CREATE TABLE default_reply_records (id integer PRIMARY KEY, cookie_id varchar(255) NOT NULL, "
+                    + "chat_id varchar(255) NOT NULL, replied_at timestamp)",
+            "CREATE TABLE orders (order_id varchar(255) PRIMARY KEY, item_id varchar(255), buyer_id varchar(255), "
+                    + "order_status varchar(255), cookie_id varchar(255), created_at timestamp, updated_at timestamp)"
+    };
+
+    @Test
+    void keepsSemicolonsAndCommentMarkersInsideLiterals() {
+        List<String> statements = SchemaMigrationService.split(
+                "-- 头部注释\n"
+                        + "UPDATE keywords SET reply = 'a;b -- 不是注释' WHERE keyword = 'x'; -- 行尾注释\n"
+                        + "/* 块注释; */ INSERT INTO t (\"col;name\") VALUES ('it''s; ok');\n");
+        assertEquals(List.of(
+                "UPDATE keywords SET reply = 'a;b -- 不是注释' WHERE keyword = 'x'",
+                "INSERT INTO t (\"col;name\") VALUES ('it''s; ok')"), statements);
+    }
+
+    @Test
+    void keepsTriggerBodiesTogether() {
+        List<String> statements = SchemaMigrationService.split(
+                "/* 说明 */ CREATE TEMP TRIGGER t1 AFTER INSERT ON a BEGIN\n"
+                        + "  UPDATE b SET n = CASE WHEN new.x > 0 THEN 1 ELSE 0 END;\n"
+                        + "  INSERT INTO c VALUES ('end;');\n"
+                        + "END;\n"
+                        + "-- 注释\n"
+                        + "create temporary trigger t2 after delete on a begin delete from b; end;\n"
+                        + "CREATE TRIGGER t3 AFTER UPDATE ON a BEGIN SELECT 1; END;\n"
+                        + "SELECT 2");
+        assertEquals(4, statements.size());
+        assertTrue(statements.get(0).startsWith("CREATE TEMP TRIGGER t1"));
+        assertTrue(statements.get(0).endsWith("END"), statements.get(0));
+        assertTrue(statements.get(0).contains("VALUES ('end;')"));
+        assertEquals("create temporary trigger t2 after delete on a begin delete from b; end", statements.get(1));
+        assertEquals("CREATE TRIGGER t3 AFTER UPDATE ON a BEGIN SELECT 1; END", statements.get(2));
+        assertEquals("SELECT 2", statements.get(3));
+    }
+
+    @Test
+    void rejectsUnterminatedLiteral() {
+        assertThrows(IllegalArgumentException.class, () -> SchemaMigrationService.split("SELECT 'abc;"));
+    }
+
+    /**
+     * 在按实体建好的表上执行全部迁移脚本，热点查询的执行计划必须都用上索引
+     */
+    @Test
+    void migrationsKeepHotQueriesOnIndexes() throws Exception {
+        Path dir = Files.createTempDirectory("migration-test");
+        Path db = dir.resolve("test.db");
+        try {
+            SQLiteDataSource dataSource = new SQLiteDataSource();
+            dataSource.setUrl("jdbc:sqlite:" + db);
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                for (String table : TABLES) {
+                    statement.execute(table);
+                }
+                statement.execute("INSERT INTO item_info (cookie_id, item_id, item_title) VALUES "
+                        + "('c', 'i1', '旧标题'), ('c', 'i1', '九成新 iPhone 15'), ('c', 'i2', '机械键盘')");
+            }
+
+            assertEquals(Set.of(), indexes(dataSource));
+
+            SchemaMigrationService migrations = new SchemaMigrationService(dataSource, "update");
+            migrations.migrate();
+            assertTrue(migrations.getApplied().size() >= 2, "applied " + migrations.getApplied());
+
+            // 执行计划是否用上这些索引由 QueryPlanServiceTest 按 Hibernate 实际生成的SQL检查
+            assertEquals(Set.of("idx_keywords_cookie_id", "uk_item_info_cookie_item", "idx_ai_conversations_chat_history",
+                    "idx_ai_conversations_chat_intent", "idx_default_reply_records_chat", "idx_orders_cookie_id"),
+                    indexes(dataSource));
+
+            try (Connection connection = dataSource.getConnection();
+                 Statement statement = connection.createStatement()) {
+                // V1 去重后保留最新一条；V2 为已有商品建立全文索引，触发器同步后续写入
+                statement.execute("INSERT INTO item_info (cookie_id, item_id, item_title) VALUES ('c', 'i3', '键盘膜')");
+                try (ResultSet rs = statement.executeQuery(
+                        "SELECT count(*) FROM item_info_fts WHERE item_info_fts MATCH '\"iPhone\"'")) {
+                    rs.next();
+                    assertEquals(1, rs.getInt(1));
+                }
+                try (ResultSet rs = statement.executeQuery(
+                        "SELECT count(*) FROM item_info_fts WHERE item_info_fts MATCH '\"键盘膜\"'")) {
+                    rs.next();
+                    assertEquals(1, rs.getInt(1));
+                }
+                try (ResultSet rs = statement.executeQuery("SELECT count(*) FROM item_info WHERE item_id = 'i1'")) {
+                    rs.next();
+                    assertEquals(1, rs.getInt(1));
+                }
+            }
+
+            // 再次启动不会重复执行
+            SchemaMigrationService again = new SchemaMigrationService(dataSource, "update");
+            again.migrate();
+            assertEquals(0, again.getApplied().size());
+        } finally {
+            Files.deleteIfExists(db);
+            Files.deleteIfExists(dir.resolve("test.db-wal"));
+            Files.deleteIfExists(dir.resolve("test.db-shm"));
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static Set<String> indexes(SQLiteDataSource dataSource) throws Exception {
+        Set<String> names = new HashSet<>();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(
+                     "SELECT name FROM sqlite_master WHERE type = 'index' AND sql IS NOT NULL")) {
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        }
+        return names;
+    }
+}
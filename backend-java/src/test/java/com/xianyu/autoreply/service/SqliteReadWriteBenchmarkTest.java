@@ -0,0 +1,255 @@
+package com.xianyu.autoreply.service;
+
+import com.xianyu.autoreply.config.SqliteReadWriteDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SQLite读写混合吞吐基准（默认不运行）：mvn test -Dtest=SqliteReadWriteBenchmarkTest -Dbenchmark=true
+ * 在临时目录的独立数据库文件上分别测试两种模式：
+ * - rollback：默认回滚日志，读写线程共用一个连接池（改造前的配置）
+ * - wal：{@link SqliteReadWriteDataSource}，WAL + 单写连接 + 只读连接池（与 application.yml 中 app.sqlite.* 的默认值一致）
+ * 读操作按账号查询一页商品，写操作更新单行标题（自动提交，模拟消息处理中的零散写入）。
+ * 可调参数（系统属性）：benchmark.seconds、benchmark.readers、benchmark.writers。
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class SqliteReadWriteBenchmarkTest {
+
+    private static final int SEED_ROWS = 20_000;
+    private static final int SEED_ACCOUNTS = 20;
+    private static final int MAX_SAMPLES_PER_THREAD = 200_000;
+
+    private final SqliteReadWriteDataSource.Pragmas pragmas =
+            new SqliteReadWriteDataSource.Pragmas("NORMAL", 16384, 256, 5000);
+
+    @Test
+    void comparesRollbackJournalAndWal() throws Exception {
+        int seconds = Integer.getInteger("benchmark.seconds", 10);
+        int readers = Integer.getInteger("benchmark.readers", 4);
+        int writers = Integer.getInteger("benchmark.writers", 2);
+        Path dir = Files.createTempDirectory("sqlite-bench");
+        try {
+            Map<String, Object> report = new HashMap<>();
+            report.put("seconds", seconds);
+            report.put("readers", readers);
+            report.put("writers", writers);
+            report.put("seedRows", SEED_ROWS);
+
+            String rollbackUrl = "jdbc:sqlite:" + dir.resolve("rollback.db");
+            HikariConfig shared = new HikariConfig();
+            shared.setPoolName("bench-rollback");
+            shared.setJdbcUrl(rollbackUrl);
+            shared.setMaximumPoolSize(readers + writers);
+            Map<String, Object> rollback;
+            try (HikariDataSource pool = new HikariDataSource(shared)) {
+                rollback = measure(pool, pool, seconds, readers, writers);
+            }
+            report.put("rollback", rollback);
+
+            String walUrl = "jdbc:sqlite:" + dir.resolve("wal.db");
+            Map<String, Object> wal;
+            try (SqliteReadWriteDataSource split = SqliteReadWriteDataSource.create(walUrl, pragmas, readers)) {
+                wal = measure(split.reader(), split.writer(), seconds, readers, writers);
+            }
+            report.put("wal", wal);
+            log.info("SQLite读写基准: {}", report);
+
+            // WAL下读不阻塞写、写连接唯一，不应出现 SQLITE_BUSY
+            assertEquals(0L, wal.get("busyErrors"));
+            assertTrue((long) wal.get("reads") + (long) wal.get("writes") > 0);
+        } finally {
+            deleteQuietly(dir.toFile());
+        }
+    }
+
+    private Map<String, Object> measure(DataSource readSource, DataSource writeSource, int seconds, int readers,
+                                        int writers) throws SQLException, InterruptedException {
+        seed(writeSource);
+        AtomicBoolean stop = new AtomicBoolean(false);
+        AtomicLong busyErrors = new AtomicLong(0);
+        List<long[]> readSamples = new ArrayList<>();
+        List<long[]> writeSamples = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        long[] readCounts = new long[readers];
+        long[] writeCounts = new long[writers];
+        for (int i = 0; i < readers; i++) {
+            long[] samples = new long[MAX_SAMPLES_PER_THREAD];
+            readSamples.add(samples);
+            int index = i;
+            threads.add(new Thread(() -> readCounts[index] = loop(stop, busyErrors, samples,
+                    () -> readPage(readSource)), "bench-reader-" + i));
+        }
+        for (int i = 0; i < writers; i++) {
+            long[] samples = new long[MAX_SAMPLES_PER_THREAD];
+            writeSamples.add(samples);
+            int index = i;
+            threads.add(new Thread(() -> writeCounts[index] = loop(stop, busyErrors, samples,
+                    () -> updateRow(writeSource)), "bench-writer-" + i));
+        }
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        long reads = Arrays.stream(readCounts).sum();
+        long writes = Arrays.stream(writeCounts).sum();
+        long[] readLatencies = merge(readSamples, readCounts);
+        long[] writeLatencies = merge(writeSamples, writeCounts);
+        Map<String, Object> result = new HashMap<>();
+        result.put("reads", reads);
+        result.put("writes", writes);
+        result.put("readsPerSecond", Math.round(reads / elapsedSeconds));
+        result.put("writesPerSecond", Math.round(writes / elapsedSeconds));
+        result.put("readP50Micros", percentile(readLatencies, 0.5));
+        result.put("readP99Micros", percentile(readLatencies, 0.99));
+        result.put("writeP50Micros", percentile(writeLatencies, 0.5));
+        result.put("writeP99Micros", percentile(writeLatencies, 0.99));
+        result.put("busyErrors", busyErrors.get());
+        return result;
+    }
+
+    private interface Op {
+        void run() throws SQLException;
+    }
+
+    /**
+     * 循环执行操作直到停止，记录每次耗时（微秒）
+     *
+     * @return 成功次数
+     */
+    private static long loop(AtomicBoolean stop, AtomicLong busyErrors, long[] samples, Op op) {
+        long count = 0;
+        while (!stop.get()) {
+            long begin = System.nanoTime();
+            try {
+                op.run();
+            } catch (SQLException e) {
+                // SQLITE_BUSY / SQLITE_LOCKED
+                busyErrors.incrementAndGet();
+                continue;
+            }
+            if (count < samples.length) {
+                samples[(int) count] = (System.nanoTime() - begin) / 1000;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private static void seed(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS bench_items (id INTEGER PRIMARY KEY, cookie_id TEXT, "
+                        + "item_id TEXT, item_title TEXT, updated_at INTEGER)");
+                statement.execute("CREATE INDEX IF NOT EXISTS idx_bench_items_cookie ON bench_items(cookie_id)");
+            }
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO bench_items (cookie_id, item_id, item_title, updated_at) VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < SEED_ROWS; i++) {
+                    insert.setString(1, "account_" + (i % SEED_ACCOUNTS));
+                    insert.setString(2, "item_" + i);
+                    insert.setString(3, "商品标题 " + i);
+                    insert.setLong(4, System.currentTimeMillis());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                connection.commit();
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private static void readPage(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement query = connection.prepareStatement(
+                     "SELECT id, item_id, item_title, updated_at FROM bench_items WHERE cookie_id = ? "
+                             + "ORDER BY updated_at DESC LIMIT 50")) {
+            query.setString(1, "account_" + ThreadLocalRandom.current().nextInt(SEED_ACCOUNTS));
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    rs.getString(3);
+                }
+            }
+        }
+    }
+
+    private static void updateRow(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement update = connection.prepareStatement(
+                     "UPDATE bench_items SET item_title = ?, updated_at = ? WHERE id = ?")) {
+            long now = System.currentTimeMillis();
+            update.setString(1, "商品标题 " + now);
+            update.setLong(2, now);
+            update.setLong(3, 1 + ThreadLocalRandom.current().nextInt(SEED_ROWS));
+            update.executeUpdate();
+        }
+    }
+
+    private static long[] merge(List<long[]> samples, long[] counts) {
+        int total = 0;
+        for (int i = 0; i < samples.size(); i++) {
+            total += (int) Math.min(counts[i], MAX_SAMPLES_PER_THREAD);
+        }
+        long[] merged = new long[total];
+        int offset = 0;
+        for (int i = 0; i < samples.size(); i++) {
+            int n = (int) Math.min(counts[i], MAX_SAMPLES_PER_THREAD);
+            System.arraycopy(samples.get(i), 0, merged, offset, n);
+            offset += n;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static void deleteQuietly(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteQuietly(child);
+            }
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.xianyu.autoreply.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindServiceTest {
+
+    /**
+     * 事务管理器替身：写操作记到当前线程的事务里，提交时整批可见，回滚时丢弃
+     */
+    private static final class StubTransactionManager implements PlatformTransactionManager {
+        private final ThreadLocal<List<String>> current = new ThreadLocal<>();
+        final List<List<String>> commits = Collections.synchronizedList(new ArrayList<>());
+        final List<String> commitThreads = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger rollbacks = new AtomicInteger();
+
+        String write(String row) {
+            List<String> rows = current.get();
+            if (rows == null) {
+                throw new IllegalStateException("not in a transaction: " + row);
+            }
+            rows.add(row);
+            return row;
+        }
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            current.set(new ArrayList<>());
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+            if (status.isRollbackOnly()) {
+                rollback(status);
+                return;
+            }
+            commits.add(current.get());
+            commitThreads.add(Thread.currentThread().getName());
+            current.remove();
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+            rollbacks.incrementAndGet();
+            current.remove();
+        }
+    }
+
+    private final StubTransactionManager transactions = new StubTransactionManager();
+    private WriteBehindService service;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    /**
+     * 提交一个阻塞写线程的操作，返回后写线程已在执行它；countDown 返回的latch后放行
+     */
+    private CountDownLatch occupyWriter() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        service.submit("blocker", () -> {
+            transactions.write("blocker");
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void queuedWritesCommitInOneTransaction() throws Exception {
+        service = new WriteBehindService(transactions, 100, 50, 0);
+        CountDownLatch release = occupyWriter();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String row = "r" + i;
+            futures.add(service.submit(row, () -> transactions.write(row)));
+        }
+        assertFalse(futures.get(0).isDone());
+
+        release.countDown();
+        for (int i = 0; i < 10; i++) {
+            assertEquals("r" + i, await(futures.get(i)));
+        }
+
+        assertEquals(List.of(List.of("blocker"), List.of("r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7", "r8", "r9")),
+                transactions.commits);
+        assertEquals(2L, service.getStats().get("batches"));
+        assertEquals(10L, service.getStats().get("maxBatchSize"));
+        assertEquals(11L, service.getStats().get("committed"));
+    }
+
+    @Test
+    void batchSizeLimitsOneTransaction() throws Exception {
+        service = new WriteBehindService(transactions, 100, 4, 0);
+        CountDownLatch release = occupyWriter();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String row = "r" + i;
+            futures.add(service.submit(row, () -> transactions.write(row)));
+        }
+        release.countDown();
+        await(futures.get(9));
+
+        assertEquals(List.of(List.of("blocker"), List.of("r0", "r1", "r2", "r3"), List.of("r4", "r5", "r6", "r7"),
+                List.of("r8", "r9")), transactions.commits);
+    }
+
+    @Test
+    void failedBatchIsRetriedOneByOne() throws Exception {
+        service = new WriteBehindService(transactions, 100, 50, 0);
+        CountDownLatch release = occupyWriter();
+        CompletableFuture<String> first = service.submit("r0", () -> transactions.write("r0"));
+        CompletableFuture<String> broken = service.submit("r1", () -> {
+            transactions.write("r1");
+            throw new IllegalStateException("constraint violated");
+        });
+        CompletableFuture<String> last = service.submit("r2", () -> transactions.write("r2"));
+
+        release.countDown();
+        assertEquals("r0", await(first));
+        assertEquals("r2", await(last));
+        ExecutionException error = assertThrows(ExecutionException.class, () -> await(broken));
+        assertEquals("constraint violated", error.getCause().getMessage());
+
+        // 整批回滚一次，重试时出错的操作再回滚一次；其余操作各自提交
+        assertEquals(List.of(List.of("blocker"), List.of("r0"), List.of("r2")), transactions.commits);
+        assertEquals(2, transactions.rollbacks.get());
+        assertEquals(1L, service.getStats().get("retriedBatches"));
+        assertEquals(1L, service.getStats().get("failed"));
+    }
+
+    @Test
+    void writeSubmittedFromWriterThreadRunsInline() throws Exception {
+        service = new WriteBehindService(transactions, 100, 50, 0);
+        AtomicReference<CompletableFuture<String>> inner = new AtomicReference<>();
+        CompletableFuture<Boolean> outer = service.submit("outer", () -> {
+            transactions.write("outer");
+            inner.set(service.submit("inner", () -> transactions.write("inner")));
+            // 在外层事务中同步执行完毕，等待它不会死锁
+            return inner.get().isDone();
+        });
+
+        assertTrue(await(outer));
+        assertEquals("inner", await(inner.get()));
+        assertEquals(List.of(List.of("outer", "inner")), transactions.commits);
+    }
+
+    @Test
+    void inlineFailureRollsBackOuterWrite() throws Exception {
+        service = new WriteBehindService(transactions, 100, 50, 0);
+        AtomicReference<RuntimeException> thrown = new AtomicReference<>();
+        CompletableFuture<Void> outer = service.submit("outer", () -> {
+            transactions.write("outer");
+            try {
+                service.submit("inner", () -> {
+                    throw new IllegalStateException("inner failed");
+                });
+            } catch (RuntimeException e) {
+                // 内联执行的失败直接抛给外层操作，外层事务随之回滚
+                thrown.set(e);
+                throw e;
+            }
+        });
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> await(outer));
+        assertEquals("inner failed", error.getCause().getMessage());
+        assertEquals("inner failed", thrown.get().getMessage());
+        assertEquals(List.of(), transactions.commits);
+        assertEquals(1, transactions.rollbacks.get());
+        assertEquals(2L, service.getStats().get("failed"));
+    }
+
+    @Test
+    void fullQueueFallsBackToCallerThread() throws Exception {
+        service = new WriteBehindService(transactions, 1, 50, 0);
+        CountDownLatch release = occupyWriter();
+        CompletableFuture<String> queued = service.submit("queued", () -> transactions.write("queued"));
+
+        // 队列已满：等待 offer 超时后在调用线程同步写入，返回时已提交
+        CompletableFuture<String> sync = service.submit("sync", () -> transactions.write("sync"));
+        assertTrue(sync.isDone());
+        assertEquals("sync", sync.get());
+        assertFalse(queued.isDone());
+        assertEquals(1L, service.getStats().get("syncWrites"));
+        assertEquals(Thread.currentThread().getName(), transactions.commitThreads.get(0));
+        assertEquals(List.of("sync"), transactions.commits.get(0));
+
+        release.countDown();
+        assertEquals("queued", await(queued));
+        assertNotEquals(Thread.currentThread().getName(), transactions.commitThreads.get(2));
+    }
+
+    @Test
+    void shutdownDrainsQueuedWrites() throws Exception {
+        service = new WriteBehindService(transactions, 100, 50, 0);
+        CountDownLatch release = occupyWriter();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            String row = "r" + i;
+            futures.add(service.submit(row, () -> transactions.write(row)));
+        }
+
+        Thread stopper = new Thread(() -> {
+            try {
+                service.shutdown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stopper.start();
+        release.countDown();
+        stopper.join(5_000);
+        assertFalse(stopper.isAlive());
+
+        for (CompletableFuture<String> future : futures) {
+            assertTrue(future.isDone());
+        }
+        assertEquals(List.of(List.of("blocker"), List.of("r0", "r1", "r2", "r3", "r4")), transactions.commits);
+        assertEquals(0L, service.getStats().get("queueDepth"));
+
+        // 关闭后提交的写操作在调用线程同步执行
+        CompletableFuture<String> late = service.submit("late", () -> transactions.write("late"));
+        assertEquals("late", late.get());
+        assertEquals(1L, service.getStats().get("syncWrites"));
+    }
+}
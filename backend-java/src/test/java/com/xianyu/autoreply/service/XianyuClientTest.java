@@ -0,0 +1,26 @@
+package com.xianyu.autoreply.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class XianyuClientTest {
+
+    @Test
+    void sendsRestAfterEarlySentence() {
+        assertEquals("商品还在，支持包邮。",
+                XianyuClient.remainingAfterEarlySentence("在的亲。 商品还在，支持包邮。", "在的亲。"));
+        // 首句就是全部回复：没有剩余内容
+        assertEquals("", XianyuClient.remainingAfterEarlySentence("在的亲。", "在的亲。"));
+        // 首句原文含前导空白（发送时去除），最终回复同样以它开头
+        assertEquals("可以少十块。", XianyuClient.remainingAfterEarlySentence("\n亲，价格实在。可以少十块。", "\n亲，价格实在。"));
+    }
+
+    @Test
+    void sendsWholeReplyWhenEarlySentenceDiffers() {
+        // 对冲请求的另一份结果胜出：已发出的首句不是最终回复的开头，完整回复照常发送
+        assertEquals("您好！这个是全新未拆封的。",
+                XianyuClient.remainingAfterEarlySentence("您好！这个是全新未拆封的。", "在的亲。"));
+        assertEquals("在的。商品还在。", XianyuClient.remainingAfterEarlySentence("在的。商品还在。", "在的亲。"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.xianyu.autoreply.service.intent;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntentServiceTest {
+
+    @Test
+    void parsesLabeledSamples() throws Exception {
+        List<String[]> samples = IntentService.parseSamples(new BufferedReader(new StringReader(
+                "# 注释\n\nprice\t能便宜点吗\ntech\t 怎么用 \n")), "test");
+        assertEquals(2, samples.size());
+        assertEquals("能便宜点吗", samples.get(0)[0]);
+        assertEquals("price", samples.get(0)[1]);
+        assertEquals("怎么用", samples.get(1)[0]);
+    }
+
+    @Test
+    void rejectsUnknownLabelsAndMissingTab() {
+        assertThrows(IllegalArgumentException.class, () -> IntentService.parseSamples(
+                new BufferedReader(new StringReader("bargain\t能便宜点吗\n")), "test"));
+        assertThrows(IllegalArgumentException.class, () -> IntentService.parseSamples(
+                new BufferedReader(new StringReader("price 能便宜点吗\n")), "test"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void trainsOnBuiltinAndCorrectedSamples() throws Exception {
+        Path dir = Files.createTempDirectory("intent-test");
+        Path corrected = dir.resolve("corrected.tsv");
+        Files.writeString(corrected, "tech\t这个还能用吗\nprice\t能不能再少点\n");
+        try {
+            IntentService service = new IntentService("naive-bayes", dir.resolve("model.bin").toString(),
+                    corrected.toString());
+            Map<String, Object> report = service.train();
+
+            assertEquals(2, report.get("correctedSamples"));
+            assertTrue((int) report.get("builtinSamples") >= 150);
+            assertTrue(Files.exists(dir.resolve("model.bin")));
+            assertEquals(true, report.get("active"));
+            // 标签与词典无关，词典在留出集上不可能因为构造而得到100%
+            double lexicon = (double) ((Map<String, Object>) report.get("lexicon")).get("accuracyPercent");
+            assertTrue(lexicon < 100.0, "lexicon accuracy " + lexicon);
+        } finally {
+            Files.deleteIfExists(dir.resolve("model.bin"));
+            Files.deleteIfExists(corrected);
+            Files.deleteIfExists(dir);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.xianyu.autoreply.service.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toMillis(1));
+    private final CircuitBreaker breaker = new CircuitBreaker("api.example.com/model", clock::get);
+
+    private void succeed(int times, long millis) {
+        for (int i = 0; i < times; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onSuccess(millis);
+        }
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure("HTTP 500");
+        }
+    }
+
+    private void open() {
+        succeed(5, 100);
+        fail(5);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void staysClosedUntilEnoughCalls() {
+        // 少于10次调用时失败率再高也不打开
+        fail(9);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(9L, breaker.getStats().get("windowCalls"));
+        assertEquals(100L, breaker.getStats().get("failureRatePercent"));
+    }
+
+    @Test
+    void opensAtHalfFailures() {
+        succeed(6, 100);
+        fail(3);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        fail(1); // 10次中4次失败
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        fail(1); // 窗口内11次中5次失败：45%
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        fail(1); // 12次中6次失败：50%
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        assertFalse(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(2L, breaker.getStats().get("rejected"));
+        assertEquals(1L, breaker.getStats().get("opened"));
+        assertEquals(OPEN_MILLIS, breaker.getStats().get("openRemainingMillis"));
+        assertEquals("HTTP 500", breaker.getStats().get("lastFailure"));
+    }
+
+    @Test
+    void opensWhenSuccessfulCallsAreSlow() {
+        succeed(9, 16_000);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        succeed(1, 16_000); // 成功调用的P95达到15秒
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void windowKeepsOnlyRecentCalls() {
+        fail(4);
+        succeed(20, 100); // 早先的失败移出最近20次窗口
+        fail(9);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(45L, breaker.getStats().get("failureRatePercent"));
+    }
+
+    @Test
+    void halfOpenAdmitsOneProbeAndClosesAfterThreeSuccesses() {
+        open();
+        clock.addAndGet(OPEN_MILLIS - 1);
+        assertFalse(breaker.tryAcquire());
+
+        clock.addAndGet(1);
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        // 同一时刻只放行一个探测请求
+        assertFalse(breaker.tryAcquire());
+        breaker.onSuccess(100);
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(100);
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        breaker.onSuccess(100);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        // 关闭后窗口重新统计，正常放行
+        assertEquals(0L, breaker.getStats().get("windowCalls"));
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void failedProbeReopensWithDoubledDuration() {
+        open();
+        long[] expected = {60_000, 120_000, 240_000, 300_000, 300_000}; // 翻倍，上限5分钟
+        long openMillis = OPEN_MILLIS;
+        for (long next : expected) {
+            clock.addAndGet(openMillis);
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure("timeout");
+            assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+            assertEquals(next, breaker.getStats().get("openRemainingMillis"));
+            clock.addAndGet(next - 1);
+            assertFalse(breaker.tryAcquire());
+            openMillis = 1;
+        }
+
+        // 探测成功关闭后，下次打开恢复为初始时长
+        clock.addAndGet(1);
+        succeed(3, 100);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        open();
+        assertEquals(OPEN_MILLIS, breaker.getStats().get("openRemainingMillis"));
+    }
+
+    @Test
+    void ignoredProbeReleasesSlot() {
+        open();
+        clock.addAndGet(OPEN_MILLIS);
+        assertTrue(breaker.tryAcquire());
+        // 探测请求在本地排队被拒，未到达服务商：不影响状态，下一个请求可以探测
+        breaker.onIgnored();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void callsFinishingAfterOpenAreNotCounted() {
+        assertTrue(breaker.tryAcquire()); // 打开前已发出
+        open();
+        breaker.onSuccess(100);
+        breaker.onFailure("late");
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(0L, breaker.getStats().get("windowCalls"));
+
+        clock.addAndGet(OPEN_MILLIS);
+        succeed(3, 100);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void manualOpenAndReset() {
+        breaker.forceOpen();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.reset();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.tryAcquire());
+    }
+}
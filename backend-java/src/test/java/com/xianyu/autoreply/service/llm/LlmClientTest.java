@@ -0,0 +1,393 @@
+package com.xianyu.autoreply.service.llm;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.xianyu.autoreply.model.AccountConfigSnapshot;
+import com.xianyu.autoreply.service.BrowserService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * LlmClient 针对测试类路径中的模拟LLM服务（{@link MockLlmService}）调用：启动完整应用以获得真实的HTTP端口。
+ * 每个测试使用新的客户端，统计和熔断状态互不影响；模拟服务的计数是累计的，按差值断言。
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class LlmClientTest {
+
+    private static final Path DIR = createTempDir();
+    private static final int FAST_TOKENS_PER_SECOND = 10_000; // 生成耗时可忽略，总耗时约等于首token延迟
+
+    // 浏览器在启动时下载并启动Chromium，与本测试无关
+    @MockBean
+    private BrowserService browserService;
+
+    @Autowired
+    private MockLlmService mockLlmService;
+
+    @LocalServerPort
+    private int port;
+
+    private LlmClient client;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> "jdbc:sqlite:" + DIR.resolve("llm.db"));
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("app.ddl-auto", () -> "create");
+        registry.add("app.intent-model-path", () -> DIR.resolve("intent_model.bin").toString());
+        registry.add("app.intent-training-path", () -> DIR.resolve("intent_labeled.tsv").toString());
+        registry.add("app.mock-llm.enabled", () -> "true");
+    }
+
+    @AfterAll
+    static void cleanUp() throws IOException {
+        File[] files = DIR.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(DIR);
+    }
+
+    private static Path createTempDir() {
+        try {
+            return Files.createTempDirectory("llm-client-test");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        client = new LlmClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.shutdown();
+    }
+
+    /**
+     * 固定延迟（中位数等于P99），不注入故障
+     */
+    private void fixedLatency(long millis) {
+        mockLlmService.updateSettings(new MockLlmService.Settings(millis, millis, FAST_TOKENS_PER_SECOND, 0, 0));
+    }
+
+    private AccountConfigSnapshot.AiSettings openAi() {
+        return settings("mock-model", "http://localhost:" + port + "/mock-llm/v1");
+    }
+
+    private AccountConfigSnapshot.AiSettings dashScope() {
+        return settings("mock-app", "http://localhost:" + port + "/mock-llm/dashscope/api/v1/apps/mock/completion");
+    }
+
+    private AccountConfigSnapshot.AiSettings gemini() {
+        return settings("gemini-mock", "http://localhost:" + port + "/mock-llm/v1beta");
+    }
+
+    private static AccountConfigSnapshot.AiSettings settings(String model, String baseUrl) {
+        return new AccountConfigSnapshot.AiSettings(true, model, "test-key", baseUrl, 10, 100, 3, null, false,
+                null, null, null);
+    }
+
+    private static JSONArray messages() {
+        return new JSONArray()
+                .fluentAdd(new JSONObject().fluentPut("role", "system").fluentPut("content", "你是闲鱼卖家"))
+                .fluentAdd(new JSONObject().fluentPut("role", "user").fluentPut("content", "还在吗"));
+    }
+
+    private long mockRequests() {
+        return (Long) mockLlmService.getStats().get("requests");
+    }
+
+    private Map<?, ?> stats(LlmClient.Provider provider) {
+        return (Map<?, ?>) client.getStats().get(provider.name());
+    }
+
+    /**
+     * 计数在结果完成之后才累加，等待其达到期望值
+     */
+    private void awaitStat(LlmClient.Provider provider, String name, long expected) throws InterruptedException {
+        long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Long.valueOf(expected).equals(stats(provider).get(name)) && System.nanoTime() < waitUntil) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, stats(provider).get(name), name);
+    }
+
+    private static void awaitAll(List<CompletableFuture<String>> futures) {
+        CompletableFuture.allOf(futures.stream().map(f -> f.exceptionally(e -> null))
+                .toArray(CompletableFuture[]::new)).orTimeout(30, TimeUnit.SECONDS).join();
+    }
+
+    @Test
+    void excessCallsWaitForProviderLimit() throws Exception {
+        fixedLatency(300);
+        long before = mockRequests();
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(client.chat(dashScope(), messages()));
+        }
+        Map<?, ?> queuedStats = stats(LlmClient.Provider.DASHSCOPE);
+        assertEquals(8L, queuedStats.get("inFlight"));
+        assertEquals(12L, queuedStats.get("queued"));
+
+        awaitAll(futures);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        for (CompletableFuture<String> future : futures) {
+            assertFalse(future.get().isEmpty());
+        }
+        awaitStat(LlmClient.Provider.DASHSCOPE, "successes", 20);
+        Map<?, ?> stats = stats(LlmClient.Provider.DASHSCOPE);
+        // DashScope 同时最多8个在途，20个调用至少分三批发出
+        assertEquals(8L, stats.get("maxInFlight"));
+        assertEquals(0L, stats.get("rejected"));
+        assertEquals(0L, stats.get("inFlight"));
+        assertEquals(0L, stats.get("queued"));
+        assertEquals(20L, mockRequests() - before);
+        assertTrue(elapsedMillis >= 3 * 300, "elapsed " + elapsedMillis);
+        // 其他服务商的额度不受影响
+        assertEquals(0L, stats(LlmClient.Provider.OPENAI_COMPATIBLE).get("maxInFlight"));
+    }
+
+    @Test
+    void callsBeyondQueueAreRejected() throws Exception {
+        fixedLatency(200);
+        long before = mockRequests();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 80; i++) {
+            futures.add(client.chat(dashScope(), messages()));
+        }
+
+        // 8个在途 + 64个排队，其余8个立即失败
+        for (int i = 72; i < 80; i++) {
+            assertTrue(futures.get(i).isCompletedExceptionally(), "call " + i);
+            ExecutionException error = assertThrows(ExecutionException.class, futures.get(i)::get);
+            assertInstanceOf(RejectedExecutionException.class, error.getCause());
+        }
+        awaitAll(futures);
+        for (int i = 0; i < 72; i++) {
+            assertFalse(futures.get(i).get().isEmpty());
+        }
+        awaitStat(LlmClient.Provider.DASHSCOPE, "successes", 72);
+        Map<?, ?> stats = stats(LlmClient.Provider.DASHSCOPE);
+        assertEquals(8L, stats.get("rejected"));
+        assertEquals(0L, stats.get("failures"));
+        assertEquals(72L, mockRequests() - before);
+        // 本地拒绝不计入熔断统计
+        Map<?, ?> breaker = (Map<?, ?>) client.getBreakerStats().values().iterator().next();
+        assertEquals("CLOSED", breaker.get("state"));
+        assertEquals(0L, breaker.get("failureRatePercent"));
+    }
+
+    @Test
+    void slowCallIsHedgedAfterP95() throws Exception {
+        fixedLatency(100);
+        // 积累足够的延迟样本后才启用对冲；此后对冲延迟为 max(1秒, P95)
+        List<CompletableFuture<String>> warmup = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            warmup.add(client.chat(openAi(), messages()));
+        }
+        awaitAll(warmup);
+        awaitStat(LlmClient.Provider.OPENAI_COMPATIBLE, "successes", 20);
+        assertEquals(0L, stats(LlmClient.Provider.OPENAI_COMPATIBLE).get("hedged"));
+
+        mockLlmService.updateSettings(new MockLlmService.Settings(100, 100, FAST_TOKENS_PER_SECOND, 0, 100));
+        long before = mockRequests();
+        long start = System.nanoTime();
+        CompletableFuture<String> future = client.chat(openAi(), messages());
+        // 故障在请求到达时抽取：主请求确定挂起后恢复正常，对冲请求正常返回
+        long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (mockRequests() == before && System.nanoTime() < waitUntil) {
+            Thread.sleep(10);
+        }
+        fixedLatency(100);
+
+        assertFalse(future.get(10, TimeUnit.SECONDS).isEmpty());
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        awaitStat(LlmClient.Provider.OPENAI_COMPATIBLE, "hedgeWins", 1);
+        assertEquals(1L, stats(LlmClient.Provider.OPENAI_COMPATIBLE).get("hedged"));
+        assertEquals(21L, stats(LlmClient.Provider.OPENAI_COMPATIBLE).get("successes"));
+        assertEquals(2L, mockRequests() - before);
+        assertTrue(elapsedMillis >= 1000 && elapsedMillis < 5000, "elapsed " + elapsedMillis);
+        // 胜出后取消挂起的主请求，额度全部归还
+        awaitStat(LlmClient.Provider.OPENAI_COMPATIBLE, "inFlight", 0);
+    }
+
+    @Test
+    void firstSentenceEndsAfterTerminatorAndClosers() {
+        assertEquals(4, LlmClient.firstSentenceEnd("在的亲。商品还在", false));
+        assertEquals(3, LlmClient.firstSentenceEnd("在的!还在", false));
+        assertEquals(3, LlmClient.firstSentenceEnd("在吗\n还在", false));
+        // 连续的结束符和收尾引号、括号归入首句
+        assertEquals(5, LlmClient.firstSentenceEnd("好的！！”还有", false));
+        assertEquals(8, LlmClient.firstSentenceEnd("包邮（全国）。）后面", false));
+        // 开头只有结束符或空白时不算一句
+        assertEquals(5, LlmClient.firstSentenceEnd("。 好的。后面", false));
+    }
+
+    @Test
+    void firstSentenceWaitsForMoreText() {
+        assertEquals(-1, LlmClient.firstSentenceEnd("", false));
+        assertEquals(-1, LlmClient.firstSentenceEnd("在的亲", false));
+        // 结束符位于末尾：后面可能还有结束符或收尾引号
+        assertEquals(-1, LlmClient.firstSentenceEnd("在的亲。", false));
+        assertEquals(-1, LlmClient.firstSentenceEnd("在的亲！！", false));
+    }
+
+    @Test
+    void firstSentenceIsNotSentEarly() {
+        // 流已结束：整段就是一句或没有结束符，由调用方整体发送
+        assertEquals(-2, LlmClient.firstSentenceEnd("在的亲。", true));
+        assertEquals(-2, LlmClient.firstSentenceEnd("在的亲", true));
+        // 前40个字符内没有结束符，或首句（含收尾符号）超过40个字符
+        assertEquals(-2, LlmClient.firstSentenceEnd("好".repeat(40), false));
+        assertEquals(-2, LlmClient.firstSentenceEnd("好".repeat(39) + "。”后面", false));
+        assertEquals(40, LlmClient.firstSentenceEnd("好".repeat(39) + "。后面", false));
+    }
+
+    @Test
+    void streamSendsFirstSentenceBeforeReplyCompletes() throws Exception {
+        // 约每50ms一个分片：首句在整段回复生成完之前就能确定
+        mockLlmService.updateSettings(new MockLlmService.Settings(50, 50, 40, 0, 0));
+        for (AccountConfigSnapshot.AiSettings setting : List.of(openAi(), dashScope(), gemini())) {
+            AtomicReference<String> sentence = new AtomicReference<>();
+            AtomicReference<CompletableFuture<String>> call = new AtomicReference<>();
+            AtomicBoolean doneWhenSent = new AtomicBoolean(true);
+            CompletableFuture<String> future = client.chatStream(setting, messages(), text -> {
+                sentence.set(text);
+                CompletableFuture<String> current = call.get();
+                doneWhenSent.set(current != null && current.isDone());
+                return CompletableFuture.completedFuture(true);
+            });
+            call.set(future);
+
+            String reply = future.get(10, TimeUnit.SECONDS);
+            LlmClient.Provider provider = LlmClient.Provider.detect(setting.modelName(), setting.baseUrl());
+            assertNotNull(sentence.get(), provider.name());
+            assertTrue(reply.startsWith(sentence.get()) && reply.length() > sentence.get().length(),
+                    provider + ": " + sentence.get() + " / " + reply);
+            assertTrue("。！".indexOf(sentence.get().charAt(sentence.get().length() - 1)) >= 0, sentence.get());
+            assertFalse(doneWhenSent.get(), provider.name());
+            awaitStat(provider, "earlySends", 1);
+            assertEquals(1L, stats(provider).get("streamRequests"));
+        }
+    }
+
+    @Test
+    void unsentFirstSentenceIsNotCounted() throws Exception {
+        mockLlmService.updateSettings(new MockLlmService.Settings(50, 50, 200, 0, 0));
+        AtomicReference<String> sentence = new AtomicReference<>();
+        String reply = client.chatStream(openAi(), messages(), text -> {
+            sentence.set(text);
+            return CompletableFuture.completedFuture(false); // 会话已过期，没有发出
+        }).get(10, TimeUnit.SECONDS);
+
+        // 返回完整回复，由调用方整体发送
+        assertNotNull(sentence.get());
+        assertTrue(reply.startsWith(sentence.get()) && reply.length() > sentence.get().length(), reply);
+        awaitStat(LlmClient.Provider.OPENAI_COMPATIBLE, "successes", 1);
+        assertEquals(0L, stats(LlmClient.Provider.OPENAI_COMPATIBLE).get("earlySends"));
+    }
+
+    @Test
+    void streamFailingMidwayFailsAfterFirstSentence() throws Exception {
+        // 注入错误时模拟服务先输出一半内容，再以错误事件结束
+        mockLlmService.updateSettings(new MockLlmService.Settings(50, 50, 200, 100, 0));
+        AtomicReference<String> sentence = new AtomicReference<>();
+        CompletableFuture<String> future = client.chatStream(dashScope(), messages(), text -> {
+            sentence.set(text);
+            return CompletableFuture.completedFuture(true);
+        });
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, error.getCause());
+        // 首句已回调：由调用方根据发送结果决定是否降级
+        assertNotNull(sentence.get());
+        awaitStat(LlmClient.Provider.DASHSCOPE, "failures", 1);
+    }
+
+    @Test
+    void streamIsNotHedged() throws Exception {
+        fixedLatency(100);
+        List<CompletableFuture<String>> warmup = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            warmup.add(client.chat(openAi(), messages()));
+        }
+        awaitAll(warmup);
+        awaitStat(LlmClient.Provider.OPENAI_COMPATIBLE, "successes", 20);
+
+        // 远超对冲延迟（1秒）的流式请求：首句可能已发出，重发会导致内容重复
+        fixedLatency(1500);
+        long before = mockRequests();
+        AtomicReference<String> sentence = new AtomicReference<>();
+        String reply = client.chatStream(openAi(), messages(), text -> {
+            sentence.set(text);
+            return CompletableFuture.completedFuture(true);
+        }).get(10, TimeUnit.SECONDS);
+
+        assertTrue(reply.startsWith(sentence.get()), reply);
+        assertEquals(1L, mockRequests() - before);
+        assertEquals(0L, stats(LlmClient.Provider.OPENAI_COMPATIBLE).get("hedged"));
+    }
+
+    @Test
+    void openBreakerFailsFastPerModel() throws Exception {
+        fixedLatency(50);
+        AccountConfigSnapshot.AiSettings main = new AccountConfigSnapshot.AiSettings(true, "mock-model", "test-key",
+                "http://localhost:" + port + "/mock-llm/v1", 10, 100, 3, null, false, "backup-model", null, null);
+        assertFalse(client.chat(main, messages()).get(5, TimeUnit.SECONDS).isEmpty());
+
+        assertTrue(client.setBreaker("localhost/mock-model", true));
+        long before = mockRequests();
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> client.chat(main, messages()).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(LlmClient.CircuitOpenException.class, error.getCause());
+        assertEquals(before, mockRequests());
+
+        // 同一接口上的备用模型有独立的熔断状态，可以接替主模型
+        assertFalse(client.chat(main.fallback(), messages()).get(5, TimeUnit.SECONDS).isEmpty());
+        assertEquals(before + 1, mockRequests());
+        assertEquals("OPEN", ((Map<?, ?>) client.getBreakerStats().get("localhost/mock-model")).get("state"));
+        assertEquals("CLOSED", ((Map<?, ?>) client.getBreakerStats().get("localhost/backup-model")).get("state"));
+
+        assertTrue(client.setBreaker("localhost/mock-model", false));
+        assertFalse(client.chat(main, messages()).get(5, TimeUnit.SECONDS).isEmpty());
+        assertFalse(client.setBreaker("localhost/unknown", true));
+    }
+}
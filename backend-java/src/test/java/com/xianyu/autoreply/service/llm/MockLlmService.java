@@ -0,0 +1,236 @@
+package com.xianyu.autoreply.service.llm;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地模拟LLM服务（只在测试类路径中，且 app.mock-llm.enabled=true 时加载），供 AiReplyLoadTest 离线压测AI回复链路
+ * 按 {@link LlmClient} 支持的三种协议返回响应（OpenAI兼容、DashScope应用、Gemini），均支持SSE流式：
+ * - 首token延迟服从对数正态分布，由中位数和P99确定
+ * - 之后按每秒token数逐段输出（非流式请求等全部生成完再返回）
+ * - 按比例注入HTTP 500错误和不响应（挂起直到客户端超时）
+ * 所有等待都由定时线程调度，不占用Web线程。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.mock-llm.enabled", havingValue = "true")
+public class MockLlmService {
+
+    private static final double Z_99 = 2.326; // 标准正态分布的99分位
+    private static final int CHARS_PER_CHUNK = 2; // 每个流式分片的字符数（约一个token）
+    private static final long HANG_MILLIS = 120_000; // 模拟不响应的时长，超过客户端超时
+    private static final String[] REPLIES = { // 都以短句开头，流式请求可测到首句提前发送
+            "在的亲。商品还在，支持包邮，今天下单明天就发货哦～",
+            "您好！这个是全新未拆封的，功能都正常，放心购买。",
+            "亲，价格已经很实在了。诚心要的话可以少十块。",
+            "可以的！拍下后我改价，有问题随时找我。"
+    };
+
+    /**
+     * 模拟参数
+     *
+     * @param medianMillis    首token延迟中位数
+     * @param p99Millis       首token延迟P99
+     * @param tokensPerSecond 生成速度
+     * @param errorPercent    返回HTTP 500的比例
+     * @param hangPercent     不响应的比例
+     */
+    public record Settings(long medianMillis, long p99Millis, int tokensPerSecond, double errorPercent,
+                           double hangPercent) {
+    }
+
+    private final ScheduledThreadPoolExecutor scheduler;
+    private volatile Settings settings;
+
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong streamRequests = new AtomicLong(0);
+    private final AtomicLong injectedErrors = new AtomicLong(0);
+    private final AtomicLong injectedHangs = new AtomicLong(0);
+
+    public MockLlmService(@Value("${app.mock-llm.median-millis:800}") long medianMillis,
+                          @Value("${app.mock-llm.p99-millis:4000}") long p99Millis,
+                          @Value("${app.mock-llm.tokens-per-second:40}") int tokensPerSecond,
+                          @Value("${app.mock-llm.error-percent:0}") double errorPercent,
+                          @Value("${app.mock-llm.hang-percent:0}") double hangPercent) {
+        this.settings = new Settings(medianMillis, p99Millis, tokensPerSecond, errorPercent, hangPercent);
+        this.scheduler = new ScheduledThreadPoolExecutor(2, r -> {
+            Thread thread = new Thread(r, "mock-llm");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        log.warn("模拟LLM服务已启用: {}", settings);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    public void updateSettings(Settings settings) {
+        this.settings = settings;
+        log.info("模拟LLM参数已更新: {}", settings);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("requests", requests.get());
+        stats.put("streamRequests", streamRequests.get());
+        stats.put("injectedErrors", injectedErrors.get());
+        stats.put("injectedHangs", injectedHangs.get());
+        return stats;
+    }
+
+    /**
+     * 非流式请求：等待首token延迟 + 全部生成时间后返回完整响应
+     */
+    public DeferredResult<ResponseEntity<String>> complete(LlmClient.Provider provider) {
+        requests.incrementAndGet();
+        DeferredResult<ResponseEntity<String>> result = new DeferredResult<>(HANG_MILLIS + 10_000);
+        Settings current = settings;
+        Fault fault = sampleFault(current);
+        if (fault == Fault.HANG) {
+            return result;
+        }
+        String reply = REPLIES[ThreadLocalRandom.current().nextInt(REPLIES.length)];
+        long delay = sampleLatency(current) + generationMillis(reply.length(), current);
+        scheduler.schedule(() -> result.setResult(fault == Fault.ERROR
+                ? errorResponse()
+                : ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                        .body(fullResponse(provider, reply).toString())), delay, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    /**
+     * 流式请求：等待首token延迟后按生成速度逐段推送；注入错误时以错误事件结束
+     */
+    public SseEmitter stream(LlmClient.Provider provider) {
+        requests.incrementAndGet();
+        streamRequests.incrementAndGet();
+        SseEmitter emitter = new SseEmitter(HANG_MILLIS + 10_000);
+        Settings current = settings;
+        Fault fault = sampleFault(current);
+        if (fault == Fault.HANG) {
+            return emitter;
+        }
+        String reply = REPLIES[ThreadLocalRandom.current().nextInt(REPLIES.length)];
+        long chunkMillis = Math.max(1, 1000L * CHARS_PER_CHUNK / Math.max(1, current.tokensPerSecond()));
+        scheduler.schedule(() -> sendChunk(emitter, provider, reply, 0, chunkMillis, fault == Fault.ERROR),
+                sampleLatency(current), TimeUnit.MILLISECONDS);
+        return emitter;
+    }
+
+    // ============== 内部实现 ==============
+
+    private enum Fault {
+        NONE, ERROR, HANG
+    }
+
+    private Fault sampleFault(Settings current) {
+        double roll = ThreadLocalRandom.current().nextDouble(100);
+        if (roll < current.hangPercent()) {
+            injectedHangs.incrementAndGet();
+            return Fault.HANG;
+        }
+        if (roll < current.hangPercent() + current.errorPercent()) {
+            injectedErrors.incrementAndGet();
+            return Fault.ERROR;
+        }
+        return Fault.NONE;
+    }
+
+    /**
+     * 对数正态分布：中位数为 medianMillis，99分位为 p99Millis
+     */
+    private static long sampleLatency(Settings current) {
+        double mu = Math.log(Math.max(1, current.medianMillis()));
+        double sigma = Math.max(0, Math.log((double) Math.max(current.p99Millis(), current.medianMillis())
+                / Math.max(1, current.medianMillis())) / Z_99);
+        return (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+    }
+
+    private static long generationMillis(int chars, Settings current) {
+        return 1000L * chars / CHARS_PER_CHUNK / Math.max(1, current.tokensPerSecond());
+    }
+
+    private void sendChunk(SseEmitter emitter, LlmClient.Provider provider, String reply, int offset,
+                           long chunkMillis, boolean failMidway) {
+        try {
+            if (failMidway && offset >= reply.length() / 2) {
+                emitter.send(SseEmitter.event().data(new JSONObject().fluentPut("error",
+                        new JSONObject().fluentPut("message", "mock injected error")).toString()));
+                emitter.complete();
+                return;
+            }
+            if (offset >= reply.length()) {
+                if (provider == LlmClient.Provider.OPENAI_COMPATIBLE) {
+                    emitter.send(SseEmitter.event().data("[DONE]"));
+                }
+                emitter.complete();
+                return;
+            }
+            int end = Math.min(reply.length(), offset + CHARS_PER_CHUNK);
+            emitter.send(SseEmitter.event().data(deltaChunk(provider, reply.substring(offset, end)).toString()));
+            scheduler.schedule(() -> sendChunk(emitter, provider, reply, end, chunkMillis, failMidway),
+                    chunkMillis, TimeUnit.MILLISECONDS);
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e); // 客户端已断开
+        }
+    }
+
+    private static ResponseEntity<String> errorResponse() {
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).contentType(MediaType.APPLICATION_JSON)
+                .body(new JSONObject().fluentPut("error",
+                        new JSONObject().fluentPut("message", "mock injected error")).toString());
+    }
+
+    private static JSONObject fullResponse(LlmClient.Provider provider, String text) {
+        return switch (provider) {
+            case GEMINI -> geminiChunk(text);
+            case DASHSCOPE -> new JSONObject().fluentPut("output", new JSONObject().fluentPut("text", text));
+            case OPENAI_COMPATIBLE -> new JSONObject().fluentPut("choices", new JSONArray().fluentAdd(
+                    new JSONObject().fluentPut("index", 0).fluentPut("finish_reason", "stop")
+                            .fluentPut("message", new JSONObject().fluentPut("role", "assistant")
+                                    .fluentPut("content", text))));
+        };
+    }
+
+    private static JSONObject deltaChunk(LlmClient.Provider provider, String delta) {
+        return switch (provider) {
+            case GEMINI -> geminiChunk(delta);
+            case DASHSCOPE -> new JSONObject().fluentPut("output", new JSONObject().fluentPut("text", delta));
+            case OPENAI_COMPATIBLE -> new JSONObject().fluentPut("choices", new JSONArray().fluentAdd(
+                    new JSONObject().fluentPut("index", 0)
+                            .fluentPut("delta", new JSONObject().fluentPut("content", delta))));
+        };
+    }
+
+    private static JSONObject geminiChunk(String text) {
+        JSONObject content = new JSONObject().fluentPut("role", "model")
+                .fluentPut("parts", new JSONArray().fluentAdd(new JSONObject().fluentPut("text", text)));
+        return new JSONObject().fluentPut("candidates",
+                new JSONArray().fluentAdd(new JSONObject().fluentPut("content", content)));
+    }
+}
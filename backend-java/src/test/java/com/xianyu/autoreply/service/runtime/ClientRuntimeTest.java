@@ -0,0 +1,102 @@
+package com.xianyu.autoreply.service.runtime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientRuntimeTest {
+
+    private final ClientRuntime runtime = new ClientRuntime();
+
+    @AfterEach
+    void tearDown() {
+        runtime.shutdown();
+    }
+
+    private Object stat(String name) {
+        return runtime.getStats().get(name);
+    }
+
+    @Test
+    void workerLimitFollowsRegisteredAccounts() {
+        assertEquals(16, stat("maxWorkerThreads"));
+
+        for (int i = 0; i < 3; i++) {
+            runtime.executorFor("acc" + i);
+        }
+        assertEquals(24, stat("maxWorkerThreads"));
+        // 重复获取同一账号的Executor不重复计数
+        runtime.executorFor("acc0");
+        assertEquals(24, stat("maxWorkerThreads"));
+
+        runtime.release("acc0");
+        assertEquals(16, stat("maxWorkerThreads"));
+        runtime.release("acc0");
+        assertEquals(2, stat("accounts"));
+
+        for (int i = 0; i < 100; i++) {
+            runtime.executorFor("many" + i);
+        }
+        assertEquals(512, stat("maxWorkerThreads"));
+    }
+
+    @Test
+    void fullPoolQueuesThenRejects() throws Exception {
+        Executor executor = runtime.executorFor("acc");
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(16);
+        AtomicInteger completed = new AtomicInteger();
+        try {
+            // 线程用满后排队，队列也满时拒绝
+            for (int i = 0; i < 16 + 1000; i++) {
+                executor.execute(() -> {
+                    started.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    completed.incrementAndGet();
+                });
+            }
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(16, stat("workerThreads"));
+            assertEquals(1000, stat("queuedWorkerTasks"));
+
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(completed::incrementAndGet));
+            assertEquals(1L, stat("rejectedTasks"));
+            // 被拒绝的任务不计入账号的在途任务数
+            assertEquals(1016, ((Map<?, ?>) stat("activeTasksByAccount")).get("acc"));
+        } finally {
+            release.countDown();
+        }
+
+        long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (completed.get() < 1016 && System.nanoTime() < waitUntil) {
+            Thread.sleep(10);
+        }
+        assertEquals(1016, completed.get());
+    }
+
+    @Test
+    void shutDownRuntimeRejectsTasks() {
+        runtime.shutdown();
+
+        RejectedExecutionException error = assertThrows(RejectedExecutionException.class,
+                () -> runtime.execute("acc", () -> {
+                }));
+        assertEquals("客户端运行时已关闭", error.getMessage());
+        assertEquals(1L, stat("rejectedTasks"));
+        assertEquals(Map.of("acc", 0), stat("activeTasksByAccount"));
+    }
+}
@@ -0,0 +1,126 @@
+package com.xianyu.autoreply.service.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameClassifierTest {
+
+    private static final String SYNC_HEADERS = "{\"app-key\":\"444e9908a51d1cb236a27862abc769c9\","
+            + "\"mid\":\"5701733222223 0\",\"sid\":\"2ca7f4a9ba4d4a3\",\"ua\":\"Mozilla/5.0 DingTalk(2.1.5)\","
+            + "\"dt\":\"j\",\"reg-uid\":{\"nested\":[1,2,{\"x\":null}]}}";
+
+    private static FrameClassifier.FrameType type(String payload) {
+        return FrameClassifier.classify(payload).type();
+    }
+
+    @Test
+    void heartbeatAndSendReceiptsAreResponses() {
+        FrameClassifier.FrameHeader frame = FrameClassifier.classify(
+                "{\"headers\":{\"mid\":\"6311733222223 0\"},\"code\":200,\"body\":{\"timestamp\":1733222223000}}");
+        assertEquals(FrameClassifier.FrameType.RESPONSE, frame.type());
+        assertEquals(200, frame.code());
+        assertEquals("6311733222223 0", frame.mid());
+        assertTrue(frame.hasHeaders());
+
+        // code 以字符串给出
+        assertEquals(FrameClassifier.FrameType.RESPONSE, type("{\"code\":\" 200 \",\"lwp\":\"/r/SyncStatus/ackDiff\"}"));
+    }
+
+    @Test
+    void nonOkCodeIsErrorResponse() {
+        FrameClassifier.FrameHeader frame = FrameClassifier.classify(
+                "{\"lwp\":\"/r/MessageSend/sendByReceiverScope\",\"code\":401,\"body\":{\"reason\":\"token invalid\"}}");
+        assertEquals(FrameClassifier.FrameType.ERROR_RESPONSE, frame.type());
+        assertEquals(401, frame.code());
+        assertEquals("/r/MessageSend/sendByReceiverScope", frame.lwp());
+        assertFalse(frame.hasHeaders());
+    }
+
+    @Test
+    void syncPushPackageNeedsFullParse() {
+        String payload = "{\"lwp\":\"/s/para\",\"headers\":" + SYNC_HEADERS + ",\"body\":{\"syncPushPackage\":"
+                + "{\"data\":[{\"bizType\":40,\"data\":\"ggGLAYEBtTIyMjI=\",\"objectType\":40000}]}}}";
+        FrameClassifier.FrameHeader frame = FrameClassifier.classify(payload);
+
+        assertEquals(FrameClassifier.FrameType.SYNC_PACKAGE, frame.type());
+        assertEquals("/s/para", frame.lwp());
+        assertNull(frame.code());
+        // ACK所需的帧头字段
+        assertEquals("5701733222223 0", frame.mid());
+        assertEquals("2ca7f4a9ba4d4a3", frame.sid());
+        assertEquals("444e9908a51d1cb236a27862abc769c9", frame.appKey());
+        assertEquals("Mozilla/5.0 DingTalk(2.1.5)", frame.ua());
+        assertEquals("j", frame.dt());
+    }
+
+    @Test
+    void fieldOrderDoesNotMatter() {
+        String payload = "{\"body\":{\"other\":[1,{\"a\":\"b\"}],\"syncPushPackage\":{\"data\":[]}},"
+                + "\"extra\":{\"x\":[true,false,null]},\"headers\":" + SYNC_HEADERS + ",\"lwp\":\"/s/para\"}";
+        FrameClassifier.FrameHeader frame = FrameClassifier.classify(payload);
+        assertEquals(FrameClassifier.FrameType.SYNC_PACKAGE, frame.type());
+        assertEquals("/s/para", frame.lwp());
+        assertEquals("2ca7f4a9ba4d4a3", frame.sid());
+    }
+
+    @Test
+    void syncPackageWinsOverErrorCodeButNotOverOk() {
+        assertEquals(FrameClassifier.FrameType.SYNC_PACKAGE,
+                type("{\"code\":500,\"body\":{\"syncPushPackage\":{\"data\":[]}}}"));
+        assertEquals(FrameClassifier.FrameType.RESPONSE,
+                type("{\"code\":200,\"body\":{\"syncPushPackage\":{\"data\":[]}}}"));
+    }
+
+    @Test
+    void otherPushesOnlyNeedAck() {
+        FrameClassifier.FrameHeader frame = FrameClassifier.classify(
+                "{\"lwp\":\"/s/vulcan\",\"headers\":{\"mid\":\"m1\",\"sid\":\"s1\"},\"body\":{\"topic\":\"typing\"}}");
+        assertEquals(FrameClassifier.FrameType.PUSH, frame.type());
+        assertEquals("m1", frame.mid());
+        assertEquals("s1", frame.sid());
+
+        // syncPushPackage 为 null 时不是同步包
+        assertEquals(FrameClassifier.FrameType.PUSH, type("{\"body\":{\"syncPushPackage\":null}}"));
+        // 没有 body、body 或 headers 不是对象
+        assertEquals(FrameClassifier.FrameType.PUSH, type("{\"lwp\":\"/s/sync\"}"));
+        assertEquals(FrameClassifier.FrameType.PUSH, type("{\"body\":[{\"syncPushPackage\":{}}]}"));
+        FrameClassifier.FrameHeader noHeaders = FrameClassifier.classify("{\"headers\":\"m1\",\"body\":\"x\"}");
+        assertEquals(FrameClassifier.FrameType.PUSH, noHeaders.type());
+        assertFalse(noHeaders.hasHeaders());
+        assertNull(noHeaders.mid());
+        // 无法解析或为 null 的 code 视为缺失
+        assertEquals(FrameClassifier.FrameType.PUSH, type("{\"code\":\"ok\"}"));
+        assertEquals(FrameClassifier.FrameType.PUSH, type("{\"code\":null,\"headers\":{\"mid\":\"m2\"}}"));
+        assertEquals(FrameClassifier.FrameType.PUSH, type("{}"));
+    }
+
+    @Test
+    void malformedFramesAreUnknown() {
+        List<String> payloads = List.of(
+                "",
+                "   ",
+                "not json",
+                "null",
+                "42",
+                "\"text\"",
+                "[{\"code\":200}]",
+                "{\"code\":200",
+                "{\"lwp\":\"/s/para\",\"headers\":{\"mid\":\"m1\"",
+                "{\"body\":{\"syncPushPackage\":{\"data\":[",
+                "{\"code\":}",
+                "{\"headers\":{\"mid\"}}",
+                "{code:200,,}");
+        for (String payload : payloads) {
+            FrameClassifier.FrameHeader frame = FrameClassifier.classify(payload);
+            assertEquals(FrameClassifier.FrameType.UNKNOWN, frame.type(), payload);
+            assertNull(frame.mid(), payload);
+            assertFalse(frame.hasHeaders(), payload);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.xianyu.autoreply.service.runtime;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 时间轮挂起任务开销基准（默认不运行）：mvn test -Dtest=HashedWheelTimerBenchmarkTest -Dbenchmark=true
+ * 挂起大量长延迟任务（模拟订单锁延迟释放），统计堆内存增量和存活线程数，再全部取消。
+ * tick时长和槽数与 {@link ClientRuntime} 一致。
+ * 可调参数（系统属性）：benchmark.timers。
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class HashedWheelTimerBenchmarkTest {
+
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 512;
+    private static final long DELAY_MINUTES = 10;
+
+    @Test
+    void pendingTimeoutsCostMemoryNotThreads() throws Exception {
+        int count = Integer.getInteger("benchmark.timers", 100_000);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        // 句柄列表提前分配，不计入任务开销
+        List<HashedWheelTimer.Timeout> timeouts = new ArrayList<>(count);
+        AtomicLong fired = new AtomicLong();
+
+        int threadsBefore = threads.getThreadCount();
+        HashedWheelTimer timer = new HashedWheelTimer("bench-wheel", TICK_MILLIS, TimeUnit.MILLISECONDS, WHEEL_SIZE,
+                Runnable::run);
+        try {
+            int threadsWithTimer = threads.getThreadCount();
+            long heapBefore = usedHeap();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                int id = i;
+                timeouts.add(timer.newTimeout(() -> fired.addAndGet(id), DELAY_MINUTES, TimeUnit.MINUTES));
+            }
+            long scheduleNanos = System.nanoTime() - start;
+            // 等待时间轮线程把任务从待添加队列挂到槽上
+            Thread.sleep(TICK_MILLIS * 3);
+
+            long heapDelta = usedHeap() - heapBefore;
+            int threadsPending = threads.getThreadCount();
+
+            start = System.nanoTime();
+            for (HashedWheelTimer.Timeout timeout : timeouts) {
+                timeout.cancel();
+            }
+            long cancelNanos = System.nanoTime() - start;
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (timer.pendingTimeouts() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(TICK_MILLIS);
+            }
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("timers", count);
+            report.put("heapDeltaKb", heapDelta / 1024);
+            report.put("bytesPerTimeout", heapDelta / count);
+            report.put("threadsBefore", threadsBefore);
+            report.put("threadsWithTimer", threadsWithTimer);
+            report.put("threadsWithPendingTimeouts", threadsPending);
+            report.put("scheduleNanosPerOp", scheduleNanos / count);
+            report.put("cancelNanosPerOp", cancelNanos / count);
+            report.put("timer", timer.getStats());
+            log.info("时间轮基准: {}", report);
+
+            // 挂起的任务不占线程：只有时间轮自己的tick线程
+            assertEquals(threadsWithTimer, threadsPending);
+            assertTrue(heapDelta / count < 256, "bytes per timeout: " + heapDelta / count);
+            assertEquals(0L, timer.pendingTimeouts());
+            assertEquals(0L, fired.get());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,116 @@
+package com.xianyu.autoreply.service.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashedWheelTimerTest {
+
+    private static HashedWheelTimer newTimer(int wheelSize) {
+        return new HashedWheelTimer("test-wheel", 10, TimeUnit.MILLISECONDS, wheelSize, Runnable::run);
+    }
+
+    @Test
+    void firesNoEarlierThanDelay() throws Exception {
+        HashedWheelTimer timer = newTimer(64);
+        try {
+            CountDownLatch fired = new CountDownLatch(1);
+            AtomicLong elapsed = new AtomicLong();
+            long start = System.nanoTime();
+            HashedWheelTimer.Timeout timeout = timer.newTimeout(() -> {
+                elapsed.set(System.nanoTime() - start);
+                fired.countDown();
+            }, 100, TimeUnit.MILLISECONDS);
+
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+            assertTrue(elapsed.get() >= TimeUnit.MILLISECONDS.toNanos(100), "fired after " + elapsed.get() + "ns");
+            assertTrue(timeout.isExpired());
+            assertFalse(timeout.cancel());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    void delaysLongerThanOneRotationWaitForTheirRound() throws Exception {
+        // 8个槽 x 10ms = 80ms 一圈，250ms 需要转三圈
+        HashedWheelTimer timer = newTimer(8);
+        try {
+            CountDownLatch fired = new CountDownLatch(2);
+            AtomicLong longElapsed = new AtomicLong();
+            long start = System.nanoTime();
+            timer.newTimeout(fired::countDown, 30, TimeUnit.MILLISECONDS);
+            timer.newTimeout(() -> {
+                longElapsed.set(System.nanoTime() - start);
+                fired.countDown();
+            }, 250, TimeUnit.MILLISECONDS);
+
+            assertTrue(fired.await(3, TimeUnit.SECONDS));
+            assertTrue(longElapsed.get() >= TimeUnit.MILLISECONDS.toNanos(250),
+                    "fired after " + longElapsed.get() + "ns");
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    void cancelledTimeoutsNeverRun() throws Exception {
+        HashedWheelTimer timer = newTimer(64);
+        try {
+            int total = 10_000;
+            AtomicInteger ran = new AtomicInteger();
+            CountDownLatch kept = new CountDownLatch(total / 2);
+            List<HashedWheelTimer.Timeout> timeouts = new ArrayList<>();
+            for (int i = 0; i < total; i++) {
+                boolean cancel = i % 2 == 0;
+                timeouts.add(timer.newTimeout(() -> {
+                    ran.incrementAndGet();
+                    if (!cancel) {
+                        kept.countDown();
+                    }
+                }, 50 + i % 100, TimeUnit.MILLISECONDS));
+            }
+            for (int i = 0; i < total; i += 2) {
+                assertTrue(timeouts.get(i).cancel());
+                assertTrue(timeouts.get(i).isCancelled());
+            }
+
+            assertTrue(kept.await(5, TimeUnit.SECONDS));
+            // 再等几个tick，确认被取消的任务确实没有执行
+            Thread.sleep(200);
+            assertEquals(total / 2, ran.get());
+            assertEquals(0L, timer.pendingTimeouts());
+            assertEquals((long) total / 2, timer.getStats().get("expiredTimeouts"));
+            assertEquals((long) total / 2, timer.getStats().get("cancelledTimeouts"));
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    void rejectsTimeoutsAfterStop() {
+        HashedWheelTimer timer = newTimer(8);
+        timer.stop();
+        assertThrows(IllegalStateException.class, () -> timer.newTimeout(() -> { }, 1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void roundsWheelSizeUpToPowerOfTwo() {
+        HashedWheelTimer timer = newTimer(100);
+        try {
+            assertEquals(128, timer.getStats().get("wheelSize"));
+        } finally {
+            timer.stop();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.xianyu.autoreply.service.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngressGateTest {
+
+    /**
+     * 手动驱动的线程池：邮箱调度只入队，由测试决定何时执行
+     */
+    private final ArrayDeque<Runnable> scheduled = new ArrayDeque<>();
+    private final KeyedMailboxExecutor mailboxes = new KeyedMailboxExecutor("test", scheduled::add);
+    private final List<String> order = new ArrayList<>();
+
+    private void drain() {
+        while (!scheduled.isEmpty()) {
+            scheduled.poll().run();
+        }
+    }
+
+    private Runnable record(String label) {
+        return () -> order.add(label);
+    }
+
+    @Test
+    void highOvertakesPendingNormalInSameChat() {
+        IngressGate gate = new IngressGate("test", mailboxes, 100, 100, 100);
+        gate.submit("chat", IngressGate.Lane.NORMAL, record("n1"));
+        gate.submit("chat", IngressGate.Lane.NORMAL, record("n2"));
+        gate.submit("chat", IngressGate.Lane.NORMAL, record("n3"));
+        gate.submit("chat", IngressGate.Lane.HIGH, record("h1"));
+        gate.submit("chat", IngressGate.Lane.HIGH, record("h2"));
+
+        drain();
+
+        // HIGH 之间、NORMAL 之间各自保持到达顺序
+        assertEquals(List.of("h1", "h2", "n1", "n2", "n3"), order);
+        assertEquals(0L, gate.getStats().get("pendingHigh"));
+        assertEquals(0L, gate.getStats().get("pendingNormal"));
+        assertEquals(2L, mailboxes.getStats().get("urgentTasks"));
+    }
+
+    @Test
+    void highArrivingDuringNormalRunsNext() {
+        IngressGate gate = new IngressGate("test", mailboxes, 100, 100, 100);
+        gate.submit("chat", IngressGate.Lane.NORMAL, () -> {
+            order.add("n1");
+            // 正在处理的消息不被打断，但新到的HIGH排在剩余的NORMAL之前
+            gate.submit("chat", IngressGate.Lane.HIGH, record("h1"));
+        });
+        gate.submit("chat", IngressGate.Lane.NORMAL, record("n2"));
+
+        drain();
+
+        assertEquals(List.of("n1", "h1", "n2"), order);
+    }
+
+    @Test
+    void highIsNotCoalescedOrShedWithNormal() {
+        // 普通通道容量1、合并阈值0：第二条NORMAL合并掉第一条，第三条（另一会话）被丢弃；HIGH不受影响
+        IngressGate gate = new IngressGate("test", mailboxes, 100, 1, 0);
+        assertTrue(gate.submit("chat", IngressGate.Lane.NORMAL, record("n1")));
+        assertTrue(gate.submit("chat", IngressGate.Lane.NORMAL, record("n2")));
+        assertFalse(gate.submit("other", IngressGate.Lane.NORMAL, record("x")));
+        assertTrue(gate.submit("chat", IngressGate.Lane.HIGH, record("h1")));
+
+        drain();
+
+        assertEquals(List.of("h1", "n2"), order);
+        assertEquals(1L, gate.getStats().get("coalescedNormal"));
+        assertEquals(1L, gate.getStats().get("shedNormal"));
+    }
+
+    @Test
+    void highBeyondHardLimitIsDropped() {
+        IngressGate gate = new IngressGate("test", mailboxes, 1, 100, 100);
+        assertTrue(gate.submit("chat", IngressGate.Lane.HIGH, record("h1")));
+        assertFalse(gate.submit("chat", IngressGate.Lane.HIGH, record("h2")));
+
+        drain();
+
+        assertEquals(List.of("h1"), order);
+        assertEquals(1L, gate.getStats().get("droppedHigh"));
+    }
+}
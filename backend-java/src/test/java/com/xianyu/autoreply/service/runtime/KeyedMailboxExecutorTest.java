@@ -0,0 +1,218 @@
+package com.xianyu.autoreply.service.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyedMailboxExecutorTest {
+
+    /**
+     * 手动驱动的线程池：邮箱调度只入队，由测试决定何时执行
+     */
+    private final ArrayDeque<Runnable> scheduled = new ArrayDeque<>();
+    private final KeyedMailboxExecutor mailboxes = new KeyedMailboxExecutor("test", scheduled::add);
+    private final List<String> order = new ArrayList<>();
+
+    private void drain() {
+        while (!scheduled.isEmpty()) {
+            scheduled.poll().run();
+        }
+    }
+
+    private Runnable record(String label) {
+        return () -> order.add(label);
+    }
+
+    private long stat(String name) {
+        return (Long) mailboxes.getStats().get(name);
+    }
+
+    @Test
+    void tasksOfOneKeyRunInSubmissionOrder() {
+        mailboxes.submit("a", record("a1"));
+        mailboxes.submit("b", record("b1"));
+        mailboxes.submit("a", record("a2"));
+        mailboxes.submit("b", record("b2"));
+        mailboxes.submit("a", record("a3"));
+
+        // 每个key只调度一次，邮箱内按顺序连续执行
+        assertEquals(2, scheduled.size());
+        assertEquals(5, mailboxes.queuedTasks());
+        drain();
+
+        assertEquals(List.of("a1", "a2", "a3", "b1", "b2"), order);
+        assertEquals(0, mailboxes.queuedTasks());
+        assertEquals(5L, stat("processedTasks"));
+        assertEquals(3L, stat("maxMailboxDepth"));
+    }
+
+    @Test
+    void taskSubmittedFromTaskRunsAfterIt() {
+        mailboxes.submit("a", () -> {
+            mailboxes.submit("a", record("inner"));
+            order.add("outer");
+        });
+        mailboxes.submit("a", record("next"));
+
+        drain();
+
+        // 不重入：新任务排在已排队任务之后
+        assertEquals(List.of("outer", "next", "inner"), order);
+    }
+
+    @Test
+    void idleMailboxIsRemovedAndRecreated() {
+        mailboxes.submit("a", record("a1"));
+        assertEquals(1L, stat("activeMailboxes"));
+        drain();
+        assertEquals(0L, stat("activeMailboxes"));
+
+        mailboxes.submit("a", record("a2"));
+        assertEquals(1L, stat("activeMailboxes"));
+        drain();
+
+        assertEquals(List.of("a1", "a2"), order);
+        assertEquals(0L, stat("activeMailboxes"));
+        assertEquals(2L, stat("createdMailboxes"));
+    }
+
+    @Test
+    void busyMailboxYieldsAfterBatch() {
+        for (int i = 0; i < 40; i++) {
+            mailboxes.submit("busy", record("busy" + i));
+        }
+        mailboxes.submit("idle", record("idle"));
+
+        drain();
+
+        // 每轮最多32个任务，随后重新排队，其他会话得以插入
+        assertEquals(41, order.size());
+        assertEquals("busy31", order.get(31));
+        assertEquals("idle", order.get(32));
+        assertEquals("busy32", order.get(33));
+        assertEquals("busy39", order.get(40));
+    }
+
+    @Test
+    void failingTaskDoesNotBlockMailbox() {
+        mailboxes.submit("a", () -> {
+            throw new IllegalStateException("boom");
+        });
+        mailboxes.submit("a", record("after"));
+
+        drain();
+
+        assertEquals(List.of("after"), order);
+        assertEquals(2L, stat("processedTasks"));
+        assertEquals(0L, stat("activeMailboxes"));
+    }
+
+    @Test
+    void rejectedDispatchDropsMailbox() {
+        AtomicBoolean reject = new AtomicBoolean(true);
+        KeyedMailboxExecutor rejecting = new KeyedMailboxExecutor("test", task -> {
+            if (reject.get()) {
+                throw new RejectedExecutionException("pool shut down");
+            }
+            scheduled.add(task);
+        });
+        rejecting.submit("a", record("dropped"));
+        assertEquals(0, rejecting.queuedTasks());
+        assertEquals(0L, rejecting.getStats().get("activeMailboxes"));
+
+        reject.set(false);
+        rejecting.submit("a", record("kept"));
+        drain();
+        assertEquals(List.of("kept"), order);
+    }
+
+    @Test
+    void clearDropsQueuedTasks() {
+        mailboxes.submit("a", record("a1"));
+        mailboxes.submit("b", record("b1"));
+        mailboxes.clear();
+        assertEquals(0, mailboxes.queuedTasks());
+        assertEquals(0L, stat("activeMailboxes"));
+
+        mailboxes.submit("a", record("a2"));
+        drain();
+
+        // 已关闭邮箱的调度不再执行任何任务
+        assertEquals(List.of("a2"), order);
+        assertEquals(0, mailboxes.queuedTasks());
+    }
+
+    @Test
+    void concurrentSubmittersKeepPerKeyOrder() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            KeyedMailboxExecutor executor = new KeyedMailboxExecutor("test", pool);
+            int keys = 32;
+            int tasksPerKey = 500;
+            Map<String, List<Integer>> seen = new ConcurrentHashMap<>();
+            Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+            AtomicInteger overlaps = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(keys * tasksPerKey);
+
+            // 每个key由一个线程提交；邮箱执行得快，提交过程中会被反复回收和重建
+            List<Thread> submitters = new ArrayList<>();
+            for (int k = 0; k < keys; k++) {
+                String key = "chat" + k;
+                seen.put(key, Collections.synchronizedList(new ArrayList<>()));
+                running.put(key, new AtomicInteger());
+                Thread submitter = new Thread(() -> {
+                    for (int i = 0; i < tasksPerKey; i++) {
+                        int seq = i;
+                        executor.submit(key, () -> {
+                            if (running.get(key).incrementAndGet() > 1) {
+                                overlaps.incrementAndGet();
+                            }
+                            seen.get(key).add(seq);
+                            running.get(key).decrementAndGet();
+                            done.countDown();
+                        });
+                    }
+                });
+                submitters.add(submitter);
+                submitter.start();
+            }
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+
+            assertEquals(0, overlaps.get());
+            for (List<Integer> sequence : seen.values()) {
+                assertEquals(tasksPerKey, sequence.size());
+                for (int i = 0; i < tasksPerKey; i++) {
+                    assertEquals(i, sequence.get(i));
+                }
+            }
+            assertEquals(0, executor.queuedTasks());
+            // 邮箱在最后一个任务执行之后才回收
+            long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while ((Long) executor.getStats().get("activeMailboxes") != 0 && System.nanoTime() < waitUntil) {
+                Thread.sleep(10);
+            }
+            assertEquals(0L, executor.getStats().get("activeMailboxes"));
+            assertTrue((Long) executor.getStats().get("createdMailboxes") >= keys);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.xianyu.autoreply.service.runtime;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageIdDeduplicatorTest {
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    void currentBucketIsNeverEvicted() {
+        AtomicLong clock = new AtomicLong(HOUR_MILLIS);
+        MessageIdDeduplicator dedup = new MessageIdDeduplicator(1, TimeUnit.HOURS, 60, 8, clock::get);
+        // 同一个桶内远超上限
+        for (int i = 0; i < 100; i++) {
+            assertEquals(MessageIdDeduplicator.ACCEPTED, dedup.markIfAbsent("id" + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertNotEquals(MessageIdDeduplicator.ACCEPTED, dedup.markIfAbsent("id" + i));
+        }
+    }
+
+    @Test
+    void oldBucketsAreEvictedFirst() {
+        AtomicLong clock = new AtomicLong(HOUR_MILLIS);
+        MessageIdDeduplicator dedup = new MessageIdDeduplicator(60, TimeUnit.SECONDS, 60, 10, clock::get);
+        for (int i = 0; i < 10; i++) {
+            dedup.markIfAbsent("old" + i);
+        }
+        clock.addAndGet(1000);
+        dedup.markIfAbsent("new");
+        assertEquals(1, dedup.size());
+        assertEquals(MessageIdDeduplicator.ACCEPTED, dedup.markIfAbsent("old0"));
+        assertNotEquals(MessageIdDeduplicator.ACCEPTED, dedup.markIfAbsent("new"));
+    }
+
+    @Test
+    void idExpiresAfterWindow() {
+        AtomicLong clock = new AtomicLong(HOUR_MILLIS);
+        MessageIdDeduplicator dedup = new MessageIdDeduplicator(60, TimeUnit.SECONDS, 6, 100, clock::get);
+        dedup.markIfAbsent("a");
+        clock.addAndGet(59_000);
+        assertNotEquals(MessageIdDeduplicator.ACCEPTED, dedup.markIfAbsent("a"));
+        clock.addAndGet(11_000);
+        assertEquals(MessageIdDeduplicator.ACCEPTED, dedup.markIfAbsent("a"));
+    }
+
+    @Test
+    void bucketWidthFollowsPeakRate() {
+        MessageIdDeduplicator dedup = MessageIdDeduplicator.forPeakRate(1, TimeUnit.HOURS, 1_000_000, 20_000);
+        // 每桶最多 20000 / 8 = 2500 个ID，峰值速率下约 9 秒
+        assertEquals(9_000, dedup.windowMillis() / dedup.bucketCount());
+        assertEquals(HOUR_MILLIS, dedup.windowMillis());
+    }
+
+    /**
+     * 1M ID/小时持续一小时：每条新消息之外再重投一条近期消息，重投必须全部识别为重复，
+     * 新消息不能被误判，记录数不超过上限加一个桶
+     */
+    @Test
+    void catchesRedeliveriesAtOneMillionIdsPerHour() {
+        int maxEntries = 20_000;
+        long rate = 1_000_000;
+        AtomicLong clock = new AtomicLong(HOUR_MILLIS);
+        MessageIdDeduplicator dedup = MessageIdDeduplicator.forPeakRate(1, TimeUnit.HOURS, rate, maxEntries,
+                clock::get);
+        long stepMicros = HOUR_MILLIS * 1000 / rate;
+        long perBucket = dedup.windowMillis() / dedup.bucketCount() * 1000 / stepMicros + 1;
+        // 持续峰值时至少保留 MIN_RETAINED_BUCKETS 个桶的历史
+        int horizon = (int) (perBucket * (MessageIdDeduplicator.MIN_RETAINED_BUCKETS - 1));
+        Random random = new Random(1);
+
+        long redelivered = 0;
+        long caught = 0;
+        long start = System.nanoTime();
+        long micros = clock.get() * 1000;
+        for (int i = 0; i < rate; i++) {
+            micros += stepMicros;
+            clock.set(micros / 1000);
+            assertEquals(MessageIdDeduplicator.ACCEPTED, dedup.markIfAbsent("msg-" + i), "new id " + i);
+            if (i > 0) {
+                int back = 1 + random.nextInt(Math.min(i, horizon));
+                redelivered++;
+                if (dedup.markIfAbsent("msg-" + (i - back)) != MessageIdDeduplicator.ACCEPTED) {
+                    caught++;
+                }
+            }
+            assertTrue(dedup.size() <= maxEntries + perBucket, "size " + dedup.size());
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(redelivered, caught, "重复识别率");
+        assertEquals(0.5, (double) dedup.getStats().get("duplicateRate"), 0.001);
+        assertTrue(elapsedMillis < 10_000, "2M次标记耗时 " + elapsedMillis + "ms");
+    }
+}
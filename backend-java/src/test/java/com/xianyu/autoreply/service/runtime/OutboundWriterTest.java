@@ -0,0 +1,240 @@
+package com.xianyu.autoreply.service.runtime;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboundWriterTest {
+
+    /**
+     * 手动驱动的线程池：排空任务只入队，由测试决定何时执行
+     */
+    private final ArrayDeque<Runnable> scheduled = new ArrayDeque<>();
+    private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+    private WebSocketSession session;
+    private OutboundWriter writer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        session = openSession();
+        writer = new OutboundWriter("test", scheduled::add, 2, 100, 5, TimeUnit.SECONDS);
+        writer.attach(session);
+    }
+
+    private WebSocketSession openSession() throws IOException {
+        WebSocketSession webSocketSession = mock(WebSocketSession.class);
+        when(webSocketSession.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            WebSocketMessage<?> message = invocation.getArgument(0);
+            written.add(((TextMessage) message).getPayload());
+            return null;
+        }).when(webSocketSession).sendMessage(any());
+        return webSocketSession;
+    }
+
+    private void drain() {
+        while (!scheduled.isEmpty()) {
+            scheduled.poll().run();
+        }
+    }
+
+    private long stat(String name) {
+        return (Long) writer.getStats().get(name);
+    }
+
+    private static String failure(CompletableFuture<Void> future) {
+        ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        return error.getCause().getMessage();
+    }
+
+    @Test
+    void controlFramesOvertakeQueuedData() throws Exception {
+        CompletableFuture<Void> d1 = writer.send(session, "d1", OutboundWriter.Kind.DATA, null);
+        writer.send(session, "d2", OutboundWriter.Kind.DATA, null);
+        writer.send(session, "c1", OutboundWriter.Kind.CONTROL, null);
+        assertEquals(1, scheduled.size());
+        assertEquals(3, writer.queuedFrames());
+
+        drain();
+
+        assertEquals(List.of("c1", "d1", "d2"), written);
+        d1.get(1, TimeUnit.SECONDS);
+        assertEquals(3L, stat("sentFrames"));
+        assertEquals(6L, stat("sentBytes"));
+        assertEquals(0, writer.queuedFrames());
+    }
+
+    @Test
+    void pendingAcksWithSameKeyAreCoalesced() {
+        CompletableFuture<Void> first = writer.send(session, "ack-m1", OutboundWriter.Kind.CONTROL, "ack:m1");
+        CompletableFuture<Void> second = writer.send(session, "ack-m1", OutboundWriter.Kind.CONTROL, "ack:m1");
+        writer.send(session, "ack-m2", OutboundWriter.Kind.CONTROL, "ack:m2");
+
+        // 尚未写出的相同key合并为一次写入，共享同一个Future
+        assertSame(first, second);
+        assertEquals(1L, stat("coalescedFrames"));
+        drain();
+        assertEquals(List.of("ack-m1", "ack-m2"), written);
+        assertTrue(first.isDone());
+
+        // 写出后同一key可以再次发送
+        CompletableFuture<Void> third = writer.send(session, "ack-m1", OutboundWriter.Kind.CONTROL, "ack:m1");
+        assertFalse(third.isDone());
+        drain();
+        assertEquals(List.of("ack-m1", "ack-m2", "ack-m1"), written);
+    }
+
+    @Test
+    void fullQueueRejectsWithoutBlocking() {
+        writer.send(session, "c1", OutboundWriter.Kind.CONTROL, "heartbeat");
+        writer.send(session, "c2", OutboundWriter.Kind.CONTROL, null);
+
+        CompletableFuture<Void> rejected = writer.send(session, "c3", OutboundWriter.Kind.CONTROL, null);
+        assertEquals("出站队列已满", failure(rejected));
+        assertEquals(1L, stat("rejectedFrames"));
+        // 合并到已排队的帧不占容量；业务队列独立计算容量
+        assertFalse(writer.send(session, "c1", OutboundWriter.Kind.CONTROL, "heartbeat").isDone());
+        assertFalse(writer.send(session, "d1", OutboundWriter.Kind.DATA, null).isDone());
+        assertEquals(3L, stat("maxOutboundQueueDepth"));
+
+        drain();
+        assertEquals(List.of("c1", "c2", "d1"), written);
+    }
+
+    @Test
+    void framesForOtherOrClosedSessionAreRejected() throws Exception {
+        assertEquals("WebSocket连接已关闭", failure(writer.send(openSession(), "x", OutboundWriter.Kind.DATA, null)));
+        when(session.isOpen()).thenReturn(false);
+        assertEquals("WebSocket连接已关闭", failure(writer.send(session, "y", OutboundWriter.Kind.DATA, null)));
+        assertEquals(2L, stat("rejectedFrames"));
+        assertTrue(scheduled.isEmpty());
+    }
+
+    @Test
+    void detachAndReattachFailPendingFrames() throws Exception {
+        CompletableFuture<Void> queued = writer.send(session, "d1", OutboundWriter.Kind.DATA, "key");
+        writer.detach(session);
+        assertEquals("连接已关闭", failure(queued));
+
+        WebSocketSession next = openSession();
+        writer.attach(next);
+        CompletableFuture<Void> beforeSwitch = writer.send(next, "d2", OutboundWriter.Kind.DATA, "key");
+        writer.attach(openSession());
+        assertEquals("连接已切换", failure(beforeSwitch));
+
+        drain();
+        assertTrue(written.isEmpty());
+        assertEquals(2L, stat("failedFrames"));
+        // 解绑其他会话不影响当前会话
+        writer.detach(next);
+        assertEquals(0, writer.queuedFrames());
+    }
+
+    @Test
+    void writeFailureDoesNotStopLaterFrames() throws Exception {
+        doAnswer(invocation -> {
+            TextMessage message = invocation.getArgument(0);
+            if ("bad".equals(message.getPayload())) {
+                throw new IOException("broken pipe");
+            }
+            written.add(message.getPayload());
+            return null;
+        }).when(session).sendMessage(any());
+        CompletableFuture<Void> bad = writer.send(session, "bad", OutboundWriter.Kind.DATA, null);
+        CompletableFuture<Void> good = writer.send(session, "good", OutboundWriter.Kind.DATA, null);
+
+        drain();
+
+        assertEquals("broken pipe", failure(bad));
+        good.get(1, TimeUnit.SECONDS);
+        assertEquals(List.of("good"), written);
+        assertEquals(1L, stat("failedFrames"));
+        assertEquals(1L, stat("sentFrames"));
+    }
+
+    @Test
+    void drainYieldsAfterBatch() {
+        for (int i = 0; i < 70; i++) {
+            writer.send(session, "d" + i, OutboundWriter.Kind.DATA, null);
+        }
+        scheduled.poll().run();
+
+        // 每轮最多写出64帧，随后重新调度
+        assertEquals(64, written.size());
+        assertEquals(1, scheduled.size());
+        drain();
+        assertEquals(70, written.size());
+        assertEquals("d69", written.get(69));
+    }
+
+    @Test
+    void stalledWriteClosesSession() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            OutboundWriter stallable = new OutboundWriter("test", pool, 10, 10, 100, TimeUnit.MILLISECONDS);
+            WebSocketSession slow = mock(WebSocketSession.class);
+            when(slow.isOpen()).thenReturn(true);
+            doAnswer(invocation -> {
+                writing.countDown();
+                release.await(5, TimeUnit.SECONDS); // 对端不读取，写入阻塞
+                return null;
+            }).when(slow).sendMessage(any());
+            stallable.attach(slow);
+
+            CompletableFuture<Void> inFlight = stallable.send(slow, "d1", OutboundWriter.Kind.DATA, null);
+            CompletableFuture<Void> queued = stallable.send(slow, "d2", OutboundWriter.Kind.DATA, null);
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+            // 未超时：不处理
+            stallable.checkStalled();
+            verify(slow, never()).close(any());
+
+            Thread.sleep(150);
+            stallable.checkStalled();
+
+            verify(slow).close(CloseStatus.SESSION_NOT_RELIABLE);
+            assertEquals("发送超时", failure(queued));
+            assertEquals(1L, stallable.getStats().get("sendTimeouts"));
+            // 会话已解绑，之后的帧直接失败，等待重连后重新绑定
+            assertEquals("WebSocket连接已关闭", failure(stallable.send(slow, "d3", OutboundWriter.Kind.DATA, null)));
+            stallable.checkStalled();
+            assertEquals(1L, stallable.getStats().get("sendTimeouts"));
+
+            release.countDown();
+            inFlight.get(5, TimeUnit.SECONDS);
+            verify(slow, timeout(5000).times(1)).sendMessage(any());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.xianyu.autoreply.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AhoCorasickTest {
+
+    private static int[] counts(AhoCorasick automaton, String text) {
+        int[] counts = new int[automaton.patternCount()];
+        automaton.search(text, p -> counts[p]++);
+        return counts;
+    }
+
+    /**
+     * 逐位置比较的朴素实现：重叠出现都计数，折叠后重复的模式只记在第一个下标
+     */
+    private static int[] naiveCounts(List<String> patterns, String text) {
+        int[] counts = new int[patterns.size()];
+        String folded = AhoCorasick.fold(text);
+        Set<String> seen = new HashSet<>();
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            if (pattern.isEmpty() || !seen.add(AhoCorasick.fold(pattern))) {
+                continue;
+            }
+            String needle = AhoCorasick.fold(pattern);
+            for (int i = folded.indexOf(needle); i >= 0; i = folded.indexOf(needle, i + 1)) {
+                counts[p]++;
+            }
+        }
+        return counts;
+    }
+
+    @Test
+    void reportsOverlappingAndNestedMatches() {
+        List<String> patterns = List.of("he", "she", "his", "hers");
+        AhoCorasick automaton = AhoCorasick.build(patterns);
+        // ushers：she、he、hers 都以重叠方式出现
+        assertArrayEquals(new int[]{1, 1, 0, 1}, counts(automaton, "ushers"));
+        assertArrayEquals(new int[]{2, 1, 1, 0}, counts(automaton, "hishehe"));
+    }
+
+    @Test
+    void foldsCaseAndKeepsFirstDuplicate() {
+        List<String> patterns = List.of("iPhone", "IPHONE", "", "包邮");
+        AhoCorasick automaton = AhoCorasick.build(patterns);
+        assertArrayEquals(new int[]{2, 0, 0, 1}, counts(automaton, "iphone和IPhone，包邮吗"));
+        assertEquals(4, automaton.patternCount());
+    }
+
+    @Test
+    void agreesWithNaiveSearchOnRandomInput() {
+        Random random = new Random(11);
+        String alphabet = "abAB包邮价";
+        for (int round = 0; round < 200; round++) {
+            List<String> patterns = new ArrayList<>();
+            int patternCount = 1 + random.nextInt(30);
+            for (int p = 0; p < patternCount; p++) {
+                patterns.add(randomText(random, alphabet, random.nextInt(5)));
+            }
+            AhoCorasick automaton = AhoCorasick.build(patterns);
+            for (int n = 0; n < 20; n++) {
+                String text = randomText(random, alphabet, random.nextInt(40));
+                assertArrayEquals(naiveCounts(patterns, text), counts(automaton, text),
+                        patterns + " / " + text + " / " + Arrays.toString(counts(automaton, text)));
+            }
+        }
+    }
+
+    @Test
+    void matchesPrefixKeywordsAmongManyPatterns() {
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            patterns.add("关键词" + i);
+        }
+        AhoCorasick automaton = AhoCorasick.build(patterns);
+        String text = "请问关键词123还有吗".repeat(1000);
+        int[] counts = counts(automaton, text);
+        // 关键词1、关键词12、关键词123 都是前缀匹配
+        assertEquals(1000, counts[1]);
+        assertEquals(1000, counts[12]);
+        assertEquals(1000, counts[123]);
+        assertEquals(0, counts[1234]);
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package com.xianyu.autoreply.utils;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 抓取的同步包消息样本（sync/captured-messages.jsonl，来自项目根目录的消息内容记录，账号、IP和设备标识已替换）
+ * 包括输入状态、已读回执、聊天文本、表情、下单卡片和付款通知。
+ */
+final class CapturedMessages {
+
+    private static final String RESOURCE = "sync/captured-messages.jsonl";
+
+    private CapturedMessages() {
+    }
+
+    /**
+     * 解码后的消息
+     */
+    static List<JSONObject> load() throws IOException {
+        String text;
+        try (InputStream in = new ClassPathResource(RESOURCE).getInputStream()) {
+            text = StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        }
+        List<JSONObject> messages = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            if (!line.isBlank()) {
+                messages.add(JSON.parseObject(line));
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 编码为线上同步包的data字段：MessagePack（数字键按整数写入）再Base64
+     */
+    static String toSyncData(JSONObject message) throws IOException {
+        try (MessageBufferPacker packer = MessagePack.newDefaultBufferPacker()) {
+            pack(packer, message);
+            return Base64.getEncoder().encodeToString(packer.toByteArray());
+        }
+    }
+
+    private static void pack(MessageBufferPacker packer, Object value) throws IOException {
+        if (value == null) {
+            packer.packNil();
+        } else if (value instanceof JSONObject object) {
+            packer.packMapHeader(object.size());
+            for (Map.Entry<String, Object> entry : object.entrySet()) {
+                String key = entry.getKey();
+                if (!key.isEmpty() && key.chars().allMatch(Character::isDigit)) {
+                    packer.packInt(Integer.parseInt(key));
+                } else {
+                    packer.packString(key);
+                }
+                pack(packer, entry.getValue());
+            }
+        } else if (value instanceof JSONArray array) {
+            packer.packArrayHeader(array.size());
+            for (Object element : array) {
+                pack(packer, element);
+            }
+        } else if (value instanceof String s) {
+            packer.packString(s);
+        } else if (value instanceof Boolean b) {
+            packer.packBoolean(b);
+        } else if (value instanceof Number n) {
+            packer.packLong(n.longValue());
+        } else {
+            throw new IllegalArgumentException("unsupported value: " + value.getClass());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.xianyu.autoreply.utils;
+
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 消息字段提取基准（默认不运行）：mvn test -Dtest=ChatEnvelopeBenchmarkTest -Dbenchmark=true
+ * 在抓取的消息样本（{@link CapturedMessages}）上对比：
+ * - legacy：改造前逐字段提取，isChatMessage / extractUserId / extractItemId（含 findItemIdRecursive）/
+ *   extractMessageId / extractOrderId 各走一遍消息树（{@link LegacyChatFields}）
+ * - envelope：{@link ChatEnvelope#of(JSONObject)} 一次提取
+ * 每轮把全部样本各提取 iterations 次，先预热再测量，取各轮中位数；同时统计每条消息的内存分配。
+ * 可调参数（系统属性）：benchmark.iterations、benchmark.rounds。
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ChatEnvelopeBenchmarkTest {
+
+    private long sink;
+
+    @Test
+    void comparesEnvelopeWithLegacyExtractors() throws Exception {
+        int iterations = Integer.getInteger("benchmark.iterations", 20_000);
+        int rounds = Integer.getInteger("benchmark.rounds", 5);
+        List<JSONObject> messages = CapturedMessages.load();
+
+        Map<String, ToIntFunction<JSONObject>> paths = new LinkedHashMap<>();
+        paths.put("legacy", ChatEnvelopeBenchmarkTest::legacy);
+        paths.put("envelope", message -> {
+            ChatEnvelope envelope = ChatEnvelope.of(message);
+            return (envelope.chatMessage() ? 1 : 0) + length(envelope.userIdOr("unknown_user"))
+                    + length(envelope.itemId()) + length(envelope.messageId()) + length(envelope.orderId());
+        });
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("messages", messages.size());
+        Map<String, Long> nanos = new LinkedHashMap<>();
+        for (Map.Entry<String, ToIntFunction<JSONObject>> path : paths.entrySet()) {
+            run(path.getValue(), messages, iterations); // 预热
+            long[] samples = new long[rounds];
+            long allocated = 0;
+            for (int r = 0; r < rounds; r++) {
+                long bytesBefore = allocatedBytes();
+                long start = System.nanoTime();
+                run(path.getValue(), messages, iterations);
+                samples[r] = (System.nanoTime() - start) / ((long) iterations * messages.size());
+                allocated += allocatedBytes() - bytesBefore;
+            }
+            Arrays.sort(samples);
+            nanos.put(path.getKey(), samples[rounds / 2]);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("nanosPerMessage", samples[rounds / 2]);
+            result.put("bytesAllocatedPerMessage", allocated / ((long) rounds * iterations * messages.size()));
+            report.put(path.getKey(), result);
+        }
+        report.put("speedup", String.format("%.2f", (double) nanos.get("legacy") / nanos.get("envelope")));
+        log.info("消息字段提取基准: {}", report);
+        assertTrue(sink > 0);
+    }
+
+    private void run(ToIntFunction<JSONObject> extract, List<JSONObject> messages, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            for (JSONObject message : messages) {
+                sink += extract.applyAsInt(message);
+            }
+        }
+    }
+
+    /**
+     * 改造前处理一条消息时的提取调用
+     */
+    private static int legacy(JSONObject message) {
+        return (LegacyChatFields.isChatMessage(message) ? 1 : 0) + length(LegacyChatFields.extractUserId(message))
+                + length(LegacyChatFields.extractItemId(message)) + length(LegacyChatFields.extractMessageId(message))
+                + length(LegacyChatFields.extractOrderId(message));
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
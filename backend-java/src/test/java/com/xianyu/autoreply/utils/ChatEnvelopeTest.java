@@ -0,0 +1,331 @@
+package com.xianyu.autoreply.utils;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatEnvelopeTest {
+
+    @Test
+    void extractsChatFieldsFromFixedPaths() {
+        JSONObject message = JSON.parseObject("""
+                {"1": {"2": "55667788@goofish", "5": 1700000000123,
+                       "10": {"reminderContent": "还在吗", "senderUserId": "2200001", "senderNick": "",
+                              "reminderTitle": "买家小王", "sessionType": "1",
+                              "reminderUrl": "fleamarket://message_chat?itemId=712345678901&peerUserId=1",
+                              "bizTag": "{\\"messageId\\":\\"m-1\\"}"}},
+                 "3": {"redReminder": "等待卖家发货", "userId": "2200001"}}
+                """);
+        ChatEnvelope envelope = ChatEnvelope.of(message);
+
+        assertTrue(envelope.chatMessage());
+        assertEquals("55667788", envelope.chatId());
+        assertEquals(1700000000123L, envelope.createTime());
+        assertEquals("2200001", envelope.userId());
+        assertEquals("买家小王", envelope.senderName());
+        assertEquals("还在吗", envelope.reminderContent());
+        assertEquals("712345678901", envelope.itemId());
+        assertEquals("m-1", envelope.messageId());
+        assertEquals("等待卖家发货", envelope.redReminder());
+        assertNull(envelope.orderId());
+    }
+
+    @Test
+    void fallsBackToStringSenderAndUnknownName() {
+        JSONObject message = JSON.parseObject("{\"1\": \"2200001@goofish\"}");
+        ChatEnvelope envelope = ChatEnvelope.of(message);
+
+        assertFalse(envelope.chatMessage());
+        assertEquals("2200001", envelope.userId());
+        assertEquals("未知用户", envelope.senderName());
+        assertEquals("fallback", ChatEnvelope.of(new JSONObject()).userIdOr("fallback"));
+    }
+
+    @Test
+    void readsOrderIdFromCardButton() {
+        JSONObject card = JSON.parseObject("""
+                {"dxCard": {"item": {"main": {
+                    "targetUrl": "fleamarket://order_detail?id=1111111111111",
+                    "exContent": {"button": {"targetUrl": "fleamarket://x?orderId=2222222222222&role=seller"}}}}}}
+                """);
+        JSONObject message = new JSONObject();
+        message.put("1", JSON.parseObject("{\"6\": {\"3\": {}}}"));
+        message.getJSONObject("1").getJSONObject("6").getJSONObject("3").put("5", card.toJSONString());
+
+        assertEquals("2222222222222", ChatEnvelope.of(message).orderId());
+    }
+
+    @Test
+    void treeScanPrefersOrderIdMarkerOverIdField() {
+        // 文档顺序中 id 字段先出现，但 orderId= 链接优先级更高
+        JSONObject message = JSON.parseObject("""
+                {"1": {"2": "1@goofish"},
+                 "3": {"extra": {"id": "3333333333333"},
+                       "links": ["https://h5.example.com/detail?bizOrderId=4444444444444",
+                                 "https://h5.example.com/detail?orderId=5555555555555"]}}
+                """);
+        ChatEnvelope envelope = ChatEnvelope.of(message);
+
+        assertEquals("5555555555555", envelope.orderId());
+        // 商品ID只沿对象路径查找 itemId / item_id / id
+        assertEquals("3333333333333", envelope.itemId());
+    }
+
+    @Test
+    void ignoresShortIds() {
+        JSONObject message = JSON.parseObject("{\"3\": {\"extra\": {\"id\": \"12345\"}, \"content\": \"订单 123\"}}");
+        ChatEnvelope envelope = ChatEnvelope.of(message);
+        assertNull(envelope.itemId());
+        assertNull(envelope.orderId());
+    }
+
+    @Test
+    void digitScansAgreeWithRegex() {
+        Pattern run = Pattern.compile("(\\d{10,})");
+        Pattern marker = Pattern.compile("(orderId=|orderId:)(\\d{10,})");
+        String[] markers = {"orderId=", "orderId:"};
+        Random random = new Random(3);
+        String[] pieces = {"0", "1", "9", "12345", "orderId=", "orderId:", "order", "=", "&", "a", "中"};
+        for (int n = 0; n < 20_000; n++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int i = 0; i < length; i++) {
+                text.append(pieces[random.nextInt(pieces.length)]);
+            }
+            String input = text.toString();
+
+            Matcher runMatcher = run.matcher(input);
+            assertEquals(runMatcher.find() ? runMatcher.group(1) : null, ChatEnvelope.digitRun(input, 10), input);
+            Matcher markerMatcher = marker.matcher(input);
+            assertEquals(markerMatcher.find() ? markerMatcher.group(2) : null,
+                    ChatEnvelope.digitsAfter(input, markers, 10), input);
+        }
+    }
+
+    @Test
+    void agreesWithLegacyExtractorsOnCapturedMessages() throws Exception {
+        for (JSONObject message : CapturedMessages.load()) {
+            assertSameAsLegacy(message);
+        }
+    }
+
+    /**
+     * 随机生成的消息树上与改造前的提取方法逐字段对比。
+     * 两处有意的差异不在生成范围内：卡片缺少 button 时原实现抛空指针后退回全文搜索，
+     * 现在继续读取主体链接；reminderUrl 中 itemId= 后为空时原实现返回空串，现在视为缺失。
+     */
+    @Test
+    void agreesWithLegacyExtractorsOnRandomTrees() {
+        Random random = new Random(8);
+        int withItemId = 0;
+        int withOrderId = 0;
+        int withMessageId = 0;
+        for (int n = 0; n < 20_000; n++) {
+            ChatEnvelope envelope = assertSameAsLegacy(randomMessage(random));
+            withItemId += envelope.itemId() != null ? 1 : 0;
+            withOrderId += envelope.orderId() != null ? 1 : 0;
+            withMessageId += envelope.messageId() != null ? 1 : 0;
+        }
+        // 生成器要覆盖到各个字段的命中分支，而不只是全部为空
+        assertTrue(withItemId > 1_000, "itemId hits: " + withItemId);
+        assertTrue(withOrderId > 1_000, "orderId hits: " + withOrderId);
+        assertTrue(withMessageId > 1_000, "messageId hits: " + withMessageId);
+    }
+
+    private static ChatEnvelope assertSameAsLegacy(JSONObject message) {
+        ChatEnvelope envelope = ChatEnvelope.of(message);
+        String json = message.toJSONString();
+        assertEquals(LegacyChatFields.isChatMessage(message), envelope.chatMessage(), json);
+        assertEquals(LegacyChatFields.extractUserId(message), envelope.userIdOr("unknown_user"), json);
+        assertEquals(LegacyChatFields.extractItemId(message), envelope.itemId(), json);
+        assertEquals(LegacyChatFields.extractMessageId(message), envelope.messageId(), json);
+        assertEquals(LegacyChatFields.extractOrderId(message), envelope.orderId(), json);
+        return envelope;
+    }
+
+    private static final String[] TEXT_PIECES = {"orderId=", "orderId:", "bizOrderId=", "bizOrderId:",
+            "order_detail?id=", "itemId=", "id", "\"id\":", "&", "=", ":", "a", "中", " ", "https://h5.example.com/?"};
+    private static final String[] NOISE_KEYS = {"id", "itemId", "item_id", "extension", "bizData", "content",
+            "targetUrl", "title", "x", "1", "2", "10"};
+
+    static JSONObject randomMessage(Random random) {
+        JSONObject message = new JSONObject();
+        switch (random.nextInt(4)) {
+            case 0 -> message.put("1", digits(random, 5 + random.nextInt(9)) + "@goofish");
+            case 1 -> message.put("1", randomMessage1(random));
+            case 2 -> message.put("1", randomArray(random, 2));
+            default -> {
+            }
+        }
+        if (random.nextBoolean()) {
+            message.put("3", randomMessage3(random));
+        }
+        if (random.nextInt(3) == 0) {
+            message.put(NOISE_KEYS[random.nextInt(NOISE_KEYS.length)], randomNode(random, 3));
+        }
+        return message;
+    }
+
+    private static JSONObject randomMessage1(Random random) {
+        JSONObject message1 = new JSONObject();
+        message1.put("2", digits(random, 8) + "@goofish");
+        message1.put("5", 1_700_000_000_000L + random.nextInt(1_000_000));
+        if (random.nextInt(4) > 0) {
+            JSONObject message10 = new JSONObject();
+            if (random.nextInt(4) > 0) {
+                message10.put("reminderContent", randomText(random));
+            }
+            if (random.nextBoolean()) {
+                message10.put("senderUserId", digits(random, 7));
+            }
+            if (random.nextBoolean()) {
+                message10.put("reminderUrl", "fleamarket://message_chat?itemId=" + digits(random, 1 + random.nextInt(13))
+                        + (random.nextBoolean() ? "&peerUserId=" + digits(random, 7) : ""));
+            }
+            message10.put("bizTag", randomIdJson(random));
+            message10.put("extJson", randomIdJson(random));
+            if (random.nextInt(3) == 0) {
+                message10.put(NOISE_KEYS[random.nextInt(NOISE_KEYS.length)], randomNode(random, 2));
+            }
+            message1.put("10", message10);
+        }
+        if (random.nextBoolean()) {
+            JSONObject content = new JSONObject();
+            content.put("5", randomCard(random));
+            message1.put("6", JSON.parseObject("{\"1\": 101}"));
+            message1.getJSONObject("6").put("3", content);
+        }
+        return message1;
+    }
+
+    private static String randomIdJson(Random random) {
+        return switch (random.nextInt(5)) {
+            case 0 -> null;
+            case 1 -> "";
+            case 2 -> "not json";
+            case 3 -> "{\"sourceId\":\"S:1\"}";
+            default -> "{\"messageId\":\"" + digits(random, 6) + "\"}";
+        };
+    }
+
+    /**
+     * 卡片内容：结构完整（含 button），链接里随机带或不带订单ID
+     */
+    private static String randomCard(Random random) {
+        if (random.nextInt(5) == 0) {
+            return random.nextBoolean() ? "" : "[broken";
+        }
+        JSONObject button = new JSONObject();
+        button.put("targetUrl", random.nextBoolean()
+                ? "fleamarket://adjust_price?bizOrderId=" + digits(random, 13) : randomText(random));
+        if (random.nextBoolean()) {
+            button.put("targetUrl", "fleamarket://x?orderId=" + digits(random, 1 + random.nextInt(14)));
+        }
+        JSONObject exContent = new JSONObject();
+        exContent.put("button", button);
+        JSONObject main = new JSONObject();
+        main.put("exContent", exContent);
+        main.put("targetUrl", random.nextBoolean()
+                ? "fleamarket://order_detail?id=" + digits(random, 1 + random.nextInt(14)) + "&role=seller"
+                : randomText(random));
+        JSONObject item = new JSONObject();
+        item.put("main", main);
+        JSONObject dxCard = new JSONObject();
+        dxCard.put("item", item);
+        JSONObject card = new JSONObject();
+        card.put("dxCard", dxCard);
+        return card.toJSONString();
+    }
+
+    private static JSONObject randomMessage3(Random random) {
+        JSONObject message3 = new JSONObject();
+        if (random.nextBoolean()) {
+            message3.put("redReminder", "等待卖家发货");
+        }
+        if (random.nextBoolean()) {
+            message3.put("content", randomText(random));
+        }
+        for (String container : new String[]{"extension", "bizData", "other"}) {
+            if (random.nextInt(3) == 0) {
+                JSONObject value = new JSONObject();
+                if (random.nextBoolean()) {
+                    value.put(random.nextBoolean() ? "itemId" : "item_id", randomIdValue(random));
+                }
+                message3.put(container, value);
+            }
+        }
+        if (random.nextInt(3) == 0) {
+            message3.put(NOISE_KEYS[random.nextInt(NOISE_KEYS.length)], randomNode(random, 3));
+        }
+        return message3;
+    }
+
+    private static Object randomNode(Random random, int depth) {
+        int kind = depth <= 0 ? 2 + random.nextInt(2) : random.nextInt(4);
+        return switch (kind) {
+            case 0 -> {
+                JSONObject object = new JSONObject();
+                int size = random.nextInt(4);
+                for (int i = 0; i < size; i++) {
+                    String key = NOISE_KEYS[random.nextInt(NOISE_KEYS.length)];
+                    object.put(key, "id".equals(key) || key.startsWith("item") ? randomIdValue(random)
+                            : randomNode(random, depth - 1));
+                }
+                yield object;
+            }
+            case 1 -> randomArray(random, depth - 1);
+            case 2 -> randomText(random);
+            default -> randomIdValue(random);
+        };
+    }
+
+    private static JSONArray randomArray(Random random, int depth) {
+        JSONArray array = new JSONArray();
+        int size = random.nextInt(3);
+        for (int i = 0; i < size; i++) {
+            array.add(randomNode(random, depth));
+        }
+        return array;
+    }
+
+    private static Object randomIdValue(Random random) {
+        return switch (random.nextInt(4)) {
+            case 0 -> digits(random, 5 + random.nextInt(10));
+            case 1 -> Long.parseLong(digits(random, 1 + random.nextInt(15))) * (random.nextInt(5) == 0 ? -1 : 1);
+            case 2 -> digits(random, 11) + "abc";
+            default -> randomText(random);
+        };
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            if (random.nextInt(3) == 0) {
+                text.append(digits(random, 1 + random.nextInt(14)));
+            } else {
+                text.append(TEXT_PIECES[random.nextInt(TEXT_PIECES.length)]);
+            }
+        }
+        return text.toString();
+    }
+
+    private static String digits(Random random, int length) {
+        StringBuilder digits = new StringBuilder(length);
+        digits.append((char) ('1' + random.nextInt(9)));
+        for (int i = 1; i < length; i++) {
+            digits.append((char) ('0' + random.nextInt(10)));
+        }
+        return digits.toString();
+    }
+}
@@ -0,0 +1,274 @@
+package com.xianyu.autoreply.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 改造前 XianyuClient 中的字段提取方法（isChatMessage / extractMessageId / extractUserId / extractItemId /
+ * extractItemIdFromMessage / findItemIdRecursive / extractOrderId），作为 {@link ChatEnvelope} 的对照实现。
+ * 除去日志外逻辑原样保留（包括每次调用时编译正则、逐节点拼接路径）；
+ * extractItemId 提取失败时原先返回 "auto_用户ID_时间戳"，这里返回null，由调用方生成默认值。
+ */
+final class LegacyChatFields {
+
+    private LegacyChatFields() {
+    }
+
+    static boolean isChatMessage(JSONObject message) {
+        try {
+            return message != null
+                    && message.containsKey("1")
+                    && message.get("1") instanceof JSONObject
+                    && message.getJSONObject("1").containsKey("10")
+                    && message.getJSONObject("1").get("10") instanceof JSONObject
+                    && message.getJSONObject("1").getJSONObject("10").containsKey("reminderContent");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    static String extractMessageId(JSONObject messageData) {
+        try {
+            if (messageData.containsKey("1") && messageData.get("1") instanceof JSONObject) {
+                JSONObject message1 = messageData.getJSONObject("1");
+                if (message1.containsKey("10") && message1.get("10") instanceof JSONObject) {
+                    JSONObject message10 = message1.getJSONObject("10");
+                    if (message10.containsKey("bizTag")) {
+                        String bizTag = message10.getString("bizTag");
+                        if (bizTag != null && !bizTag.isEmpty()) {
+                            try {
+                                JSONObject bizTagDict = JSON.parseObject(bizTag);
+                                if (bizTagDict.containsKey("messageId")) {
+                                    return bizTagDict.getString("messageId");
+                                }
+                            } catch (Exception e) {
+                                // bizTag 解析失败，继续尝试其他方式
+                            }
+                        }
+                    }
+                    if (message10.containsKey("extJson")) {
+                        String extJson = message10.getString("extJson");
+                        if (extJson != null && !extJson.isEmpty()) {
+                            try {
+                                JSONObject extJsonDict = JSON.parseObject(extJson);
+                                if (extJsonDict.containsKey("messageId")) {
+                                    return extJsonDict.getString("messageId");
+                                }
+                            } catch (Exception e) {
+                                // extJson 解析失败
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // 提取失败
+        }
+        return null;
+    }
+
+    static String extractUserId(JSONObject message) {
+        try {
+            Object message1 = message.get("1");
+            if (message1 instanceof String) {
+                String message1Str = (String) message1;
+                if (message1Str.contains("@")) {
+                    return message1Str.split("@")[0];
+                }
+            } else if (message1 instanceof JSONObject) {
+                JSONObject message1Obj = (JSONObject) message1;
+                if (message1Obj.containsKey("10") && message1Obj.get("10") instanceof JSONObject) {
+                    JSONObject message10 = message1Obj.getJSONObject("10");
+                    return message10.getString("senderUserId") != null
+                            ? message10.getString("senderUserId") : "unknown_user";
+                }
+            }
+        } catch (Exception e) {
+            // 提取失败
+        }
+        return "unknown_user";
+    }
+
+    static String extractItemId(JSONObject message) {
+        try {
+            if (message.containsKey("1") && message.get("1") instanceof JSONObject) {
+                JSONObject message1 = message.getJSONObject("1");
+                if (message1.containsKey("10") && message1.get("10") instanceof JSONObject) {
+                    JSONObject message10 = message1.getJSONObject("10");
+                    String urlInfo = message10.getString("reminderUrl");
+                    if (urlInfo != null && urlInfo.contains("itemId=")) {
+                        return urlInfo.split("itemId=")[1].split("&")[0];
+                    }
+                }
+            }
+            return extractItemIdFromMessage(message);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String extractItemIdFromMessage(JSONObject message) {
+        try {
+            Object message1 = message.get("1");
+            if (message1 instanceof String) {
+                Pattern pattern = Pattern.compile("(\\d{10,})");
+                Matcher matcher = pattern.matcher((String) message1);
+                if (matcher.find()) {
+                    return matcher.group(1);
+                }
+            }
+
+            if (message.containsKey("3") && message.get("3") instanceof JSONObject) {
+                JSONObject message3 = message.getJSONObject("3");
+
+                if (message3.containsKey("extension") && message3.get("extension") instanceof JSONObject) {
+                    JSONObject extension = message3.getJSONObject("extension");
+                    String itemId = extension.getString("itemId");
+                    if (itemId == null) {
+                        itemId = extension.getString("item_id");
+                    }
+                    if (itemId != null) {
+                        return itemId;
+                    }
+                }
+
+                if (message3.containsKey("bizData") && message3.get("bizData") instanceof JSONObject) {
+                    JSONObject bizData = message3.getJSONObject("bizData");
+                    String itemId = bizData.getString("itemId");
+                    if (itemId == null) {
+                        itemId = bizData.getString("item_id");
+                    }
+                    if (itemId != null) {
+                        return itemId;
+                    }
+                }
+
+                for (Map.Entry<String, Object> entry : message3.entrySet()) {
+                    if (entry.getValue() instanceof JSONObject) {
+                        JSONObject value = (JSONObject) entry.getValue();
+                        String itemId = value.getString("itemId");
+                        if (itemId == null) {
+                            itemId = value.getString("item_id");
+                        }
+                        if (itemId != null) {
+                            return itemId;
+                        }
+                    }
+                }
+
+                String content = message3.getString("content");
+                if (content != null && !content.isEmpty()) {
+                    Pattern pattern = Pattern.compile("(\\d{10,})");
+                    Matcher matcher = pattern.matcher(content);
+                    if (matcher.find()) {
+                        return matcher.group(1);
+                    }
+                }
+            }
+
+            return findItemIdRecursive(message, "");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String findItemIdRecursive(Object obj, String path) {
+        if (obj instanceof JSONObject) {
+            JSONObject jsonObj = (JSONObject) obj;
+            for (String key : new String[]{"itemId", "item_id", "id"}) {
+                if (jsonObj.containsKey(key)) {
+                    Object value = jsonObj.get(key);
+                    if (value instanceof String || value instanceof Number) {
+                        String valueStr = String.valueOf(value);
+                        if (valueStr.length() >= 10 && valueStr.matches("\\d+")) {
+                            return valueStr;
+                        }
+                    }
+                }
+            }
+            for (Map.Entry<String, Object> entry : jsonObj.entrySet()) {
+                String newPath = path.isEmpty() ? entry.getKey() : path + "." + entry.getKey();
+                String result = findItemIdRecursive(entry.getValue(), newPath);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    static String extractOrderId(JSONObject message) {
+        try {
+            String orderId = null;
+            Object message1 = message.get("1");
+            String contentJsonStr = "";
+
+            if (message1 instanceof JSONObject) {
+                Object message16 = ((JSONObject) message1).get("6");
+                if (message16 instanceof JSONObject) {
+                    Object message163 = ((JSONObject) message16).get("3");
+                    if (message163 instanceof JSONObject) {
+                        contentJsonStr = ((JSONObject) message163).getString("5");
+                    }
+                }
+            }
+
+            if (StrUtil.isNotBlank(contentJsonStr)) {
+                try {
+                    JSONObject contentData = JSON.parseObject(contentJsonStr);
+                    String targetUrl = contentData.getJSONObject("dxCard")
+                            .getJSONObject("item")
+                            .getJSONObject("main")
+                            .getJSONObject("exContent")
+                            .getJSONObject("button")
+                            .getString("targetUrl");
+                    if (StrUtil.isNotBlank(targetUrl)) {
+                        Matcher matcher = Pattern.compile("orderId=(\\d+)").matcher(targetUrl);
+                        if (matcher.find()) {
+                            orderId = matcher.group(1);
+                        }
+                    }
+                    if (orderId == null) {
+                        String mainTargetUrl = contentData.getJSONObject("dxCard")
+                                .getJSONObject("item")
+                                .getJSONObject("main")
+                                .getString("targetUrl");
+                        if (StrUtil.isNotBlank(mainTargetUrl)) {
+                            Matcher matcher = Pattern.compile("order_detail\\?id=(\\d+)").matcher(mainTargetUrl);
+                            if (matcher.find()) {
+                                orderId = matcher.group(1);
+                            }
+                        }
+                    }
+                } catch (Exception parseE) {
+                    // 解析内容JSON失败
+                }
+            }
+
+            if (orderId == null) {
+                String messageStr = message.toJSONString();
+                String[] patterns = {
+                        "orderId[=:](\\d{10,})",
+                        "order_detail\\?id=(\\d{10,})",
+                        "\"id\"\\s*:\\s*\"?(\\d{10,})\"?",
+                        "bizOrderId[=:](\\d{10,})"
+                };
+                for (String patternStr : patterns) {
+                    Matcher matcher = Pattern.compile(patternStr).matcher(messageStr);
+                    if (matcher.find()) {
+                        orderId = matcher.group(1);
+                        break;
+                    }
+                }
+            }
+            return orderId;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.xianyu.autoreply.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MinHashTest {
+
+    private static double similarity(String a, String b) {
+        return MinHash.similarity(MinHash.signature(MinHash.normalize(a)), MinHash.signature(MinHash.normalize(b)));
+    }
+
+    @Test
+    void normalizeKeepsOnlyLettersAndDigits() {
+        assertEquals("包邮吗iphone15", MinHash.normalize(" 包邮吗？ iPhone 15!😊"));
+        assertEquals("", MinHash.normalize("？！…  😊"));
+        assertEquals("", MinHash.normalize(null));
+    }
+
+    @Test
+    void signatureIsStable() {
+        // 种子固定：重启后签名不变
+        assertArrayEquals(MinHash.signature("还在吗"), MinHash.signature("还在吗"));
+        assertEquals(MinHash.NUM_HASHES, MinHash.signature("还在吗").length);
+        assertEquals(1.0, similarity("还在吗？", "还在吗"));
+    }
+
+    @Test
+    void similarityFollowsSharedBigrams() {
+        double near = similarity("请问这个商品现在还在卖吗", "请问这个商品现在还在卖吗亲");
+        double loose = similarity("请问这个商品现在还在卖吗", "请问这个商品现在还在吗");
+        double unrelated = similarity("请问这个商品现在还在卖吗", "包邮吗");
+
+        // 真实 Jaccard 分别为 11/12、9/12 和 0
+        assertTrue(near >= 0.8, "near=" + near);
+        assertTrue(loose < near && loose >= 0.6, "loose=" + loose);
+        assertEquals(0.0, unrelated);
+    }
+
+    @Test
+    void singleCharacterTextMatchesItself() {
+        assertEquals(1.0, similarity("在", "在？"));
+        assertEquals(0.0, similarity("在", "好"));
+    }
+}
@@ -0,0 +1,111 @@
+package com.xianyu.autoreply.utils;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 同步包解码基准（默认不运行）：mvn test -Dtest=MsgPackJsonDecoderBenchmarkTest -Dbenchmark=true
+ * 在抓取的消息样本（{@link CapturedMessages}，编码为线上的 MessagePack + Base64）上对比三种解码：
+ * - legacy：改造前 XianyuClient.decryptMessage 的路径，先按明文JSON解析失败，再 decrypt + parseObject
+ * - decrypt：{@link XianyuUtils#decrypt(String)} + JSON.parseObject（Jackson对象树 → JSON字符串 → fastjson2）
+ * - decoder：{@link MsgPackJsonDecoder#decodeSyncData(String)} 一次解码
+ * 每轮把全部样本各解码 iterations 次，先预热再测量，取各轮中位数；同时统计每次解码的内存分配。
+ * 可调参数（系统属性）：benchmark.iterations、benchmark.rounds。
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class MsgPackJsonDecoderBenchmarkTest {
+
+    private interface Decode {
+        JSONObject apply(String data) throws Exception;
+    }
+
+    private long sink;
+
+    @Test
+    void comparesDecoderWithDecryptAndParse() throws Exception {
+        int iterations = Integer.getInteger("benchmark.iterations", 20_000);
+        int rounds = Integer.getInteger("benchmark.rounds", 5);
+        List<String> payloads = new ArrayList<>();
+        for (JSONObject message : CapturedMessages.load()) {
+            String data = CapturedMessages.toSyncData(message);
+            // 三种方式解码结果必须一致
+            String expected = JSON.parseObject(XianyuUtils.decrypt(data)).toJSONString();
+            assertEquals(expected, legacy(data).toJSONString());
+            assertEquals(expected, MsgPackJsonDecoder.decodeSyncData(data).data().toJSONString());
+            payloads.add(data);
+        }
+
+        Map<String, Decode> paths = new LinkedHashMap<>();
+        paths.put("legacy", MsgPackJsonDecoderBenchmarkTest::legacy);
+        paths.put("decrypt", data -> JSON.parseObject(XianyuUtils.decrypt(data)));
+        paths.put("decoder", data -> MsgPackJsonDecoder.decodeSyncData(data).data());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("payloads", payloads.size());
+        report.put("avgPayloadChars", payloads.stream().mapToInt(String::length).sum() / payloads.size());
+        Map<String, Long> nanos = new LinkedHashMap<>();
+        for (Map.Entry<String, Decode> path : paths.entrySet()) {
+            run(path.getValue(), payloads, iterations); // 预热
+            long[] samples = new long[rounds];
+            long allocated = 0;
+            for (int r = 0; r < rounds; r++) {
+                long bytesBefore = allocatedBytes();
+                long start = System.nanoTime();
+                run(path.getValue(), payloads, iterations);
+                samples[r] = (System.nanoTime() - start) / ((long) iterations * payloads.size());
+                allocated += allocatedBytes() - bytesBefore;
+            }
+            Arrays.sort(samples);
+            nanos.put(path.getKey(), samples[rounds / 2]);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("nanosPerMessage", samples[rounds / 2]);
+            result.put("bytesAllocatedPerMessage", allocated / ((long) rounds * iterations * payloads.size()));
+            report.put(path.getKey(), result);
+        }
+        report.put("speedupVsDecrypt", String.format("%.2f", (double) nanos.get("decrypt") / nanos.get("decoder")));
+        report.put("speedupVsLegacy", String.format("%.2f", (double) nanos.get("legacy") / nanos.get("decoder")));
+        log.info("同步包解码基准: {}", report);
+        assertTrue(sink > 0);
+    }
+
+    private void run(Decode decode, List<String> payloads, int iterations) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            for (String data : payloads) {
+                sink += decode.apply(data).size();
+            }
+        }
+    }
+
+    /**
+     * 改造前的解码路径（不含系统消息判断）
+     */
+    private static JSONObject legacy(String data) {
+        try {
+            byte[] decodedBytes = Base64.getDecoder().decode(data);
+            return JSON.parseObject(new String(decodedBytes, StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            return JSON.parseObject(XianyuUtils.decrypt(data));
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
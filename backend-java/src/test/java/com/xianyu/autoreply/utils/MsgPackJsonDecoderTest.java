@@ -0,0 +1,95 @@
+package com.xianyu.autoreply.utils;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MsgPackJsonDecoderTest {
+
+    /**
+     * 类似同步包的消息：整数键、嵌套对象、数组、二进制、空值和大整数
+     */
+    private static byte[] samplePayload() throws Exception {
+        try (MessageBufferPacker packer = MessagePack.newDefaultBufferPacker()) {
+            packer.packMapHeader(3);
+            packer.packInt(1);
+            packer.packMapHeader(4);
+            packer.packInt(2).packString("123456789@goofish");
+            packer.packInt(5).packLong(1_700_000_000_123L);
+            packer.packInt(10);
+            packer.packMapHeader(3);
+            packer.packString("reminderContent").packString("能便宜点吗？");
+            packer.packString("senderUserId").packString("2200001");
+            packer.packString("read").packBoolean(false);
+            packer.packInt(6).packNil();
+            packer.packString("list");
+            packer.packArrayHeader(3);
+            packer.packInt(-7).packString("文本").packArrayHeader(1).packInt(42);
+            packer.packString("bin");
+            byte[] binary = {0, 1, 2, (byte) 0xff};
+            packer.packBinaryHeader(binary.length).writePayload(binary);
+            return packer.toByteArray();
+        }
+    }
+
+    @Test
+    void matchesJacksonBasedDecrypt() throws Exception {
+        String data = Base64.getEncoder().encodeToString(samplePayload());
+        MsgPackJsonDecoder.Result result = MsgPackJsonDecoder.decodeSyncData(data);
+
+        assertFalse(result.plainJson());
+        JSONObject expected = JSON.parseObject(XianyuUtils.decrypt(data));
+        assertEquals(expected.toJSONString(), result.data().toJSONString());
+        assertEquals("能便宜点吗？", result.data().getJSONObject("1").getJSONObject("10").getString("reminderContent"));
+        assertEquals(1_700_000_000_123L, result.data().getJSONObject("1").getLongValue("5"));
+    }
+
+    @Test
+    void acceptsUnpaddedBase64() throws Exception {
+        String padded = Base64.getEncoder().encodeToString(samplePayload());
+        String unpadded = padded.replace("=", "");
+        assertEquals(MsgPackJsonDecoder.decodeSyncData(padded).data().toJSONString(),
+                MsgPackJsonDecoder.decodeSyncData(unpadded).data().toJSONString());
+    }
+
+    @Test
+    void parsesPlainJsonDirectly() throws Exception {
+        String json = "{\"chatType\":1,\"operation\":{\"content\":{\"text\":\"你好\"}}}";
+        String data = Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+        MsgPackJsonDecoder.Result result = MsgPackJsonDecoder.decodeSyncData(data);
+
+        assertTrue(result.plainJson());
+        assertEquals(JSON.parseObject(json), result.data());
+    }
+
+    @Test
+    void returnsNullForNonObjectPayload() throws Exception {
+        try (MessageBufferPacker packer = MessagePack.newDefaultBufferPacker()) {
+            packer.packArrayHeader(2).packInt(1).packInt(2);
+            assertNull(MsgPackJsonDecoder.decodeSyncData(Base64.getEncoder().encodeToString(packer.toByteArray())));
+        }
+    }
+
+    @Test
+    void reusedBuffersDoNotLeakBetweenCalls() throws Exception {
+        // 先解一条大的，再解一条小的，线程缓冲区里残留的字节不能影响结果
+        StringBuilder big = new StringBuilder("{\"text\":\"");
+        big.append("x".repeat(100_000)).append("\"}");
+        MsgPackJsonDecoder.decodeSyncData(Base64.getEncoder().encodeToString(
+                big.toString().getBytes(StandardCharsets.UTF_8)));
+        String small = "{\"a\":1}";
+        MsgPackJsonDecoder.Result result = MsgPackJsonDecoder.decodeSyncData(Base64.getEncoder().encodeToString(
+                small.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(JSON.parseObject(small), result.data());
+    }
+}
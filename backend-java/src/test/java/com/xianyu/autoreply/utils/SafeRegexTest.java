@@ -0,0 +1,76 @@
+package com.xianyu.autoreply.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SafeRegexTest {
+
+    private static final List<String> PATTERNS = List.of(
+            "abc", "a.c", "a*b", "a+b", "ab?c", "(ab)+", "a|bc", "(a|b)*c", "[a-c]+x", "[^a-c]d",
+            "a{2}", "a{2,}", "a{1,3}b", "\\d+", "\\d{3}", "\\w+@", "\\s\\S", "^ab", "bc$", "^(a|b)c$",
+            "(?:ab|cd){2}", "a.*?c", "[0-9]+元", "多少钱", "包邮吗?", "^在吗$", "\\d+\\.\\d+");
+
+    private static final String ALPHABET = "abcdxAB0123 .元钱包邮在吗多少\n";
+
+    @Test
+    void agreesWithJavaRegexOnRandomText() {
+        Random random = new Random(7);
+        for (String pattern : PATTERNS) {
+            SafeRegex regex = SafeRegex.compile(pattern);
+            Pattern expected = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+            for (int n = 0; n < 2000; n++) {
+                StringBuilder text = new StringBuilder();
+                int length = random.nextInt(12);
+                for (int i = 0; i < length; i++) {
+                    text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+                assertEquals(expected.matcher(text).find(), regex.find(text), pattern + " / " + text);
+            }
+        }
+    }
+
+    @Test
+    void ignoresAsciiCase() {
+        assertTrue(SafeRegex.compile("iphone\\s*\\d+").find("出 IPhone 15 九成新"));
+        assertTrue(SafeRegex.compile("[A-Z]+").find("abc"));
+    }
+
+    @Test
+    void wordClassIncludesChinese() {
+        assertTrue(SafeRegex.compile("^\\w+$").find("商品abc_1"));
+        assertFalse(SafeRegex.compile("^\\w+$").find("商品 abc"));
+    }
+
+    @Test
+    void catastrophicPatternRunsInLinearTime() {
+        // java.util.regex 在这个输入上会指数级回溯
+        SafeRegex regex = SafeRegex.compile("^(a+)+b$");
+        String text = "a".repeat(100_000);
+        long start = System.nanoTime();
+        assertFalse(regex.find(text));
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+    }
+
+    @Test
+    void rejectsBacktrackingSyntax() {
+        for (String pattern : List.of("(a)\\1", "a(?=b)", "a(?!b)", "(?<n>a)", "(?i)a", "a*+", "\\bword\\b")) {
+            assertThrows(IllegalArgumentException.class, () -> SafeRegex.compile(pattern), pattern);
+        }
+    }
+
+    @Test
+    void rejectsOversizedPatterns() {
+        assertThrows(IllegalArgumentException.class, () -> SafeRegex.compile(""));
+        assertThrows(IllegalArgumentException.class, () -> SafeRegex.compile("a".repeat(SafeRegex.MAX_PATTERN_LENGTH + 1)));
+        assertThrows(IllegalArgumentException.class, () -> SafeRegex.compile("a{" + (SafeRegex.MAX_REPEAT + 1) + "}"));
+        assertThrows(IllegalArgumentException.class, () -> SafeRegex.compile("^a|b$"));
+    }
+}
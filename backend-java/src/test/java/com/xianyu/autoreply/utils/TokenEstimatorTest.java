@@ -0,0 +1,53 @@
+package com.xianyu.autoreply.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenEstimatorTest {
+
+    @Test
+    void cjkCharactersAndSymbolsCountOneEach() {
+        assertEquals(0, TokenEstimator.count(null));
+        assertEquals(0, TokenEstimator.count(""));
+        assertEquals(3, TokenEstimator.count("还在吗"));
+        assertEquals(4, TokenEstimator.count("包邮吗？"));
+        // 空白不计；表情（代理对）计一个
+        assertEquals(2, TokenEstimator.count(" 好 \n😊"));
+    }
+
+    @Test
+    void asciiRunsCountAboutFourCharsPerToken() {
+        assertEquals(1, TokenEstimator.count("ok"));
+        assertEquals(1, TokenEstimator.count("good"));
+        assertEquals(2, TokenEstimator.count("hello"));
+        // iPhone(2) + 15(1) + Pro(1)，空格不计
+        assertEquals(4, TokenEstimator.count("iPhone 15 Pro"));
+        // 标点打断连续的字母数字：99(1) + .(1) + 9(1) + 元(1)
+        assertEquals(4, TokenEstimator.count("99.9元"));
+    }
+
+    @Test
+    void truncateKeepsTextWithinBudget() {
+        String text = "一二三四五六";
+        assertSame(text, TokenEstimator.truncate(text, 6));
+        assertNull(TokenEstimator.truncate(null, 1));
+
+        String truncated = TokenEstimator.truncate(text, 4);
+        assertEquals("一二三…", truncated);
+        assertEquals(4, TokenEstimator.count(truncated));
+        assertEquals("abcd…", TokenEstimator.truncate("abcdefghijk", 2));
+        assertEquals("…", TokenEstimator.truncate(text, 1));
+    }
+
+    @Test
+    void truncateDoesNotSplitSurrogatePairs() {
+        String truncated = TokenEstimator.truncate("一😊二三四", 3);
+
+        assertEquals("一😊…", truncated);
+        assertTrue(TokenEstimator.count(truncated) <= 3);
+    }
+}
@@ -171,6 +171,10 @@ export interface AIReplySettings {
   max_discount_amount?: number
   max_bargain_rounds?: number
   custom_prompts?: string
+  stream_enabled?: boolean
+  fallback_model_name?: string
+  fallback_base_url?: string
+  fallback_api_key?: string
   // 兼容旧字段（前端内部使用）
   enabled?: boolean
 }
@@ -192,6 +196,10 @@ export const updateAIReplySettings = (cookieId: string, settings: Partial<AIRepl
     max_discount_amount: settings.max_discount_amount ?? 100,
     max_bargain_rounds: settings.max_bargain_rounds ?? 3,
     custom_prompts: settings.custom_prompts ?? '',
+    stream_enabled: settings.stream_enabled ?? false,
+    fallback_model_name: settings.fallback_model_name ?? '',
+    fallback_base_url: settings.fallback_base_url ?? '',
+    fallback_api_key: settings.fallback_api_key ?? '',
   }
   return put(`/ai-reply-settings/${cookieId}`, payload)
 }
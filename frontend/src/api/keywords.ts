@@ -8,7 +8,7 @@ export const getKeywords = (cookieId: string): Promise<Keyword[]> => {
 
 // 保存关键词列表（替换整个列表）
 // 后端接口: POST /keywords-with-item-id/{cid}
-// 请求体: { keywords: [{ keyword, reply, item_id }, ...] }
+// 请求体: { keywords: [{ keyword, reply, item_id, type }, ...] }
 export const saveKeywords = (cookieId: string, keywords: Keyword[]): Promise<ApiResponse> => {
   // 只发送文本类型的关键词，图片类型通过单独接口处理
   const textKeywords = keywords
@@ -16,7 +16,9 @@ export const saveKeywords = (cookieId: string, keywords: Keyword[]): Promise<Api
     .map(k => ({
       keyword: k.keyword,
       reply: k.reply || '',
-      item_id: k.item_id || ''
+      item_id: k.item_id || '',
+      // 必须带上类型，否则整表替换后正则规则会变成普通文本关键词
+      type: k.type === 'regex' ? 'regex' : 'text'
     }))
   return post(`/keywords-with-item-id/${cookieId}`, { keywords: textKeywords })
 }
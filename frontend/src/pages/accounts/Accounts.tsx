@@ -71,6 +71,10 @@ export function Accounts() {
   const [aiMaxDiscountAmount, setAiMaxDiscountAmount] = useState(100)
   const [aiMaxBargainRounds, setAiMaxBargainRounds] = useState(3)
   const [aiCustomPrompts, setAiCustomPrompts] = useState('')
+  const [aiStreamEnabled, setAiStreamEnabled] = useState(false)
+  const [aiFallbackModelName, setAiFallbackModelName] = useState('')
+  const [aiFallbackBaseUrl, setAiFallbackBaseUrl] = useState('')
+  const [aiFallbackApiKey, setAiFallbackApiKey] = useState('')
   const [aiSettingsSaving, setAiSettingsSaving] = useState(false)
   const [aiSettingsLoading, setAiSettingsLoading] = useState(false)
 
@@ -514,6 +518,10 @@ export function Accounts() {
       setAiMaxDiscountAmount(settings.max_discount_amount ?? 100)
       setAiMaxBargainRounds(settings.max_bargain_rounds ?? 3)
       setAiCustomPrompts(settings.custom_prompts ?? '')
+      setAiStreamEnabled(settings.stream_enabled ?? false)
+      setAiFallbackModelName(settings.fallback_model_name ?? '')
+      setAiFallbackBaseUrl(settings.fallback_base_url ?? '')
+      setAiFallbackApiKey(settings.fallback_api_key ?? '')
     } catch {
       addToast({ type: 'error', message: '加载AI设置失败' })
     } finally {
@@ -531,6 +539,10 @@ export function Accounts() {
         max_discount_amount: aiMaxDiscountAmount,
         max_bargain_rounds: aiMaxBargainRounds,
         custom_prompts: aiCustomPrompts,
+        stream_enabled: aiStreamEnabled,
+        fallback_model_name: aiFallbackModelName,
+        fallback_base_url: aiFallbackBaseUrl,
+        fallback_api_key: aiFallbackApiKey,
       })
       // 更新本地状态
       setAccounts(prev => prev.map(a =>
@@ -1272,6 +1284,55 @@ export function Accounts() {
                     </div>
                   </div>
 
+                  <label className="flex items-center gap-2 text-sm text-slate-600 dark:text-slate-300">
+                    <input
+                      type="checkbox"
+                      checked={aiStreamEnabled}
+                      onChange={(e) => setAiStreamEnabled(e.target.checked)}
+                      className="h-4 w-4 rounded border-slate-300 dark:border-slate-600 text-blue-600"
+                    />
+                    流式回复（首句生成后先发送，其余内容随后发送）
+                  </label>
+
+                  <div className="border-t border-slate-200 dark:border-slate-700 pt-4 mt-2">
+                    <h3 className="text-sm font-medium text-slate-700 dark:text-slate-300 mb-3">备用模型</h3>
+                    <div className="space-y-3">
+                      <div className="input-group">
+                        <label className="input-label text-xs">模型名称</label>
+                        <input
+                          type="text"
+                          value={aiFallbackModelName}
+                          onChange={(e) => setAiFallbackModelName(e.target.value)}
+                          className="input-ios"
+                          placeholder="如: qwen-turbo，留空不启用"
+                        />
+                      </div>
+                      <div className="input-group">
+                        <label className="input-label text-xs">API 地址</label>
+                        <input
+                          type="text"
+                          value={aiFallbackBaseUrl}
+                          onChange={(e) => setAiFallbackBaseUrl(e.target.value)}
+                          className="input-ios"
+                          placeholder="留空沿用主模型地址"
+                        />
+                      </div>
+                      <div className="input-group">
+                        <label className="input-label text-xs">API Key</label>
+                        <input
+                          type="password"
+                          value={aiFallbackApiKey}
+                          onChange={(e) => setAiFallbackApiKey(e.target.value)}
+                          className="input-ios"
+                          placeholder="留空沿用主模型密钥"
+                        />
+                      </div>
+                    </div>
+                    <p className="text-xs text-slate-500 dark:text-slate-400 mt-1">
+                      主模型调用失败或熔断时改用备用模型，仍失败时使用相近问题的缓存回复，最后使用默认回复
+                    </p>
+                  </div>
+
                   <div className="input-group">
                     <label className="input-label">自定义提示词 (JSON格式)</label>
                     <textarea
@@ -52,7 +52,7 @@ export interface Keyword {
   keyword: string
   reply: string
   item_id?: string      // 绑定的商品ID，空表示通用关键词
-  type?: 'text' | 'image' | 'item' | 'normal'  // 关键词类型
+  type?: 'text' | 'image' | 'item' | 'normal' | 'regex'  // 关键词类型
   image_url?: string    // 图片类型关键词的图片URL
   fuzzy_match?: boolean
   created_at?: string